@@ -3,7 +3,12 @@ LOCAL_PATH := $(call my-dir)
 include $(CLEAR_VARS)
 
 LOCAL_MODULE    := conform
-LOCAL_SRC_FILES := fixed_func.cpp bitmapper.cpp bitmapwrapper.cpp conform.cpp
+LOCAL_SRC_FILES := fixed_func.cpp bitmapper.cpp coordcache.cpp expression.cpp mippyramid.cpp tiledimage.cpp floatmap.cpp deepzoom.cpp rationalform.cpp multipole.cpp partialproduct.cpp rendercontext.cpp framestats.cpp renderpool.cpp vectorkernel.cpp bitmapwrapper.cpp conform.cpp
+ifeq ($(TARGET_ARCH_ABI),armeabi-v7a)
+LOCAL_SRC_FILES += vectorkernel_simd.cpp.neon
+else
+LOCAL_SRC_FILES += vectorkernel_simd.cpp
+endif
 
 LOCAL_CFLAGS := -std=c++11 -pthread -O3 -Ofast -ffast-math -funroll-loops -faggressive-loop-optimizations -falign-functions \
 				-falign-loops -fassociative-math -fexpensive-optimizations -ffinite-math-only \
@@ -11,5 +16,8 @@ LOCAL_CFLAGS := -std=c++11 -pthread -O3 -Ofast -ffast-math -funroll-loops -faggr
 				
 #LOCAL_CFLAGS := -std=c++11 -ggdb3
 LOCAL_LDLIBS := -ljnigraphics -llog
+LOCAL_STATIC_LIBRARIES := cpufeatures
 
 include $(BUILD_SHARED_LIBRARY)
+
+$(call import-module,android/cpufeatures)
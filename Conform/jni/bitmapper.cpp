@@ -11,27 +11,53 @@
 #include "bitmapper.h"
 
 #include <iomanip>
-#include <android/log.h>
 #include <sstream>
 #include <complex>
 #include <algorithm>
-#include <future>
+#include <cstring>
 using namespace std;
 
 #include "fixed_class.h"
 #include "logstream.h"
+#include "renderpool.h"
+#include "mippyramid.h"
+#include "tiledimage.h"
 
 #define  LOG_TAG    "Conform"
 
-#define NUM_THREADS 3
+#define TILE_WIDTH 64
+#define TILE_HEIGHT 16
+#define GRID_STEP 16 //cell size the adaptive path starts from; a power of 2 that divides the tile size
 
-static logstream<ANDROID_LOG_INFO> INFO(LOG_TAG);
-static logstream<ANDROID_LOG_DEBUG> DEBUG(LOG_TAG);
+static logstream<LOG_PRIO_INFO> INFO(LOG_TAG);
+static logstream<LOG_PRIO_DEBUG> DEBUG(LOG_TAG);
 
 const complex<fixpoint> divZeroGuard(complex<fixpoint>&& z) {
 	return z + (fixpoint(!(z.real().intValue|z.imag().intValue)) >> 16);
 }
 
+//Keeps (w+1)/2 scaled by the aspect ratio well inside 16.16 range
+static const double MAX_W = 16383.0;
+
+const fixpoint toFixClamped(const float x) {
+	uint32_t bits;
+	memcpy(&bits, &x, sizeof(bits));
+	if ((bits & 0x7F800000) == 0x7F800000) {
+		return fixpoint(0);
+	}
+	return fixpoint(x > (float)MAX_W ? (float)MAX_W : x < -(float)MAX_W ? -(float)MAX_W : x);
+}
+
+const fixpoint toFixClamped(const double x) {
+	uint64_t bits;
+	memcpy(&bits, &x, sizeof(bits));
+	fixpoint f;
+	if ((bits & 0x7FF0000000000000ULL) != 0x7FF0000000000000ULL) {
+		f.intValue = (int32_t)((x > MAX_W ? MAX_W : x < -MAX_W ? -MAX_W : x) * 65536.0);
+	}
+	return f;
+}
+
 //Pixel-----------------------------------------------
 
 Pixel::Pixel(const uint32_t &a, const uint32_t &r, const uint32_t &g, const uint32_t &b) :
@@ -55,7 +81,7 @@ const Pixel Pixel::bilinterp(const Pixel &dl, const Pixel &dr, const Pixel &ul,
 }
 //Write Pixel to an ARGB_8888 formatted destination
 void Pixel::write(uint32_t &dest) const {
-	dest |= a << 24 | r << 16 | g << 8 | b;
+	dest = a << 24 | r << 16 | g << 8 | b;
 }
 
 ostream& operator<<(ostream& os, const Pixel& p) {
@@ -70,13 +96,14 @@ ostream &operator<<(ostream &os, const fixed_point<16> &f) {
 
 //BitmapSampler----------------------------------------
 
-BitmapSampler::BitmapSampler(const uint32_t *srcPixels, const uint32_t srcWidth, const uint32_t srcHeight, const int wrapMode) :
+BitmapSampler::BitmapSampler(const uint32_t *srcPixels, const uint32_t srcWidth, const uint32_t srcHeight, const int wrapMode, const bool isTiled) :
 	m_srcPixels(srcPixels), m_srcWidth(srcWidth), m_srcHeight(srcHeight),
 	m_xMult(srcWidth<srcHeight?fixpoint(srcHeight)/fixpoint(srcWidth):fixpoint(1)),
 	m_yMult(srcWidth>srcHeight?fixpoint(srcWidth)/fixpoint(srcHeight):fixpoint(1)),
-	m_wrapMode(wrapMode) {
+	m_wrapMode(wrapMode), m_tilesAcross(isTiled ? TiledImage::tilesAcross(srcWidth) : 0) {
 }
 
+
 //BitmapSampler::BitmapSampler(const BitmapSampler& o):
 //		m_srcPixels(o.m_srcPixels), m_srcWidth(o.m_srcWidth), m_srcHeight(o.m_srcHeight),
 //		m_xMult(o.m_xMult), m_yMult(o.m_yMult), m_wrapMode(o.m_wrapMode) {
@@ -89,44 +116,369 @@ const Pixel BitmapSampler::bilinearSample(const complex<fixpoint> &w) const {
 	const fixpoint ty = frac(yfix);
 	const uint32_t x0 = (xfix-tx).toUnsigned(); //x index of left side
 	const uint32_t y0 = (yfix-ty).toUnsigned(); //y index of bottom (top?) side
-	const Pixel result(Pixel::bilinterp(Pixel(m_srcPixels[y0*m_srcWidth+x0]),
-										Pixel(m_srcPixels[y0*m_srcWidth+x0+1]),
-										Pixel(m_srcPixels[(y0+1)*m_srcWidth+x0]),
-										Pixel(m_srcPixels[(y0+1)*m_srcWidth+(x0+1)]),
+	const uint32_t *p = m_srcPixels + (m_tilesAcross ? TiledImage::index(x0, y0, m_tilesAcross) : y0*m_srcWidth+x0);
+	const uint32_t right = m_tilesAcross ? TiledImage::rightOffset(x0) : 1;
+	const uint32_t down = m_tilesAcross ? TiledImage::downOffset(y0, m_tilesAcross) : m_srcWidth;
+	const Pixel result(Pixel::bilinterp(Pixel(p[0]),
+										Pixel(p[right]),
+										Pixel(p[down]),
+										Pixel(p[down+right]),
 										tx, ty));
 	return result;
 }
 //MappedBitmap----------------------------------------
 
 MappedBitmap::MappedBitmap(const BitmapSampler& src, uint32_t *destPixels, const uint32_t destWidth, const uint32_t destHeight, const BlaschkeMap& map) :
-	m_src(src), m_destPixels(destPixels), m_destWidth(destWidth), m_destHeight(destHeight), m_map(map),
-	m_reInc(fixpoint(2)/fixpoint(m_destWidth-1)), m_imInc(fixpoint(2)/fixpoint(m_destHeight-1)) {
+	MappedBitmap(src, destPixels, destWidth, destHeight, map, VectorMap(map)) {
+}
+MappedBitmap::MappedBitmap(const BitmapSampler& src, uint32_t *destPixels, const uint32_t destWidth, const uint32_t destHeight, const PlaneMap& map, const VectorMap& vectorMap) :
+	m_map(map), m_src(src), m_destPixels(destPixels), m_destWidth(destWidth), m_destHeight(destHeight),
+	m_vectorMap(vectorMap), m_vectorSampler(src),
+	m_rowKernel(m_vectorSampler.srcWidth > 1 && m_vectorSampler.srcHeight > 1 ? VectorKernel::rowKernel() : 0),
+	m_resampleKernel(m_vectorSampler.srcWidth > 1 && m_vectorSampler.srcHeight > 1 ? VectorKernel::resampleKernel() : 0),
+	m_mapKernel(m_rowKernel ? VectorKernel::mapKernel() : 0),
+	m_adaptiveTolerance(0) {
+	setRegion(destWidth, destHeight, 0, 0, destWidth);
+}
+MappedBitmap::MappedBitmap(const BitmapSampler& src, uint32_t *destPixels, const uint32_t destWidth, const uint32_t destHeight, const PlaneMap& map) :
+	m_map(map), m_src(src), m_destPixels(destPixels), m_destWidth(destWidth), m_destHeight(destHeight),
+	m_vectorSampler(src), m_rowKernel(0),
+	m_resampleKernel(m_vectorSampler.srcWidth > 1 && m_vectorSampler.srcHeight > 1 ? VectorKernel::resampleKernel() : 0),
+	m_mapKernel(0),
+	m_adaptiveTolerance(0) {
+	setRegion(destWidth, destHeight, 0, 0, destWidth);
+}
+
+void MappedBitmap::setBand(const uint32_t fullHeight, const uint32_t top) {
+	setRegion(m_destWidth, fullHeight, 0, top, m_destWidth);
+}
+
+void MappedBitmap::setRegion(const uint32_t fullWidth, const uint32_t fullHeight, const uint32_t left, const uint32_t top, const uint32_t stride) {
+	m_reInc.intValue = gridStep(fullWidth);
+	m_run = gridRun(fullWidth, TILE_WIDTH);
+	m_fullWidth = fullWidth;
+	m_fullHeight = fullHeight;
+	m_left = left;
+	m_top = top;
+	m_destStride = stride;
+}
+
+const fixpoint MappedBitmap::zRe(const int u) const {
+	fixpoint z;
+	z.intValue = gridZ(m_left + u, m_fullWidth);
+	return z;
+}
+const fixpoint MappedBitmap::zIm(const int v) const {
+	fixpoint z;
+	z.intValue = gridZ(m_top + v, m_fullHeight);
+	return z;
+}
+
+//A step of one source pixel is 2/((size-1)*mult) in w, in whichever direction that is smaller
+void MappedBitmap::setAdaptiveTolerance(const float tolerance) {
+	const float perPixelX = 2.0f/((m_vectorSampler.srcWidth-1)*m_vectorSampler.xMult);
+	const float perPixelY = 2.0f/((m_vectorSampler.srcHeight-1)*m_vectorSampler.yMult);
+	m_adaptiveTolerance = (int32_t)(tolerance * min(perPixelX, perPixelY) * 65536.0f);
+}
+
+void MappedBitmap::setMipPyramid(const MipPyramid *mips) {
+	m_levelSamplers.clear();
+	m_levelVectorSamplers.clear();
+	if (!mips || mips->levelPixels(0) != m_vectorSampler.srcPixels) {
+		return;
+	}
+	for (int level = 1; level < mips->numLevels(); ++level) {
+		m_levelSamplers.push_back(BitmapSampler(mips->levelPixels(level), mips->levelWidth(level), mips->levelHeight(level), m_vectorSampler.wrapMode, mips->isTiled()));
+		m_levelVectorSamplers.push_back(VectorSampler(m_levelSamplers.back()));
+	}
 }
-void MappedBitmap::pullbackSlice(const int startHeight, const int endHeight) {
-	fixpoint zim = -1 + m_imInc * startHeight;
+//Render one tile.  With step > 1 the map is only evaluated at every step'th pixel in each direction and the
+//sampled color is replicated across the step x step block - a cheap preview of the full resolution image.
+void MappedBitmap::pullbackTile(const int startWidth, const int startHeight, const int endWidth, const int endHeight, const int step, int32_t *coordsOut) {
+	if (step == 1 && m_rowKernel && m_levelSamplers.empty()) {
+		for (int v = startHeight; v < endHeight; ++v) {
+			const fixpoint zim = zIm(v);
+			for (int u = startWidth; u < endWidth; u += m_run) {
+				m_rowKernel(m_vectorMap, m_vectorSampler, zRe(u).intValue, zim.intValue, m_reInc.intValue, min(m_run, endWidth - u), &m_destPixels[v*m_destStride+u],
+							coordsOut ? &coordsOut[2*(v*m_destWidth+u)] : 0);
+			}
+		}
+		return;
+	}
+	if (step == 1 && (m_adaptiveTolerance > 0 || !m_levelSamplers.empty())) {
+		coordTile(startWidth, startHeight, endWidth, endHeight, coordsOut);
+		return;
+	}
+	const fixpoint reInc = m_reInc * step;
+	const int count = (endWidth - startWidth + step - 1) / step;
+	const int run = max(m_run / step, 1);
+	complex<fixpoint> ws[TILE_WIDTH];
+	for (int v = startHeight; v < endHeight; v += step) {
+		const fixpoint zim = zIm(v);
+		for (int i = 0; i < count; i += run) {
+			m_map.mapRow(complex<fixpoint>(zRe(startWidth + i*step), zim), reInc, min(run, count - i), ws + i);
+		}
+		if (coordsOut && step == 1) {
+			int32_t *coords = &coordsOut[2*(v*m_destWidth+startWidth)];
+			for (int i = 0; i < count; ++i) {
+				coords[2*i] = ws[i].real().intValue;
+				coords[2*i+1] = ws[i].imag().intValue;
+			}
+		}
+		for (int i = 0; i < count; ++i) {
+			const int u = startWidth + i*step;
+			uint32_t *dest = &m_destPixels[v*m_destStride+u];
+			m_src.bilinearSample(ws[i]).write(*dest); //sample color from src at map(z) and write to dest
+			if (step > 1) {
+				fillBlock(dest, min(step, endWidth-u), min(step, endHeight-v));
+			}
+		}
+	}
+}
+
+//Copy the top left pixel of a block over the rest of it
+void MappedBitmap::fillBlock(uint32_t *block, const int width, const int height) {
+	const uint32_t pix = *block;
+	for (int j = 0; j < height; ++j) {
+		fill(block + j*m_destStride, block + j*m_destStride + width, pix);
+	}
+}
+
+void MappedBitmap::pullbackSampledBitmap(const int step, int32_t *coordsOut) {
+	const int tilesAcross = (m_destWidth + TILE_WIDTH - 1) / TILE_WIDTH;
+	const int tilesDown = (m_destHeight + TILE_HEIGHT - 1) / TILE_HEIGHT;
+	if (step != 1) {
+		coordsOut = 0;
+	}
+	RenderPool::instance().run(tilesAcross*tilesDown, [this, tilesAcross, step, coordsOut](const int tile) {
+		const int startWidth = (tile % tilesAcross) * TILE_WIDTH;
+		const int startHeight = (tile / tilesAcross) * TILE_HEIGHT;
+		pullbackTile(startWidth, startHeight, min(startWidth + TILE_WIDTH, m_destWidth), min(startHeight + TILE_HEIGHT, m_destHeight), step, coordsOut);
+	});
+}
+
+void MappedBitmap::resampleTile(const int startWidth, const int startHeight, const int endWidth, const int endHeight, const int32_t *coords) {
+	sampleTile(&coords[2*(startHeight*m_destWidth+startWidth)], m_destWidth, startWidth, startHeight, endWidth, endHeight);
+}
+
+//Sample a tile at w coordinates given as raw 16.16 (re, im) pairs, stride pairs to a row
+void MappedBitmap::sampleTile(const int32_t *coords, const int stride, const int startWidth, const int startHeight, const int endWidth, const int endHeight) {
 	for (int v = startHeight; v < endHeight; ++v) {
-		fixpoint zre(-1);
-		for (int u = 0; u < m_destWidth; ++u) {
-			const complex<fixpoint> z(zre,zim);
-			const complex<fixpoint> w(m_map(z));
-			m_src.bilinearSample(w).write(m_destPixels[v*m_destWidth+u]); //sample color from src at map(z) and write to dest
-			zre += m_reInc;
+		const int32_t *row = &coords[2*(v-startHeight)*stride];
+		uint32_t *dest = &m_destPixels[v*m_destStride+startWidth];
+		if (m_levelSamplers.empty()) {
+			sampleRow(row, endWidth - startWidth, dest);
+		} else { //the row below gives the vertical spacing of w, or the one above on the tile's last row
+			const int32_t *adjacent = v+1 < endHeight ? row + 2*stride : v > startHeight ? row - 2*stride : row;
+			mipSampleRow(row, adjacent, endWidth - startWidth, dest);
+		}
+	}
+}
+
+//Sample count pixels at w coordinates given as raw 16.16 (re, im) pairs, from the source or one of its mip levels
+void MappedBitmap::sampleRow(const int32_t *coords, const int count, uint32_t *dest, const int level) {
+	if (m_resampleKernel) {
+		m_resampleKernel(level ? m_levelVectorSamplers[level-1] : m_vectorSampler, coords, count, dest);
+		return;
+	}
+	const BitmapSampler& sampler = level ? m_levelSamplers[level-1] : m_src;
+	for (int u = 0; u < count; ++u) {
+		fixpoint wre, wim;
+		wre.intValue = coords[2*u];
+		wim.intValue = coords[2*u+1];
+		sampler.bilinearSample(complex<fixpoint>(wre, wim)).write(dest[u]);
+	}
+}
+
+//log2 from the bits of a positive float: exact at powers of 2 and linear in between, which is within 0.09 -
+//plenty for choosing a mip level
+static inline float roughLog2(const float x) {
+	int32_t bits;
+	memcpy(&bits, &x, sizeof(bits));
+	return (bits - 0x3F800000) * (1.0f/(1 << 23));
+}
+
+//(256-t)/256 of a plus t/256 of b, for all four channels
+static inline uint32_t blendPixels(const uint32_t a, const uint32_t b, const uint32_t t) {
+	const uint32_t mask = 0x00FF00FF;
+	const uint32_t rb = ((a & mask)*(256-t) + (b & mask)*t) >> 8;
+	const uint32_t ag = (((a >> 8) & mask)*(256-t) + ((b >> 8) & mask)*t) >> 8;
+	return (rb & mask) | ((ag & mask) << 8);
+}
+
+//Trilinear sampling of one row.  The level of detail is log2 of how many source pixels one step to the next pixel
+//(or to the adjacent row) moves w, whichever is further - the usual isotropic choice.  Where it's under 0 the
+//source is sampled as normal; otherwise levels floor(lod) and floor(lod)+1 are blended.  Each run of pixels that
+//share the same pair of levels is sampled a level at a time, so the vector kernel still does the sampling.
+void MappedBitmap::mipSampleRow(const int32_t *coords, const int32_t *adjacent, const int count, uint32_t *dest) {
+	const int topLevel = m_levelSamplers.size();
+	const float texelsX = (m_vectorSampler.srcWidth-1)*m_vectorSampler.xMult/(2*65536.0f); //per raw unit of w
+	const float texelsY = (m_vectorSampler.srcHeight-1)*m_vectorSampler.yMult/(2*65536.0f);
+	float lod[TILE_WIDTH];
+	int level[TILE_WIDTH];
+	for (int u = 0; u < count; ++u) {
+		const int next = u+1 < count ? u+1 : max(u-1, 0);
+		const float dux = (coords[2*next] - coords[2*u])*texelsX, duy = (coords[2*next+1] - coords[2*u+1])*texelsY;
+		const float dvx = (adjacent[2*u] - coords[2*u])*texelsX, dvy = (adjacent[2*u+1] - coords[2*u+1])*texelsY;
+		lod[u] = 0.5f*roughLog2(max(dux*dux + duy*duy, dvx*dvx + dvy*dvy));
+		level[u] = lod[u] < 0 ? -1 : min((int)lod[u], topLevel); //-1: magnified, just the source
+	}
+	uint32_t coarser[TILE_WIDTH];
+	for (int u = 0, end; u < count; u = end) {
+		for (end = u+1; end < count && level[end] == level[u]; ++end) {
+		}
+		const int fine = max(level[u], 0);
+		sampleRow(coords + 2*u, end - u, dest + u, fine);
+		if (level[u] < 0 || fine == topLevel) {
+			continue;
+		}
+		sampleRow(coords + 2*u, end - u, coarser, fine+1);
+		for (int i = u; i < end; ++i) {
+			dest[i] = blendPixels(dest[i], coarser[i-u], min((int)((lod[i] - fine)*256.0f), 256));
 		}
-		zim += m_imInc;
 	}
 }
 
-void MappedBitmap::pullbackSampledBitmap() {
-	const int chunkHeight = m_destHeight / NUM_THREADS;
-	int startHeight = 0;
-	int endHeight = chunkHeight;
-	while (endHeight <= m_destHeight) {
-		async(launch::async, &MappedBitmap::pullbackSlice, this, startHeight, endHeight);
-		startHeight = endHeight;
-		endHeight += chunkHeight;
+//Full resolution render of one tile by way of a tile of w coordinates: for the adaptive path, which interpolates
+//them, and for mipmapping, which needs the spacing between them
+void MappedBitmap::coordTile(const int startWidth, const int startHeight, const int endWidth, const int endHeight, int32_t *coordsOut) {
+	int32_t coords[2*TILE_WIDTH*TILE_HEIGHT];
+	TileCoords tile = { startWidth, startHeight, endWidth, endHeight, coords };
+	if (m_mapKernel) {
+		for (int v = startHeight; v < endHeight; ++v) {
+			const fixpoint zim = zIm(v);
+			for (int u = startWidth; u < endWidth; u += m_run) {
+				m_mapKernel(m_vectorMap, zRe(u).intValue, zim.intValue, m_reInc.intValue, min(m_run, endWidth - u), &coords[2*((v-startHeight)*TILE_WIDTH + u-startWidth)]);
+			}
+		}
+	} else if (m_adaptiveTolerance > 0) {
+		adaptiveCoords(tile);
+	} else {
+		complex<fixpoint> ws[TILE_WIDTH];
+		for (int v = startHeight; v < endHeight; ++v) {
+			const fixpoint zim = zIm(v);
+			for (int u = startWidth; u < endWidth; u += m_run) {
+				m_map.mapRow(complex<fixpoint>(zRe(u), zim), m_reInc, min(m_run, endWidth - u), ws + u-startWidth);
+			}
+			int32_t *row = &coords[2*(v-startHeight)*TILE_WIDTH];
+			for (int u = 0; u < endWidth - startWidth; ++u) {
+				row[2*u] = ws[u].real().intValue;
+				row[2*u+1] = ws[u].imag().intValue;
+			}
+		}
+	}
+	sampleTile(coords, TILE_WIDTH, startWidth, startHeight, endWidth, endHeight);
+	if (coordsOut) {
+		for (int v = startHeight; v < endHeight; ++v) {
+			const int32_t *row = &coords[2*(v-startHeight)*TILE_WIDTH];
+			copy(row, row + 2*(endWidth - startWidth), &coordsOut[2*(v*m_destWidth+startWidth)]);
+		}
 	}
 }
 
+//Adaptive w coordinates for one tile.  The map is evaluated at the corners, edge midpoints and centres of
+//GRID_STEP sized cells (which may hang over the edge of the tile; the map doesn't care), a row at a time.  Where
+//those five inner points are all within tolerance of what bilinear interpolation from the corners gives, w is
+//interpolated across the cell.  Where they aren't - near a pole, say - the cell is split in four and each quarter
+//checked the same way, down to evaluating every pixel.
+void MappedBitmap::adaptiveCoords(TileCoords& tile) {
+	const int half = GRID_STEP/2;
+	const int cellsAcross = (tile.endWidth - tile.startWidth + GRID_STEP - 1) / GRID_STEP;
+	const int cellsDown = (tile.endHeight - tile.startHeight + GRID_STEP - 1) / GRID_STEP;
+	const int run = max(m_run / half, 1);
+	complex<fixpoint> grid[2*TILE_HEIGHT/GRID_STEP+1][2*TILE_WIDTH/GRID_STEP+1];
+	for (int j = 0; j <= 2*cellsDown; ++j) {
+		const fixpoint zim = zIm(tile.startHeight + j*half);
+		for (int k = 0; k <= 2*cellsAcross; k += run) {
+			m_map.mapRow(complex<fixpoint>(zRe(tile.startWidth + k*half), zim), m_reInc * half, min(run, 2*cellsAcross + 1 - k), &grid[j][k]);
+		}
+	}
+	for (int j = 0; j < cellsDown; ++j) {
+		for (int i = 0; i < cellsAcross; ++i) {
+			const complex<fixpoint> *g0 = &grid[2*j][2*i], *g1 = &grid[2*j+1][2*i], *g2 = &grid[2*j+2][2*i];
+			const complex<fixpoint> points[9] = { g0[0], g0[1], g0[2], g1[0], g1[1], g1[2], g2[0], g2[1], g2[2] };
+			refineCell(tile.startWidth + i*GRID_STEP, tile.startHeight + j*GRID_STEP, GRID_STEP, points, tile);
+		}
+	}
+}
+
+//How far w is from the average of a and b (or of a, b, c and d), in raw 16.16 units, whichever of re and im is worse
+static inline int64_t offMidpoint(const complex<fixpoint>& w, const complex<fixpoint>& a, const complex<fixpoint>& b) {
+	return max(llabs(2*(int64_t)w.real().intValue - a.real().intValue - b.real().intValue),
+			llabs(2*(int64_t)w.imag().intValue - a.imag().intValue - b.imag().intValue)) / 2;
+}
+static inline int64_t offMidpoint(const complex<fixpoint>& w, const complex<fixpoint>& a, const complex<fixpoint>& b, const complex<fixpoint>& c, const complex<fixpoint>& d) {
+	return max(llabs(4*(int64_t)w.real().intValue - a.real().intValue - b.real().intValue - c.real().intValue - d.real().intValue),
+			llabs(4*(int64_t)w.imag().intValue - a.imag().intValue - b.imag().intValue - c.imag().intValue - d.imag().intValue)) / 4;
+}
+
+//Fill in the size x size cell with top left pixel (u, v), given w on the 3x3 grid of its corners, edge midpoints
+//and centre, row by row (the right and bottom corners are just outside the cell)
+void MappedBitmap::refineCell(const int u, const int v, const int size, const complex<fixpoint> *w, TileCoords& tile) {
+	const int endU = min(u + size, tile.endWidth);
+	const int endV = min(v + size, tile.endHeight);
+	const int64_t error = max(max(offMidpoint(w[1], w[0], w[2]), offMidpoint(w[7], w[6], w[8])),
+			max(max(offMidpoint(w[3], w[0], w[6]), offMidpoint(w[5], w[2], w[8])), offMidpoint(w[4], w[0], w[2], w[6], w[8])));
+	if (error > m_adaptiveTolerance) {
+		const int half = size/2;
+		if (half <= 2) { //quarters of 2x2 pixels: cheaper to evaluate them outright than to probe them
+			complex<fixpoint> ws[TILE_WIDTH];
+			for (int y = v; y < endV; ++y) {
+				m_map.mapRow(complex<fixpoint>(zRe(u), zIm(y)), m_reInc, endU - u, ws);
+				int32_t *dest = &tile.coords[2*((y-tile.startHeight)*TILE_WIDTH + u-tile.startWidth)];
+				for (int x = 0; x < endU - u; ++x) {
+					*dest++ = ws[x].real().intValue;
+					*dest++ = ws[x].imag().intValue;
+				}
+			}
+			return;
+		}
+		for (int q = 0; q < 4; ++q) {
+			const int qu = u + (q & 1)*half;
+			const int qv = v + (q >> 1)*half;
+			if (qu >= tile.endWidth || qv >= tile.endHeight) {
+				continue;
+			}
+			const complex<fixpoint> *c = &w[(q >> 1)*3 + (q & 1)]; //this quarter's top left corner in w
+			const int quarter = half/2;
+			const complex<fixpoint> points[9] = {
+				c[0], evalAt(qu + quarter, qv), c[1],
+				evalAt(qu, qv + quarter), evalAt(qu + quarter, qv + quarter), evalAt(qu + half, qv + quarter),
+				c[3], evalAt(qu + quarter, qv + half), c[4] };
+			refineCell(qu, qv, half, points, tile);
+		}
+		return;
+	}
+	//Bilinear in exact integer arithmetic: weights are multiples of 1/size, and size is a power of 2
+	const int64_t area = size*size;
+	for (int y = v; y < endV; ++y) {
+		const int dy = y - v;
+		int32_t *dest = &tile.coords[2*((y-tile.startHeight)*TILE_WIDTH + u-tile.startWidth)];
+		for (int x = u; x < endU; ++x) {
+			const int dx = x - u;
+			const int64_t w00 = (size-dx)*(size-dy), w10 = dx*(size-dy), w01 = (size-dx)*dy, w11 = dx*dy;
+			*dest++ = (int32_t)((w00*w[0].real().intValue + w10*w[2].real().intValue + w01*w[6].real().intValue + w11*w[8].real().intValue) / area);
+			*dest++ = (int32_t)((w00*w[0].imag().intValue + w10*w[2].imag().intValue + w01*w[6].imag().intValue + w11*w[8].imag().intValue) / area);
+		}
+	}
+}
+
+const complex<fixpoint> MappedBitmap::evalAt(const int u, const int v) const {
+	complex<fixpoint> w;
+	m_map.mapRow(complex<fixpoint>(zRe(u), zIm(v)), m_reInc, 1, &w);
+	return w;
+}
+
+void MappedBitmap::resampleBitmap(const int32_t *coords) {
+	const int tilesAcross = (m_destWidth + TILE_WIDTH - 1) / TILE_WIDTH;
+	const int tilesDown = (m_destHeight + TILE_HEIGHT - 1) / TILE_HEIGHT;
+	RenderPool::instance().run(tilesAcross*tilesDown, [this, tilesAcross, coords](const int tile) {
+		const int startWidth = (tile % tilesAcross) * TILE_WIDTH;
+		const int startHeight = (tile / tilesAcross) * TILE_HEIGHT;
+		resampleTile(startWidth, startHeight, min(startWidth + TILE_WIDTH, m_destWidth), min(startHeight + TILE_HEIGHT, m_destHeight), coords);
+	});
+}
+
 //MoebiusTrans----------------------------------------
 MobiusTrans::MobiusTrans(const complex<fixpoint>& a, const complex<fixpoint>& b, const complex<fixpoint>& c, const complex<fixpoint>& d) : m_a(a), m_b(b), m_c(c), m_d(d), m_isIdentity(false) {
 }
@@ -173,19 +525,37 @@ const bool MobiusTrans::isIdentity() const {
 
 //BlaschkeMap----------------------------------------
 
-BlaschkeMap::BlaschkeMap() : m_factors({MobiusTrans::identity}), m_numFactors(0) {
+BlaschkeMap::BlaschkeMap() : m_numFactors(0) {
 }
-BlaschkeMap::BlaschkeMap(const MobiusTrans& a) : m_factors({a}), m_numFactors(1) {
+BlaschkeMap::BlaschkeMap(const MobiusTrans& a) : m_numFactors(1) {
+	m_factors[0] = a;
 }
-BlaschkeMap::BlaschkeMap(const MobiusTrans& a, const MobiusTrans& b) : m_factors({a,b}), m_numFactors(2) {
+BlaschkeMap::BlaschkeMap(const MobiusTrans& a, const MobiusTrans& b) : m_numFactors(2) {
+	m_factors[0] = a;
+	m_factors[1] = b;
+	compileRational();
 }
 
-BlaschkeMap::BlaschkeMap(const BlaschkeMap& g) : m_numFactors(g.m_numFactors), m_lhs(g.m_lhs) {
+BlaschkeMap::BlaschkeMap(const BlaschkeMap& g) : m_numFactors(g.m_numFactors), m_lhs(g.m_lhs), m_rational(g.m_rational) {
 	copy(&g.m_factors[0], &g.m_factors[0] + g.m_numFactors, &m_factors[0]);
 }
 
+static const complex<double> toDouble(const complex<fixpoint>& z) {
+	return complex<double>(z.real().intValue/65536.0, z.imag().intValue/65536.0);
+}
 
+void BlaschkeMap::compileRational() {
+	complex<double> a[max_factors], b[max_factors], c[max_factors], d[max_factors];
+	for (int i = 0; i < m_numFactors; ++i) {
+		a[i] = toDouble(m_factors[i].m_a);
+		b[i] = toDouble(m_factors[i].m_b);
+		c[i] = toDouble(m_factors[i].m_c);
+		d[i] = toDouble(m_factors[i].m_d);
+	}
+	m_rational.compile(a, b, c, d, m_numFactors);
+}
 
+//Factor by factor, so the fixed point engine stays fixed point; the rational form is for the float kernels
 const complex<fixpoint> BlaschkeMap::operator()(const complex<fixpoint> &z) const {
 	complex<fixpoint> w(ONE);
 	for (int i = 0; i < m_numFactors; ++i) {
@@ -193,6 +563,13 @@ const complex<fixpoint> BlaschkeMap::operator()(const complex<fixpoint> &z) cons
 	}
 	return w;
 }
+void BlaschkeMap::mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+	fixpoint zre = z0.real();
+	for (int i = 0; i < count; ++i) {
+		w[i] = (*this)(complex<fixpoint>(zre, z0.imag()));
+		zre += reInc;
+	}
+}
 BlaschkeMap& operator|(const MobiusTrans& a, BlaschkeMap& b) {
 	b.m_lhs = (a|b.m_lhs);
 	return b;
@@ -201,6 +578,7 @@ BlaschkeMap& operator|(BlaschkeMap& b, const MobiusTrans& a) {
 	for (int i = 0; i < b.m_numFactors; ++i) {
 		b.m_factors[i] = (b.m_factors[i]|a);
 	}
+	b.compileRational();
 	return b;
 }
 
@@ -215,6 +593,7 @@ BlaschkeMap& BlaschkeMap::operator*=(const BlaschkeMap& f) {
 BlaschkeMap& BlaschkeMap::operator*=(const MobiusTrans& a) {
 	if (m_numFactors < BlaschkeMap::max_factors) {
 		m_factors[m_numFactors++] = a;
+		m_rational = RationalForm(); //left to operator| to compile, rather than once per factor
 	}
 	return *this;
 }
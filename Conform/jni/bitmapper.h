@@ -20,7 +20,12 @@
 
 #include <iostream>
 #include <complex>
+#include <vector>
 #include "fixed_class.h"
+#include "vectorkernel.h"
+#include "rationalform.h"
+
+class MipPyramid;
 
 using namespace std;
 
@@ -30,6 +35,11 @@ static const complex<fixpoint> ONE(1,0);
 static const complex<fixpoint> ZERO(0,0);
 
 const complex<fixpoint> divZeroGuard(complex<fixpoint>&& z);
+//Bring a floating point w back into 16.16, clamped to where BitmapSampler's own sums stay in range.  Infinities
+//and NaNs (poles, log(0)...) go to 0; the test is on the exponent bits because -ffinite-math-only lets the
+//compiler assume isfinite() is always true.
+const fixpoint toFixClamped(const float x);
+const fixpoint toFixClamped(const double x);
 
 class Pixel {
 public:
@@ -53,9 +63,11 @@ ostream &operator<<(ostream &os, const fixed_point<16> &f);
 
 class BitmapSampler {
 public:
-	BitmapSampler(const uint32_t *srcPixels, const uint32_t srcWidth, const uint32_t srcHeight, const int wrapMode);
+	//isTiled: srcPixels are laid out as a TiledImage rather than row by row
+	BitmapSampler(const uint32_t *srcPixels, const uint32_t srcWidth, const uint32_t srcHeight, const int wrapMode, const bool isTiled = false);
 	//BitmapSampler(const BitmapSampler& o);
 	const Pixel bilinearSample(const complex<fixpoint> &w) const;
+	friend struct VectorSampler;
 private:
 	const uint32_t *m_srcPixels;
 	const uint32_t m_srcWidth;
@@ -63,6 +75,7 @@ private:
 	const fixpoint m_xMult;
 	const fixpoint m_yMult;
 	const int m_wrapMode;
+	const uint32_t m_tilesAcross; //0 for row-major pixels
 };
 
 class MobiusTrans {
@@ -78,6 +91,8 @@ public:
 	friend ostream& operator<<(ostream &os, const MobiusTrans& mobius);
 	static const MobiusTrans identity;
 	const bool isIdentity() const;
+	friend struct VectorMap;
+	friend class BlaschkeMap;
 private:
 	complex<fixpoint> m_a;
 	complex<fixpoint> m_b;
@@ -86,38 +101,105 @@ private:
 	bool m_isIdentity;
 };
 
-class BlaschkeMap {
+//Anything MappedBitmap can pull back by: maps the view plane (z) to the source plane (w) a row at a time
+class PlaneMap {
+public:
+	virtual ~PlaneMap() {}
+	//w[i] = map(z0 + i*reInc) for i in [0, count)
+	virtual void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const = 0;
+};
+
+class BlaschkeMap : public PlaneMap {
 public:
 	explicit BlaschkeMap();
 	explicit BlaschkeMap(const MobiusTrans& a);
 	explicit BlaschkeMap(const MobiusTrans& a, const MobiusTrans& b);
 	BlaschkeMap(const BlaschkeMap& g);
 	const complex<fixpoint> operator()(const complex<fixpoint> &z) const;
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const;
 	friend BlaschkeMap& operator|(const MobiusTrans& a, BlaschkeMap& b);
 	friend BlaschkeMap& operator|(BlaschkeMap& b, const MobiusTrans& a);
 	BlaschkeMap& operator*=(const BlaschkeMap& f);
 	BlaschkeMap& operator*=(const MobiusTrans& a);
 	friend ostream& operator<<(ostream &os, const BlaschkeMap& blasch);
 	static const int max_factors = 6;
+	friend struct VectorMap;
 private:
+	//Multiply the factors out again.  Composing with the view (operator|) is the last step in building a map,
+	//so that's where it's done; operator*= just drops the old form.
+	void compileRational();
 	int m_numFactors;
 	MobiusTrans m_factors[max_factors];
 	MobiusTrans m_lhs;
+	RationalForm m_rational; //for VectorMap, which evaluates it in float when usable; operator() doesn't
 };
 
 class MappedBitmap {
 public:
 	MappedBitmap(const BitmapSampler& src, uint32_t *destPixels, const uint32_t destWidth, const uint32_t destHeight, const BlaschkeMap& map);
-	void pullbackSlice(const int startHeight, const int endHeight);
-	void pullbackSampledBitmap();
+	//A map the vector kernel can also evaluate, as vectorMap; the scalar path still uses map itself
+	MappedBitmap(const BitmapSampler& src, uint32_t *destPixels, const uint32_t destWidth, const uint32_t destHeight, const PlaneMap& map, const VectorMap& vectorMap);
+	//Any other map is rendered by the scalar path only
+	MappedBitmap(const BitmapSampler& src, uint32_t *destPixels, const uint32_t destWidth, const uint32_t destHeight, const PlaneMap& map);
+	void pullbackTile(const int startWidth, const int startHeight, const int endWidth, const int endHeight, const int step, int32_t *coordsOut);
+	//Render the whole bitmap, evaluating the map once per step x step block (step must divide the tile size).
+	//If coordsOut isn't null and step is 1, w for every pixel is saved there as raw 16.16 (re, im) pairs.
+	void pullbackSampledBitmap(const int step = 1, int32_t *coordsOut = 0);
+	//Render the whole bitmap from w coordinates saved by pullbackSampledBitmap, without evaluating the map
+	void resampleBitmap(const int32_t *coords);
+	//Full resolution frames that can't use the vector kernel evaluate the map on a sparse grid and interpolate w in
+	//between, wherever that's within tolerance source pixels of the real thing.  0 (the default) evaluates every pixel.
+	void setAdaptiveTolerance(const float tolerance);
+	//Where the map shrinks the source by more than a pixel per pixel, sample the pyramid's levels (trilinear,
+	//from the spacing of w between neighbouring pixels) instead of the source itself.  The pyramid must have been
+	//built from this bitmap's source, and outlive it.  Full resolution frames only; null turns it off again.
+	void setMipPyramid(const MipPyramid *mips);
+	//Render the bitmap as rows top and on of a view fullHeight rows high and as wide as the bitmap, rather than as
+	//the whole view: for rendering a picture too big to hold a band at a time.
+	void setBand(const uint32_t fullHeight, const uint32_t top);
+	//More generally, render the bitmap as the region with top left pixel (left, top) of a fullWidth x fullHeight
+	//view, its rows stride pixels apart in destPixels: for redrawing part of a frame in place.  Don't save or
+	//resample coordinates for a region; they're laid out as if it were the whole bitmap.
+	void setRegion(const uint32_t fullWidth, const uint32_t fullHeight, const uint32_t left, const uint32_t top, const uint32_t stride);
 private:
-	const BlaschkeMap& m_map;
+	//The w coordinates of one tile being filled in by the adaptive path
+	struct TileCoords {
+		int startWidth, startHeight, endWidth, endHeight;
+		int32_t *coords; //TILE_WIDTH (re, im) pairs a row
+	};
+	void resampleTile(const int startWidth, const int startHeight, const int endWidth, const int endHeight, const int32_t *coords);
+	void sampleTile(const int32_t *coords, const int stride, const int startWidth, const int startHeight, const int endWidth, const int endHeight);
+	void sampleRow(const int32_t *coords, const int count, uint32_t *dest, const int level = 0);
+	void mipSampleRow(const int32_t *coords, const int32_t *adjacent, const int count, uint32_t *dest);
+	void coordTile(const int startWidth, const int startHeight, const int endWidth, const int endHeight, int32_t *coordsOut);
+	void adaptiveCoords(TileCoords& tile);
+	void refineCell(const int u, const int v, const int size, const complex<fixpoint> *w, TileCoords& tile);
+	const complex<fixpoint> evalAt(const int u, const int v) const;
+	//z at column u and row v of the bitmap, on the view grid (see gridZ)
+	const fixpoint zRe(const int u) const;
+	const fixpoint zIm(const int v) const;
+	void fillBlock(uint32_t *block, const int width, const int height);
+
+	const PlaneMap& m_map;
 	const BitmapSampler& m_src;
 	uint32_t *m_destPixels;
 	const int m_destWidth;
 	const int m_destHeight;
-	const fixpoint m_reInc;
-	const fixpoint m_imInc;
+	int m_destStride; //pixels from one row of destPixels to the next
+	fixpoint m_reInc; //z from one pixel to the next along a run (see gridStep)
+	int m_run; //pixels a row is mapped in at a time (see gridRun)
+	int m_fullWidth; //of the view the bitmap is a region of
+	int m_fullHeight;
+	int m_left; //the bitmap's first column and row in the view
+	int m_top;
+	const VectorMap m_vectorMap;
+	const VectorSampler m_vectorSampler;
+	const RowKernel m_rowKernel; //null when the scalar path should be used
+	const ResampleKernel m_resampleKernel; //likewise
+	const MapKernel m_mapKernel; //likewise
+	int32_t m_adaptiveTolerance; //in raw 16.16 units of w; 0 for off
+	vector<BitmapSampler> m_levelSamplers; //mip levels 1 and up; empty when not mipmapping
+	vector<VectorSampler> m_levelVectorSamplers;
 };
 
 #endif /* BITMAPPER_H_ */
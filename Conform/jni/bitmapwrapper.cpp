@@ -9,9 +9,9 @@
 #include "logstream.h"
 #include <iostream>
 
-extern logstream<ANDROID_LOG_INFO> INFO;
-extern logstream<ANDROID_LOG_DEBUG> DEBUG;
-extern logstream<ANDROID_LOG_ERROR> ERROR;
+extern logstream<LOG_PRIO_INFO> INFO;
+extern logstream<LOG_PRIO_DEBUG> DEBUG;
+extern logstream<LOG_PRIO_ERROR> ERROR;
 
 
 BitmapWrapper::BitmapWrapper(JNIEnv *env, jobject bm) : m_env(env), m_bm(bm), m_isValid(false), m_width(0), m_height(0), m_dataPtr(0) {
@@ -42,6 +42,13 @@ const uint32_t BitmapWrapper::getHeight() const {
 	return m_height;
 }
 
+const int32_t BitmapWrapper::getGenerationId() const {
+	const jclass bitmapClass = m_env->GetObjectClass(m_bm);
+	const jmethodID method = m_env->GetMethodID(bitmapClass, "getGenerationId", "()I");
+	m_env->DeleteLocalRef(bitmapClass);
+	return m_env->CallIntMethod(m_bm, method);
+}
+
 const bool BitmapWrapper::extractAndCheckBitmapInfo(AndroidBitmapInfo &info) const {
 	const int status = AndroidBitmap_getInfo(m_env, m_bm, &info);
 	if (status != ANDROID_BITMAP_RESULT_SUCCESS) {
@@ -21,6 +21,8 @@ public:
 	uint32_t *getData() const;
 	const uint32_t getWidth() const;
 	const uint32_t getHeight() const;
+	//Bitmap.getGenerationId(): changes whenever the pixels do
+	const int32_t getGenerationId() const;
 
 private:
 	const bool extractAndCheckBitmapInfo(AndroidBitmapInfo &info) const;
@@ -9,27 +9,133 @@
  *     IBM Corporation - initial API and implementation
  *******************************************************************************/
 #include <signal.h>
+#include <string.h>
 #include <jni.h>
 
 #include "logstream.h"
 #include "bitmapwrapper.h"
 #include "bitmapper.h"
+#include "renderpool.h"
+#include "expression.h"
+#include "paramblock.h"
+#include "rendercontext.h"
 
 using namespace std;
 
 #define  LOG_TAG    "Conform"
 
-logstream<ANDROID_LOG_INFO> INFO(LOG_TAG);
-logstream<ANDROID_LOG_DEBUG> DEBUG(LOG_TAG);
-logstream<ANDROID_LOG_ERROR> ERROR(LOG_TAG);
+logstream<LOG_PRIO_INFO> INFO(LOG_TAG);
+logstream<LOG_PRIO_DEBUG> DEBUG(LOG_TAG);
+logstream<LOG_PRIO_ERROR> ERROR(LOG_TAG);
+
+static RenderContext s_context; //what the calls that pass their bitmaps every frame render with
+
+//A RenderContext as Java holds it, with the bitmaps it renders into: locked once when they're attached rather
+//than every frame, and unlocked when they're replaced or the context released
+struct ContextHandle {
+	static const int max_dests = 3; //PullbackRenderer triple buffers
+	struct Dest {
+		jobject bitmap; //a global reference, or null
+		ImageRef image;
+	};
+	ContextHandle() {
+		memset(dests, 0, sizeof(dests));
+	}
+	RenderContext context;
+	Dest dests[max_dests];
+};
+
+static const ImageRef imageOf(const BitmapWrapper& bitmap, const int32_t generation = 0) {
+	const ImageRef image = { bitmap.getData(), bitmap.getWidth(), bitmap.getHeight(), generation };
+	return image;
+}
+
+//The block's header, copied out, and where its zeros start
+static const ParamBlock readBlock(JNIEnv *env, jobject blockBuffer, const float *&params) {
+	const char *address = static_cast<const char *>(env->GetDirectBufferAddress(blockBuffer));
+	ParamBlock block;
+	memcpy(&block, address, sizeof(block));
+	params = reinterpret_cast<const float *>(address + sizeof(block));
+	return block;
+}
+
+static const shared_ptr<const ComplexExpression> compileExpression(JNIEnv *env, jstring expression) {
+	const char *chars = env->GetStringUTFChars(expression, 0);
+	const shared_ptr<const ComplexExpression> expr(ComplexExpression::compileCached(chars));
+	env->ReleaseStringUTFChars(expression, chars);
+	return expr;
+}
+
+static void detachDest(JNIEnv *env, ContextHandle::Dest& dest) {
+	if (dest.bitmap) {
+		AndroidBitmap_unlockPixels(env, dest.bitmap);
+		env->DeleteGlobalRef(dest.bitmap);
+	}
+	memset(&dest, 0, sizeof(dest));
+}
+
+static ContextHandle *handleOf(jlong handle) {
+	return reinterpret_cast<ContextHandle *>(static_cast<intptr_t>(handle));
+}
 
 extern "C" {
-	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmap(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode);
-	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmapByExpression(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jstring expression, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode);
+	JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmap(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode, jint step);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmapDeep(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jfloatArray paramArray, jint numParams, jdouble centreRe, jdouble centreIm, jdouble scale, jint wrapMode, jint step);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmapByExpression(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jstring expression, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode, jint step);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBlock(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jobject blockBuffer, jint step);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBlockByExpression(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jstring expression, jobject blockBuffer, jint step);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setAdaptiveTolerance(JNIEnv *env, jobject thiz, jfloat tolerance);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setMipmapping(JNIEnv *env, jobject thiz, jboolean enabled);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setTiledSource(JNIEnv *env, jobject thiz, jboolean enabled);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setEngine(JNIEnv *env, jobject thiz, jint engine);
+	JNIEXPORT jlong JNICALL Java_org_mtc_conform_ConformLib_createContext(JNIEnv *env, jobject thiz);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_releaseContext(JNIEnv *env, jobject thiz, jlong handle);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_setContextSource(JNIEnv *env, jobject thiz, jlong handle, jobject bmSource);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_setContextDest(JNIEnv *env, jobject thiz, jlong handle, jint index, jobject bmDest);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackContext(JNIEnv *env, jobject thiz, jlong handle, jint destIndex, jobject blockBuffer, jint step);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackContextScrolled(JNIEnv *env, jobject thiz, jlong handle, jint destIndex, jint fromIndex, jobject blockBuffer, jint dx, jint dy);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackContextByExpression(JNIEnv *env, jobject thiz, jlong handle, jint destIndex, jstring expression, jobject blockBuffer, jint step);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextAdaptiveTolerance(JNIEnv *env, jobject thiz, jlong handle, jfloat tolerance);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextMipmapping(JNIEnv *env, jobject thiz, jlong handle, jboolean enabled);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextTiledSource(JNIEnv *env, jobject thiz, jlong handle, jboolean enabled);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextEngine(JNIEnv *env, jobject thiz, jlong handle, jint engine);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextStatsEnabled(JNIEnv *env, jobject thiz, jlong handle, jboolean enabled);
+	JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_recordContextDrawTime(JNIEnv *env, jobject thiz, jlong handle, jfloat micros);
+	JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_getContextStats(JNIEnv *env, jobject thiz, jlong handle, jfloatArray out);
 }
 
-JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmap(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode) {
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
+	INFO << "Render pool started with " << RenderPool::instance().numParticipants() << " threads" << endl; //spin the workers up now rather than on the first frame
+	return JNI_VERSION_1_6;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmap(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode, jint step) {
 	signal(SIGFPE, SIG_IGN); //ignore arithmetic errors - tried rooting them out but still get 'em.  Don't care anyway, so...
+	if (step < 1) { //a step that isn't positive would never get through the rows
+		return 1;
+	}
+	s_context.beginFrame();
+
+	BitmapWrapper source(env, bmSource);
+	BitmapWrapper dest(env, bmDest);
+
+	jboolean isCopy;
+	jfloat* params = env->GetFloatArrayElements(paramArray, &isCopy);
+
+	const MapSpec spec = { params, numParams, pivotX, pivotY, scaleFac, wrapMode, false, 0, 0, 0, s_context.engine() };
+	s_context.render(spec, imageOf(source, source.getGenerationId()), imageOf(dest), step);
+
+	env->ReleaseFloatArrayElements(paramArray, params, JNI_ABORT); //only read, so nothing to copy back
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmapDeep(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jfloatArray paramArray, jint numParams, jdouble centreRe, jdouble centreIm, jdouble scale, jint wrapMode, jint step) {
+	signal(SIGFPE, SIG_IGN);
+	if (step < 1) {
+		return 1;
+	}
+	s_context.beginFrame();
 
 	BitmapWrapper source(env, bmSource);
 	BitmapWrapper dest(env, bmDest);
@@ -37,21 +143,223 @@ JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmap(JNIEnv *en
 	jboolean isCopy;
 	jfloat* params = env->GetFloatArrayElements(paramArray, &isCopy);
 
-	const MobiusTrans affine(complex<fixpoint>(fixpoint(scaleFac)),complex<fixpoint>(fixpoint(pivotX), fixpoint(pivotY)),ZERO,ONE);
-	BlaschkeMap blas;
-	for (int i = 0; i < numParams; ++i) {
-		blas *= MobiusTrans::hyperbolicIsometry(complex<fixpoint>(fixpoint(params[2*i]),fixpoint(params[2*i+1])));
+	const MapSpec spec = { params, numParams, 0, 0, 0, wrapMode, true, centreRe, centreIm, scale, RenderContext::ENGINE_FIXED };
+	s_context.render(spec, imageOf(source, source.getGenerationId()), imageOf(dest), step);
+
+	env->ReleaseFloatArrayElements(paramArray, params, JNI_ABORT);
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmapByExpression(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jstring expression, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode, jint step) {
+	signal(SIGFPE, SIG_IGN);
+	if (step < 1) {
+		return 1;
+	}
+	s_context.beginFrame();
+
+	const shared_ptr<const ComplexExpression> expr(compileExpression(env, expression));
+	if (!expr->isValid()) {
+		return 1;
+	}
+
+	BitmapWrapper source(env, bmSource);
+	BitmapWrapper dest(env, bmDest);
+
+	jboolean isCopy;
+	jfloat* params = env->GetFloatArrayElements(paramArray, &isCopy);
+
+	s_context.renderExpression(*expr, params, numParams, pivotX, pivotY, scaleFac, wrapMode, imageOf(source, source.getGenerationId()), imageOf(dest), step);
+
+	env->ReleaseFloatArrayElements(paramArray, params, JNI_ABORT);
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBlock(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jobject blockBuffer, jint step) {
+	signal(SIGFPE, SIG_IGN);
+	if (step < 1) {
+		return 1;
+	}
+	s_context.beginFrame();
+
+	BitmapWrapper source(env, bmSource);
+	BitmapWrapper dest(env, bmDest);
+
+	const float *params;
+	const ParamBlock block(readBlock(env, blockBuffer, params));
+	s_context.render(block, params, imageOf(source, source.getGenerationId()), imageOf(dest), step);
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBlockByExpression(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jstring expression, jobject blockBuffer, jint step) {
+	signal(SIGFPE, SIG_IGN);
+	if (step < 1) {
+		return 1;
+	}
+	s_context.beginFrame();
+
+	const shared_ptr<const ComplexExpression> expr(compileExpression(env, expression));
+	if (!expr->isValid()) {
+		return 1;
 	}
-	const BlaschkeMap map(blas|-affine);
-	const BitmapSampler sampler(source.getData(), source.getWidth(), source.getHeight(), wrapMode);
-	MappedBitmap viewPlane(sampler, dest.getData(), dest.getWidth(), dest.getHeight(), map);
-	viewPlane.pullbackSampledBitmap();
 
-	env->ReleaseFloatArrayElements(paramArray, params, 0);
-	uint32_t t;
+	BitmapWrapper source(env, bmSource);
+	BitmapWrapper dest(env, bmDest);
+
+	const float *params;
+	const ParamBlock block(readBlock(env, blockBuffer, params));
+	s_context.renderExpression(*expr, params, block.numParams, block.pivotX, block.pivotY, block.scale, block.wrapMode, imageOf(source, source.getGenerationId()), imageOf(dest), step);
 	return 0;
 }
 
-JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackBitmapByExpression(JNIEnv *env, jobject thiz, jobject bmSource, jobject bmDest, jstring expression, jfloatArray paramArray, jint numParams, jfloat pivotX, jfloat pivotY, jfloat scaleFac, jint wrapMode) {
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setAdaptiveTolerance(JNIEnv *env, jobject thiz, jfloat tolerance) {
+	s_context.setAdaptiveTolerance(tolerance);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setMipmapping(JNIEnv *env, jobject thiz, jboolean enabled) {
+	s_context.setMipmapping(enabled);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setTiledSource(JNIEnv *env, jobject thiz, jboolean enabled) {
+	s_context.setTiledSource(enabled);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setEngine(JNIEnv *env, jobject thiz, jint engine) {
+	s_context.setEngine(engine);
+}
+
+JNIEXPORT jlong JNICALL Java_org_mtc_conform_ConformLib_createContext(JNIEnv *env, jobject thiz) {
+	return static_cast<jlong>(reinterpret_cast<intptr_t>(new ContextHandle()));
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_releaseContext(JNIEnv *env, jobject thiz, jlong handle) {
+	ContextHandle *h = handleOf(handle);
+	for (int i = 0; i < ContextHandle::max_dests; ++i) {
+		detachDest(env, h->dests[i]);
+	}
+	delete h;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_setContextSource(JNIEnv *env, jobject thiz, jlong handle, jobject bmSource) {
+	BitmapWrapper source(env, bmSource);
+	if (!source.isValid()) {
+		return 1;
+	}
+	handleOf(handle)->context.setSource(source.getData(), source.getWidth(), source.getHeight());
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_setContextDest(JNIEnv *env, jobject thiz, jlong handle, jint index, jobject bmDest) {
+	ContextHandle::Dest& dest = handleOf(handle)->dests[index];
+	detachDest(env, dest);
+	if (!bmDest) {
+		return 0;
+	}
+	AndroidBitmapInfo info;
+	if (AndroidBitmap_getInfo(env, bmDest, &info) != ANDROID_BITMAP_RESULT_SUCCESS || info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+		ERROR << "Render context destination isn't an ARGB_8888 bitmap" << endl;
+		return 1;
+	}
+	void *pixels;
+	if (AndroidBitmap_lockPixels(env, bmDest, &pixels) != ANDROID_BITMAP_RESULT_SUCCESS) {
+		ERROR << "AndroidBitmap_lockPixels failed for render context destination" << endl;
+		return 1;
+	}
+	dest.bitmap = env->NewGlobalRef(bmDest);
+	const ImageRef image = { static_cast<uint32_t *>(pixels), info.width, info.height, 0 };
+	dest.image = image;
 	return 0;
 }
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackContext(JNIEnv *env, jobject thiz, jlong handle, jint destIndex, jobject blockBuffer, jint step) {
+	signal(SIGFPE, SIG_IGN);
+	if (step < 1) {
+		return 1;
+	}
+
+	ContextHandle *h = handleOf(handle);
+	h->context.beginFrame();
+	const ImageRef source(h->context.source());
+	const ImageRef& dest = h->dests[destIndex].image;
+	if (!source.pixels || !dest.pixels) {
+		return 1;
+	}
+	const float *params;
+	const ParamBlock block(readBlock(env, blockBuffer, params));
+	h->context.render(block, params, source, dest, step);
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackContextScrolled(JNIEnv *env, jobject thiz, jlong handle, jint destIndex, jint fromIndex, jobject blockBuffer, jint dx, jint dy) {
+	signal(SIGFPE, SIG_IGN);
+
+	ContextHandle *h = handleOf(handle);
+	h->context.beginFrame();
+	const ImageRef source(h->context.source());
+	const ImageRef& dest = h->dests[destIndex].image;
+	const ImageRef& previous = h->dests[fromIndex].image;
+	if (!source.pixels || !dest.pixels || !previous.pixels || previous.width != dest.width || previous.height != dest.height) {
+		return 1;
+	}
+	const float *params;
+	const ParamBlock block(readBlock(env, blockBuffer, params));
+	h->context.renderScrolled(block, params, source, previous, dest, dx, dy);
+	return 0;
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_pullbackContextByExpression(JNIEnv *env, jobject thiz, jlong handle, jint destIndex, jstring expression, jobject blockBuffer, jint step) {
+	signal(SIGFPE, SIG_IGN);
+	if (step < 1) {
+		return 1;
+	}
+
+	ContextHandle *h = handleOf(handle);
+	h->context.beginFrame();
+	const shared_ptr<const ComplexExpression> expr(compileExpression(env, expression));
+	const ImageRef source(h->context.source());
+	const ImageRef& dest = h->dests[destIndex].image;
+	if (!expr->isValid() || !source.pixels || !dest.pixels) {
+		return 1;
+	}
+	const float *params;
+	const ParamBlock block(readBlock(env, blockBuffer, params));
+	h->context.renderExpression(*expr, params, block.numParams, block.pivotX, block.pivotY, block.scale, block.wrapMode, source, dest, step);
+	return 0;
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextAdaptiveTolerance(JNIEnv *env, jobject thiz, jlong handle, jfloat tolerance) {
+	handleOf(handle)->context.setAdaptiveTolerance(tolerance);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextMipmapping(JNIEnv *env, jobject thiz, jlong handle, jboolean enabled) {
+	handleOf(handle)->context.setMipmapping(enabled);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextTiledSource(JNIEnv *env, jobject thiz, jlong handle, jboolean enabled) {
+	handleOf(handle)->context.setTiledSource(enabled);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextEngine(JNIEnv *env, jobject thiz, jlong handle, jint engine) {
+	handleOf(handle)->context.setEngine(engine);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_setContextStatsEnabled(JNIEnv *env, jobject thiz, jlong handle, jboolean enabled) {
+	FrameStats& stats = handleOf(handle)->context.stats();
+	if (enabled && !stats.isEnabled()) {
+		stats.clear();
+	}
+	stats.setEnabled(enabled);
+}
+
+JNIEXPORT void JNICALL Java_org_mtc_conform_ConformLib_recordContextDrawTime(JNIEnv *env, jobject thiz, jlong handle, jfloat micros) {
+	handleOf(handle)->context.stats().recordDraw(micros);
+}
+
+JNIEXPORT jint JNICALL Java_org_mtc_conform_ConformLib_getContextStats(JNIEnv *env, jobject thiz, jlong handle, jfloatArray out) {
+	const jsize capacity = env->GetArrayLength(out);
+	vector<float> summary(capacity);
+	const int size = handleOf(handle)->context.stats().summarize(summary.data(), capacity);
+	if (size <= capacity) {
+		env->SetFloatArrayRegion(out, 0, size, summary.data());
+	}
+	return size;
+}
@@ -0,0 +1,51 @@
+/*
+ * coordcache.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "coordcache.h"
+
+MapKey::MapKey() {
+}
+
+MapKey::MapKey(const float *params, const int numParams, const float pivotX, const float pivotY, const float scaleFac,
+			   const uint32_t width, const uint32_t height, const std::string& expression) :
+	values(params, params + 2*numParams), expression(expression) {
+	values.push_back(pivotX);
+	values.push_back(pivotY);
+	values.push_back(scaleFac);
+	values.push_back(width);
+	values.push_back(height);
+}
+
+void MapKey::addExact(const double x) {
+	const float hi = (float)x;
+	const float mid = (float)(x - hi);
+	values.push_back(hi);
+	values.push_back(mid);
+	values.push_back((float)(x - hi - mid));
+}
+
+bool MapKey::operator==(const MapKey& o) const {
+	return values == o.values && expression == o.expression;
+}
+
+CoordinateCache::CoordinateCache() : m_isValid(false) {
+}
+
+const int32_t *CoordinateCache::find(const MapKey& key) const {
+	return m_isValid && m_key == key ? &m_coords[0] : 0;
+}
+
+int32_t *CoordinateCache::prepare(const MapKey& key, const size_t numPixels) {
+	m_isValid = false;
+	m_key = key;
+	m_coords.resize(2*numPixels);
+	return &m_coords[0];
+}
+
+void CoordinateCache::commit() {
+	m_isValid = true;
+}
@@ -0,0 +1,46 @@
+/*
+ * coordcache.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef COORDCACHE_H_
+#define COORDCACHE_H_
+
+#include <stdint.h>
+#include <string>
+#include <vector>
+
+//Everything a pullback's w coordinates depend on: the map (parameters, plus the expression text if there is one)
+//and the view (pan/zoom and size).  Not the source bitmap or the wrap mode - those only change the sampling.
+struct MapKey {
+	MapKey();
+	MapKey(const float *params, const int numParams, const float pivotX, const float pivotY, const float scaleFac,
+		   const uint32_t width, const uint32_t height, const std::string& expression = "");
+	bool operator==(const MapKey& o) const;
+	//Append a double to values without rounding it, as three floats
+	void addExact(const double x);
+	std::vector<float> values;
+	std::string expression;
+};
+
+//The w coordinates of the last full resolution pullback, so that a frame which only swaps the source bitmap or
+//the wrap mode can be resampled without evaluating the map.  Stored uncompressed as 16.16 (re, im) pairs,
+//8 bytes a pixel - 1.4MB for the default 420x420 view.  Not thread safe: keep it on the render thread.
+class CoordinateCache {
+public:
+	CoordinateCache();
+	//The coordinates saved for key, or null if there aren't any
+	const int32_t *find(const MapKey& key) const;
+	//Somewhere to write the coordinates for key.  Drops whatever was cached; find() won't return the new
+	//coordinates until commit() says they're complete.
+	int32_t *prepare(const MapKey& key, const size_t numPixels);
+	void commit();
+private:
+	MapKey m_key;
+	bool m_isValid;
+	std::vector<int32_t> m_coords;
+};
+
+#endif /* COORDCACHE_H_ */
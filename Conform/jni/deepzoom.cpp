@@ -0,0 +1,76 @@
+/*
+ * deepzoom.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "deepzoom.h"
+
+#include <cmath>
+
+using namespace std;
+
+//Keeps 1/(c-a) and friends finite in float when the centre sits on a zero or a pole
+static const double MIN_DISTANCE = 1e-30;
+
+static const complex<double> awayFromZero(const complex<double>& z) {
+	return abs(z) < MIN_DISTANCE ? complex<double>(MIN_DISTANCE) : z;
+}
+
+//1 - conj(a)*c, with the rounding errors of the products added back in (fma gives them exactly): next to a pole
+//this is all cancellation, and in plain double w there would only be good to about 1e-10 relative.  The volatiles
+//stop -ffast-math reassociating the sums, which would throw the corrections away.
+static const complex<double> oneMinusConjProduct(const complex<double>& a, const complex<double>& c) {
+	const volatile double rr = a.real()*c.real(), ii = a.imag()*c.imag();
+	const volatile double ri = a.real()*c.imag(), ir = a.imag()*c.real();
+	const volatile double oneMinusRr = 1.0 - rr; //exact this close to a pole
+	const volatile double reHead = oneMinusRr - ii;
+	const volatile double imHead = ir - ri;
+	const double re = reHead - (fma(a.real(), c.real(), -rr) + fma(a.imag(), c.imag(), -ii));
+	const double im = imHead + (fma(a.imag(), c.real(), -ir) - fma(a.real(), c.imag(), -ri));
+	return complex<double>(re, im);
+}
+
+static const double reduce(const double x, const double period) {
+	return period > 0 ? x - period*floor(x/period + 0.5) : x;
+}
+
+PerturbedBlaschkeMap::PerturbedBlaschkeMap(const float *params, const int numParams, const double centreRe, const double centreIm, const double scale,
+										   const double periodRe, const double periodIm) :
+	m_numFactors(numParams), m_invScale((float)(1.0/scale)), m_uPlusV(numParams), m_v(numParams) {
+	const complex<double> c(centreRe, centreIm);
+	complex<double> w(1);
+	for (int i = 0; i < m_numFactors; ++i) {
+		const complex<double> a(params[2*i], params[2*i+1]);
+		const complex<double> num(awayFromZero(c - a));
+		const complex<double> den(awayFromZero(oneMinusConjProduct(a, c)));
+		w *= num/den;
+		const complex<double> u(1.0/num);
+		const complex<double> v(conj(a)/den);
+		m_uPlusV[i] = complex<float>(u + v);
+		m_v[i] = complex<float>(v);
+	}
+	m_centreW = complex<double>(reduce(w.real(), periodRe), reduce(w.imag(), periodIm));
+	m_centreWf = complex<float>(w); //the offsets scale with the real w, not the reduced one
+}
+
+const complex<double> PerturbedBlaschkeMap::centreValue() const {
+	return m_centreW;
+}
+
+void PerturbedBlaschkeMap::mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+	const float fixToScaled = m_invScale/65536.0f;
+	const float dim = z0.imag().intValue * fixToScaled;
+	for (int i = 0; i < count; ++i) {
+		const complex<float> d((z0.real().intValue + i*reInc.intValue) * fixToScaled, dim);
+		//e is (1 + u*d)/(1 - v*d) - 1, and E the product so far less 1
+		complex<float> E(0);
+		for (int f = 0; f < m_numFactors; ++f) {
+			const complex<float> e(m_uPlusV[f]*d/(1.0f - m_v[f]*d));
+			E += e + E*e;
+		}
+		const complex<float> offset(m_centreWf*E);
+		w[i] = complex<fixpoint>(toFixClamped(m_centreW.real() + offset.real()), toFixClamped(m_centreW.imag() + offset.imag()));
+	}
+}
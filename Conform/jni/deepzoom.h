@@ -0,0 +1,43 @@
+/*
+ * deepzoom.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef DEEPZOOM_H_
+#define DEEPZOOM_H_
+
+#include <complex>
+#include <vector>
+
+#include "bitmapper.h"
+
+//The Blaschke product of the zeros in params (re, im pairs) seen through a zoom and pan given in double precision:
+//the view point z is the plane point c + z/scale, where c is the view's centre.  Deep into a zoom every pixel's
+//plane point rounds to the same 16.16 (or float) value, so instead the map is worked out once, in double, at c,
+//and each pixel as a float offset d = z/scale from there, using
+//
+//	m(c+d) = m(c) * (1 + u*d)/(1 - v*d),  u = 1/(c-a), v = conj(a)/(1-conj(a)*c)
+//
+//for each factor m(z) = (z-a)/(1-conj(a)*z).  The product of the (1 + u*d)/(1 - v*d) is kept as its difference
+//from 1, so nothing small is ever added to anything big in float.  If periodRe/periodIm aren't 0, w at the centre
+//is reduced modulo them (the source's period in w when it tiles), so that w close to poles stays inside 16.16.
+//Takes any number of zeros, at a division per zero per pixel.
+class PerturbedBlaschkeMap : public PlaneMap {
+public:
+	PerturbedBlaschkeMap(const float *params, const int numParams, const double centreRe, const double centreIm, const double scale,
+						 const double periodRe = 0, const double periodIm = 0);
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const;
+	//w at the view's centre, after the reduction
+	const complex<double> centreValue() const;
+private:
+	int m_numFactors;
+	complex<double> m_centreW;
+	complex<float> m_centreWf; //before the reduction
+	float m_invScale;
+	vector<complex<float> > m_uPlusV;
+	vector<complex<float> > m_v;
+};
+
+#endif /* DEEPZOOM_H_ */
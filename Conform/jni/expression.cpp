@@ -0,0 +1,756 @@
+/*
+ * expression.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "expression.h"
+
+#include <algorithm>
+#include <cctype>
+#include <climits>
+#include <cmath>
+#include <cstdlib>
+#include <cstring>
+#include <map>
+#include <mutex>
+#include <sstream>
+#include <tuple>
+
+#include "logstream.h"
+
+#define  LOG_TAG    "Conform"
+
+static logstream<LOG_PRIO_WARN> WARN(LOG_TAG);
+
+static const float PI = 3.14159265358979323846f;
+static const float E = 2.71828182845904523536f;
+static const int MAX_INT_POWER = 64;
+
+static uint32_t bitsOf(const float x) {
+	uint32_t bits;
+	memcpy(&bits, &x, sizeof(bits));
+	return bits;
+}
+
+struct Function {
+	const char *name;
+	int op;
+};
+
+//Lowers a parse tree to register code.  Every value is numbered once, SSA fashion, and looked up by (op, operands)
+//before a new one is made, so a repeated subexpression is computed once.  Values that don't depend on z are
+//"uniform": they go in the per-frame code, and only get copied into registers for the per-point code.
+class ExpressionCompiler {
+public:
+	explicit ExpressionCompiler(ComplexExpression& expr) : m_expr(expr) {
+	}
+	//Fills in the expression's register code; false if it needs too many registers or uniform slots
+	bool compile();
+private:
+	typedef ComplexExpression CE;
+	//A value's op, operands, parameter and constant, the constant by its bits: NaN compares unordered, which would
+	//break the map, and 0 and -0 aren't the same constant (1/x tells them apart)
+	typedef tuple<int, int, int, int, int, uint32_t, uint32_t> ValueKey;
+	struct Value {
+		int op;
+		int a, b, c; //operand values, -1 if unused
+		int param; //for PARAM
+		cfloat constant; //for CONST
+		bool isUniform;
+	};
+	int lower(const int node);
+	int lowerIntPower(const int base, const int n);
+	int makeValue(const int op, int a, int b = -1, const int c = -1);
+	int makeConstant(const cfloat& value);
+	int makeParam(const int param);
+	int add(const Value& v);
+	bool isConstant(const int v, const float x) const;
+	void findLive(const int root, vector<int>& uses) const;
+	bool isFusableProduct(const int v, const vector<int>& uses) const;
+	void fuseMultiplyAdds(const vector<int>& uses);
+
+	ComplexExpression& m_expr;
+	vector<Value> m_values;
+	map<ValueKey, int> m_seen;
+};
+
+//ComplexExpression----------------------------------------
+
+ComplexExpression::ComplexExpression(const string& text) :
+	m_text(text), m_root(-1), m_pos(0), m_depth(0), m_isCompiled(false), m_zRegister(-1), m_result(0), m_resultIsUniform(true) {
+	m_root = parseSum();
+	skipSpace();
+	if (m_root >= 0 && m_pos < m_text.size()) {
+		m_root = fail("unexpected character");
+	}
+	if (m_root >= 0) {
+		m_isCompiled = ExpressionCompiler(*this).compile();
+	}
+}
+
+const bool ComplexExpression::isValid() const {
+	return m_root >= 0;
+}
+
+const string& ComplexExpression::errorMessage() const {
+	return m_error;
+}
+
+const string& ComplexExpression::text() const {
+	return m_text;
+}
+
+const cfloat ComplexExpression::operator()(const cfloat& z, const cfloat *params) const {
+	return eval(m_root, z, params);
+}
+
+const bool ComplexExpression::isCompiled() const {
+	return m_isCompiled;
+}
+
+shared_ptr<const ComplexExpression> ComplexExpression::compileCached(const string& text) {
+	static mutex cacheMutex;
+	static shared_ptr<const ComplexExpression> cached;
+	lock_guard<mutex> lock(cacheMutex);
+	if (!cached || cached->text() != text) {
+		cached = make_shared<const ComplexExpression>(text);
+		if (!cached->isValid()) {
+			WARN << "Can't compile \"" << text << "\": " << cached->errorMessage() << endl;
+		}
+	}
+	return cached;
+}
+
+static const cfloat intPower(cfloat z, int n) {
+	if (n < 0) {
+		z = cfloat(1.0f)/z;
+		n = -n;
+	}
+	cfloat result(1.0f);
+	while (n) {
+		if (n & 1) {
+			result *= z;
+		}
+		z *= z;
+		n >>= 1;
+	}
+	return result;
+}
+
+//One operation on single values.  The tree walker, the constant folder and the per-frame code all use this.
+const cfloat ComplexExpression::apply(const int op, const cfloat& a, const cfloat& b, const cfloat& c) {
+	switch (op) {
+	case NEG:     return -a;
+	case ADD:     return a + b;
+	case SUB:     return a - b;
+	case MUL:     return a * b;
+	case DIV:     return a / b;
+	case POW:     return exp(b * log(a));
+	case EXP:     return exp(a);
+	case LOG:     return log(a);
+	case SQRT:    return sqrt(a);
+	case SIN:     return sin(a);
+	case COS:     return cos(a);
+	case TAN:     return tan(a);
+	case SINH:    return sinh(a);
+	case COSH:    return cosh(a);
+	case TANH:    return tanh(a);
+	case CONJ:    return conj(a);
+	case RE:      return cfloat(a.real());
+	case IM:      return cfloat(a.imag());
+	case ABS:     return cfloat(abs(a));
+	case ARG:     return cfloat(arg(a));
+	case RECIP:   return cfloat(1.0f) / a;
+	case MULADD:  return a * b + c;
+	case MULSUB:  return c - a * b;
+	}
+	return cfloat();
+}
+
+const cfloat ComplexExpression::eval(const int node, const cfloat& z, const cfloat *params) const {
+	const Node& n = m_nodes[node];
+	switch (n.op) {
+	case CONST:   return n.value;
+	case VAR_Z:   return z;
+	case PARAM:   return params[n.rhs];
+	case POW_INT: return intPower(eval(n.lhs, z, params), n.rhs);
+	default:
+		return apply(n.op, eval(n.lhs, z, params), n.rhs < 0 ? cfloat() : eval(n.rhs, z, params), cfloat());
+	}
+}
+
+void ComplexExpression::evalUniforms(const cfloat *params, cfloat *uniforms) const {
+	for (vector<UniformInit>::const_iterator init = m_uniformInits.begin(); init != m_uniformInits.end(); ++init) {
+		uniforms[init->slot] = init->param < 0 ? init->value : params[init->param];
+	}
+	for (vector<Instr>::const_iterator instr = m_uniformCode.begin(); instr != m_uniformCode.end(); ++instr) {
+		uniforms[instr->dest] = apply(instr->op, uniforms[instr->a], uniforms[instr->b], uniforms[instr->c]);
+	}
+}
+
+void ComplexExpression::evalBatch(const cfloat *uniforms, const float *zre, const float *zim, const int count, float *wre, float *wim) const {
+	float re[max_registers][batch_size];
+	float im[max_registers][batch_size];
+	if (m_resultIsUniform) {
+		fill(wre, wre + count, uniforms[m_result].real());
+		fill(wim, wim + count, uniforms[m_result].imag());
+		return;
+	}
+	if (m_zRegister >= 0) {
+		copy(zre, zre + count, re[m_zRegister]);
+		copy(zim, zim + count, im[m_zRegister]);
+	}
+	for (vector<pair<uint8_t, uint8_t> >::const_iterator b = m_broadcasts.begin(); b != m_broadcasts.end(); ++b) {
+		fill(re[b->second], re[b->second] + count, uniforms[b->first].real());
+		fill(im[b->second], im[b->second] + count, uniforms[b->first].imag());
+	}
+	for (vector<Instr>::const_iterator instr = m_code.begin(); instr != m_code.end(); ++instr) {
+		applyBatch(*instr, re, im, count);
+	}
+	copy(re[m_result], re[m_result] + count, wre);
+	copy(im[m_result], im[m_result] + count, wim);
+}
+
+//One operation across a batch of registers.  The arithmetic is spelled out on split real/imaginary arrays so the
+//compiler can vectorise it; anything transcendental goes through std::complex a point at a time.  An instruction
+//may write one of its own operand registers, so each point's operands are read before its result is written.
+void ComplexExpression::applyBatch(const Instr& instr, float (*re)[batch_size], float (*im)[batch_size], const int count) {
+	const float *ar = re[instr.a], *ai = im[instr.a];
+	const float *br = re[instr.b], *bi = im[instr.b];
+	const float *cr = re[instr.c], *ci = im[instr.c];
+	float *dr = re[instr.dest], *di = im[instr.dest];
+	switch (instr.op) {
+	case NEG:
+		for (int i = 0; i < count; ++i) { dr[i] = -ar[i]; di[i] = -ai[i]; }
+		break;
+	case ADD:
+		for (int i = 0; i < count; ++i) { dr[i] = ar[i] + br[i]; di[i] = ai[i] + bi[i]; }
+		break;
+	case SUB:
+		for (int i = 0; i < count; ++i) { dr[i] = ar[i] - br[i]; di[i] = ai[i] - bi[i]; }
+		break;
+	case MUL:
+		for (int i = 0; i < count; ++i) {
+			const float r = ar[i]*br[i] - ai[i]*bi[i];
+			di[i] = ar[i]*bi[i] + ai[i]*br[i];
+			dr[i] = r;
+		}
+		break;
+	case MULADD:
+		for (int i = 0; i < count; ++i) {
+			const float r = cr[i] + ar[i]*br[i] - ai[i]*bi[i];
+			di[i] = ci[i] + ar[i]*bi[i] + ai[i]*br[i];
+			dr[i] = r;
+		}
+		break;
+	case MULSUB:
+		for (int i = 0; i < count; ++i) {
+			const float r = cr[i] - ar[i]*br[i] + ai[i]*bi[i];
+			di[i] = ci[i] - ar[i]*bi[i] - ai[i]*br[i];
+			dr[i] = r;
+		}
+		break;
+	case DIV:
+		for (int i = 0; i < count; ++i) {
+			const float inv = 1.0f/(br[i]*br[i] + bi[i]*bi[i]);
+			const float r = (ar[i]*br[i] + ai[i]*bi[i])*inv;
+			di[i] = (ai[i]*br[i] - ar[i]*bi[i])*inv;
+			dr[i] = r;
+		}
+		break;
+	case RECIP:
+		for (int i = 0; i < count; ++i) {
+			const float inv = 1.0f/(ar[i]*ar[i] + ai[i]*ai[i]);
+			const float r = ar[i]*inv;
+			di[i] = -ai[i]*inv;
+			dr[i] = r;
+		}
+		break;
+	case CONJ:
+		for (int i = 0; i < count; ++i) { dr[i] = ar[i]; di[i] = -ai[i]; }
+		break;
+	case RE:
+		for (int i = 0; i < count; ++i) { dr[i] = ar[i]; di[i] = 0.0f; }
+		break;
+	case IM:
+		for (int i = 0; i < count; ++i) { dr[i] = ai[i]; di[i] = 0.0f; }
+		break;
+	case ABS:
+		for (int i = 0; i < count; ++i) { dr[i] = sqrtf(ar[i]*ar[i] + ai[i]*ai[i]); di[i] = 0.0f; }
+		break;
+	default:
+		for (int i = 0; i < count; ++i) {
+			const cfloat w(apply(instr.op, cfloat(ar[i], ai[i]), cfloat(br[i], bi[i]), cfloat()));
+			dr[i] = w.real();
+			di[i] = w.imag();
+		}
+		break;
+	}
+}
+
+int ComplexExpression::addNode(const Op op, const int lhs, const int rhs, const cfloat& value) {
+	if (!m_error.empty()) {
+		return -1;
+	}
+	if (m_nodes.size() == (size_t)max_nodes) {
+		return fail("expression too long");
+	}
+	const Node node = { op, lhs, rhs, value };
+	m_nodes.push_back(node);
+	return m_nodes.size() - 1;
+}
+
+//sum := product (('+'|'-') product)*
+int ComplexExpression::parseSum() {
+	int lhs = parseProduct();
+	while (lhs >= 0) {
+		if (accept('+')) {
+			const int rhs = parseProduct();
+			lhs = rhs < 0 ? -1 : addNode(ADD, lhs, rhs);
+		} else if (accept('-')) {
+			const int rhs = parseProduct();
+			lhs = rhs < 0 ? -1 : addNode(SUB, lhs, rhs);
+		} else {
+			break;
+		}
+	}
+	return lhs;
+}
+
+//product := unary (('*'|'/') unary)*
+int ComplexExpression::parseProduct() {
+	int lhs = parseUnary();
+	while (lhs >= 0) {
+		if (accept('*')) {
+			const int rhs = parseUnary();
+			lhs = rhs < 0 ? -1 : addNode(MUL, lhs, rhs);
+		} else if (accept('/')) {
+			const int rhs = parseUnary();
+			lhs = rhs < 0 ? -1 : addNode(DIV, lhs, rhs);
+		} else {
+			break;
+		}
+	}
+	return lhs;
+}
+
+//unary := ('-'|'+') unary | power
+//Every way of nesting comes back through here, so this is where the depth is counted
+int ComplexExpression::parseUnary() {
+	if (m_depth == max_depth) {
+		return fail("nested too deeply");
+	}
+	++m_depth;
+	int result;
+	if (accept('-')) {
+		const int operand = parseUnary();
+		result = operand < 0 ? -1 : addNode(NEG, operand);
+	} else if (accept('+')) {
+		result = parseUnary();
+	} else {
+		result = parsePower();
+	}
+	--m_depth;
+	return result;
+}
+
+//power := primary ('^' unary)?
+int ComplexExpression::parsePower() {
+	const int base = parsePrimary();
+	if (base < 0 || !accept('^')) {
+		return base;
+	}
+	const int exponent = parseUnary();
+	if (exponent < 0) {
+		return -1;
+	}
+	const Node& e = m_nodes[exponent];
+	//In range before it's cast: a float too big for an int (z^1e30) doesn't cast to anything
+	const float x = e.value.real();
+	if (e.op == CONST && e.value.imag() == 0.0f && fabsf(x) <= MAX_INT_POWER && x == floorf(x)) {
+		return addNode(POW_INT, base, (int)x); //z^2 and friends: multiply, don't go through log
+	}
+	return addNode(POW, base, exponent);
+}
+
+//primary := number | identifier | identifier '(' sum ')' | '(' sum ')'
+int ComplexExpression::parsePrimary() {
+	skipSpace();
+	if (m_pos >= m_text.size()) {
+		return fail("unexpected end of expression");
+	}
+	const char c = m_text[m_pos];
+	if (isdigit(c) || c == '.') {
+		return parseNumber();
+	}
+	if (isalpha(c)) {
+		return parseIdentifier();
+	}
+	if (accept('(')) {
+		const int inner = parseSum();
+		if (inner >= 0 && !accept(')')) {
+			return fail("missing )");
+		}
+		return inner;
+	}
+	return fail("expected a number, a variable or (");
+}
+
+int ComplexExpression::parseNumber() {
+	const char *start = m_text.c_str() + m_pos;
+	char *end;
+	const float x = strtof(start, &end);
+	if (end == start) {
+		return fail("malformed number");
+	}
+	m_pos += end - start;
+	if (m_pos < m_text.size() && m_text[m_pos] == 'i' && (m_pos+1 == m_text.size() || !isalnum(m_text[m_pos+1]))) {
+		++m_pos;
+		return addNode(CONST, -1, -1, cfloat(0.0f, x));
+	}
+	return addNode(CONST, -1, -1, cfloat(x));
+}
+
+int ComplexExpression::parseIdentifier() {
+	static const Function functions[] = {
+		{"exp", EXP}, {"log", LOG}, {"sqrt", SQRT}, {"sin", SIN}, {"cos", COS}, {"tan", TAN},
+		{"sinh", SINH}, {"cosh", COSH}, {"tanh", TANH}, {"conj", CONJ}, {"re", RE}, {"im", IM},
+		{"abs", ABS}, {"arg", ARG}
+	};
+	const size_t start = m_pos;
+	while (m_pos < m_text.size() && isalnum(m_text[m_pos])) {
+		++m_pos;
+	}
+	const string name(m_text, start, m_pos - start);
+	if (name == "z") {
+		return addNode(VAR_Z);
+	}
+	if (name == "i") {
+		return addNode(CONST, -1, -1, cfloat(0.0f, 1.0f));
+	}
+	if (name == "e") {
+		return addNode(CONST, -1, -1, cfloat(E));
+	}
+	if (name == "pi") {
+		return addNode(CONST, -1, -1, cfloat(PI));
+	}
+	if (name == "a") {
+		return addNode(PARAM, -1, 0);
+	}
+	if (name.size() == 2 && name[0] == 'a' && name[1] >= '0' && name[1] < '0' + max_params) {
+		return addNode(PARAM, -1, name[1] - '0');
+	}
+	for (size_t f = 0; f < sizeof(functions)/sizeof(functions[0]); ++f) {
+		if (name == functions[f].name) {
+			if (!accept('(')) {
+				return fail("expected ( after " + name);
+			}
+			const int arg = parseSum();
+			if (arg >= 0 && !accept(')')) {
+				return fail("missing )");
+			}
+			return arg < 0 ? -1 : addNode((Op)functions[f].op, arg);
+		}
+	}
+	m_pos = start;
+	return fail("unknown name " + name);
+}
+
+void ComplexExpression::skipSpace() {
+	while (m_pos < m_text.size() && isspace(m_text[m_pos])) {
+		++m_pos;
+	}
+}
+
+bool ComplexExpression::accept(const char c) {
+	skipSpace();
+	if (m_pos < m_text.size() && m_text[m_pos] == c) {
+		++m_pos;
+		return true;
+	}
+	return false;
+}
+
+int ComplexExpression::fail(const string& message) {
+	if (m_error.empty()) {
+		ostringstream os;
+		os << message << " at " << m_pos;
+		m_error = os.str();
+	}
+	return -1;
+}
+
+//ExpressionCompiler----------------------------------------
+
+bool ExpressionCompiler::compile() {
+	const int root = lower(m_expr.m_root);
+	vector<int> uses;
+	findLive(root, uses);
+	fuseMultiplyAdds(uses);
+	findLive(root, uses);
+
+	//Per-frame code: number the live uniform values into slots
+	vector<int> slot(m_values.size(), -1);
+	const auto slotOf = [&slot](const int v) { return (uint8_t)(v < 0 ? 0 : slot[v]); };
+	int numSlots = 0;
+	for (size_t v = 0; v < m_values.size(); ++v) {
+		const Value& value = m_values[v];
+		if (!uses[v] || !value.isUniform) {
+			continue;
+		}
+		if (numSlots == CE::max_uniforms) {
+			return false;
+		}
+		slot[v] = numSlots++;
+		if (value.op == CE::CONST || value.op == CE::PARAM) {
+			const CE::UniformInit init = { (uint8_t)slot[v], (int8_t)(value.op == CE::PARAM ? value.param : -1), value.constant };
+			m_expr.m_uniformInits.push_back(init);
+		} else {
+			const CE::Instr instr = { (uint8_t)value.op, (uint8_t)slot[v], slotOf(value.a), slotOf(value.b), slotOf(value.c) };
+			m_expr.m_uniformCode.push_back(instr);
+		}
+	}
+	if (m_values[root].isUniform) {
+		m_expr.m_resultIsUniform = true;
+		m_expr.m_result = slot[root];
+		return true;
+	}
+
+	//Per-point code.  Inputs (z and the uniforms the code reads) are loaded at the start of a batch; after that a
+	//register is free again once the last instruction reading it has run.
+	const int LIVE_TO_END = INT_MAX;
+	vector<int> code;
+	vector<int> lastUse(m_values.size(), -1);
+	for (size_t v = 0; v < m_values.size(); ++v) {
+		const Value& value = m_values[v];
+		if (uses[v] && !value.isUniform && value.op != CE::VAR_Z) {
+			const int operands[3] = { value.a, value.b, value.c };
+			for (int k = 0; k < 3; ++k) {
+				if (operands[k] >= 0) {
+					lastUse[operands[k]] = code.size();
+				}
+			}
+			code.push_back(v);
+		}
+	}
+	lastUse[root] = LIVE_TO_END;
+	vector<int> reg(m_values.size(), -1);
+	const auto regOf = [&reg](const int v) { return (uint8_t)(v < 0 ? 0 : reg[v]); };
+	vector<int> freeRegs;
+	int numRegs = 0;
+	for (size_t v = 0; v < m_values.size(); ++v) {
+		const bool isInput = m_values[v].op == CE::VAR_Z || m_values[v].isUniform;
+		if (isInput && lastUse[v] >= 0) {
+			reg[v] = numRegs++;
+			if (m_values[v].op == CE::VAR_Z) {
+				m_expr.m_zRegister = reg[v];
+			} else {
+				m_expr.m_broadcasts.push_back(make_pair((uint8_t)slot[v], (uint8_t)reg[v]));
+			}
+		}
+	}
+	for (size_t k = 0; k < code.size(); ++k) {
+		const Value& value = m_values[code[k]];
+		const int operands[3] = { value.a, value.b, value.c };
+		for (int o = 0; o < 3; ++o) {
+			if (operands[o] >= 0 && lastUse[operands[o]] == (int)k && reg[operands[o]] >= 0) {
+				freeRegs.push_back(reg[operands[o]]);
+				lastUse[operands[o]] = -1; //so a(x,x) only frees x once
+			}
+		}
+		if (freeRegs.empty()) {
+			freeRegs.push_back(numRegs++);
+		}
+		reg[code[k]] = freeRegs.back();
+		freeRegs.pop_back();
+		const CE::Instr instr = { (uint8_t)value.op, (uint8_t)reg[code[k]], regOf(value.a), regOf(value.b), regOf(value.c) };
+		m_expr.m_code.push_back(instr);
+	}
+	if (numRegs > CE::max_registers) {
+		return false;
+	}
+	m_expr.m_resultIsUniform = false;
+	m_expr.m_result = reg[root];
+	return true;
+}
+
+int ExpressionCompiler::lower(const int node) {
+	const CE::Node& n = m_expr.m_nodes[node];
+	switch (n.op) {
+	case CE::CONST:
+		return makeConstant(n.value);
+	case CE::VAR_Z: {
+		const Value z = { CE::VAR_Z, -1, -1, -1, -1, cfloat(), false };
+		return add(z);
+	}
+	case CE::PARAM:
+		return makeParam(n.rhs);
+	case CE::POW_INT:
+		return lowerIntPower(lower(n.lhs), n.rhs);
+	case CE::POW: { //a^b = exp(b log a)
+		const int a = lower(n.lhs);
+		const int b = lower(n.rhs);
+		return makeValue(CE::EXP, makeValue(CE::MUL, b, makeValue(CE::LOG, a)));
+	}
+	default:
+		return makeValue(n.op, lower(n.lhs), n.rhs < 0 ? -1 : lower(n.rhs));
+	}
+}
+
+//Square and multiply; the squares are shared with any other power of the same base
+int ExpressionCompiler::lowerIntPower(const int base, const int n) {
+	if (n == 0) {
+		return makeConstant(cfloat(1.0f));
+	}
+	if (n < 0) {
+		return makeValue(CE::RECIP, lowerIntPower(base, -n));
+	}
+	int result = -1;
+	int square = base;
+	for (int k = n; k; k >>= 1) {
+		if (k & 1) {
+			result = result < 0 ? square : makeValue(CE::MUL, result, square);
+		}
+		if (k > 1) {
+			square = makeValue(CE::MUL, square, square);
+		}
+	}
+	return result;
+}
+
+int ExpressionCompiler::makeValue(const int op, int a, int b, const int c) {
+	if ((op == CE::ADD || op == CE::MUL) && a > b) {
+		swap(a, b); //commutative, so x*y and y*x are the same value
+	}
+	const bool constantOperands = m_values[a].op == CE::CONST && (b < 0 || m_values[b].op == CE::CONST) && (c < 0 || m_values[c].op == CE::CONST);
+	if (constantOperands) {
+		return makeConstant(CE::apply(op, m_values[a].constant, b < 0 ? cfloat() : m_values[b].constant, c < 0 ? cfloat() : m_values[c].constant));
+	}
+	//x+0, x-0, x*1, x/1, --x
+	if ((op == CE::ADD && isConstant(a, 0.0f)) || (op == CE::MUL && isConstant(a, 1.0f))) {
+		return b;
+	}
+	if ((op == CE::ADD || op == CE::SUB) && isConstant(b, 0.0f)) {
+		return a;
+	}
+	if ((op == CE::MUL || op == CE::DIV) && isConstant(b, 1.0f)) {
+		return a;
+	}
+	if (op == CE::NEG && m_values[a].op == CE::NEG) {
+		return m_values[a].a;
+	}
+	const Value v = { op, a, b, c, -1, cfloat(), m_values[a].isUniform && (b < 0 || m_values[b].isUniform) && (c < 0 || m_values[c].isUniform) };
+	return add(v);
+}
+
+int ExpressionCompiler::makeConstant(const cfloat& value) {
+	const Value v = { CE::CONST, -1, -1, -1, -1, value, true };
+	return add(v);
+}
+
+int ExpressionCompiler::makeParam(const int param) {
+	const Value v = { CE::PARAM, -1, -1, -1, param, cfloat(), true };
+	return add(v);
+}
+
+int ExpressionCompiler::add(const Value& v) {
+	const ValueKey key(v.op, v.a, v.b, v.c, v.param, bitsOf(v.constant.real()), bitsOf(v.constant.imag()));
+	const map<ValueKey, int>::const_iterator seen = m_seen.find(key);
+	if (seen != m_seen.end()) {
+		return seen->second;
+	}
+	m_values.push_back(v);
+	m_seen[key] = m_values.size() - 1;
+	return m_values.size() - 1;
+}
+
+bool ExpressionCompiler::isConstant(const int v, const float x) const {
+	return v >= 0 && m_values[v].op == CE::CONST && m_values[v].constant == cfloat(x);
+}
+
+//uses[v] = how many live values read v (the root counts as one use of itself).  Operands always come before the
+//values reading them, so one backward pass does it.
+void ExpressionCompiler::findLive(const int root, vector<int>& uses) const {
+	uses.assign(m_values.size(), 0);
+	uses[root] = 1;
+	for (int v = root; v >= 0; --v) {
+		if (uses[v]) {
+			const Value& value = m_values[v];
+			const int operands[3] = { value.a, value.b, value.c };
+			for (int k = 0; k < 3; ++k) {
+				if (operands[k] >= 0) {
+					++uses[operands[k]];
+				}
+			}
+		}
+	}
+}
+
+bool ExpressionCompiler::isFusableProduct(const int v, const vector<int>& uses) const {
+	return m_values[v].op == CE::MUL && !m_values[v].isUniform && uses[v] == 1;
+}
+
+//x*y+c and c-x*y in one instruction, if nothing else needs x*y on its own.  A uniform x*y is left alone: it's
+//cheaper to compute once per frame than to fuse it into every point.
+void ExpressionCompiler::fuseMultiplyAdds(const vector<int>& uses) {
+	for (size_t v = 0; v < m_values.size(); ++v) {
+		Value& value = m_values[v];
+		if (value.isUniform || !uses[v] || (value.op != CE::ADD && value.op != CE::SUB)) {
+			continue;
+		}
+		const bool isProduct[2] = { isFusableProduct(value.a, uses), isFusableProduct(value.b, uses) };
+		if (value.op == CE::ADD && (isProduct[0] || isProduct[1])) {
+			const int product = isProduct[0] ? value.a : value.b;
+			value.c = isProduct[0] ? value.b : value.a;
+			value.a = m_values[product].a;
+			value.b = m_values[product].b;
+			value.op = CE::MULADD;
+		} else if (value.op == CE::SUB && isProduct[1]) {
+			const int product = value.b;
+			value.c = value.a;
+			value.a = m_values[product].a;
+			value.b = m_values[product].b;
+			value.op = CE::MULSUB;
+		}
+	}
+}
+
+//ExpressionMap----------------------------------------
+
+ExpressionMap::ExpressionMap(const ComplexExpression& expr, const float *params, const int numParams, const float scale, const float pivotX, const float pivotY) :
+	m_expr(expr), m_invScale(1.0f/scale), m_pivot(pivotX, pivotY) {
+	for (int i = 0; i < ComplexExpression::max_params; ++i) {
+		m_params[i] = i < numParams ? cfloat(params[2*i], params[2*i+1]) : cfloat();
+	}
+	if (m_expr.isCompiled()) {
+		m_expr.evalUniforms(m_params, m_uniforms);
+	}
+}
+
+void ExpressionMap::mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+	static const float FIX_TO_FLOAT = 1.0f/65536.0f;
+	const float zim = (z0.imag().intValue * FIX_TO_FLOAT - m_pivot.imag()) * m_invScale;
+	if (!m_expr.isCompiled()) {
+		for (int i = 0; i < count; ++i) {
+			const cfloat z(((z0.real().intValue + i*reInc.intValue) * FIX_TO_FLOAT - m_pivot.real()) * m_invScale, zim);
+			const cfloat wf(m_expr(z, m_params));
+			w[i] = complex<fixpoint>(toFixClamped(wf.real()), toFixClamped(wf.imag()));
+		}
+		return;
+	}
+	float zre[ComplexExpression::batch_size], zims[ComplexExpression::batch_size];
+	float wre[ComplexExpression::batch_size], wim[ComplexExpression::batch_size];
+	for (int start = 0; start < count; start += ComplexExpression::batch_size) {
+		const int n = min(count - start, (int)ComplexExpression::batch_size);
+		for (int i = 0; i < n; ++i) {
+			zre[i] = ((z0.real().intValue + (start+i)*reInc.intValue) * FIX_TO_FLOAT - m_pivot.real()) * m_invScale;
+			zims[i] = zim;
+		}
+		m_expr.evalBatch(m_uniforms, zre, zims, n, wre, wim);
+		for (int i = 0; i < n; ++i) {
+			w[start+i] = complex<fixpoint>(toFixClamped(wre[i]), toFixClamped(wim[i]));
+		}
+	}
+}
@@ -1,38 +1,130 @@
-#include "exprtk.hpp"
+/*
+ * expression.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * User-entered maps w = f(z, a0..a5), evaluated in complex float.  A small recursive descent parser builds a parse
+ * tree, which is then lowered to straight-line register code: constants are folded, repeated subexpressions
+ * computed once, a*b+c fused, and everything that doesn't depend on z (the parameters and anything built from them
+ * alone) is computed once per frame.  What's left runs a whole batch of points per instruction.
+ *
+ *   z               the point being pulled back
+ *   a, a0 .. a5     the pink dot parameters (a is a0); missing ones are 0
+ *   i, e, pi        constants; a number may carry an i suffix, as in 2.5i
+ *   + - * / ^       usual precedence, ^ binds right to left and tighter than unary minus
+ *   exp log sqrt sin cos tan sinh cosh tanh conj re im abs arg
+ */
 
-template<typename T>
-class Expression {
-   typedef exprtk::symbol_table<T> symbol_table_t;
-   typedef exprtk::expression<T>     expression_t;
-   typedef exprtk::parser<T>             parser_t;
+#ifndef EXPRESSION_H_
+#define EXPRESSION_H_
 
-   const std::string m_expression_string;
-   expression_t m_expression;
-   T m_z;
+#include <complex>
+#include <memory>
+#include <stdint.h>
+#include <string>
+#include <vector>
 
+#include "bitmapper.h"
+
+typedef complex<float> cfloat;
+
+class ComplexExpression {
 public:
-   Expression(const std::string &expression_string) : m_expression_string(expression_string) {
-		symbol_table_t symbol_table;
-		symbol_table.add_variable("z",m_z);
-		symbol_table.add_constants();
-		m_expression.register_symbol_table(symbol_table);
-		parser_t parser;
-		parser.compile(m_expression_string,m_expression);
-   }
-
-   T& getIndepVar() {
-	   return m_z;
-   }
-
-   T value() const {
-	   return m_expression.value();
-   }
-
-   T valueFor(const T& zin) {
-	   m_z = zin;
-	   return m_expression.value();
-   }
+	static const int max_params = BlaschkeMap::max_factors;
+	static const int batch_size = 64; //points per evalBatch call - one tile row
+	static const int max_uniforms = 64;
+	static const int max_registers = 24;
+	//Past these, text is refused: the parser and tree walks recurse, and must stay well inside a thread's stack
+	static const int max_depth = 64; //of nested brackets, function calls, signs and powers
+	static const int max_nodes = 1024;
+	//Parse text.  If it doesn't parse, isValid() is false and errorMessage() says where and why.
+	explicit ComplexExpression(const string& text);
+	const bool isValid() const;
+	const string& errorMessage() const;
+	const string& text() const;
+	//Evaluate at z with the given parameters (max_params of them) by walking the parse tree.  Safe to call from
+	//several threads at once, as are the batch methods.
+	const cfloat operator()(const cfloat& z, const cfloat *params) const;
+	//True if the expression was also lowered to register code (it won't be if it needs too many registers)
+	const bool isCompiled() const;
+	//Compute the per-frame values (max_uniforms of them) for evalBatch from the parameters
+	void evalUniforms(const cfloat *params, cfloat *uniforms) const;
+	//Evaluate at up to batch_size points with the register code
+	void evalBatch(const cfloat *uniforms, const float *zre, const float *zim, const int count, float *wre, float *wim) const;
+	//The compiled form of text, reusing the last one if the text hasn't changed
+	static shared_ptr<const ComplexExpression> compileCached(const string& text);
+	friend class ExpressionCompiler;
+private:
+	enum Op {
+		CONST, VAR_Z, PARAM,
+		NEG, ADD, SUB, MUL, DIV, POW, POW_INT,
+		EXP, LOG, SQRT, SIN, COS, TAN, SINH, COSH, TANH, CONJ, RE, IM, ABS, ARG,
+		RECIP, MULADD, MULSUB //only in register code: 1/a, a*b+c, c-a*b
+	};
+	struct Node {
+		Op op;
+		int lhs; //operand, or left operand of a binary op
+		int rhs; //right operand of a binary op; parameter index for PARAM; exponent for POW_INT
+		cfloat value; //for CONST
+	};
+	//One register code instruction.  Operands are uniform slots in the per-frame code, registers in the per-point code.
+	struct Instr {
+		uint8_t op;
+		uint8_t dest;
+		uint8_t a, b, c;
+	};
+	//How to fill a uniform slot before the per-frame code runs: from a parameter, or with a constant if param < 0
+	struct UniformInit {
+		uint8_t slot;
+		int8_t param;
+		cfloat value;
+	};
+	static const cfloat apply(const int op, const cfloat& a, const cfloat& b, const cfloat& c);
+	static void applyBatch(const Instr& instr, float (*re)[batch_size], float (*im)[batch_size], const int count);
+	const cfloat eval(const int node, const cfloat& z, const cfloat *params) const;
+	int addNode(const Op op, const int lhs = -1, const int rhs = -1, const cfloat& value = cfloat());
+	//Recursive descent, one method per precedence level; each returns a node index, or -1 after setting m_error
+	int parseSum();
+	int parseProduct();
+	int parseUnary();
+	int parsePower();
+	int parsePrimary();
+	int parseNumber();
+	int parseIdentifier();
+	void skipSpace();
+	bool accept(const char c);
+	int fail(const string& message);
+
+	const string m_text;
+	vector<Node> m_nodes;
+	int m_root;
+	size_t m_pos; //parse position
+	int m_depth; //parseUnary calls under way
+	string m_error;
 
+	//Register code, filled in by ExpressionCompiler
+	bool m_isCompiled;
+	vector<UniformInit> m_uniformInits;
+	vector<Instr> m_uniformCode;
+	vector<pair<uint8_t, uint8_t> > m_broadcasts; //uniform slot -> register, loaded at the start of each batch
+	vector<Instr> m_code;
+	int m_zRegister; //register z is loaded into, or -1 if z isn't used
+	int m_result; //register holding the result, or the uniform slot if m_resultIsUniform
+	bool m_resultIsUniform;
 };
 
+//A compiled expression as a PlaneMap, after the view's pan/zoom: w = f((z - pivot)/scale)
+class ExpressionMap : public PlaneMap {
+public:
+	ExpressionMap(const ComplexExpression& expr, const float *params, const int numParams, const float scale, const float pivotX, const float pivotY);
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const;
+private:
+	const ComplexExpression& m_expr;
+	cfloat m_params[ComplexExpression::max_params];
+	cfloat m_uniforms[ComplexExpression::max_uniforms];
+	const float m_invScale;
+	const cfloat m_pivot;
+};
 
+#endif /* EXPRESSION_H_ */
@@ -50,6 +50,7 @@ struct fixed_point {
 	
 	fixed_point() : intValue(0) {}
 	fixed_point(const fixed_point& f) : intValue(f.intValue) {}
+	fixed_point& operator = (const fixed_point& f) { intValue = f.intValue; return *this; }
 	/*explicit*/ fixed_point(int32_t i) : intValue(i << p) {}
 	/*explicit*/ fixed_point(uint32_t i) : intValue(i << p) {}
 	explicit fixed_point(float f) : intValue(float2fix<p>(f)) {}
@@ -0,0 +1,120 @@
+/*
+ * floatmap.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "floatmap.h"
+
+#include <algorithm>
+
+using namespace std;
+
+//MobiusTransT----------------------------------------
+
+template <typename T>
+MobiusTransT<T>::MobiusTransT(const complex<T>& a, const complex<T>& b, const complex<T>& c, const complex<T>& d) : m_a(a), m_b(b), m_c(c), m_d(d) {
+}
+
+template <typename T>
+MobiusTransT<T>::MobiusTransT() : m_a(1), m_b(0), m_c(0), m_d(1) {
+}
+
+template <typename T>
+const MobiusTransT<T> MobiusTransT<T>::hyperbolicIsometry(const complex<T>& zero) {
+	return MobiusTransT(complex<T>(1), -zero, -conj(zero), complex<T>(1));
+}
+
+template <typename T>
+const MobiusTransT<T> MobiusTransT<T>::affine(const T scale, const complex<T>& pivot) {
+	return MobiusTransT(complex<T>(scale), pivot, complex<T>(0), complex<T>(1));
+}
+
+//Division written out, as the plain formula: a zero denominator gets the same nudge as divZeroGuard gives the
+//fixed point version, and everything else is left to overflow to something big
+template <typename T>
+const complex<T> MobiusTransT<T>::operator()(const complex<T>& z) const {
+	const complex<T> n(m_a*z + m_b);
+	complex<T> e(m_c*z + m_d);
+	if (e.real() == 0 && e.imag() == 0) {
+		e = complex<T>(T(1)/65536);
+	}
+	const T inv = T(1)/(e.real()*e.real() + e.imag()*e.imag());
+	return complex<T>((n.real()*e.real() + n.imag()*e.imag())*inv, (n.imag()*e.real() - n.real()*e.imag())*inv);
+}
+
+template <typename T>
+const MobiusTransT<T> MobiusTransT<T>::operator|(const MobiusTransT& f) const {
+	return MobiusTransT(m_a*f.m_a + m_b*f.m_c, m_a*f.m_b + m_b*f.m_d, m_c*f.m_a + m_d*f.m_c, m_c*f.m_b + m_d*f.m_d);
+}
+
+//The inverse up to a scalar multiple, which a Mobius transformation doesn't care about
+template <typename T>
+const MobiusTransT<T> MobiusTransT<T>::operator-() const {
+	return MobiusTransT(m_d, -m_b, -m_c, m_a);
+}
+
+//BlaschkeMapT----------------------------------------
+
+template <typename T>
+BlaschkeMapT<T>::BlaschkeMapT(const float *params, const int numParams, const T scale, const T pivotX, const T pivotY) :
+	m_numFactors(min(numParams, (int)BlaschkeMap::max_factors)) {
+	const MobiusTransT<T> view(-MobiusTransT<T>::affine(scale, complex<T>(pivotX, pivotY)));
+	complex<double> a[BlaschkeMap::max_factors], b[BlaschkeMap::max_factors], c[BlaschkeMap::max_factors], d[BlaschkeMap::max_factors];
+	for (int i = 0; i < m_numFactors; ++i) {
+		const MobiusTransT<T>& f = m_factors[i] = MobiusTransT<T>::hyperbolicIsometry(complex<T>(params[2*i], params[2*i+1])) | view;
+		a[i] = complex<double>(f.m_a);
+		b[i] = complex<double>(f.m_b);
+		c[i] = complex<double>(f.m_c);
+		d[i] = complex<double>(f.m_d);
+	}
+	m_rational.compile(a, b, c, d, m_numFactors);
+}
+
+template <typename T>
+const complex<T> BlaschkeMapT<T>::operator()(const complex<T>& z) const {
+	if (m_rational.isUsable()) {
+		return m_rational(z);
+	}
+	complex<T> w(1);
+	for (int i = 0; i < m_numFactors; ++i) {
+		const complex<T> q(m_factors[i](z));
+		w = complex<T>(w.real()*q.real() - w.imag()*q.imag(), w.real()*q.imag() + w.imag()*q.real());
+	}
+	return w;
+}
+
+template <typename T>
+void BlaschkeMapT<T>::mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+	const T fixToT = T(1)/65536;
+	const T zim = z0.imag().intValue * fixToT;
+	for (int i = 0; i < count; ++i) {
+		const complex<T> wt((*this)(complex<T>((z0.real().intValue + i*reInc.intValue) * fixToT, zim)));
+		w[i] = complex<fixpoint>(toFixClamped(wt.real()), toFixClamped(wt.imag()));
+	}
+}
+
+template <typename T>
+const VectorMap BlaschkeMapT<T>::vectorMap() const {
+	VectorMap v;
+	v.numFactors = m_numFactors;
+	for (int i = 0; i < m_numFactors; ++i) {
+		const MobiusTransT<T>& f = m_factors[i];
+		v.aRe[i] = f.m_a.real();
+		v.aIm[i] = f.m_a.imag();
+		v.bRe[i] = f.m_b.real();
+		v.bIm[i] = f.m_b.imag();
+		v.cRe[i] = f.m_c.real();
+		v.cIm[i] = f.m_c.imag();
+		v.dRe[i] = f.m_d.real();
+		v.dIm[i] = f.m_d.imag();
+	}
+	v.setRational(m_rational);
+	return v;
+}
+
+template class MobiusTransT<float>;
+template class MobiusTransT<double>;
+template class BlaschkeMapT<float>;
+template class BlaschkeMapT<double>;
@@ -0,0 +1,56 @@
+/*
+ * floatmap.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * Floating point counterparts of MobiusTrans and BlaschkeMap, for T = float or double, chosen at run time (see
+ * ConformLib.setEngine) instead of the 16.16 fixed point ones.  Nothing overflows near a pole - w just gets big,
+ * and is clamped on the way back into 16.16 - there are no 64 bit intermediate divides, and the zoom and pan are
+ * composed into the factors without rounding them to 1/65536.
+ */
+
+#ifndef FLOATMAP_H_
+#define FLOATMAP_H_
+
+#include <complex>
+
+#include "bitmapper.h"
+#include "vectorkernel.h"
+
+template <typename T>
+class MobiusTransT {
+public:
+	MobiusTransT(const complex<T>& a, const complex<T>& b, const complex<T>& c, const complex<T>& d);
+	MobiusTransT();
+	static const MobiusTransT hyperbolicIsometry(const complex<T>& zero);
+	//z -> scale*z + pivot, the view's zoom and pan
+	static const MobiusTransT affine(const T scale, const complex<T>& pivot);
+	const complex<T> operator()(const complex<T>& z) const;
+	const MobiusTransT operator|(const MobiusTransT& f) const;
+	const MobiusTransT operator-() const;
+	template <typename U> friend class BlaschkeMapT;
+private:
+	complex<T> m_a;
+	complex<T> m_b;
+	complex<T> m_c;
+	complex<T> m_d;
+};
+
+template <typename T>
+class BlaschkeMapT : public PlaneMap {
+public:
+	//The map conform.cpp builds as a BlaschkeMap: the product of a hyperbolic isometry for each of the numParams
+	//zeros in params (re, im pairs), seen through the view's zoom and pan
+	BlaschkeMapT(const float *params, const int numParams, const T scale, const T pivotX, const T pivotY);
+	const complex<T> operator()(const complex<T>& z) const;
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const;
+	//The same coefficients, rounded to float, for the vector kernel
+	const VectorMap vectorMap() const;
+private:
+	int m_numFactors;
+	MobiusTransT<T> m_factors[BlaschkeMap::max_factors];
+	RationalForm m_rational;
+};
+
+#endif /* FLOATMAP_H_ */
@@ -0,0 +1,105 @@
+/*
+ * framestats.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "framestats.h"
+
+#include <algorithm>
+
+using namespace std;
+
+FrameStats::Series::Series() : count(0), next(0) {
+}
+
+void FrameStats::Series::add(const float value) {
+	values[next] = value;
+	next = (next + 1) % window;
+	count = min(count + 1, (int)window);
+}
+
+//Nearest rank, out of the last count values
+void FrameStats::Series::percentiles(float *out) const {
+	static const float ranks[3] = { 0.5f, 0.95f, 0.99f };
+	if (count == 0) {
+		fill(out, out + 3, 0.0f);
+		return;
+	}
+	float sorted[window];
+	copy(values, values + count, sorted);
+	sort(sorted, sorted + count);
+	for (int i = 0; i < 3; ++i) {
+		out[i] = sorted[min(count - 1, (int)(ranks[i]*count))];
+	}
+}
+
+FrameStats::FrameStats() : m_numWorkers(0), m_numFrames(0), m_isEnabled(false) {
+}
+
+void FrameStats::setEnabled(const bool enabled) {
+	m_isEnabled = enabled;
+}
+
+const bool FrameStats::isEnabled() const {
+	return m_isEnabled;
+}
+
+void FrameStats::recordFrame(const float *stageMicros, const float *workerMicros, const int numWorkers) {
+	const int workers = min(numWorkers, (int)max_workers);
+	float total = 0, busiest = 0;
+	for (int i = 0; i < workers; ++i) {
+		total += workerMicros[i];
+		busiest = max(busiest, workerMicros[i]);
+	}
+	lock_guard<mutex> lock(m_mutex);
+	for (int s = 0; s <= STAGE_FRAME; ++s) {
+		m_stages[s].add(stageMicros[s]);
+	}
+	for (int i = 0; i < workers; ++i) {
+		m_workers[i].add(workerMicros[i]);
+	}
+	if (total > 0) {
+		m_imbalance.add(busiest*workers/total);
+	}
+	m_numWorkers = max(m_numWorkers, workers);
+	m_numFrames = min(m_numFrames + 1, (int)window);
+}
+
+void FrameStats::recordDraw(const float micros) {
+	lock_guard<mutex> lock(m_mutex);
+	m_stages[STAGE_DRAW].add(micros);
+}
+
+const int FrameStats::summarize(float *out, const int capacity) const {
+	lock_guard<mutex> lock(m_mutex);
+	const int size = 2 + 3*(num_stages + m_numWorkers + 1);
+	if (size > capacity) {
+		return size;
+	}
+	out[0] = m_numFrames;
+	out[1] = m_numWorkers;
+	float *p = out + 2;
+	for (int s = 0; s < num_stages; ++s, p += 3) {
+		m_stages[s].percentiles(p);
+	}
+	for (int i = 0; i < m_numWorkers; ++i, p += 3) {
+		m_workers[i].percentiles(p);
+	}
+	m_imbalance.percentiles(p);
+	return size;
+}
+
+void FrameStats::clear() {
+	lock_guard<mutex> lock(m_mutex);
+	for (int s = 0; s < num_stages; ++s) {
+		m_stages[s] = Series();
+	}
+	for (int i = 0; i < max_workers; ++i) {
+		m_workers[i] = Series();
+	}
+	m_imbalance = Series();
+	m_numWorkers = 0;
+	m_numFrames = 0;
+}
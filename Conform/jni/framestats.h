@@ -0,0 +1,56 @@
+/*
+ * framestats.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef FRAMESTATS_H_
+#define FRAMESTATS_H_
+
+#include <mutex>
+
+//Timings of the last window frames, in microseconds, for percentiles: each stage of a frame, how long each render
+//pool participant was busy in it, and how uneven that was (the busiest participant's time over the mean).  Frames
+//are recorded from the render thread and drawing times from the UI thread; summarize() may be called from either.
+class FrameStats {
+public:
+	enum Stage {
+		STAGE_MARSHAL = 0, //from the JNI call to the start of rendering: reading parameters, locking bitmaps
+		STAGE_BUILD, //constructing the map; 0 when it was retained
+		STAGE_PULLBACK, //evaluating the map and sampling, over the whole render pool
+		STAGE_FRAME, //all of the above
+		STAGE_DRAW, //Canvas.drawBitmap of the frame, as reported by the view
+		num_stages
+	};
+	static const int window = 120;
+	static const int max_workers = 16;
+	FrameStats();
+	void setEnabled(const bool enabled);
+	const bool isEnabled() const;
+	//The first STAGE_FRAME+1 stages, and numWorkers busy times
+	void recordFrame(const float *stageMicros, const float *workerMicros, const int numWorkers);
+	void recordDraw(const float micros);
+	//Frames recorded (up to window), workers, then p50, p95 and p99 of each stage, of each worker's busy time and
+	//of the imbalance, into out.  Returns how many floats that is, or would be if capacity is too small.
+	const int summarize(float *out, const int capacity) const;
+	void clear();
+private:
+	struct Series {
+		Series();
+		void add(const float value);
+		void percentiles(float *out) const;
+		float values[window];
+		int count;
+		int next;
+	};
+	mutable std::mutex m_mutex;
+	Series m_stages[num_stages];
+	Series m_workers[max_workers];
+	Series m_imbalance;
+	int m_numWorkers;
+	int m_numFrames;
+	volatile bool m_isEnabled;
+};
+
+#endif /* FRAMESTATS_H_ */
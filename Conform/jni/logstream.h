@@ -11,6 +11,8 @@
 /*
  * logstream.h
  * Thanks to github user dzhioev!
+ *
+ * Goes to the Android log on a device, and to stderr everywhere else (see native-host/).
  */
 
 #ifndef LOGSTREAM_H_
@@ -18,13 +20,35 @@
 
 #include <iosfwd>
 #include <sstream>
+#ifdef __ANDROID__
 #include <android/log.h>
+#else
+#include <cstdio>
+#endif
+
+enum LogPriority {
+	LOG_PRIO_DEBUG,
+	LOG_PRIO_INFO,
+	LOG_PRIO_WARN,
+	LOG_PRIO_ERROR
+};
+
+template <LogPriority P>
+inline void writeLog(const char *tag, const char *text) {
+#ifdef __ANDROID__
+	static const android_LogPriority androidPriority[] = { ANDROID_LOG_DEBUG, ANDROID_LOG_INFO, ANDROID_LOG_WARN, ANDROID_LOG_ERROR };
+	__android_log_write(androidPriority[P], tag, text);
+#else
+	static const char priorityLetter[] = { 'D', 'I', 'W', 'E' };
+	std::fprintf(stderr, "%c/%s: %s\n", priorityLetter[P], tag, text);
+#endif
+}
 
-template <enum android_LogPriority P>
-class androidbuf : public std::streambuf {
+template <LogPriority P>
+class logbuf : public std::streambuf {
 public:
     enum { bufsize = 256 }; // ... or some other suitable buffer size
-    androidbuf(const char *tag) : m_tag(tag) {
+    logbuf(const char *tag) : m_tag(tag) {
     	setp(buffer, buffer + bufsize - 1);
     }
 private:
@@ -37,7 +61,7 @@ private:
     }
     int sync() {
         if (pbase() != pptr()) {
-            __android_log_write(P, m_tag, std::string(pbase(), pptr()-pbase()).c_str());
+            writeLog<P>(m_tag, std::string(pbase(), pptr()-pbase()).c_str());
             setp(buffer, buffer + bufsize - 1);
         }
         return 0;
@@ -46,16 +70,16 @@ private:
     const char *m_tag;
 };
 
-template <enum android_LogPriority P>
+template <LogPriority P>
 class logstream : public std::ostream {
 public:
-	explicit logstream(const char *tag) : std::ostream(m_logbuf = new androidbuf<P>(tag)) {
+	explicit logstream(const char *tag) : std::ostream(m_logbuf = new logbuf<P>(tag)) {
 	}
 	~logstream() {
 		delete m_logbuf;
 	}
 private:
-	androidbuf<P> *m_logbuf;
+	logbuf<P> *m_logbuf;
 };
 
 #endif /* LOGSTREAM_H_ */
@@ -0,0 +1,94 @@
+/*
+ * mippyramid.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "mippyramid.h"
+#include "renderpool.h"
+#include "tiledimage.h"
+
+static const int ROWS_PER_TASK = 16;
+
+//Average of four ARGB_8888 pixels, all channels at once: two channels per 32 bit word leaves 8 bits of headroom each
+static inline uint32_t average4(const uint32_t a, const uint32_t b, const uint32_t c, const uint32_t d) {
+	const uint32_t mask = 0x00FF00FF;
+	const uint32_t rb = (a & mask) + (b & mask) + (c & mask) + (d & mask) + 0x00020002;
+	const uint32_t ag = ((a >> 8) & mask) + ((b >> 8) & mask) + ((c >> 8) & mask) + ((d >> 8) & mask) + 0x00020002;
+	return ((rb >> 2) & mask) | (((ag >> 2) & mask) << 8);
+}
+
+MipPyramid::MipPyramid() : m_source(0), m_generation(0), m_isTiled(false), m_numLevels(0) {
+}
+
+void MipPyramid::build(const uint32_t *pixels, const uint32_t width, const uint32_t height, const int32_t generation, const bool isTiled) {
+	if (pixels == m_source && generation == m_generation && isTiled == m_isTiled && m_numLevels > 0 && width == m_widths[0] && height == m_heights[0]) {
+		return;
+	}
+	m_source = pixels;
+	m_generation = generation;
+	m_isTiled = isTiled;
+	m_widths[0] = width;
+	m_heights[0] = height;
+	m_numLevels = 1;
+	while (m_numLevels < max_levels && m_widths[m_numLevels-1] >= 4 && m_heights[m_numLevels-1] >= 4) {
+		const int level = m_numLevels++;
+		const uint32_t *above = levelPixels(level-1);
+		const uint32_t aboveWidth = m_widths[level-1];
+		const uint32_t w = m_widths[level] = aboveWidth/2;
+		const uint32_t h = m_heights[level] = m_heights[level-1]/2;
+		uint32_t *dest;
+		//An odd last row or column of the level above is dropped; at most a pixel's shift in the coarser level
+		if (isTiled) { //the 2x2 block under each pixel always lies inside one tile of the level above
+			const uint32_t aboveTiles = TiledImage::tilesAcross(aboveWidth);
+			const uint32_t tiles = TiledImage::tilesAcross(w);
+			m_levels[level].resize(tiles*TiledImage::tilesAcross(h)*TiledImage::tile_size*TiledImage::tile_size);
+			dest = &m_levels[level][0];
+			RenderPool::instance().run((h + ROWS_PER_TASK - 1) / ROWS_PER_TASK, [=](const int task) {
+				for (uint32_t y = task*ROWS_PER_TASK; y < h && y < (uint32_t)(task+1)*ROWS_PER_TASK; ++y) {
+					for (uint32_t x = 0; x < w; ++x) {
+						const uint32_t *block = above + TiledImage::index(2*x, 2*y, aboveTiles);
+						const int below = TiledImage::tile_size;
+						dest[TiledImage::index(x, y, tiles)] = average4(block[0], block[1], block[below], block[below+1]);
+					}
+				}
+			});
+		} else {
+			m_levels[level].resize(w*h);
+			dest = &m_levels[level][0];
+			RenderPool::instance().run((h + ROWS_PER_TASK - 1) / ROWS_PER_TASK, [=](const int task) {
+				for (uint32_t y = task*ROWS_PER_TASK; y < h && y < (uint32_t)(task+1)*ROWS_PER_TASK; ++y) {
+					const uint32_t *top = above + 2*y*aboveWidth;
+					const uint32_t *bottom = top + aboveWidth;
+					for (uint32_t x = 0; x < w; ++x) {
+						dest[y*w+x] = average4(top[2*x], top[2*x+1], bottom[2*x], bottom[2*x+1]);
+					}
+				}
+			});
+		}
+	}
+	for (int level = m_numLevels; level < max_levels; ++level) {
+		std::vector<uint32_t>().swap(m_levels[level]); //don't hang on to a bigger image's levels
+	}
+}
+
+const bool MipPyramid::isTiled() const {
+	return m_isTiled;
+}
+
+const int MipPyramid::numLevels() const {
+	return m_numLevels;
+}
+
+const uint32_t *MipPyramid::levelPixels(const int level) const {
+	return level == 0 ? m_source : &m_levels[level][0];
+}
+
+const uint32_t MipPyramid::levelWidth(const int level) const {
+	return m_widths[level];
+}
+
+const uint32_t MipPyramid::levelHeight(const int level) const {
+	return m_heights[level];
+}
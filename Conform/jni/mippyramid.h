@@ -0,0 +1,41 @@
+/*
+ * mippyramid.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef MIPPYRAMID_H_
+#define MIPPYRAMID_H_
+
+#include <stdint.h>
+#include <vector>
+
+//Successively halved copies of a source bitmap, for sampling where the map shrinks it by more than a pixel per
+//pixel.  Level 0 is the source itself (not copied); each level after is a 2x2 box filter of the one before, down
+//to the last one that is still at least 2x2.  Android bitmaps are premultiplied, so averaging channels is right.
+class MipPyramid {
+public:
+	static const int max_levels = 16;
+	MipPyramid();
+	//Build the levels for an ARGB_8888 image, unless they were already built for the same one - the same pixels,
+	//size and generation (see Bitmap.getGenerationId()).  Uses the render pool.  If the image is a TiledImage's
+	//pixels, isTiled says so and the levels are laid out the same way.
+	void build(const uint32_t *pixels, const uint32_t width, const uint32_t height, const int32_t generation, const bool isTiled = false);
+	const bool isTiled() const;
+	//How many levels there are, counting the source as level 0
+	const int numLevels() const;
+	const uint32_t *levelPixels(const int level) const;
+	const uint32_t levelWidth(const int level) const;
+	const uint32_t levelHeight(const int level) const;
+private:
+	const uint32_t *m_source;
+	int32_t m_generation;
+	bool m_isTiled;
+	int m_numLevels;
+	uint32_t m_widths[max_levels];
+	uint32_t m_heights[max_levels];
+	std::vector<uint32_t> m_levels[max_levels]; //level 0 unused
+};
+
+#endif /* MIPPYRAMID_H_ */
@@ -0,0 +1,297 @@
+/*
+ * multipole.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "multipole.h"
+
+#include <algorithm>
+#include <cmath>
+
+using namespace std;
+
+const double MultipoleBlaschkeMap::SEPARATION = 0.5;
+
+static const int ORDER = MultipoleBlaschkeMap::ORDER;
+//A zero this close to 0 has its pole so far off that 1 - conj(a)*z is 1 to double precision anywhere in view
+static const double MIN_POLE = 1e-12;
+//exp of more than this overflows; w is clamped long before it
+static const double MAX_LOG = 700.0;
+
+//C(n, k), for the n and k the translation from multipole to local expansions needs
+static const double binomial(const int n, const int k) {
+	static const struct Table {
+		Table() {
+			for (int i = 0; i < 2*ORDER; ++i) {
+				c[i][0] = 1;
+				for (int j = 1; j < ORDER; ++j) {
+					c[i][j] = j > i ? 0 : c[i-1][j-1] + (j < i ? c[i-1][j] : 0);
+				}
+			}
+		}
+		double c[2*ORDER][ORDER];
+	} table;
+	return table.c[n][k];
+}
+
+//The local expansion in u about a point tau away (in u), rescaled to u' = u/sigma about there: Taylor shift, then scale
+static void shiftLocal(const complex<double> *from, const complex<double>& tau, const double sigma, complex<double> *to) {
+	copy(from, from + ORDER + 1, to);
+	for (int j = 0; j < ORDER; ++j) {
+		for (int k = ORDER - 1; k >= j; --k) {
+			to[k] += tau*to[k+1];
+		}
+	}
+	double s = sigma;
+	for (int k = 1; k <= ORDER; ++k) {
+		to[k] *= s;
+		s *= sigma;
+	}
+}
+
+MultipoleBlaschkeMap::MultipoleBlaschkeMap(const float *params, const int numParams, const double scale, const double pivotX, const double pivotY) :
+	m_pivot(pivotX, pivotY), m_invScale(1.0/scale), m_logConstant(0) {
+	//m(z) = prod (z - a)/(1 - conj(a)*z) = prod (z - a)/(z - 1/conj(a)) * prod -1/conj(a)
+	for (int i = 0; i < numParams; ++i) {
+		const complex<double> a(params[2*i], params[2*i+1]);
+		m_zeros.push_back(a);
+		const Charge zero = { a, 1 };
+		m_charges.push_back(zero);
+		if (abs(a) > MIN_POLE) {
+			const Charge pole = { 1.0/conj(a), -1 };
+			m_charges.push_back(pole);
+			m_logConstant -= log(-conj(a));
+		}
+	}
+	if (numParams <= DIRECT_MAX) {
+		return;
+	}
+	vector<int> roots;
+	if (!m_charges.empty()) {
+		roots.push_back(buildClusters(0, m_charges.size()));
+	}
+	complex<double> local[ORDER+1];
+	fill(local, local + ORDER + 1, complex<double>(0));
+	local[0] = m_logConstant;
+	buildCells(0, 0, 0, local, roots);
+}
+
+//Split along the wider side of the bounding box at the median, until there are few enough charges
+int MultipoleBlaschkeMap::buildClusters(const int begin, const int end) {
+	double minRe = m_charges[begin].at.real(), maxRe = minRe;
+	double minIm = m_charges[begin].at.imag(), maxIm = minIm;
+	for (int i = begin + 1; i < end; ++i) {
+		minRe = min(minRe, m_charges[i].at.real());
+		maxRe = max(maxRe, m_charges[i].at.real());
+		minIm = min(minIm, m_charges[i].at.imag());
+		maxIm = max(maxIm, m_charges[i].at.imag());
+	}
+	Cluster c;
+	c.centre = complex<double>((minRe + maxRe)/2, (minIm + maxIm)/2);
+	c.radius = 0;
+	c.charge = 0;
+	c.begin = begin;
+	c.end = end;
+	c.children[0] = c.children[1] = -1;
+	for (int i = begin; i < end; ++i) {
+		c.radius = max(c.radius, abs(m_charges[i].at - c.centre));
+		c.charge += m_charges[i].sign;
+	}
+	//sign*log(z - at) = sign*log(z - centre) - sign * sum_k ((at - centre)/radius)^k/k * (radius/(z - centre))^k
+	fill(c.moments, c.moments + ORDER + 1, complex<double>(0));
+	if (c.radius > 0) {
+		for (int i = begin; i < end; ++i) {
+			const complex<double> t((m_charges[i].at - c.centre)/c.radius);
+			complex<double> p(t);
+			for (int k = 1; k <= ORDER; ++k) {
+				c.moments[k] -= p*(double)m_charges[i].sign/(double)k;
+				p *= t;
+			}
+		}
+	}
+	const int index = m_clusters.size();
+	m_clusters.push_back(c);
+	if (end - begin > LEAF_SIZE) {
+		const int mid = (begin + end)/2;
+		const bool byRe = maxRe - minRe >= maxIm - minIm;
+		nth_element(m_charges.begin() + begin, m_charges.begin() + mid, m_charges.begin() + end, [byRe](const Charge& a, const Charge& b) {
+			return byRe ? a.at.real() < b.at.real() : a.at.imag() < b.at.imag();
+		});
+		const int first = buildClusters(begin, mid);
+		const int second = buildClusters(mid, end);
+		m_clusters[index].children[0] = first;
+		m_clusters[index].children[1] = second;
+	}
+	return index;
+}
+
+const bool MultipoleBlaschkeMap::isSeparated(const Cluster& c, const complex<double>& centre, const double radius) const {
+	return c.radius + radius <= SEPARATION*abs(c.centre - centre);
+}
+
+const bool MultipoleBlaschkeMap::isSeparated(const Charge& c, const complex<double>& centre, const double radius) const {
+	return radius <= SEPARATION*abs(c.at - centre);
+}
+
+//The cluster's multipole expansion re-expanded about the cell's centre (Greengard and Rokhlin's lemma 2.3), with
+//both sides scaled by their radii so that nothing overflows however near or far the cluster is
+void MultipoleBlaschkeMap::addLocal(const Cluster& c, const complex<double>& centre, const double radius, complex<double> *local) const {
+	const complex<double> d(c.centre - centre);
+	const complex<double> rho(-c.radius/d);
+	const complex<double> r(radius/d);
+	complex<double> beta[ORDER+1];
+	complex<double> p(1);
+	local[0] += (double)c.charge*log(-d);
+	for (int k = 1; k <= ORDER; ++k) {
+		p *= rho;
+		beta[k] = c.moments[k]*p;
+		local[0] += beta[k];
+	}
+	complex<double> rl(1);
+	for (int l = 1; l <= ORDER; ++l) {
+		rl *= r;
+		complex<double> s(-(double)c.charge/l);
+		for (int k = 1; k <= ORDER; ++k) {
+			s += beta[k]*binomial(l + k - 1, k - 1);
+		}
+		local[l] += rl*s;
+	}
+}
+
+//sign*log(z - at) about the cell's centre: the same with no moments
+void MultipoleBlaschkeMap::addLocal(const Charge& c, const complex<double>& centre, const double radius, complex<double> *local) const {
+	const complex<double> d(c.at - centre);
+	const complex<double> r(radius/d);
+	complex<double> rl(1);
+	local[0] += (double)c.sign*log(-d);
+	for (int l = 1; l <= ORDER; ++l) {
+		rl *= r;
+		local[l] -= rl*((double)c.sign/l);
+	}
+}
+
+//The cell at (x, y) of the 2^level x 2^level grid over the view square.  Clusters far enough away go into its
+//local expansion; if what's left is too many charges it's split in four, each starting from a shifted copy of
+//the expansion and the clusters left over, otherwise those are opened down to their charges.
+void MultipoleBlaschkeMap::buildCells(const int level, const int x, const int y, const complex<double> *local, const vector<int>& candidates) {
+	const double size = 2.0/(1 << level);
+	const complex<double> centre((complex<double>(-1 + (x + 0.5)*size, -1 + (y + 0.5)*size) - m_pivot)*m_invScale);
+	const double radius = size*M_SQRT1_2*fabs(m_invScale);
+	complex<double> here[ORDER+1];
+	copy(local, local + ORDER + 1, here);
+	vector<int> work(candidates), near;
+	int nearCount = 0;
+	while (!work.empty()) {
+		const Cluster& c = m_clusters[work.back()];
+		const int index = work.back();
+		work.pop_back();
+		if (isSeparated(c, centre, radius)) {
+			addLocal(c, centre, radius, here);
+		} else if (c.children[0] >= 0 && c.radius > radius) {
+			work.push_back(c.children[0]);
+			work.push_back(c.children[1]);
+		} else {
+			near.push_back(index);
+			for (int i = c.begin; i < c.end; ++i) {
+				nearCount += !isSeparated(m_charges[i], centre, radius);
+			}
+		}
+	}
+	if (nearCount > NEAR_MAX && level < CELL_LEVELS) {
+		complex<double> shifted[ORDER+1];
+		for (int j = 0; j < 4; ++j) {
+			const int cx = 2*x + (j & 1), cy = 2*y + (j >> 1);
+			const double childSize = size/2;
+			const complex<double> childCentre((complex<double>(-1 + (cx + 0.5)*childSize, -1 + (cy + 0.5)*childSize) - m_pivot)*m_invScale);
+			shiftLocal(here, (childCentre - centre)/radius, 0.5, shifted);
+			buildCells(level + 1, cx, cy, shifted, near);
+		}
+		return;
+	}
+	Cell cell;
+	cell.centre = centre;
+	cell.invRadius = 1/radius;
+	cell.nearBegin = m_near.size();
+	work.swap(near);
+	while (!work.empty()) {
+		const Cluster& c = m_clusters[work.back()];
+		work.pop_back();
+		if (isSeparated(c, centre, radius)) {
+			addLocal(c, centre, radius, here);
+		} else if (c.children[0] >= 0) {
+			work.push_back(c.children[0]);
+			work.push_back(c.children[1]);
+		} else {
+			//A lone charge has no moments, so it's cheap to expand: only those right by the cell stay near
+			for (int i = c.begin; i < c.end; ++i) {
+				if (isSeparated(m_charges[i], centre, radius)) {
+					addLocal(m_charges[i], centre, radius, here);
+				} else {
+					m_near.push_back(m_charges[i]);
+				}
+			}
+		}
+	}
+	cell.nearEnd = m_near.size();
+	copy(here, here + ORDER + 1, cell.local);
+	const int span = 1 << (CELL_LEVELS - level);
+	for (int j = y*span; j < (y + 1)*span; ++j) {
+		for (int i = x*span; i < (x + 1)*span; ++i) {
+			m_cellOf[(j << CELL_LEVELS) + i] = m_cells.size();
+		}
+	}
+	m_cells.push_back(cell);
+}
+
+const complex<double> MultipoleBlaschkeMap::operator()(const complex<double>& z) const {
+	if (m_cells.empty() || !(fabs(z.real()) <= 1 && fabs(z.imag()) <= 1)) {
+		return direct(z);
+	}
+	const int side = 1 << CELL_LEVELS;
+	const int x = min((int)((z.real() + 1)*(side/2)), side - 1);
+	const int y = min((int)((z.imag() + 1)*(side/2)), side - 1);
+	const Cell& cell = m_cells[m_cellOf[y*side + x]];
+	const complex<double> zeta((z - m_pivot)*m_invScale);
+	const complex<double> u((zeta - cell.centre)*cell.invRadius);
+	complex<double> far(cell.local[ORDER]);
+	for (int k = ORDER - 1; k >= 0; --k) {
+		far = far*u + cell.local[k];
+	}
+	complex<double> num(1), den(1);
+	for (int i = cell.nearBegin; i < cell.nearEnd; ++i) {
+		const Charge& c = m_near[i];
+		if (c.sign > 0) {
+			num *= zeta - c.at;
+		} else {
+			den *= zeta - c.at;
+		}
+	}
+	if (den.real() == 0 && den.imag() == 0) {
+		den = complex<double>(1.0/65536); //same nudge as divZeroGuard
+	}
+	return exp(complex<double>(min(far.real(), MAX_LOG), far.imag()))*num/den;
+}
+
+const complex<double> MultipoleBlaschkeMap::direct(const complex<double>& z) const {
+	const complex<double> zeta((z - m_pivot)*m_invScale);
+	complex<double> w(1);
+	for (size_t i = 0; i < m_zeros.size(); ++i) {
+		w *= (zeta - m_zeros[i])/(1.0 - conj(m_zeros[i])*zeta);
+	}
+	return w;
+}
+
+void MultipoleBlaschkeMap::mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+	const double fixToDouble = 1.0/65536;
+	const double zim = z0.imag().intValue * fixToDouble;
+	for (int i = 0; i < count; ++i) {
+		const complex<double> wd((*this)(complex<double>((z0.real().intValue + i*reInc.intValue) * fixToDouble, zim)));
+		w[i] = complex<fixpoint>(toFixClamped(wd.real()), toFixClamped(wd.imag()));
+	}
+}
+
+const int MultipoleBlaschkeMap::numCells() const {
+	return m_cells.size();
+}
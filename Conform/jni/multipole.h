@@ -0,0 +1,82 @@
+/*
+ * multipole.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef MULTIPOLE_H_
+#define MULTIPOLE_H_
+
+#include <complex>
+#include <vector>
+
+#include "bitmapper.h"
+
+//The Blaschke product of any number of zeros (re, im pairs in params), seen through the view's zoom and pan as
+//conform.cpp's other maps are: for more zeros than BlaschkeMap holds.  Written as
+//
+//	log m(z) = log K + sum log(z - a) - sum log(z - 1/conj(a))
+//
+//it's the potential of unit charges at the zeros and opposite ones at the poles, and is evaluated the way the fast
+//multipole method evaluates potentials.  The charges are grouped into a tree of clusters, each with a multipole
+//expansion about its centre.  The view square is cut into cells, finer where the charges are denser, and each
+//cell gets a local (Taylor) expansion of everything far enough from it, and a list of the charges that aren't.
+//Per pixel that's one polynomial, a product over the cell's near charges, and an exp, whatever the number of zeros.
+//All in double, and to within a few 1e-5 of w (relative) - a small fraction of a texel.  Up to DIRECT_MAX zeros
+//a division per factor is as quick, and that's what's done.
+class MultipoleBlaschkeMap : public PlaneMap {
+public:
+	MultipoleBlaschkeMap(const float *params, const int numParams, const double scale, const double pivotX, const double pivotY);
+	//z in the view
+	const complex<double> operator()(const complex<double>& z) const;
+	//The same map a factor at a time, which costs a division per zero: what's used outside the view square
+	const complex<double> direct(const complex<double>& z) const;
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const;
+	//0 when there are few enough zeros to evaluate directly
+	const int numCells() const;
+	static const int DIRECT_MAX = 16;
+	//Expansion terms, separation ratio and sizes.  ORDER terms keep the error under separation^ORDER per charge.
+	static const int ORDER = 12;
+	static const double SEPARATION;
+	static const int LEAF_SIZE = 8; //charges per cluster at most, at the bottom of the tree
+	static const int NEAR_MAX = 16; //near charges a cell may have before it's split, levels allowing
+	static const int CELL_LEVELS = 5; //the finest cells are 1/32 of the view across
+private:
+	struct Charge {
+		complex<double> at;
+		int sign;
+	};
+	struct Cluster {
+		complex<double> centre;
+		double radius;
+		int charge;
+		int begin, end; //in m_charges
+		int children[2]; //-1 for a leaf
+		complex<double> moments[ORDER+1]; //about centre, scaled by radius^k; [0] unused
+	};
+	struct Cell {
+		complex<double> centre; //in the plane, not the view
+		double invRadius;
+		complex<double> local[ORDER+1]; //in (z - centre)*invRadius
+		int nearBegin, nearEnd; //in m_near
+	};
+	int buildClusters(const int begin, const int end);
+	void buildCells(const int level, const int x, const int y, const complex<double> *local, const vector<int>& candidates);
+	const bool isSeparated(const Cluster& c, const complex<double>& centre, const double radius) const;
+	const bool isSeparated(const Charge& c, const complex<double>& centre, const double radius) const;
+	void addLocal(const Cluster& c, const complex<double>& centre, const double radius, complex<double> *local) const;
+	void addLocal(const Charge& c, const complex<double>& centre, const double radius, complex<double> *local) const;
+
+	complex<double> m_pivot;
+	double m_invScale;
+	vector<complex<double> > m_zeros;
+	complex<double> m_logConstant; //log K
+	vector<Charge> m_charges;
+	vector<Cluster> m_clusters; //[0] is the root
+	vector<Charge> m_near;
+	vector<Cell> m_cells;
+	int m_cellOf[1 << 2*CELL_LEVELS]; //finest cell (row major) -> index in m_cells
+};
+
+#endif /* MULTIPOLE_H_ */
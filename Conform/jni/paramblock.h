@@ -0,0 +1,32 @@
+/*
+ * paramblock.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef PARAMBLOCK_H_
+#define PARAMBLOCK_H_
+
+#include <stdint.h>
+
+//The head of org.mtc.conform.ParamBlock's direct buffer, which Java fills in and the pullbackBlock functions read
+//in place.  2*numParams floats of zeros follow it.  The offsets must match the constants in ParamBlock.java.
+//Copy it out with memcpy rather than casting: the buffer's data is only sure to be 4 byte aligned.
+struct ParamBlock {
+	int32_t version; //goes up whenever anything below changes
+	int32_t numParams;
+	int32_t wrapMode;
+	int32_t isDeepZoom;
+	float pivotX;
+	float pivotY;
+	float scale;
+	int32_t unused;
+	double centreRe; //deep zoom only, as pullbackBitmapDeep's
+	double centreIm;
+	double deepScale;
+};
+
+static_assert(sizeof(ParamBlock) == 56, "ParamBlock must match the layout in ParamBlock.java");
+
+#endif /* PARAMBLOCK_H_ */
@@ -0,0 +1,160 @@
+/*
+ * partialproduct.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "partialproduct.h"
+
+#include "rendercontext.h"
+#include "renderpool.h"
+
+static const int FILL_ROWS = 16; //rows per task when filling
+static const int FILL_CHUNK = 64; //points per call to the scalar map
+
+PartialProduct::PartialProduct() :
+	m_lastEngine(0), m_hasLast(false), m_width(0), m_height(0), m_movingFrames(0), m_isFilled(false) {
+	m_lastView[0] = m_lastView[1] = m_lastView[2] = 0;
+}
+
+bool PartialProduct::track(const MapSpec& spec, const uint32_t width, const uint32_t height) {
+	//The wrap mode only matters to the sampler, or to deep zoom maps, which aren't tracked
+	const bool isSameShape = m_hasLast && !spec.isDeepZoom && 2*spec.numParams == (int)m_lastParams.size() && spec.engine == m_lastEngine &&
+			spec.pivotX == m_lastView[0] && spec.pivotY == m_lastView[1] && spec.scaleFac == m_lastView[2] && width == m_width && height == m_height;
+	m_changed.clear();
+	if (isSameShape) {
+		for (int i = 0; i < spec.numParams; ++i) {
+			if (spec.params[2*i] != m_lastParams[2*i] || spec.params[2*i+1] != m_lastParams[2*i+1]) {
+				m_changed.push_back(i);
+			}
+		}
+	}
+	if (!isSameShape) {
+		m_moving.clear();
+		m_movingFrames = 0;
+		m_isFilled = false;
+	} else if (!m_changed.empty()) { //nothing changing at all leaves things as they were: it's the same map
+		if (m_changed == m_moving) {
+			++m_movingFrames;
+		} else {
+			m_moving.swap(m_changed);
+			m_movingFrames = 1;
+			m_isFilled = false;
+		}
+	}
+	m_lastParams.assign(spec.params, spec.params + 2*spec.numParams);
+	m_lastView[0] = spec.pivotX;
+	m_lastView[1] = spec.pivotY;
+	m_lastView[2] = spec.scaleFac;
+	m_lastEngine = spec.engine;
+	m_width = width;
+	m_height = height;
+	m_hasLast = true;
+	if (!m_isFilled) {
+		std::vector<int32_t>().swap(m_coords); //8 bytes a pixel isn't kept between drags
+	}
+	const bool isDrag = m_movingFrames >= 2 && (int)m_moving.size() <= max_moving && (int)m_moving.size() < spec.numParams;
+	if (isDrag) {
+		m_movingParams.clear();
+		m_otherParams.clear();
+		size_t next = 0;
+		for (int i = 0; i < spec.numParams; ++i) {
+			const bool isMoving = next < m_moving.size() && m_moving[next] == i;
+			next += isMoving ? 1 : 0;
+			std::vector<float>& to = isMoving ? m_movingParams : m_otherParams;
+			to.push_back(spec.params[2*i]);
+			to.push_back(spec.params[2*i+1]);
+		}
+	}
+	return isDrag;
+}
+
+bool PartialProduct::isFilled() const {
+	return m_isFilled;
+}
+
+const std::vector<float>& PartialProduct::movingParams() const {
+	return m_movingParams;
+}
+
+const std::vector<float>& PartialProduct::otherParams() const {
+	return m_otherParams;
+}
+
+//On the same grid as a whole frame of MappedBitmap's (see gridZ), and mapped in the same runs
+void PartialProduct::fill(const PlaneMap& others, const VectorMap *othersVector) {
+	m_coords.resize(2*(size_t)m_width*m_height);
+	const MapKernel kernel = othersVector ? VectorKernel::mapKernel() : 0;
+	const int width = m_width;
+	const int height = m_height;
+	const int run = gridRun(width, FILL_CHUNK);
+	fixpoint reInc;
+	reInc.intValue = gridStep(width);
+	RenderPool::instance().run((height + FILL_ROWS - 1)/FILL_ROWS, [this, &others, othersVector, kernel, width, height, run, reInc](const int band) {
+		complex<fixpoint> ws[FILL_CHUNK];
+		for (int v = band*FILL_ROWS; v < min((band+1)*FILL_ROWS, height); ++v) {
+			fixpoint zim;
+			zim.intValue = gridZ(v, height);
+			int32_t *row = &m_coords[2*(size_t)v*width];
+			for (int u = 0; u < width; u += run) {
+				const int count = min(run, width - u);
+				if (kernel) {
+					kernel(*othersVector, gridZ(u, width), zim.intValue, reInc.intValue, count, row + 2*u);
+					continue;
+				}
+				fixpoint zre;
+				zre.intValue = gridZ(u, width);
+				others.mapRow(complex<fixpoint>(zre, zim), reInc, count, ws);
+				for (int i = 0; i < count; ++i) {
+					row[2*(u+i)] = ws[i].real().intValue;
+					row[2*(u+i)+1] = ws[i].imag().intValue;
+				}
+			}
+		}
+	});
+	m_isFilled = true;
+}
+
+bool PartialProduct::locate(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, int& u, int& v, int& du) const {
+	if (!m_isFilled || reInc.intValue <= 0) {
+		return false;
+	}
+	u = gridIndex(z0.real().intValue, m_width);
+	v = gridIndex(z0.imag().intValue, m_height);
+	du = reInc.intValue / gridStep(m_width);
+	if (u < 0 || v < 0 || gridZ(u, m_width) != z0.real().intValue || gridZ(v, m_height) != z0.imag().intValue || reInc.intValue != du*gridStep(m_width)) {
+		return false;
+	}
+	return v < (int)m_height && u + (count-1)*du < (int)m_width;
+}
+
+const int32_t *PartialProduct::at(const int u, const int v) const {
+	return &m_coords[2*((size_t)v*m_width + u)];
+}
+
+void PartialProduct::attach(VectorMap& map) const {
+	map.partial = m_coords.data();
+	map.partialWidth = m_width;
+	map.partialHeight = m_height;
+}
+
+PartialProductMap::PartialProductMap(const PartialProduct& partial, const float scale, const float pivotX, const float pivotY, std::unique_ptr<const PlaneMap> whole) :
+	m_partial(partial), m_moving(partial.movingParams().data(), partial.movingParams().size()/2, scale, pivotX, pivotY), m_whole(std::move(whole)) {
+}
+
+void PartialProductMap::mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+	int u, v, du;
+	if (!m_partial.locate(z0, reInc, count, u, v, du)) {
+		m_whole->mapRow(z0, reInc, count, w);
+		return;
+	}
+	const double fixToDouble = 1.0/65536;
+	const double zim = z0.imag().intValue * fixToDouble;
+	for (int i = 0; i < count; ++i) {
+		const complex<double> d(m_moving(complex<double>((z0.real().intValue + i*reInc.intValue) * fixToDouble, zim)));
+		const int32_t *p = m_partial.at(u + i*du, v);
+		const complex<double> wt(complex<double>(p[0] * fixToDouble, p[1] * fixToDouble) * d);
+		w[i] = complex<fixpoint>(toFixClamped(wt.real()), toFixClamped(wt.imag()));
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * partialproduct.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef PARTIALPRODUCT_H_
+#define PARTIALPRODUCT_H_
+
+#include <stdint.h>
+#include <memory>
+#include <vector>
+
+#include "bitmapper.h"
+#include "floatmap.h"
+#include "vectorkernel.h"
+
+struct MapSpec;
+
+//While a zero is dragged, the Blaschke factors of all the others stay the same frame after frame.  PartialProduct
+//notices which zeros are moving, and keeps the product of the rest for every pixel of the view as raw 16.16
+//(re, im) pairs - 8 bytes a pixel, as CoordinateCache - so that a frame of the drag need only evaluate the moving
+//factors and multiply.  Not thread safe: track and fill it on the render thread.
+class PartialProduct {
+public:
+	static const int max_moving = 2; //more zeros than this changing together isn't taken for a drag
+	PartialProduct();
+	//Compare a frame's map with the last one's.  True if they differ only in the same zeros (no more than
+	//max_moving of them, and not all) as the last two frames did: a drag, worth rendering from the product of the
+	//rest.  fill() that first if it isn't filled() already.  Anything else changing starts over, and frees the
+	//product: so neither a PartialProductMap nor an attach()ed map may be used after a track() - see
+	//RenderContext::retainMap.
+	bool track(const MapSpec& spec, const uint32_t width, const uint32_t height);
+	bool isFilled() const;
+	//The zeros found moving by the last call to track() that returned true, and the rest, as (re, im) pairs
+	const std::vector<float>& movingParams() const;
+	const std::vector<float>& otherParams() const;
+	//Work out the product of the other zeros, others, at every pixel of the view: by the vector kernel if it has a
+	//vector form, by the scalar path if not
+	void fill(const PlaneMap& others, const VectorMap *othersVector);
+	//Where a run of points z0 + i*reInc, i in [0, count), is on the view's pixel grid: the first one's column and
+	//row, and the columns from one to the next.  False if z0 isn't on it, reInc isn't a whole number of grid
+	//steps, the run goes off the grid, or nothing is filled.
+	bool locate(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, int& u, int& v, int& du) const;
+	//The product at column u and row v
+	const int32_t *at(const int u, const int v) const;
+	//Have the vector kernel multiply map's w by the product
+	void attach(VectorMap& map) const;
+private:
+	std::vector<float> m_lastParams;
+	float m_lastView[3]; //pivot and scale
+	int m_lastEngine;
+	bool m_hasLast;
+	uint32_t m_width;
+	uint32_t m_height;
+	std::vector<int> m_changed; //zeros that differ from the last frame's
+	std::vector<int> m_moving; //zeros that differed in each of the last movingFrames frames
+	int m_movingFrames;
+	std::vector<float> m_movingParams;
+	std::vector<float> m_otherParams;
+	std::vector<int32_t> m_coords;
+	bool m_isFilled;
+};
+
+//The whole map for a frame of a drag: w = the cached product of the zeros standing still times the factors of
+//those moving, which are evaluated in double whatever the engine - rounding them to 16.16 first would be
+//magnified wherever the product is large.  Points off the view's pixel grid (the adaptive grid overhangs it) are
+//left to the whole map.
+class PartialProductMap : public PlaneMap {
+public:
+	PartialProductMap(const PartialProduct& partial, const float scale, const float pivotX, const float pivotY, std::unique_ptr<const PlaneMap> whole);
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const;
+private:
+	const PartialProduct& m_partial;
+	const BlaschkeMapT<double> m_moving;
+	const std::unique_ptr<const PlaneMap> m_whole;
+};
+
+#endif /* PARTIALPRODUCT_H_ */
@@ -0,0 +1,136 @@
+/*
+ * rationalform.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "rationalform.h"
+
+#include <algorithm>
+#include <cmath>
+
+using namespace std;
+
+static const int GRID = 16; //intervals per side of the grid the conditioning is checked on
+static const double MAX_AMPLIFICATION = 2.0;
+static const double MIN_DISTANCE = 1e-12;
+
+//Horner's scheme, with the nudge divZeroGuard gives a zero denominator and the division written out
+template <typename T>
+static const complex<T> evaluate(const complex<T> *num, const complex<T> *den, const int degree, const complex<T>& z) {
+	complex<T> n(num[0]);
+	complex<T> e(den[0]);
+	for (int k = 1; k <= degree; ++k) {
+		n = n*z + num[k];
+		e = e*z + den[k];
+	}
+	if (e.real() == 0 && e.imag() == 0) {
+		e = complex<T>(T(1)/65536);
+	}
+	const T inv = T(1)/(e.real()*e.real() + e.imag()*e.imag());
+	return complex<T>((n.real()*e.real() + n.imag()*e.imag())*inv, (n.imag()*e.real() - n.real()*e.imag())*inv);
+}
+
+//Horner's rounding error is bounded by sum |p_k|*|z|^k relative to |p(z)|, a factor's by (|a||z| + |b|)/|a*z + b|.
+//The factored form's errors add, so compare the rational form's with the sum of the factors'.  Points right on a
+//zero or pole make both infinite, and are skipped (0); -ffinite-math-only rules out testing for that afterwards.
+static const double amplification(const complex<double> *num, const complex<double> *den, const int degree,
+								  const complex<double> *a, const complex<double> *b, const complex<double> *c, const complex<double> *d, const complex<double>& z) {
+	const double r = abs(z);
+	complex<double> n(0), e(0);
+	double nBound = 0, eBound = 0;
+	for (int k = 0; k <= degree; ++k) {
+		n = n*z + num[k];
+		e = e*z + den[k];
+		nBound = nBound*r + abs(num[k]);
+		eBound = eBound*r + abs(den[k]);
+	}
+	double factored = 0;
+	for (int i = 0; i < degree; ++i) {
+		const double top = abs(a[i]*z + b[i]);
+		const double bottom = abs(c[i]*z + d[i]);
+		if (top < MIN_DISTANCE || bottom < MIN_DISTANCE) {
+			return 0;
+		}
+		factored += (abs(a[i])*r + abs(b[i]))/top + (abs(c[i])*r + abs(d[i]))/bottom;
+	}
+	if (abs(n) < MIN_DISTANCE || abs(e) < MIN_DISTANCE) {
+		return 0;
+	}
+	return (nBound/abs(n) + eBound/abs(e))/factored;
+}
+
+RationalForm::RationalForm() : m_degree(0) {
+}
+
+void RationalForm::compile(const complex<double> *a, const complex<double> *b, const complex<double> *c, const complex<double> *d, const int numFactors) {
+	m_degree = 0;
+	if (numFactors < 2 || numFactors > max_degree) {
+		return;
+	}
+	//Scaling a factor's coefficients doesn't change it; scaled to at most 1 the expanded ones stay at most C(6,3)
+	complex<double> na[max_degree], nb[max_degree], nc[max_degree], nd[max_degree];
+	for (int i = 0; i < numFactors; ++i) {
+		const double norm = max(max(abs(a[i]), abs(b[i])), max(abs(c[i]), abs(d[i])));
+		if (norm == 0) {
+			return;
+		}
+		na[i] = a[i]/norm;
+		nb[i] = b[i]/norm;
+		nc[i] = c[i]/norm;
+		nd[i] = d[i]/norm;
+	}
+	complex<double> num[max_degree+1], den[max_degree+1];
+	num[0] = den[0] = 1;
+	for (int i = 0; i < numFactors; ++i) {
+		num[i+1] = den[i+1] = 0;
+		for (int k = i+1; k > 0; --k) {
+			num[k] = num[k]*na[i] + num[k-1]*nb[i];
+			den[k] = den[k]*nc[i] + den[k-1]*nd[i];
+		}
+		num[0] *= na[i];
+		den[0] *= nc[i];
+	}
+	double worst = 0;
+	for (int y = 0; y <= GRID; ++y) {
+		for (int x = 0; x <= GRID; ++x) {
+			const complex<double> z(2.0*x/GRID - 1, 2.0*y/GRID - 1);
+			worst = max(worst, amplification(num, den, numFactors, na, nb, nc, nd, z));
+		}
+	}
+	if (worst > MAX_AMPLIFICATION) {
+		return;
+	}
+	for (int k = 0; k <= numFactors; ++k) {
+		m_num[k] = num[k];
+		m_den[k] = den[k];
+		m_numf[k] = complex<float>(num[k]);
+		m_denf[k] = complex<float>(den[k]);
+	}
+	m_degree = numFactors;
+}
+
+const bool RationalForm::isUsable() const {
+	return m_degree > 0;
+}
+
+const int RationalForm::degree() const {
+	return m_degree;
+}
+
+const complex<float> RationalForm::operator()(const complex<float>& z) const {
+	return evaluate(m_numf, m_denf, m_degree, z);
+}
+
+const complex<double> RationalForm::operator()(const complex<double>& z) const {
+	return evaluate(m_num, m_den, m_degree, z);
+}
+
+const complex<double> *RationalForm::numerator() const {
+	return m_num;
+}
+
+const complex<double> *RationalForm::denominator() const {
+	return m_den;
+}
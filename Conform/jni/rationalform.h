@@ -0,0 +1,40 @@
+/*
+ * rationalform.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef RATIONALFORM_H_
+#define RATIONALFORM_H_
+
+#include <complex>
+
+//A product of Mobius factors (a*z + b)/(c*z + d) multiplied out into one rational function N(z)/D(z), evaluated
+//with Horner's scheme and a single complex division instead of a division per factor.  Multiplying out can cost
+//accuracy - the expanded sums can cancel where the factors didn't - so compile() also estimates, on a grid over
+//the view square [-1,1]x[-1,1], how much larger the rounding error of the rational form is than the factored
+//form's, and isUsable() is false where it's over twice as large (and for a single factor, where there's nothing
+//to save).  Callers fall back on the factors then.
+class RationalForm {
+public:
+	static const int max_degree = 6;
+	RationalForm();
+	void compile(const std::complex<double> *a, const std::complex<double> *b, const std::complex<double> *c, const std::complex<double> *d, const int numFactors);
+	const bool isUsable() const;
+	//0 when not usable
+	const int degree() const;
+	const std::complex<float> operator()(const std::complex<float>& z) const;
+	const std::complex<double> operator()(const std::complex<double>& z) const;
+	//Coefficients of N and D, highest power first, degree()+1 of each
+	const std::complex<double> *numerator() const;
+	const std::complex<double> *denominator() const;
+private:
+	int m_degree;
+	std::complex<double> m_num[max_degree+1];
+	std::complex<double> m_den[max_degree+1];
+	std::complex<float> m_numf[max_degree+1];
+	std::complex<float> m_denf[max_degree+1];
+};
+
+#endif /* RATIONALFORM_H_ */
@@ -0,0 +1,368 @@
+/*
+ * rendercontext.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "rendercontext.h"
+
+#include <stdlib.h>
+#include <string.h>
+
+#include "floatmap.h"
+#include "deepzoom.h"
+#include "multipole.h"
+#include "renderpool.h"
+
+static float microsBetween(const chrono::steady_clock::time_point& from, const chrono::steady_clock::time_point& to) {
+	return chrono::duration_cast<chrono::nanoseconds>(to - from).count()*1e-3f;
+}
+
+RenderContext::BuiltMap::BuiltMap() : hasVectorMap(false) {
+}
+
+RenderContext::RenderContext() :
+	m_adaptiveTolerance(0.25f), m_isMipmapping(false), m_isTiling(false), m_engine(ENGINE_FIXED),
+	m_sourceWidth(0), m_sourceHeight(0), m_sourceGeneration(0),
+	m_retainedBlock(0), m_retainedVersion(0), m_retainedEngine(0), m_hasFrameStart(false) {
+	memset(m_retainedSizes, 0, sizeof(m_retainedSizes));
+}
+
+void RenderContext::setSource(const uint32_t *pixels, const uint32_t width, const uint32_t height) {
+	m_source.assign(pixels, pixels + width*height);
+	m_sourceWidth = width;
+	m_sourceHeight = height;
+	++m_sourceGeneration;
+}
+
+const ImageRef RenderContext::source() const {
+	const ImageRef image = { m_source.empty() ? 0 : const_cast<uint32_t *>(m_source.data()), m_sourceWidth, m_sourceHeight, m_sourceGeneration };
+	return image;
+}
+
+//Sample the source's own pixels, or a tiled copy of them - made first if the source is new or has changed
+const BitmapSampler RenderContext::makeSampler(const ImageRef& source, const int wrapMode, const bool isTiled) {
+	if (!isTiled) {
+		return BitmapSampler(source.pixels, source.width, source.height, wrapMode);
+	}
+	m_tiledSource.build(source.pixels, source.width, source.height, source.generation);
+	return BitmapSampler(m_tiledSource.pixels(), source.width, source.height, wrapMode, true);
+}
+
+//Sample from a mip pyramid of the source, building it first if the source is new or has changed
+void RenderContext::attachMipPyramid(MappedBitmap& viewPlane, const ImageRef& source, const bool isTiled) {
+	if (m_isMipmapping.load(std::memory_order_relaxed)) {
+		m_mipPyramid.build(isTiled ? m_tiledSource.pixels() : source.pixels, source.width, source.height, source.generation, isTiled);
+		viewPlane.setMipPyramid(&m_mipPyramid);
+	}
+}
+
+//Full resolution frames resample from the cache if the map and view are unchanged, and fill it if not
+void RenderContext::pullbackCached(MappedBitmap& viewPlane, const MapKey& key, const size_t numPixels, const int step) {
+	if (step != 1) {
+		viewPlane.pullbackSampledBitmap(step);
+		return;
+	}
+	const float tolerance = m_adaptiveTolerance.load(std::memory_order_relaxed);
+	viewPlane.setAdaptiveTolerance(tolerance);
+	MapKey toleranceKey(key); //interpolated coordinates are only as good as the tolerance they were made with
+	toleranceKey.values.push_back(tolerance);
+	const int32_t *coords = m_coordCache.find(toleranceKey);
+	if (coords) {
+		viewPlane.resampleBitmap(coords);
+	} else {
+		viewPlane.pullbackSampledBitmap(1, m_coordCache.prepare(toleranceKey, numPixels));
+		m_coordCache.commit();
+	}
+}
+
+//Everything after the map is chosen: the mip pyramid, then the cache
+void RenderContext::pullbackView(MappedBitmap& viewPlane, const ImageRef& source, const bool isTiled, const MapKey& key, const size_t numPixels, const int step) {
+	attachMipPyramid(viewPlane, source, isTiled);
+	pullbackCached(viewPlane, key, numPixels, step);
+}
+
+void RenderContext::buildMap(const MapSpec& spec, const BitmapSampler& sampler, const uint32_t destWidth, const uint32_t destHeight, BuiltMap& built) {
+	built.hasVectorMap = false;
+	if (spec.isDeepZoom) {
+		//A tiling source repeats every 2/xMult in w, so w near the centre can be brought back near 0 without changing the picture
+		const VectorSampler shape(sampler);
+		const bool isPeriodic = spec.wrapMode == 0;
+		built.map.reset(new PerturbedBlaschkeMap(spec.params, spec.numParams, spec.centreRe, spec.centreIm, spec.deepScale,
+												 isPeriodic ? 2.0/shape.xMult : 0, isPeriodic ? 2.0/shape.yMult : 0));
+		built.key = MapKey(spec.params, spec.numParams, 0, 0, 0, destWidth, destHeight);
+		built.key.addExact(spec.centreRe);
+		built.key.addExact(spec.centreIm);
+		built.key.addExact(spec.deepScale);
+		built.key.values.push_back(spec.wrapMode); //w depends on it here, through the period
+		built.key.addExact(isPeriodic ? 2.0/shape.xMult : 0); //and the period on the source's shape
+		built.key.addExact(isPeriodic ? 2.0/shape.yMult : 0);
+		return;
+	}
+	built.key = MapKey(spec.params, spec.numParams, spec.pivotX, spec.pivotY, spec.scaleFac, destWidth, destHeight);
+	built.key.values.push_back(spec.engine); //the engines agree only to within a few 16.16 units
+	if (spec.numParams > BlaschkeMap::max_factors) {
+		//More zeros than the engines hold: in double whatever the engine, and through the scalar path
+		built.map.reset(new MultipoleBlaschkeMap(spec.params, spec.numParams, spec.scaleFac, spec.pivotX, spec.pivotY));
+	} else if (spec.engine == ENGINE_FLOAT) {
+		const BlaschkeMapT<float> *map = new BlaschkeMapT<float>(spec.params, spec.numParams, spec.scaleFac, spec.pivotX, spec.pivotY);
+		built.map.reset(map);
+		built.vectorMap = map->vectorMap();
+		built.hasVectorMap = true;
+	} else if (spec.engine == ENGINE_DOUBLE) {
+		//No vector kernel for doubles: the scalar path, adaptive grid and all
+		built.map.reset(new BlaschkeMapT<double>(spec.params, spec.numParams, spec.scaleFac, spec.pivotX, spec.pivotY));
+	} else {
+		const MobiusTrans affine(complex<fixpoint>(fixpoint(spec.scaleFac)),complex<fixpoint>(fixpoint(spec.pivotX), fixpoint(spec.pivotY)),ZERO,ONE);
+		BlaschkeMap blas;
+		for (int i = 0; i < spec.numParams; ++i) {
+			blas *= MobiusTrans::hyperbolicIsometry(complex<fixpoint>(fixpoint(spec.params[2*i]),fixpoint(spec.params[2*i+1])));
+		}
+		const BlaschkeMap *map = new BlaschkeMap(blas|-affine);
+		built.map.reset(map);
+		built.vectorMap = VectorMap(*map);
+		built.hasVectorMap = true;
+	}
+}
+
+void RenderContext::renderMap(const BuiltMap& built, const ImageRef& source, const BitmapSampler& sampler, const ImageRef& dest, const bool isTiled, const int step) {
+	const size_t numPixels = dest.width*dest.height;
+	if (built.hasVectorMap) {
+		MappedBitmap viewPlane(sampler, dest.pixels, dest.width, dest.height, *built.map, built.vectorMap);
+		pullbackView(viewPlane, source, isTiled, built.key, numPixels, step);
+	} else {
+		MappedBitmap viewPlane(sampler, dest.pixels, dest.width, dest.height, *built.map);
+		pullbackView(viewPlane, source, isTiled, built.key, numPixels, step);
+	}
+}
+
+void RenderContext::render(const MapSpec& spec, const ImageRef& source, const ImageRef& dest, const int step) {
+	const bool isTimed = m_stats.isEnabled();
+	RenderPool::instance().setTimed(isTimed);
+	const Clock::time_point start = isTimed ? Clock::now() : Clock::time_point();
+	const bool isTiled = m_isTiling.load(std::memory_order_relaxed);
+	const BitmapSampler sampler(makeSampler(source, spec.wrapMode, isTiled));
+	BuiltMap built;
+	buildMap(spec, sampler, dest.width, dest.height, built);
+	const Clock::time_point mapReady = isTimed ? Clock::now() : start;
+	renderMap(built, source, sampler, dest, isTiled, step);
+	if (isTimed) {
+		recordFrame(start, mapReady);
+	}
+}
+
+void RenderContext::renderBand(const MapSpec& spec, const ImageRef& source, const ImageRef& band, const uint32_t fullHeight, const uint32_t top) {
+	const bool isTiled = m_isTiling.load(std::memory_order_relaxed);
+	const BitmapSampler sampler(makeSampler(source, spec.wrapMode, isTiled));
+	BuiltMap built;
+	buildMap(spec, sampler, band.width, fullHeight, built);
+	if (built.hasVectorMap) {
+		MappedBitmap viewPlane(sampler, band.pixels, band.width, band.height, *built.map, built.vectorMap);
+		viewPlane.setBand(fullHeight, top);
+		attachMipPyramid(viewPlane, source, isTiled);
+		viewPlane.setAdaptiveTolerance(m_adaptiveTolerance.load(std::memory_order_relaxed));
+		viewPlane.pullbackSampledBitmap();
+	} else {
+		MappedBitmap viewPlane(sampler, band.pixels, band.width, band.height, *built.map);
+		viewPlane.setBand(fullHeight, top);
+		attachMipPyramid(viewPlane, source, isTiled);
+		viewPlane.setAdaptiveTolerance(m_adaptiveTolerance.load(std::memory_order_relaxed));
+		viewPlane.pullbackSampledBitmap();
+	}
+}
+
+void RenderContext::render(const ParamBlock& block, const float *params, const ImageRef& source, const ImageRef& dest, const int step) {
+	const bool isTimed = m_stats.isEnabled();
+	RenderPool::instance().setTimed(isTimed);
+	const Clock::time_point start = isTimed ? Clock::now() : Clock::time_point();
+	const bool isTiled = m_isTiling.load(std::memory_order_relaxed);
+	const BitmapSampler sampler(makeSampler(source, block.wrapMode, isTiled));
+	retainMap(block, params, sampler, source, dest);
+	const Clock::time_point mapReady = isTimed ? Clock::now() : start;
+	renderMap(m_retained, source, sampler, dest, isTiled, step);
+	if (isTimed) {
+		recordFrame(start, mapReady);
+	}
+}
+
+//Build the block's map into m_retained, unless it's already there
+void RenderContext::retainMap(const ParamBlock& block, const float *params, const BitmapSampler& sampler, const ImageRef& source, const ImageRef& dest) {
+	const int engine = m_engine.load(std::memory_order_relaxed);
+	const uint32_t sizes[4] = { source.width, source.height, dest.width, dest.height };
+	if (!m_retained.map || m_retainedBlock != params || m_retainedVersion != block.version || m_retainedEngine != engine ||
+			memcmp(m_retainedSizes, sizes, sizeof(sizes)) != 0) {
+		const MapSpec spec = { params, block.numParams, block.pivotX, block.pivotY, block.scale, block.wrapMode, block.isDeepZoom != 0,
+							   block.centreRe, block.centreIm, block.deepScale, engine };
+		//In this order: buildMap() replaces m_retained, and with it any PartialProductMap (which holds m_partial by
+		//reference) or vector map attach()ed to m_partial's product, before track() can free that product or fill()
+		//reallocate it.  A map pointing into it again is only made once it's filled, and lasts until the next
+		//change, which comes back here.
+		buildMap(spec, sampler, dest.width, dest.height, m_retained);
+		if (m_partial.track(spec, dest.width, dest.height)) {
+			retainPartialProduct(spec, sampler, dest);
+		}
+		m_retainedBlock = params;
+		m_retainedVersion = block.version;
+		m_retainedEngine = engine;
+		memcpy(m_retainedSizes, sizes, sizeof(sizes));
+	}
+}
+
+//Swap the map just built for the product of the zeros standing still, filled in first if need be, times the map
+//of those moving.  The vector kernel does the multiplying too, if the moving zeros' map has a vector form.
+void RenderContext::retainPartialProduct(const MapSpec& spec, const BitmapSampler& sampler, const ImageRef& dest) {
+	if (!m_partial.isFilled()) {
+		MapSpec othersSpec(spec);
+		othersSpec.params = m_partial.otherParams().data();
+		othersSpec.numParams = m_partial.otherParams().size()/2;
+		BuiltMap others;
+		buildMap(othersSpec, sampler, dest.width, dest.height, others);
+		m_partial.fill(*others.map, others.hasVectorMap ? &others.vectorMap : 0);
+	}
+	//Only the vector form is wanted of this: the scalar side evaluates the moving zeros itself
+	MapSpec movingSpec(spec);
+	movingSpec.params = m_partial.movingParams().data();
+	movingSpec.numParams = m_partial.movingParams().size()/2;
+	BuiltMap moving;
+	buildMap(movingSpec, sampler, dest.width, dest.height, moving);
+	std::unique_ptr<const PlaneMap> whole(std::move(m_retained.map));
+	m_retained.map.reset(new PartialProductMap(m_partial, spec.scaleFac, spec.pivotX, spec.pivotY, std::move(whole)));
+	m_retained.vectorMap = moving.vectorMap;
+	m_retained.hasVectorMap = moving.hasVectorMap;
+	if (m_retained.hasVectorMap) {
+		m_partial.attach(m_retained.vectorMap);
+	}
+}
+
+void RenderContext::renderScrolled(const ParamBlock& block, const float *params, const ImageRef& source, const ImageRef& previous, const ImageRef& dest, const int dx, const int dy) {
+	const bool isTimed = m_stats.isEnabled();
+	RenderPool::instance().setTimed(isTimed);
+	const Clock::time_point start = isTimed ? Clock::now() : Clock::time_point();
+	const bool isTiled = m_isTiling.load(std::memory_order_relaxed);
+	const BitmapSampler sampler(makeSampler(source, block.wrapMode, isTiled));
+	retainMap(block, params, sampler, source, dest);
+	const Clock::time_point mapReady = isTimed ? Clock::now() : start;
+	const int width = dest.width;
+	const int height = dest.height;
+	scrollPixels(previous, dest, dx, dy);
+	//Whole rows above or below what was kept, then the columns beside it on the rows that are left
+	const int rows = min(abs(dy), height);
+	if (rows > 0) {
+		renderRegion(m_retained, source, sampler, dest, isTiled, 0, dy > 0 ? 0 : height - rows, width, rows);
+	}
+	const int columns = min(abs(dx), width);
+	if (columns > 0 && rows < height) {
+		renderRegion(m_retained, source, sampler, dest, isTiled, dx > 0 ? 0 : width - columns, dy > 0 ? rows : 0, columns, height - rows);
+	}
+	if (isTimed) {
+		recordFrame(start, mapReady);
+	}
+}
+
+//dest(u, v) = previous(u - dx, v - dy) wherever that's inside previous; the rest is left for renderRegion()
+void RenderContext::scrollPixels(const ImageRef& previous, const ImageRef& dest, const int dx, const int dy) {
+	const int width = dest.width;
+	const int height = dest.height;
+	const int kept = width - abs(dx);
+	if (kept <= 0 || abs(dy) >= height) {
+		return;
+	}
+	const int fromU = max(-dx, 0);
+	const int toU = max(dx, 0);
+	//Rows are visited away from where they're moving to, so that scrolling a buffer into itself works too
+	for (int i = 0; i < height - abs(dy); ++i) {
+		const int v = dy > 0 ? height - 1 - i : i;
+		memmove(&dest.pixels[v*width + toU], &previous.pixels[(v - dy)*width + fromU], kept*sizeof(uint32_t));
+	}
+}
+
+//Render the width x height region of dest with top left pixel (left, top) as it is in the whole frame: at full
+//resolution, and without the coordinate cache, which only holds whole frames
+void RenderContext::renderRegion(const BuiltMap& built, const ImageRef& source, const BitmapSampler& sampler, const ImageRef& dest, const bool isTiled,
+								 const uint32_t left, const uint32_t top, const uint32_t width, const uint32_t height) {
+	uint32_t *pixels = &dest.pixels[top*dest.width + left];
+	if (built.hasVectorMap) {
+		MappedBitmap viewPlane(sampler, pixels, width, height, *built.map, built.vectorMap);
+		viewPlane.setRegion(dest.width, dest.height, left, top, dest.width);
+		attachMipPyramid(viewPlane, source, isTiled);
+		viewPlane.setAdaptiveTolerance(m_adaptiveTolerance.load(std::memory_order_relaxed));
+		viewPlane.pullbackSampledBitmap();
+	} else {
+		MappedBitmap viewPlane(sampler, pixels, width, height, *built.map);
+		viewPlane.setRegion(dest.width, dest.height, left, top, dest.width);
+		attachMipPyramid(viewPlane, source, isTiled);
+		viewPlane.setAdaptiveTolerance(m_adaptiveTolerance.load(std::memory_order_relaxed));
+		viewPlane.pullbackSampledBitmap();
+	}
+}
+
+void RenderContext::renderExpression(const ComplexExpression& expr, const float *params, const int numParams, const float pivotX, const float pivotY, const float scaleFac,
+									 const int wrapMode, const ImageRef& source, const ImageRef& dest, const int step) {
+	const bool isTimed = m_stats.isEnabled();
+	RenderPool::instance().setTimed(isTimed);
+	const Clock::time_point start = isTimed ? Clock::now() : Clock::time_point();
+	const ExpressionMap map(expr, params, numParams, scaleFac, pivotX, pivotY);
+	const bool isTiled = m_isTiling.load(std::memory_order_relaxed);
+	const BitmapSampler sampler(makeSampler(source, wrapMode, isTiled));
+	MappedBitmap viewPlane(sampler, dest.pixels, dest.width, dest.height, map);
+	const MapKey key(params, numParams, pivotX, pivotY, scaleFac, dest.width, dest.height, expr.text());
+	const Clock::time_point mapReady = isTimed ? Clock::now() : start;
+	pullbackView(viewPlane, source, isTiled, key, dest.width*dest.height, step);
+	if (isTimed) {
+		recordFrame(start, mapReady);
+	}
+}
+
+//The pool's busy times are reset after each frame (and as one begins), so they're this frame's as long as only the
+//render thread uses the pool
+void RenderContext::recordFrame(const Clock::time_point& start, const Clock::time_point& mapReady) {
+	const Clock::time_point end = Clock::now();
+	const Clock::time_point begin = m_hasFrameStart ? m_frameStart : start;
+	m_hasFrameStart = false;
+	float stages[FrameStats::STAGE_FRAME+1];
+	stages[FrameStats::STAGE_MARSHAL] = microsBetween(begin, start);
+	stages[FrameStats::STAGE_BUILD] = microsBetween(start, mapReady);
+	stages[FrameStats::STAGE_PULLBACK] = microsBetween(mapReady, end);
+	stages[FrameStats::STAGE_FRAME] = microsBetween(begin, end);
+	RenderPool& pool = RenderPool::instance();
+	const int numWorkers = min(pool.numParticipants(), (int)FrameStats::max_workers);
+	float workers[FrameStats::max_workers];
+	for (int i = 0; i < numWorkers; ++i) {
+		workers[i] = pool.busyNanos(i)*1e-3f;
+	}
+	pool.resetBusyTimes();
+	m_stats.recordFrame(stages, workers, numWorkers);
+}
+
+void RenderContext::setAdaptiveTolerance(const float tolerance) {
+	m_adaptiveTolerance.store(tolerance, std::memory_order_relaxed);
+}
+
+void RenderContext::setMipmapping(const bool enabled) {
+	m_isMipmapping.store(enabled, std::memory_order_relaxed);
+}
+
+void RenderContext::setTiledSource(const bool enabled) {
+	m_isTiling.store(enabled, std::memory_order_relaxed);
+}
+
+void RenderContext::setEngine(const int engine) {
+	m_engine.store(engine, std::memory_order_relaxed);
+}
+
+const int RenderContext::engine() const {
+	return m_engine.load(std::memory_order_relaxed);
+}
+
+FrameStats& RenderContext::stats() {
+	return m_stats;
+}
+
+void RenderContext::beginFrame() {
+	if (m_stats.isEnabled()) {
+		m_frameStart = Clock::now();
+		m_hasFrameStart = true;
+		RenderPool::instance().resetBusyTimes();
+	}
+}
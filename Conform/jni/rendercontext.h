@@ -0,0 +1,132 @@
+/*
+ * rendercontext.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef RENDERCONTEXT_H_
+#define RENDERCONTEXT_H_
+
+#include <stdint.h>
+#include <atomic>
+#include <chrono>
+#include <memory>
+#include <vector>
+
+#include "bitmapper.h"
+#include "vectorkernel.h"
+#include "coordcache.h"
+#include "mippyramid.h"
+#include "partialproduct.h"
+#include "tiledimage.h"
+#include "expression.h"
+#include "paramblock.h"
+#include "framestats.h"
+
+//What a frame's map is built from, however it was passed in
+struct MapSpec {
+	const float *params;
+	int numParams;
+	float pivotX, pivotY, scaleFac;
+	int wrapMode;
+	bool isDeepZoom;
+	double centreRe, centreIm, deepScale; //deep zoom only
+	int engine;
+};
+
+//An ARGB_8888 image to sample or render into: a locked bitmap's pixels, or a context's own copy of them
+struct ImageRef {
+	uint32_t *pixels;
+	uint32_t width;
+	uint32_t height;
+	int32_t generation; //see Bitmap.getGenerationId(); sources only
+};
+
+//Everything a run of frames shares: the settings, the coordinate cache, the mip pyramid and tiled copy of the
+//source, the map built for the last ParamBlock, and optionally the source itself, copied in once by setSource()
+//so that frames needn't lock the source bitmap.  Not thread safe: render from one thread, though the settings
+//may be changed from any (they're atomic, and a frame started before a change may see it part way through).
+class RenderContext {
+public:
+	//What the Blaschke product is evaluated in; the same values as ConformLib.Engine
+	enum Engine { ENGINE_FIXED = 0, ENGINE_FLOAT = 1, ENGINE_DOUBLE = 2 };
+	RenderContext();
+	//Keep a copy of a source image, for source() to return
+	void setSource(const uint32_t *pixels, const uint32_t width, const uint32_t height);
+	//The copy, or an empty image (null pixels) if there isn't one
+	const ImageRef source() const;
+	//Build the map spec describes and render it into dest
+	void render(const MapSpec& spec, const ImageRef& source, const ImageRef& dest, const int step);
+	//The same for a ParamBlock's map, read in place (params follow the header).  The map is kept and reused until
+	//the block, its version, the engine or either image's size changes.  While frames only move the same zero or
+	//two, the product of the others is kept too, and only the moving factors are evaluated (see PartialProduct).
+	void render(const ParamBlock& block, const float *params, const ImageRef& source, const ImageRef& dest, const int step);
+	//The same for a view that has only moved by (dx, dy) whole pixels since previous was rendered: previous's
+	//pixels are scrolled into dest (dest(u, v) = previous(u - dx, v - dy)) and only the strips that uncovers are
+	//pulled back, at full resolution.  previous must be the same size as dest, and may be dest itself.
+	void renderScrolled(const ParamBlock& block, const float *params, const ImageRef& source, const ImageRef& previous, const ImageRef& dest, const int dx, const int dy);
+	//Render band as rows top and on of a picture fullHeight rows high, at full resolution and without the
+	//coordinate cache: for pictures too big to render whole (see MappedBitmap::setBand).  Not timed.
+	void renderBand(const MapSpec& spec, const ImageRef& source, const ImageRef& band, const uint32_t fullHeight, const uint32_t top);
+	//Pull back by an expression, whose map is cheap enough to build every frame
+	void renderExpression(const ComplexExpression& expr, const float *params, const int numParams, const float pivotX, const float pivotY, const float scaleFac,
+						  const int wrapMode, const ImageRef& source, const ImageRef& dest, const int step);
+	//See the ConformLib methods of the same names
+	void setAdaptiveTolerance(const float tolerance);
+	void setMipmapping(const bool enabled);
+	void setTiledSource(const bool enabled);
+	void setEngine(const int engine);
+	const int engine() const;
+	//Timings of the frames rendered, when enabled.  Call beginFrame() as a call for a frame comes in, so that the
+	//time until rendering starts counts as marshaling.
+	FrameStats& stats();
+	void beginFrame();
+private:
+	typedef std::chrono::steady_clock Clock;
+	//A frame's map, ready to render, with the key of its coordinates in the cache
+	struct BuiltMap {
+		BuiltMap();
+		std::unique_ptr<const PlaneMap> map;
+		VectorMap vectorMap;
+		bool hasVectorMap; //false for maps only the scalar path renders
+		MapKey key;
+	};
+	const BitmapSampler makeSampler(const ImageRef& source, const int wrapMode, const bool isTiled);
+	void attachMipPyramid(MappedBitmap& viewPlane, const ImageRef& source, const bool isTiled);
+	void pullbackCached(MappedBitmap& viewPlane, const MapKey& key, const size_t numPixels, const int step);
+	void pullbackView(MappedBitmap& viewPlane, const ImageRef& source, const bool isTiled, const MapKey& key, const size_t numPixels, const int step);
+	static void buildMap(const MapSpec& spec, const BitmapSampler& sampler, const uint32_t destWidth, const uint32_t destHeight, BuiltMap& built);
+	void retainMap(const ParamBlock& block, const float *params, const BitmapSampler& sampler, const ImageRef& source, const ImageRef& dest);
+	void retainPartialProduct(const MapSpec& spec, const BitmapSampler& sampler, const ImageRef& dest);
+	static void scrollPixels(const ImageRef& previous, const ImageRef& dest, const int dx, const int dy);
+	void renderRegion(const BuiltMap& built, const ImageRef& source, const BitmapSampler& sampler, const ImageRef& dest, const bool isTiled,
+					  const uint32_t left, const uint32_t top, const uint32_t width, const uint32_t height);
+	void renderMap(const BuiltMap& built, const ImageRef& source, const BitmapSampler& sampler, const ImageRef& dest, const bool isTiled, const int step);
+	//Call with stats enabled: start is when rendering started, built when the map was ready
+	void recordFrame(const Clock::time_point& start, const Clock::time_point& built);
+
+	std::atomic<float> m_adaptiveTolerance; //in source pixels; see MappedBitmap::setAdaptiveTolerance
+	std::atomic<bool> m_isMipmapping;
+	std::atomic<bool> m_isTiling;
+	std::atomic<int> m_engine;
+	CoordinateCache m_coordCache;
+	MipPyramid m_mipPyramid;
+	TiledImage m_tiledSource;
+	std::vector<uint32_t> m_source;
+	uint32_t m_sourceWidth;
+	uint32_t m_sourceHeight;
+	int32_t m_sourceGeneration; //counts setSource() calls, for the pyramid and tiled copy to tell copies apart
+	//The last ParamBlock's map, and everything else it was built from
+	BuiltMap m_retained;
+	const float *m_retainedBlock;
+	int32_t m_retainedVersion;
+	int m_retainedEngine;
+	uint32_t m_retainedSizes[4]; //source then dest, width then height
+	PartialProduct m_partial; //of the zeros the last ParamBlocks haven't moved
+	FrameStats m_stats;
+	Clock::time_point m_frameStart;
+	bool m_hasFrameStart;
+};
+
+#endif /* RENDERCONTEXT_H_ */
@@ -0,0 +1,130 @@
+/*
+ * renderpool.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "renderpool.h"
+
+#include <chrono>
+
+using namespace std;
+
+RenderPool::RenderPool(const int numThreads) :
+		m_ranges(max(numThreads, 1)), m_task(0), m_generation(0), m_busyWorkers(0), m_shutdown(false), m_isTimed(false) {
+	resetBusyTimes();
+	for (int i = 1; i < numThreads; ++i) { //participant 0 is whoever calls run()
+		m_workers.push_back(thread(&RenderPool::workerLoop, this, i));
+	}
+}
+
+RenderPool::~RenderPool() {
+	{
+		lock_guard<mutex> lock(m_mutex);
+		m_shutdown = true;
+	}
+	m_workAvailable.notify_all();
+	for (vector<thread>::iterator it = m_workers.begin(); it != m_workers.end(); ++it) {
+		it->join();
+	}
+}
+
+RenderPool& RenderPool::instance() {
+	static RenderPool pool(max(thread::hardware_concurrency(), 1u));
+	return pool;
+}
+
+const int RenderPool::numParticipants() const {
+	return m_ranges.size();
+}
+
+void RenderPool::setTimed(const bool timed) {
+	m_isTimed = timed;
+}
+
+void RenderPool::resetBusyTimes() {
+	for (vector<TaskRange>::iterator it = m_ranges.begin(); it != m_ranges.end(); ++it) {
+		it->busyNanos = 0;
+	}
+}
+
+const int64_t RenderPool::busyNanos(const int participant) const {
+	return m_ranges[participant].busyNanos;
+}
+
+void RenderPool::run(const int numTasks, const Task& task) {
+	if (numTasks <= 0) {
+		return;
+	}
+	const int participants = numParticipants();
+	for (int i = 0; i < participants; ++i) {
+		m_ranges[i].next.store((int)(((long long)numTasks * i) / participants), memory_order_relaxed);
+		m_ranges[i].end = (int)(((long long)numTasks * (i+1)) / participants);
+	}
+	{
+		lock_guard<mutex> lock(m_mutex);
+		m_task = &task;
+		m_busyWorkers = m_workers.size();
+		++m_generation;
+	}
+	m_workAvailable.notify_all();
+
+	participate(0);
+
+	unique_lock<mutex> lock(m_mutex);
+	while (m_busyWorkers > 0) { //join barrier - nobody may still be touching task or the ranges when we return
+		m_workDone.wait(lock);
+	}
+	m_task = 0;
+}
+
+void RenderPool::workerLoop(const int participant) {
+	unsigned int seenGeneration = 0;
+	for (;;) {
+		{
+			unique_lock<mutex> lock(m_mutex);
+			while (!m_shutdown && m_generation == seenGeneration) {
+				m_workAvailable.wait(lock);
+			}
+			if (m_shutdown) {
+				return;
+			}
+			seenGeneration = m_generation;
+		}
+		participate(participant);
+		{
+			lock_guard<mutex> lock(m_mutex);
+			if (--m_busyWorkers == 0) {
+				m_workDone.notify_one();
+			}
+		}
+	}
+}
+
+void RenderPool::participate(const int participant) {
+	const bool isTimed = m_isTimed;
+	const chrono::steady_clock::time_point start = isTimed ? chrono::steady_clock::now() : chrono::steady_clock::time_point();
+	const Task &task = *m_task;
+	int t;
+	while (takeTask(participant, t)) {
+		task(t);
+	}
+	if (isTimed) {
+		m_ranges[participant].busyNanos += chrono::duration_cast<chrono::nanoseconds>(chrono::steady_clock::now() - start).count();
+	}
+}
+
+const bool RenderPool::takeTask(const int participant, int &task) {
+	const int participants = numParticipants();
+	for (int i = 0; i < participants; ++i) { //own range first, then go round stealing from the others
+		TaskRange &range = m_ranges[(participant + i) % participants];
+		if (range.next.load(memory_order_relaxed) < range.end) {
+			task = range.next.fetch_add(1, memory_order_relaxed);
+			if (task < range.end) {
+				return true;
+			}
+		}
+	}
+	return false;
+}
@@ -0,0 +1,69 @@
+/*
+ * renderpool.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef RENDERPOOL_H_
+#define RENDERPOOL_H_
+
+#include <stdint.h>
+#include <atomic>
+#include <condition_variable>
+#include <functional>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+//A long-lived pool of worker threads.  run() hands out numTasks task indices to the workers plus the calling
+//thread, and does not return until every task is finished and every worker has let go of the job.
+//Each participant starts on its own contiguous block of tasks; once that runs dry it steals from the others.
+class RenderPool {
+public:
+	typedef std::function<void(const int)> Task;
+
+	explicit RenderPool(const int numThreads);
+	~RenderPool();
+
+	//The process-wide pool, sized from the core count.  Created on first use (see JNI_OnLoad).
+	static RenderPool& instance();
+
+	void run(const int numTasks, const Task& task);
+	const int numParticipants() const;
+	//How long each participant has spent on tasks in run() since the last reset, for seeing how evenly the work
+	//is spread.  Only counted while timed, which is off to begin with so untimed runs don't read the clock.
+	//Set it, and read the times, from the thread that calls run(), between runs.
+	void setTimed(const bool timed);
+	void resetBusyTimes();
+	const int64_t busyNanos(const int participant) const;
+
+private:
+	RenderPool(const RenderPool&);
+	RenderPool& operator=(const RenderPool&);
+
+	//Padded out to a cache line so participants don't fight over each other's cursors
+	struct TaskRange {
+		std::atomic<int> next;
+		int end;
+		int64_t busyNanos; //only written by the participant, and read after the join barrier
+		char padding[64 - sizeof(std::atomic<int>) - sizeof(int) - sizeof(int64_t)];
+	};
+
+	void workerLoop(const int participant);
+	void participate(const int participant);
+	const bool takeTask(const int participant, int &task);
+
+	std::vector<std::thread> m_workers;
+	std::vector<TaskRange> m_ranges;
+	std::mutex m_mutex;
+	std::condition_variable m_workAvailable;
+	std::condition_variable m_workDone;
+	const Task *m_task;
+	unsigned int m_generation;
+	int m_busyWorkers;
+	bool m_shutdown;
+	bool m_isTimed; //read by the workers after the handover in workerLoop, so it needs no more than m_mutex
+};
+
+#endif /* RENDERPOOL_H_ */
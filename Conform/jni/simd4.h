@@ -0,0 +1,167 @@
+/*
+ * simd4.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * Just enough of a 4-lane vector layer for the pullback kernel, over SSE2 or NEON.  Defines SIMD4_AVAILABLE
+ * when one of them is enabled for this translation unit.
+ */
+
+#ifndef SIMD4_H_
+#define SIMD4_H_
+
+#include <stdint.h>
+
+#if defined(__SSE2__)
+#define SIMD4_AVAILABLE 1
+#define SIMD4_ISA "SSE2"
+#include <emmintrin.h>
+
+struct f4 { __m128 v; };
+struct i4 { __m128i v; };
+struct m4 { __m128 v; }; //lane mask
+
+inline f4 splat(const float x) { f4 r = { _mm_set1_ps(x) }; return r; }
+inline i4 splat(const int32_t x) { i4 r = { _mm_set1_epi32(x) }; return r; }
+inline f4 operator+(const f4 a, const f4 b) { f4 r = { _mm_add_ps(a.v, b.v) }; return r; }
+inline f4 operator-(const f4 a, const f4 b) { f4 r = { _mm_sub_ps(a.v, b.v) }; return r; }
+inline f4 operator*(const f4 a, const f4 b) { f4 r = { _mm_mul_ps(a.v, b.v) }; return r; }
+inline f4 recip(const f4 a) { f4 r = { _mm_div_ps(_mm_set1_ps(1.0f), a.v) }; return r; }
+inline f4 min(const f4 a, const f4 b) { f4 r = { _mm_min_ps(a.v, b.v) }; return r; }
+inline f4 max(const f4 a, const f4 b) { f4 r = { _mm_max_ps(a.v, b.v) }; return r; }
+inline m4 operator==(const f4 a, const f4 b) { m4 r = { _mm_cmpeq_ps(a.v, b.v) }; return r; }
+inline m4 operator>(const f4 a, const f4 b) { m4 r = { _mm_cmpgt_ps(a.v, b.v) }; return r; }
+inline m4 operator<=(const f4 a, const f4 b) { m4 r = { _mm_cmple_ps(a.v, b.v) }; return r; }
+inline m4 operator&(const m4 a, const m4 b) { m4 r = { _mm_and_ps(a.v, b.v) }; return r; }
+inline f4 select(const m4 m, const f4 a, const f4 b) { f4 r = { _mm_or_ps(_mm_and_ps(m.v, a.v), _mm_andnot_ps(m.v, b.v)) }; return r; }
+inline i4 truncToInt(const f4 a) { i4 r = { _mm_cvttps_epi32(a.v) }; return r; }
+inline f4 toFloat(const i4 a) { f4 r = { _mm_cvtepi32_ps(a.v) }; return r; }
+inline f4 floor(const f4 a) {
+	const __m128 t = _mm_cvtepi32_ps(_mm_cvttps_epi32(a.v));
+	f4 r = { _mm_sub_ps(t, _mm_and_ps(_mm_cmpgt_ps(t, a.v), _mm_set1_ps(1.0f))) };
+	return r;
+}
+inline i4 operator+(const i4 a, const i4 b) { i4 r = { _mm_add_epi32(a.v, b.v) }; return r; }
+inline i4 min(const i4 a, const i4 b) {
+	const __m128i gt = _mm_cmpgt_epi32(a.v, b.v);
+	i4 r = { _mm_or_si128(_mm_and_si128(gt, b.v), _mm_andnot_si128(gt, a.v)) };
+	return r;
+}
+inline i4 max(const i4 a, const i4 b) {
+	const __m128i gt = _mm_cmpgt_epi32(a.v, b.v);
+	i4 r = { _mm_or_si128(_mm_and_si128(gt, a.v), _mm_andnot_si128(gt, b.v)) };
+	return r;
+}
+inline i4 load(const int32_t *src) { i4 r = { _mm_loadu_si128((const __m128i *)src) }; return r; }
+inline void store(int32_t *dest, const i4 a) { _mm_storeu_si128((__m128i *)dest, a.v); }
+//Load 4 (x, y) pairs and split them into xs and ys
+inline void loadPairs(const int32_t *src, i4 &x, i4 &y) {
+	const __m128 lo = _mm_castsi128_ps(_mm_loadu_si128((const __m128i *)src));
+	const __m128 hi = _mm_castsi128_ps(_mm_loadu_si128((const __m128i *)(src + 4)));
+	x.v = _mm_castps_si128(_mm_shuffle_ps(lo, hi, _MM_SHUFFLE(2, 0, 2, 0)));
+	y.v = _mm_castps_si128(_mm_shuffle_ps(lo, hi, _MM_SHUFFLE(3, 1, 3, 1)));
+}
+
+//Widen pixels 0 and 1 (lo) or 2 and 3 (hi) to 16 bits a channel
+inline __m128i widenLo(const __m128i p) { return _mm_unpacklo_epi8(p, _mm_setzero_si128()); }
+inline __m128i widenHi(const __m128i p) { return _mm_unpackhi_epi8(p, _mm_setzero_si128()); }
+inline __m128i lerp16(const __m128i a, const __m128i b, const __m128i t) {
+	return _mm_srli_epi16(_mm_add_epi16(_mm_mullo_epi16(a, _mm_sub_epi16(_mm_set1_epi16(256), t)), _mm_mullo_epi16(b, t)), 8);
+}
+
+//Bilinear blend of four ARGB_8888 pixels per lane with 8 bit weights (0..256): horizontally by tx, then vertically by ty
+inline void bilerpStore(uint32_t *dest, const uint32_t *p00, const uint32_t *p01, const uint32_t *p10, const uint32_t *p11, const i4 tx, const i4 ty) {
+	const __m128i a = _mm_loadu_si128((const __m128i *)p00);
+	const __m128i b = _mm_loadu_si128((const __m128i *)p01);
+	const __m128i c = _mm_loadu_si128((const __m128i *)p10);
+	const __m128i d = _mm_loadu_si128((const __m128i *)p11);
+	const __m128i tx16 = _mm_unpacklo_epi16(_mm_packs_epi32(tx.v, tx.v), _mm_packs_epi32(tx.v, tx.v)); //t0 t0 t1 t1 t2 t2 t3 t3
+	const __m128i ty16 = _mm_unpacklo_epi16(_mm_packs_epi32(ty.v, ty.v), _mm_packs_epi32(ty.v, ty.v));
+	const __m128i txLo = _mm_unpacklo_epi32(tx16, tx16), txHi = _mm_unpackhi_epi32(tx16, tx16);
+	const __m128i tyLo = _mm_unpacklo_epi32(ty16, ty16), tyHi = _mm_unpackhi_epi32(ty16, ty16);
+	const __m128i lo = lerp16(lerp16(widenLo(a), widenLo(b), txLo), lerp16(widenLo(c), widenLo(d), txLo), tyLo);
+	const __m128i hi = lerp16(lerp16(widenHi(a), widenHi(b), txHi), lerp16(widenHi(c), widenHi(d), txHi), tyHi);
+	_mm_storeu_si128((__m128i *)dest, _mm_packus_epi16(lo, hi));
+}
+
+#elif defined(__ARM_NEON__) || defined(__ARM_NEON)
+#define SIMD4_AVAILABLE 1
+#define SIMD4_ISA "NEON"
+#include <arm_neon.h>
+
+struct f4 { float32x4_t v; };
+struct i4 { int32x4_t v; };
+struct m4 { uint32x4_t v; };
+
+inline f4 splat(const float x) { f4 r = { vdupq_n_f32(x) }; return r; }
+inline i4 splat(const int32_t x) { i4 r = { vdupq_n_s32(x) }; return r; }
+inline f4 operator+(const f4 a, const f4 b) { f4 r = { vaddq_f32(a.v, b.v) }; return r; }
+inline f4 operator-(const f4 a, const f4 b) { f4 r = { vsubq_f32(a.v, b.v) }; return r; }
+inline f4 operator*(const f4 a, const f4 b) { f4 r = { vmulq_f32(a.v, b.v) }; return r; }
+inline f4 recip(const f4 a) { //estimate plus two Newton-Raphson steps - armv7 NEON has no divide
+	float32x4_t x = vrecpeq_f32(a.v);
+	x = vmulq_f32(x, vrecpsq_f32(a.v, x));
+	x = vmulq_f32(x, vrecpsq_f32(a.v, x));
+	f4 r = { x };
+	return r;
+}
+inline f4 min(const f4 a, const f4 b) { f4 r = { vminq_f32(a.v, b.v) }; return r; }
+inline f4 max(const f4 a, const f4 b) { f4 r = { vmaxq_f32(a.v, b.v) }; return r; }
+inline m4 operator==(const f4 a, const f4 b) { m4 r = { vceqq_f32(a.v, b.v) }; return r; }
+inline m4 operator>(const f4 a, const f4 b) { m4 r = { vcgtq_f32(a.v, b.v) }; return r; }
+inline m4 operator<=(const f4 a, const f4 b) { m4 r = { vcleq_f32(a.v, b.v) }; return r; }
+inline m4 operator&(const m4 a, const m4 b) { m4 r = { vandq_u32(a.v, b.v) }; return r; }
+inline f4 select(const m4 m, const f4 a, const f4 b) { f4 r = { vbslq_f32(m.v, a.v, b.v) }; return r; }
+inline i4 truncToInt(const f4 a) { i4 r = { vcvtq_s32_f32(a.v) }; return r; }
+inline f4 toFloat(const i4 a) { f4 r = { vcvtq_f32_s32(a.v) }; return r; }
+inline f4 floor(const f4 a) {
+	const float32x4_t t = vcvtq_f32_s32(vcvtq_s32_f32(a.v));
+	f4 r = { vsubq_f32(t, vreinterpretq_f32_u32(vandq_u32(vcgtq_f32(t, a.v), vreinterpretq_u32_f32(vdupq_n_f32(1.0f))))) };
+	return r;
+}
+inline i4 operator+(const i4 a, const i4 b) { i4 r = { vaddq_s32(a.v, b.v) }; return r; }
+inline i4 min(const i4 a, const i4 b) { i4 r = { vminq_s32(a.v, b.v) }; return r; }
+inline i4 max(const i4 a, const i4 b) { i4 r = { vmaxq_s32(a.v, b.v) }; return r; }
+inline i4 load(const int32_t *src) { i4 r = { vld1q_s32(src) }; return r; }
+inline void store(int32_t *dest, const i4 a) { vst1q_s32(dest, a.v); }
+//Load 4 (x, y) pairs and split them into xs and ys
+inline void loadPairs(const int32_t *src, i4 &x, i4 &y) {
+	const int32x4x2_t pairs = vld2q_s32(src);
+	x.v = pairs.val[0];
+	y.v = pairs.val[1];
+}
+
+inline uint16x8_t lerp16(const uint16x8_t a, const uint16x8_t b, const uint16x8_t t) {
+	return vshrq_n_u16(vmlaq_u16(vmulq_u16(a, vsubq_u16(vdupq_n_u16(256), t)), b, t), 8);
+}
+//Spread a weight per pixel across that pixel's four channels: (t0 t0 t0 t0 t1 t1 t1 t1), (t2 ... t3)
+inline uint16x8x2_t spreadWeights(const i4 t) {
+	const uint16x4_t t4 = vmovn_u32(vreinterpretq_u32_s32(t.v));
+	const uint16x4x2_t pairs = vzip_u16(t4, t4);
+	const uint16x4x2_t lo = vzip_u16(pairs.val[0], pairs.val[0]);
+	const uint16x4x2_t hi = vzip_u16(pairs.val[1], pairs.val[1]);
+	uint16x8x2_t r;
+	r.val[0] = vcombine_u16(lo.val[0], lo.val[1]);
+	r.val[1] = vcombine_u16(hi.val[0], hi.val[1]);
+	return r;
+}
+
+//Bilinear blend of four ARGB_8888 pixels per lane with 8 bit weights (0..256): horizontally by tx, then vertically by ty
+inline void bilerpStore(uint32_t *dest, const uint32_t *p00, const uint32_t *p01, const uint32_t *p10, const uint32_t *p11, const i4 tx, const i4 ty) {
+	const uint8x16_t a = vreinterpretq_u8_u32(vld1q_u32(p00));
+	const uint8x16_t b = vreinterpretq_u8_u32(vld1q_u32(p01));
+	const uint8x16_t c = vreinterpretq_u8_u32(vld1q_u32(p10));
+	const uint8x16_t d = vreinterpretq_u8_u32(vld1q_u32(p11));
+	const uint16x8x2_t txs = spreadWeights(tx);
+	const uint16x8x2_t tys = spreadWeights(ty);
+	const uint16x8_t lo = lerp16(lerp16(vmovl_u8(vget_low_u8(a)), vmovl_u8(vget_low_u8(b)), txs.val[0]),
+								 lerp16(vmovl_u8(vget_low_u8(c)), vmovl_u8(vget_low_u8(d)), txs.val[0]), tys.val[0]);
+	const uint16x8_t hi = lerp16(lerp16(vmovl_u8(vget_high_u8(a)), vmovl_u8(vget_high_u8(b)), txs.val[1]),
+								 lerp16(vmovl_u8(vget_high_u8(c)), vmovl_u8(vget_high_u8(d)), txs.val[1]), tys.val[1]);
+	vst1q_u32(dest, vreinterpretq_u32_u8(vcombine_u8(vmovn_u16(lo), vmovn_u16(hi))));
+}
+
+#endif
+
+#endif /* SIMD4_H_ */
@@ -0,0 +1,39 @@
+/*
+ * tiledimage.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "tiledimage.h"
+#include "renderpool.h"
+
+TiledImage::TiledImage() : m_source(0), m_width(0), m_height(0), m_generation(0) {
+}
+
+void TiledImage::build(const uint32_t *pixels, const uint32_t width, const uint32_t height, const int32_t generation) {
+	if (pixels == m_source && width == m_width && height == m_height && generation == m_generation) {
+		return;
+	}
+	m_source = pixels;
+	m_width = width;
+	m_height = height;
+	m_generation = generation;
+	const uint32_t across = tilesAcross(width);
+	const uint32_t down = tilesAcross(height);
+	m_pixels.resize(across*down*tile_size*tile_size);
+	uint32_t *dest = &m_pixels[0];
+	//A task per row of tiles: reads tile_size source rows, writes a contiguous run of tiles
+	RenderPool::instance().run(down, [=](const int tileRow) {
+		for (uint32_t y = tileRow*tile_size; y < (uint32_t)(tileRow+1)*tile_size; ++y) {
+			const uint32_t *src = pixels + (y < height ? y : height-1)*width;
+			for (uint32_t x = 0; x < across*tile_size; ++x) {
+				dest[index(x, y, across)] = src[x < width ? x : width-1];
+			}
+		}
+	});
+}
+
+const uint32_t *TiledImage::pixels() const {
+	return &m_pixels[0];
+}
@@ -0,0 +1,51 @@
+/*
+ * tiledimage.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef TILEDIMAGE_H_
+#define TILEDIMAGE_H_
+
+#include <stdint.h>
+#include <vector>
+
+//A copy of an ARGB_8888 image laid out in 4x4 pixel tiles, each tile a 64 byte cache line, tiles in row-major
+//order.  The pullback walks the source along curves rather than rows, and a bilinear sample needs the pixels
+//above and below; with row-major storage each sample touches two lines a whole image width apart, with tiles
+//usually one.  The size is padded out to whole tiles by repeating the last row and column.
+class TiledImage {
+public:
+	static const int tile_shift = 2; //log2 of the tile size
+	static const int tile_size = 1 << tile_shift;
+	static const uint32_t tile_mask = tile_size - 1;
+	TiledImage();
+	//Re-lay an image, unless it was already done for the same one - the same pixels, size and generation
+	//(see Bitmap.getGenerationId()).  Uses the render pool.
+	void build(const uint32_t *pixels, const uint32_t width, const uint32_t height, const int32_t generation);
+	const uint32_t *pixels() const;
+	//Whole tiles across an image width pixels wide
+	static inline uint32_t tilesAcross(const uint32_t width) {
+		return (width + tile_mask) >> tile_shift;
+	}
+	//Where pixel (x, y) is, for an image tilesAcross tiles wide
+	static inline uint32_t index(const uint32_t x, const uint32_t y, const uint32_t tilesAcross) {
+		return ((((y >> tile_shift)*tilesAcross + (x >> tile_shift)) << tile_shift | (y & tile_mask)) << tile_shift) | (x & tile_mask);
+	}
+	//How far it is from pixel (x, y) to the pixel to its right, and to the one below it
+	static inline uint32_t rightOffset(const uint32_t x) {
+		return (x & tile_mask) != tile_mask ? 1 : tile_size*tile_size - tile_mask;
+	}
+	static inline uint32_t downOffset(const uint32_t y, const uint32_t tilesAcross) {
+		return (y & tile_mask) != tile_mask ? tile_size : (tilesAcross*tile_size - tile_mask)*tile_size;
+	}
+private:
+	const uint32_t *m_source;
+	uint32_t m_width;
+	uint32_t m_height;
+	int32_t m_generation;
+	std::vector<uint32_t> m_pixels;
+};
+
+#endif /* TILEDIMAGE_H_ */
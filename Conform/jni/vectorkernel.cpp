@@ -0,0 +1,97 @@
+/*
+ * vectorkernel.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "vectorkernel.h"
+#include "bitmapper.h"
+
+#if defined(__ANDROID__) && defined(__arm__)
+#include <cpu-features.h>
+#endif
+
+static_assert(VectorMap::max_factors == BlaschkeMap::max_factors, "VectorMap must hold as many factors as BlaschkeMap");
+
+static const float FIX_TO_FLOAT = 1.0f/65536.0f;
+
+//Defined in vectorkernel_simd.cpp, which is the only file built with NEON enabled on ARM.  Null when the
+//target has neither SSE2 nor NEON.
+extern const RowKernel simd4RowKernel;
+extern const ResampleKernel simd4ResampleKernel;
+extern const MapKernel simd4MapKernel;
+extern const char *const simd4IsaName;
+
+VectorMap::VectorMap(const BlaschkeMap& map) : numFactors(map.m_numFactors), partial(0), partialWidth(0), partialHeight(0) {
+	for (int i = 0; i < numFactors; ++i) {
+		const MobiusTrans &f = map.m_factors[i];
+		aRe[i] = f.m_a.real().intValue * FIX_TO_FLOAT;
+		aIm[i] = f.m_a.imag().intValue * FIX_TO_FLOAT;
+		bRe[i] = f.m_b.real().intValue * FIX_TO_FLOAT;
+		bIm[i] = f.m_b.imag().intValue * FIX_TO_FLOAT;
+		cRe[i] = f.m_c.real().intValue * FIX_TO_FLOAT;
+		cIm[i] = f.m_c.imag().intValue * FIX_TO_FLOAT;
+		dRe[i] = f.m_d.real().intValue * FIX_TO_FLOAT;
+		dIm[i] = f.m_d.imag().intValue * FIX_TO_FLOAT;
+	}
+	setRational(map.m_rational);
+}
+
+VectorMap::VectorMap() : numFactors(0), degree(0), partial(0), partialWidth(0), partialHeight(0) {
+}
+
+void VectorMap::setRational(const RationalForm& rational) {
+	degree = rational.degree();
+	const complex<double> *num = rational.numerator();
+	const complex<double> *den = rational.denominator();
+	for (int k = 0; k <= degree; ++k) {
+		numRe[k] = (float)num[k].real();
+		numIm[k] = (float)num[k].imag();
+		denRe[k] = (float)den[k].real();
+		denIm[k] = (float)den[k].imag();
+	}
+}
+
+VectorSampler::VectorSampler(const BitmapSampler& sampler) :
+	srcPixels(sampler.m_srcPixels), srcWidth(sampler.m_srcWidth), srcHeight(sampler.m_srcHeight),
+	xMult(sampler.m_xMult.intValue * FIX_TO_FLOAT), yMult(sampler.m_yMult.intValue * FIX_TO_FLOAT), wrapMode(sampler.m_wrapMode),
+	tilesAcross(sampler.m_tilesAcross) {
+}
+
+bool VectorKernel::s_enabled = true;
+
+RowKernel VectorKernel::rowKernel() {
+	static const bool supported = simd4RowKernel != 0 && cpuSupportsSimd4();
+	return (s_enabled && supported) ? simd4RowKernel : 0;
+}
+
+ResampleKernel VectorKernel::resampleKernel() {
+	return rowKernel() ? simd4ResampleKernel : 0;
+}
+
+MapKernel VectorKernel::mapKernel() {
+	return rowKernel() ? simd4MapKernel : 0;
+}
+
+const char *VectorKernel::isaName() {
+	return rowKernel() ? simd4IsaName : "scalar";
+}
+
+void VectorKernel::setEnabled(const bool enabled) {
+	s_enabled = enabled;
+}
+
+const bool VectorKernel::isEnabled() {
+	return s_enabled;
+}
+
+const bool VectorKernel::cpuSupportsSimd4() {
+#if defined(__ANDROID__) && defined(__arm__)
+	return android_getCpuFamily() == ANDROID_CPU_FAMILY_ARM && (android_getCpuFeatures() & ANDROID_CPU_ARM_FEATURE_NEON) != 0;
+#elif defined(__i386__) || defined(__x86_64__)
+	return __builtin_cpu_supports("sse2");
+#else
+	return true; //NEON is mandatory on aarch64
+#endif
+}
@@ -0,0 +1,102 @@
+/*
+ * vectorkernel.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef VECTORKERNEL_H_
+#define VECTORKERNEL_H_
+
+#include <stdint.h>
+
+class BlaschkeMap;
+class BitmapSampler;
+class RationalForm;
+
+//A BlaschkeMap flattened into float coefficient arrays, one array per coefficient, for the vector kernel.
+//If degree isn't 0 the map's multiplied-out form is usable, and its coefficients (highest power first) are
+//evaluated in place of the factors.
+struct VectorMap {
+	explicit VectorMap(const BlaschkeMap& map);
+	VectorMap();
+	void setRational(const RationalForm& rational);
+	static const int max_factors = 6; //same as BlaschkeMap
+	int numFactors;
+	float aRe[max_factors], aIm[max_factors];
+	float bRe[max_factors], bIm[max_factors];
+	float cRe[max_factors], cIm[max_factors];
+	float dRe[max_factors], dIm[max_factors];
+	int degree;
+	float numRe[max_factors+1], numIm[max_factors+1];
+	float denRe[max_factors+1], denIm[max_factors+1];
+	//If not null, w is also multiplied by this product of other factors, one raw 16.16 (re, im) pair for each
+	//pixel of a partialWidth x partialHeight view grid (see gridZ): see PartialProduct.  The kernels must then
+	//only be given runs of z that start on that grid, a pixel apart.
+	const int32_t *partial;
+	int32_t partialWidth, partialHeight;
+};
+
+//The view grid: pixel i of size across is at z = -1 + 2*i/(size-1), rounded to raw 16.16.  A row is mapped as
+//runs of z going by gridStep from each run's own gridZ, rather than by one rounded step from the edge, which at
+//7680 pixels wide would leave the last pixel 31 short of 1.
+static inline int32_t gridZ(const int64_t i, const int64_t size) {
+	return size > 1 ? (int32_t)((i*4*65536 + (size-1)) / (2*(size-1))) - 65536 : -65536;
+}
+static inline int32_t gridStep(const int64_t size) {
+	return size > 1 ? (int32_t)((4*65536 + (size-1)) / (2*(size-1))) : 0;
+}
+//The pixel whose gridZ is nearest z
+static inline int32_t gridIndex(const int32_t z, const int64_t size) {
+	return (int32_t)(((int64_t)(z + 65536)*(size-1) + 65536) / (2*65536));
+}
+//How many pixels a run can go by gridStep before drifting an eighth of a pixel off the grid: maxRun, or a
+//multiple of 4 (so the vector kernels stay four pixels at a time) when the step is rounded a long way
+static inline int gridRun(const int64_t size, const int maxRun) {
+	const int64_t rounding = size > 1 ? gridStep(size)*(size-1) - 2*65536 : 0; //times size-1, like the step
+	const int64_t drift = 8*(rounding < 0 ? -rounding : rounding);
+	if (drift*maxRun <= 2*65536) {
+		return maxRun;
+	}
+	const int run = (int)(2*65536/drift) & ~3;
+	return run > 4 ? run : 4;
+}
+
+//What the vector kernel needs to know about a BitmapSampler
+struct VectorSampler {
+	explicit VectorSampler(const BitmapSampler& sampler);
+	const uint32_t *srcPixels;
+	int32_t srcWidth;
+	int32_t srcHeight;
+	float xMult;
+	float yMult;
+	int wrapMode;
+	int32_t tilesAcross; //of a TiledImage; 0 for row-major pixels
+};
+
+//Pull back count pixels of one row: z runs from (zre, zim) in steps of reInc, all in raw 16.16 fixed point.
+//Results agree with the scalar path to within a couple of levels per channel, apart from right next to poles.
+//If coordsOut isn't null, w for each pixel is also written there as raw 16.16 (re, im) pairs.
+typedef void (*RowKernel)(const VectorMap& map, const VectorSampler& sampler, const int32_t zre, const int32_t zim, const int32_t reInc, const int count, uint32_t *dest, int32_t *coordsOut);
+
+//Sample count pixels of one row at w coordinates saved by an earlier pullback, as raw 16.16 (re, im) pairs
+typedef void (*ResampleKernel)(const VectorSampler& sampler, const int32_t *coords, const int count, uint32_t *dest);
+
+//Just the map half of a RowKernel: w for count pixels of one row, written to coordsOut without sampling anything
+typedef void (*MapKernel)(const VectorMap& map, const int32_t zre, const int32_t zim, const int32_t reInc, const int count, int32_t *coordsOut);
+
+class VectorKernel {
+public:
+	//The best kernel this CPU can run, or 0 if there isn't one (or it has been disabled) and the scalar path should be used
+	static RowKernel rowKernel();
+	static ResampleKernel resampleKernel();
+	static MapKernel mapKernel();
+	static const char *isaName();
+	static void setEnabled(const bool enabled);
+	static const bool isEnabled();
+private:
+	static const bool cpuSupportsSimd4();
+	static bool s_enabled;
+};
+
+#endif /* VECTORKERNEL_H_ */
@@ -0,0 +1,236 @@
+/*
+ * vectorkernel_simd.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * The 4-wide pullback kernel.  Android.mk builds this file (and only this file) with NEON enabled on
+ * armeabi-v7a, so nothing in here may run before VectorKernel has checked the CPU.
+ */
+
+#include "vectorkernel.h"
+#include "simd4.h"
+#include "tiledimage.h"
+
+#ifdef SIMD4_AVAILABLE
+
+static const float FIX_TO_FLOAT = 1.0f/65536.0f;
+static const float FLOAT_TO_FIX = 65536.0f;
+static const float MAX_W = 16383.0f; //as in ExpressionMap: keeps the sampler's own fixed point sums in range
+
+//Where in the source bitmap to sample: the top left texel index and 8 bit blend weights to the right and down
+static inline void sampleCoords(const f4 w, const f4 mult, const int wrapMode, const int32_t size, i4 &texel, i4 &t) {
+	const f4 zero = splat(0.0f);
+	const f4 one = splat(1.0f);
+	f4 s = (w + one) * splat(0.5f) * mult;
+	if (wrapMode == 0) {
+		s = s - floor(s);
+		s = select((zero <= s) & (s <= one), s, zero); //also catches the NaNs and infinities from poles
+	} else {
+		s = select((s > zero) & (s <= one), s, zero); //as wrapOrClamp does: anything outside (0,1] lands on 0
+	}
+	const f4 x = s * splat((float)(size-1));
+	//Clamp again in integers, so the texel to the right/below is always inside the bitmap even if
+	//-ffinite-math-only has optimised away the NaN handling above
+	texel = max(min(truncToInt(x), splat(size-2)), splat(0));
+	t = max(min(truncToInt((x - toFloat(texel)) * splat(256.0f)), splat(256)), splat(0));
+}
+
+//Look up the four corners for each lane and blend them into dest (only the first remaining lanes, if that's less than 4)
+static inline void sampleStore(const VectorSampler& sampler, const f4 wr, const f4 wi, const int remaining, uint32_t *dest) {
+	const int32_t width = sampler.srcWidth;
+	int32_t x0[4], y0[4];
+	uint32_t p00[4], p01[4], p10[4], p11[4], tail[4];
+	i4 texelX, texelY, tx, ty;
+	sampleCoords(wr, splat(sampler.xMult), sampler.wrapMode, width, texelX, tx);
+	sampleCoords(wi, splat(sampler.yMult), sampler.wrapMode, sampler.srcHeight, texelY, ty);
+	store(x0, texelX);
+	store(y0, texelY);
+	if (sampler.tilesAcross) {
+		for (int l = 0; l < 4; ++l) {
+			const uint32_t *p = sampler.srcPixels + TiledImage::index(x0[l], y0[l], sampler.tilesAcross);
+			const uint32_t right = TiledImage::rightOffset(x0[l]);
+			const uint32_t down = TiledImage::downOffset(y0[l], sampler.tilesAcross);
+			p00[l] = p[0];
+			p01[l] = p[right];
+			p10[l] = p[down];
+			p11[l] = p[down+right];
+		}
+	} else {
+		for (int l = 0; l < 4; ++l) { //no gather on SSE2/NEON, so fetch the corners a lane at a time
+			const uint32_t *p = sampler.srcPixels + y0[l]*width + x0[l];
+			p00[l] = p[0];
+			p01[l] = p[1];
+			p10[l] = p[width];
+			p11[l] = p[width+1];
+		}
+	}
+	if (remaining >= 4) {
+		bilerpStore(dest, p00, p01, p10, p11, tx, ty);
+	} else {
+		bilerpStore(tail, p00, p01, p10, p11, tx, ty);
+		for (int l = 0; l < remaining; ++l) {
+			dest[l] = tail[l];
+		}
+	}
+}
+
+//Save w as 16.16 (re, im) pairs; poles (and NaNs, on SSE) end up at the clamp rather than overflowing
+static inline void storeCoords(const f4 wr, const f4 wi, const int remaining, int32_t *coords) {
+	const f4 hi = splat(MAX_W), lo = splat(-MAX_W), scale = splat(FLOAT_TO_FIX);
+	int32_t re[4], im[4];
+	store(re, truncToInt(max(min(wr, hi), lo) * scale));
+	store(im, truncToInt(max(min(wi, hi), lo) * scale));
+	for (int l = 0; l < 4 && l < remaining; ++l) {
+		coords[2*l] = re[l];
+		coords[2*l+1] = im[l];
+	}
+}
+
+//N(z)/D(z) by Horner's scheme, for a map whose multiplied-out form is usable: one division in place of one per factor
+static inline void rationalSimd4(const VectorMap& map, const f4 zr, const f4 zi, f4 &wr, f4 &wi) {
+	const f4 zero = splat(0.0f);
+	const f4 guard = splat(FIX_TO_FLOAT);
+	f4 nr = splat(map.numRe[0]), ni = splat(map.numIm[0]);
+	f4 er = splat(map.denRe[0]), ei = splat(map.denIm[0]);
+	for (int k = 1; k <= map.degree; ++k) {
+		const f4 tn = nr*zr - ni*zi + splat(map.numRe[k]);
+		ni = nr*zi + ni*zr + splat(map.numIm[k]);
+		nr = tn;
+		const f4 te = er*zr - ei*zi + splat(map.denRe[k]);
+		ei = er*zi + ei*zr + splat(map.denIm[k]);
+		er = te;
+	}
+	er = er + select((er == zero) & (ei == zero), guard, zero);
+	const f4 inv = recip(er*er + ei*ei);
+	wr = (nr*er + ni*ei) * inv;
+	wi = (ni*er - nr*ei) * inv;
+}
+
+//w = map(z) for four z at once
+static inline void mapSimd4(const VectorMap& map, const f4 zr, const f4 zi, f4 &wr, f4 &wi) {
+	if (map.degree > 0) {
+		rationalSimd4(map, zr, zi, wr, wi);
+		return;
+	}
+	const f4 zero = splat(0.0f);
+	const f4 guard = splat(FIX_TO_FLOAT); //same nudge as divZeroGuard
+	wr = splat(1.0f);
+	wi = zero;
+	for (int k = 0; k < map.numFactors; ++k) {
+		const f4 ar = splat(map.aRe[k]), ai = splat(map.aIm[k]);
+		const f4 br = splat(map.bRe[k]), bi = splat(map.bIm[k]);
+		const f4 cr = splat(map.cRe[k]), ci = splat(map.cIm[k]);
+		const f4 dr = splat(map.dRe[k]), di = splat(map.dIm[k]);
+		const f4 nr = ar*zr - ai*zi + br;
+		const f4 ni = ar*zi + ai*zr + bi;
+		const f4 er0 = cr*zr - ci*zi + dr;
+		const f4 ei = cr*zi + ci*zr + di;
+		const f4 er = er0 + select((er0 == zero) & (ei == zero), guard, zero);
+		const f4 inv = recip(er*er + ei*ei);
+		const f4 qr = (nr*er + ni*ei) * inv;
+		const f4 qi = (ni*er - nr*ei) * inv;
+		const f4 t = wr*qr - wi*qi;
+		wi = wr*qi + wi*qr;
+		wr = t;
+	}
+}
+
+//The map's partial product from z on, if it has one
+static inline const int32_t *partialRow(const VectorMap& map, const int32_t zre, const int32_t zim) {
+	if (!map.partial) {
+		return 0;
+	}
+	return map.partial + 2*((size_t)gridIndex(zim, map.partialHeight)*map.partialWidth + gridIndex(zre, map.partialWidth));
+}
+
+//w times four pixels' worth of partial product (or fewer, repeating the last, so as not to read past the row)
+static inline void timesPartial(const int32_t *partial, const int remaining, f4 &wr, f4 &wi) {
+	i4 re, im;
+	if (remaining >= 4) {
+		loadPairs(partial, re, im);
+	} else {
+		int32_t tail[8];
+		for (int l = 0; l < 4; ++l) {
+			const int i = l < remaining ? l : remaining - 1;
+			tail[2*l] = partial[2*i];
+			tail[2*l+1] = partial[2*i+1];
+		}
+		loadPairs(tail, re, im);
+	}
+	const f4 pr = toFloat(re) * splat(FIX_TO_FLOAT);
+	const f4 pi = toFloat(im) * splat(FIX_TO_FLOAT);
+	const f4 t = wr*pr - wi*pi;
+	wi = wr*pi + wi*pr;
+	wr = t;
+}
+
+static void pullbackRowSimd4(const VectorMap& map, const VectorSampler& sampler, const int32_t zre, const int32_t zim, const int32_t reInc, const int count, uint32_t *dest, int32_t *coordsOut) {
+	const int32_t laneOffsets[4] = { 0, reInc, 2*reInc, 3*reInc };
+	const i4 lanes = load(laneOffsets);
+	const f4 zi = splat(zim * FIX_TO_FLOAT);
+	const int32_t *partial = partialRow(map, zre, zim);
+
+	for (int u = 0; u < count; u += 4) {
+		const f4 zr = toFloat(splat(zre + u*reInc) + lanes) * splat(FIX_TO_FLOAT);
+		f4 wr, wi;
+		mapSimd4(map, zr, zi, wr, wi);
+		if (partial) {
+			timesPartial(partial + 2*u, count - u, wr, wi);
+		}
+		sampleStore(sampler, wr, wi, count - u, dest + u);
+		if (coordsOut) {
+			storeCoords(wr, wi, count - u, coordsOut + 2*u);
+		}
+	}
+}
+
+static void mapRowSimd4(const VectorMap& map, const int32_t zre, const int32_t zim, const int32_t reInc, const int count, int32_t *coordsOut) {
+	const int32_t laneOffsets[4] = { 0, reInc, 2*reInc, 3*reInc };
+	const i4 lanes = load(laneOffsets);
+	const f4 zi = splat(zim * FIX_TO_FLOAT);
+	const int32_t *partial = partialRow(map, zre, zim);
+
+	for (int u = 0; u < count; u += 4) {
+		const f4 zr = toFloat(splat(zre + u*reInc) + lanes) * splat(FIX_TO_FLOAT);
+		f4 wr, wi;
+		mapSimd4(map, zr, zi, wr, wi);
+		if (partial) {
+			timesPartial(partial + 2*u, count - u, wr, wi);
+		}
+		storeCoords(wr, wi, count - u, coordsOut + 2*u);
+	}
+}
+
+static void resampleRowSimd4(const VectorSampler& sampler, const int32_t *coords, const int count, uint32_t *dest) {
+	const f4 scale = splat(FIX_TO_FLOAT);
+	int32_t tail[8];
+	i4 re, im;
+	for (int u = 0; u < count; u += 4) {
+		if (count - u >= 4) {
+			loadPairs(coords + 2*u, re, im);
+		} else {
+			for (int l = 0; l < 4; ++l) { //repeat the last pixel to fill out a short batch
+				const int i = u + l < count ? u + l : count - 1;
+				tail[2*l] = coords[2*i];
+				tail[2*l+1] = coords[2*i+1];
+			}
+			loadPairs(tail, re, im);
+		}
+		sampleStore(sampler, toFloat(re) * scale, toFloat(im) * scale, count - u, dest + u);
+	}
+}
+
+extern const RowKernel simd4RowKernel = pullbackRowSimd4;
+extern const ResampleKernel simd4ResampleKernel = resampleRowSimd4;
+extern const MapKernel simd4MapKernel = mapRowSimd4;
+extern const char *const simd4IsaName = SIMD4_ISA;
+
+#else
+
+extern const RowKernel simd4RowKernel = 0;
+extern const ResampleKernel simd4ResampleKernel = 0;
+extern const MapKernel simd4MapKernel = 0;
+extern const char *const simd4IsaName = "none";
+
+#endif
@@ -0,0 +1,60 @@
+/*
+ * benchfixtures.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "benchfixtures.h"
+
+using namespace std;
+
+const float MAP_ZEROS[2*BlaschkeMap::max_factors] = {
+	0.0f, 0.0f, 0.5f, 0.3f, -0.4f, 0.6f, 0.2f, -0.7f, -0.6f, -0.2f, 0.8f, 0.1f
+};
+
+vector<uint32_t> makeSourceImage(const uint32_t width, const uint32_t height, const bool withDetail) {
+	vector<uint32_t> pixels(width*height);
+	for (uint32_t y = 0; y < height; ++y) {
+		for (uint32_t x = 0; x < width; ++x) {
+			const uint32_t blue = withDetail ? ((x^y) & 0x3F) << 2 : ((x+y)*255/(width+height));
+			pixels[y*width+x] = 0xFF000000u | ((x*255/width) << 16) | ((y*255/height) << 8) | blue;
+		}
+	}
+	return pixels;
+}
+
+BlaschkeMap makeMap(const int numParams) {
+	//same construction as Java_org_mtc_conform_ConformLib_pullbackBitmap
+	const MobiusTrans affine(complex<fixpoint>(fixpoint(MAP_SCALE)), complex<fixpoint>(fixpoint(MAP_PIVOT_X), fixpoint(MAP_PIVOT_Y)), ZERO, ONE);
+	BlaschkeMap blas;
+	for (int i = 0; i < numParams; ++i) {
+		blas *= MobiusTrans::hyperbolicIsometry(complex<fixpoint>(fixpoint(MAP_ZEROS[2*i]), fixpoint(MAP_ZEROS[2*i+1])));
+	}
+	return BlaschkeMap(blas|-affine);
+}
+
+BlaschkeMapT<float> makeFloatMap(const int numParams) {
+	return BlaschkeMapT<float>(MAP_ZEROS, numParams, MAP_SCALE, MAP_PIVOT_X, MAP_PIVOT_Y);
+}
+
+BlaschkeMapT<double> makeDoubleMap(const int numParams) {
+	return BlaschkeMapT<double>(MAP_ZEROS, numParams, MAP_SCALE, MAP_PIVOT_X, MAP_PIVOT_Y);
+}
+
+vector<float> makeManyZeros(const int numZeros) {
+	vector<float> zeros;
+	uint32_t seed = 12345;
+	while ((int)zeros.size() < 2*numZeros) {
+		float xy[2];
+		for (int i = 0; i < 2; ++i) {
+			seed = seed*1664525u + 1013904223u; //the same on every platform, unlike <random>'s distributions
+			xy[i] = (seed >> 8)*(2.0f/(1 << 24)) - 1.0f;
+		}
+		if (xy[0]*xy[0] + xy[1]*xy[1] < 0.95f*0.95f) {
+			zeros.push_back(xy[0]);
+			zeros.push_back(xy[1]);
+		}
+	}
+	return zeros;
+}
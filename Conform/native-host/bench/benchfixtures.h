@@ -0,0 +1,41 @@
+/*
+ * benchfixtures.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * Deterministic inputs shared by the benchmarks and kernel_check, so numbers are comparable between commits.
+ */
+
+#ifndef BENCHFIXTURES_H_
+#define BENCHFIXTURES_H_
+
+#include <stdint.h>
+#include <vector>
+#include "bitmapper.h"
+#include "floatmap.h"
+
+//A synthetic ARGB_8888 source image: smooth gradients, plus a one-texel checker in blue if withDetail is set
+//(detail makes the memory access pattern realistic, but turns sub-texel coordinate differences into big color ones)
+std::vector<uint32_t> makeSourceImage(const uint32_t width, const uint32_t height, const bool withDetail = true);
+
+//The map the app would build for the first numParams of a fixed set of zeros, seen through a fixed zoom/pan
+BlaschkeMap makeMap(const int numParams);
+//The same map for the float and double engines
+BlaschkeMapT<float> makeFloatMap(const int numParams);
+BlaschkeMapT<double> makeDoubleMap(const int numParams);
+
+//The zoom, pan and zeros those maps are made from, as the app passes them: zeros as (re, im) pairs
+static const float MAP_SCALE = 1.3f;
+static const float MAP_PIVOT_X = 0.1f;
+static const float MAP_PIVOT_Y = -0.05f;
+extern const float MAP_ZEROS[2*BlaschkeMap::max_factors];
+
+//numZeros zeros scattered over the disc |a| < 0.95 by a fixed generator, as (re, im) pairs: for maps with more
+//zeros than BlaschkeMap holds, seen through the same zoom and pan
+std::vector<float> makeManyZeros(const int numZeros);
+
+static const int TILE = 0;
+static const int CLAMP = 1;
+
+#endif /* BENCHFIXTURES_H_ */
@@ -0,0 +1,459 @@
+/*
+ * conform_bench.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * Microbenchmarks for the pieces of the pullback, and the whole thing at several output sizes.
+ * Throughput is reported as Mpixel/s (or Mz/s for the map on its own) so it reads the same at every size.
+ */
+
+#include <benchmark/benchmark.h>
+
+#include <atomic>
+#include <cmath>
+#include <sstream>
+
+#include "benchfixtures.h"
+#include "deepzoom.h"
+#include "expression.h"
+#include "mippyramid.h"
+#include "multipole.h"
+#include "rendercontext.h"
+#include "renderpool.h"
+#include "tiledimage.h"
+#include "vectorkernel.h"
+
+using namespace std;
+
+static const int ROW = 1024; //z values per iteration of the map benchmarks
+
+//One row's worth of z values across the unit square, as pullbackTile walks them
+static vector<complex<fixpoint> > makeRow() {
+	vector<complex<fixpoint> > zs;
+	const fixpoint inc = fixpoint(2)/fixpoint(ROW-1);
+	fixpoint zre(-1);
+	const fixpoint zim(0.3f);
+	for (int i = 0; i < ROW; ++i) {
+		zs.push_back(complex<fixpoint>(zre, zim));
+		zre += inc;
+	}
+	return zs;
+}
+
+static void setRate(benchmark::State& state, const char *name, const int64_t perIteration) {
+	state.SetItemsProcessed(state.iterations() * perIteration);
+	state.counters[name] = benchmark::Counter(state.iterations() * perIteration / 1.0e6, benchmark::Counter::kIsRate);
+}
+
+static void BM_MobiusTrans(benchmark::State& state) {
+	const MobiusTrans f(MobiusTrans::hyperbolicIsometry(complex<fixpoint>(fixpoint(0.5f), fixpoint(0.3f))));
+	const vector<complex<fixpoint> > zs(makeRow());
+	for (auto _ : state) {
+		for (int i = 0; i < ROW; ++i) {
+			benchmark::DoNotOptimize(f(zs[i]));
+		}
+	}
+	setRate(state, "Mz/s", ROW);
+}
+BENCHMARK(BM_MobiusTrans);
+
+static void BM_BlaschkeMap(benchmark::State& state) {
+	const BlaschkeMap map(makeMap(state.range(0)));
+	const vector<complex<fixpoint> > zs(makeRow());
+	for (auto _ : state) {
+		for (int i = 0; i < ROW; ++i) {
+			benchmark::DoNotOptimize(map(zs[i]));
+		}
+	}
+	setRate(state, "Mz/s", ROW);
+}
+BENCHMARK(BM_BlaschkeMap)->ArgName("factors")->DenseRange(1, BlaschkeMap::max_factors);
+
+static void BM_BilinearSample(benchmark::State& state) {
+	const int wrapMode = state.range(0);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, wrapMode);
+	const BlaschkeMap map(makeMap(3));
+	vector<complex<fixpoint> > ws(makeRow());
+	for (size_t i = 0; i < ws.size(); ++i) { //sample where a real map would send us, not along a straight line
+		ws[i] = map(ws[i]);
+	}
+	uint32_t pix;
+	for (auto _ : state) {
+		for (int i = 0; i < ROW; ++i) {
+			sampler.bilinearSample(ws[i]).write(pix);
+			benchmark::DoNotOptimize(pix);
+		}
+	}
+	state.SetLabel(wrapMode == TILE ? "TILE" : "CLAMP");
+	setRate(state, "Mpixel/s", ROW);
+}
+BENCHMARK(BM_BilinearSample)->ArgName("wrap")->Arg(TILE)->Arg(CLAMP);
+
+//Full pullbackSampledBitmap: args are output size (square), number of factors, and whether the vector kernel may be used
+static void BM_Pullback(benchmark::State& state) {
+	const int size = state.range(0);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, TILE);
+	const BlaschkeMap map(makeMap(state.range(1)));
+	vector<uint32_t> dest(size*size);
+	VectorKernel::setEnabled(state.range(2) != 0);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	VectorKernel::setEnabled(true);
+	state.SetLabel(string(state.range(2) ? VectorKernel::isaName() : "scalar"));
+	state.counters["threads"] = RenderPool::instance().numParticipants();
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_Pullback)->ArgNames({"size", "factors", "vector"})
+	->ArgsProduct({{256, 420, 1080, 2048}, {1, 6}, {0, 1}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//Resampling from saved w coordinates, as after a change of source bitmap or wrap mode: compare with BM_Pullback
+static void BM_Resample(benchmark::State& state) {
+	const int size = state.range(0);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, TILE);
+	const BlaschkeMap map(makeMap(state.range(1)));
+	vector<uint32_t> dest(size*size);
+	vector<int32_t> coords(2*size*size);
+	VectorKernel::setEnabled(state.range(2) != 0);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	viewPlane.pullbackSampledBitmap(1, &coords[0]);
+	for (auto _ : state) {
+		viewPlane.resampleBitmap(&coords[0]);
+		benchmark::ClobberMemory();
+	}
+	VectorKernel::setEnabled(true);
+	state.SetLabel(string(state.range(2) ? VectorKernel::isaName() : "scalar"));
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_Resample)->ArgNames({"size", "factors", "vector"})
+	->ArgsProduct({{420, 1080}, {1, 6}, {0, 1}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//A photo-sized source shrunk into the view, sampled directly (mip:0) or from its mip pyramid (mip:1)
+static void BM_MipPullback(benchmark::State& state) {
+	const int size = state.range(0);
+	static const vector<uint32_t> src(makeSourceImage(4000, 3000));
+	static MipPyramid mips;
+	mips.build(&src[0], 4000, 3000, 1);
+	const BitmapSampler sampler(&src[0], 4000, 3000, TILE);
+	const BlaschkeMap map(makeMap(state.range(1)));
+	vector<uint32_t> dest(size*size);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	viewPlane.setMipPyramid(state.range(2) ? &mips : 0);
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	state.SetLabel(VectorKernel::isaName());
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_MipPullback)->ArgNames({"size", "factors", "mip"})
+	->ArgsProduct({{420, 1080}, {1, 6}, {0, 1}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//A 4K (3840x2160) or 8K (7680x4320) source sampled in row-major order (tiled:0) or from a TiledImage (tiled:1).
+//Run with --benchmark_perf_counters=CYCLES,CACHE-MISSES on a CONFORM_BENCH_PERF_COUNTERS build to see the misses.
+static void BM_TiledSource(benchmark::State& state) {
+	const int size = 1080;
+	const int srcWidth = state.range(0) == 4 ? 3840 : 7680;
+	const int srcHeight = state.range(0) == 4 ? 2160 : 4320;
+	const vector<uint32_t> src(makeSourceImage(srcWidth, srcHeight));
+	TiledImage tiled;
+	const bool isTiled = state.range(2) != 0;
+	if (isTiled) {
+		tiled.build(&src[0], srcWidth, srcHeight, 1);
+	}
+	const BitmapSampler sampler(isTiled ? tiled.pixels() : &src[0], srcWidth, srcHeight, TILE, isTiled);
+	const BlaschkeMap map(makeMap(state.range(1)));
+	vector<uint32_t> dest(size*size);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	state.SetLabel(VectorKernel::isaName());
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_TiledSource)->ArgNames({"source_k", "factors", "tiled"})
+	->ArgsProduct({{4, 8}, {1, 6}, {0, 1}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//The Blaschke product of the benchmark zeros, typed in as an expression: compare with BM_Pullback/vector:0
+static void BM_ExpressionPullback(benchmark::State& state) {
+	const int size = state.range(0);
+	const int factors = state.range(1);
+	ostringstream text;
+	for (int i = 0; i < factors; ++i) {
+		text << (i ? "*" : "") << "(z-a" << i << ")/(1-conj(a" << i << ")*z)";
+	}
+	const ComplexExpression expr(text.str());
+	const float zeros[12] = { 0.0f, 0.0f, 0.5f, 0.3f, -0.4f, 0.6f, 0.2f, -0.7f, -0.6f, -0.2f, 0.8f, 0.1f };
+	const ExpressionMap map(expr, zeros, factors, 1.3f, 0.1f, -0.05f);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, TILE);
+	vector<uint32_t> dest(size*size);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	state.SetLabel(expr.isCompiled() ? "compiled" : "tree");
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_ExpressionPullback)->ArgNames({"size", "factors"})
+	->ArgsProduct({{420, 1080}, {1, 6}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//As BM_ExpressionPullback at 3 factors, with the map evaluated on a sparse grid: tolerance is in hundredths of a
+//source pixel, 0 for every pixel.  evals is the fraction of pixels the map was actually evaluated at.
+class CountingMap : public PlaneMap {
+public:
+	explicit CountingMap(const PlaneMap& map) : m_map(map), m_count(0) {}
+	void mapRow(const complex<fixpoint>& z0, const fixpoint& reInc, const int count, complex<fixpoint> *w) const {
+		m_count += count;
+		m_map.mapRow(z0, reInc, count, w);
+	}
+	int64_t count() const { return m_count; }
+private:
+	const PlaneMap& m_map;
+	mutable atomic<int64_t> m_count;
+};
+
+static void BM_AdaptivePullback(benchmark::State& state) {
+	const int size = state.range(0);
+	const ComplexExpression expr("(z-a0)/(1-conj(a0)*z)*(z-a1)/(1-conj(a1)*z)*(z-a2)/(1-conj(a2)*z)");
+	const float zeros[6] = { 0.0f, 0.0f, 0.5f, 0.3f, -0.4f, 0.6f };
+	const ExpressionMap expressionMap(expr, zeros, 3, 1.3f, 0.1f, -0.05f);
+	const CountingMap map(expressionMap);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, TILE);
+	vector<uint32_t> dest(size*size);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	viewPlane.setAdaptiveTolerance(state.range(1) / 100.0f);
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	state.counters["evals"] = (double)map.count() / ((double)state.iterations() * size * size);
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_AdaptivePullback)->ArgNames({"size", "tolerance"})
+	->ArgsProduct({{420, 1080}, {0, 10, 25, 100}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//The fixed point, float and double engines side by side (engine 0, 1, 2 as in ConformLib.Engine): one row of the
+//map on its own through mapRow, then whole frames, where the float engine also gets the vector kernel
+static const char *ENGINE_NAMES[] = { "fixed", "float", "double" };
+
+static void BM_EngineMapRow(benchmark::State& state) {
+	const int engine = state.range(1);
+	const BlaschkeMap fixedMap(makeMap(state.range(0)));
+	const BlaschkeMapT<float> floatMap(makeFloatMap(state.range(0)));
+	const BlaschkeMapT<double> doubleMap(makeDoubleMap(state.range(0)));
+	const PlaneMap& map = engine == 1 ? (const PlaneMap&)floatMap : engine == 2 ? (const PlaneMap&)doubleMap : fixedMap;
+	const complex<fixpoint> z0(fixpoint(-1), fixpoint(0.3f));
+	const fixpoint reInc(fixpoint(2)/fixpoint(ROW-1));
+	vector<complex<fixpoint> > ws(ROW);
+	for (auto _ : state) {
+		map.mapRow(z0, reInc, ROW, &ws[0]);
+		benchmark::ClobberMemory();
+	}
+	state.SetLabel(ENGINE_NAMES[engine]);
+	setRate(state, "Mz/s", ROW);
+}
+BENCHMARK(BM_EngineMapRow)->ArgNames({"factors", "engine"})
+	->ArgsProduct({{1, 3, 6}, {0, 1, 2}});
+
+//Building each engine's map, which is done once per parameter change and includes multiplying the product out
+//into a rational function and checking its conditioning.  "rational" is 1 where that form gets used.
+static void BM_EngineMapBuild(benchmark::State& state) {
+	const int engine = state.range(1);
+	int degree = 0;
+	for (auto _ : state) {
+		if (engine == 1) {
+			const BlaschkeMapT<float> map(makeFloatMap(state.range(0)));
+			degree = map.vectorMap().degree;
+		} else if (engine == 2) {
+			const BlaschkeMapT<double> map(makeDoubleMap(state.range(0)));
+			degree = map.vectorMap().degree;
+		} else {
+			const BlaschkeMap map(makeMap(state.range(0)));
+			degree = VectorMap(map).degree;
+		}
+		benchmark::DoNotOptimize(degree);
+	}
+	state.SetLabel(ENGINE_NAMES[engine]);
+	state.counters["rational"] = degree > 0;
+}
+BENCHMARK(BM_EngineMapBuild)->ArgNames({"factors", "engine"})
+	->ArgsProduct({{1, 3, 6}, {0, 1, 2}})->Unit(benchmark::kMicrosecond);
+
+static void BM_EnginePullback(benchmark::State& state) {
+	const int size = state.range(0);
+	const int engine = state.range(2);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, TILE);
+	vector<uint32_t> dest(size*size);
+	const BlaschkeMap fixedMap(makeMap(state.range(1)));
+	const BlaschkeMapT<float> floatMap(makeFloatMap(state.range(1)));
+	const BlaschkeMapT<double> doubleMap(makeDoubleMap(state.range(1)));
+	//as Java_org_mtc_conform_ConformLib_pullbackBitmap builds them
+	MappedBitmap fixedView(sampler, &dest[0], size, size, fixedMap);
+	MappedBitmap floatView(sampler, &dest[0], size, size, floatMap, floatMap.vectorMap());
+	MappedBitmap doubleView(sampler, &dest[0], size, size, doubleMap);
+	MappedBitmap& viewPlane = engine == 1 ? floatView : engine == 2 ? doubleView : fixedView;
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	state.SetLabel(string(ENGINE_NAMES[engine]) + (engine == 2 ? "/scalar" : string("/") + VectorKernel::isaName()));
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_EnginePullback)->ArgNames({"size", "factors", "engine"})
+	->ArgsProduct({{420, 1080}, {1, 6}, {0, 1, 2}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//The deep zoom map at 10^zoom, centred 1e-6 from the pole of the benchmark's second
+//zero, so the frame isn't one flat texel.  The adaptive tolerance is the app's default.
+static void BM_DeepZoomPullback(benchmark::State& state) {
+	const int size = 1080;
+	const double scale = pow(10.0, (double)state.range(0));
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const BitmapSampler sampler(&src[0], 1024, 768, TILE);
+	const VectorSampler shape(sampler);
+	const double poleRe = MAP_ZEROS[2]/(MAP_ZEROS[2]*MAP_ZEROS[2] + MAP_ZEROS[3]*MAP_ZEROS[3]);
+	const double poleIm = MAP_ZEROS[3]/(MAP_ZEROS[2]*MAP_ZEROS[2] + MAP_ZEROS[3]*MAP_ZEROS[3]);
+	const PerturbedBlaschkeMap map(MAP_ZEROS, state.range(1), poleRe + 1e-6, poleIm + 3e-7, scale, 2.0/shape.xMult, 2.0/shape.yMult);
+	vector<uint32_t> dest(size*size);
+	MappedBitmap viewPlane(sampler, &dest[0], size, size, map);
+	viewPlane.setAdaptiveTolerance(0.25f);
+	for (auto _ : state) {
+		viewPlane.pullbackSampledBitmap();
+		benchmark::ClobberMemory();
+	}
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_DeepZoomPullback)->ArgNames({"zoom", "factors"})
+	->ArgsProduct({{0, 4, 8, 12}, {2, 6}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//Panning at 1080x1080 by pan pixels a frame, alternately right and down then back, through a RenderContext with the
+//app's default settings: rendered afresh every frame, or by scrolling the last frame and rendering only what that
+//uncovers.  Mpixel/s counts the whole frame either way.
+static void BM_PanPullback(benchmark::State& state) {
+	const int size = 1080;
+	const int pan = state.range(0);
+	const bool isScrolled = state.range(1);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const ImageRef source = { const_cast<uint32_t *>(&src[0]), 1024, 768, 1 };
+	vector<uint32_t> pixels[2] = { vector<uint32_t>(size*size), vector<uint32_t>(size*size) };
+	const ImageRef dests[2] = { { &pixels[0][0], size, size, 0 }, { &pixels[1][0], size, size, 0 } };
+	const float step = 2.0f/(size-1); //z from one pixel to the next
+	RenderContext context;
+	ParamBlock block = { 1, (int32_t)state.range(2), TILE, 0, MAP_PIVOT_X, MAP_PIVOT_Y, MAP_SCALE, 0, 0, 0, 0 };
+	context.render(block, MAP_ZEROS, source, dests[0], 1);
+	int frame = 0;
+	for (auto _ : state) {
+		const int sign = frame % 2 ? -1 : 1;
+		const int dx = frame % 4 < 2 ? sign*pan : 0;
+		const int dy = frame % 4 < 2 ? 0 : sign*pan;
+		++block.version;
+		block.pivotX += dx*step;
+		block.pivotY += dy*step;
+		const ImageRef& dest = dests[(frame + 1) % 2];
+		if (isScrolled) {
+			context.renderScrolled(block, MAP_ZEROS, source, dests[frame % 2], dest, dx, dy);
+		} else {
+			context.render(block, MAP_ZEROS, source, dest, 1);
+		}
+		benchmark::ClobberMemory();
+		++frame;
+	}
+	state.SetLabel(isScrolled ? "scrolled" : "full");
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_PanPullback)->ArgNames({"pan", "scrolled", "factors"})
+	->ArgsProduct({{4, 16, 64}, {0, 1}, {6}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//Dragging a zero at 1080x1080 through a RenderContext with the app's default settings, as previews (step 4) and as
+//full frames: the same zero moving every frame, which renders from the cached product of the others (see
+//PartialProduct), against two zeros moving by turns, which has the whole map evaluated every frame
+static void BM_DragPullback(benchmark::State& state) {
+	const int size = 1080;
+	const int step = state.range(0);
+	const int numZeros = state.range(1);
+	const bool isSameZero = state.range(2);
+	const vector<uint32_t> src(makeSourceImage(1024, 768));
+	const ImageRef source = { const_cast<uint32_t *>(&src[0]), 1024, 768, 1 };
+	vector<uint32_t> pixels(size*size);
+	const ImageRef dest = { &pixels[0], size, size, 0 };
+	vector<float> zeros(numZeros > BlaschkeMap::max_factors ? makeManyZeros(numZeros) : vector<float>(MAP_ZEROS, MAP_ZEROS + 2*numZeros));
+	RenderContext context;
+	ParamBlock block = { 1, numZeros, TILE, 0, MAP_PIVOT_X, MAP_PIVOT_Y, MAP_SCALE, 0, 0, 0, 0 };
+	int frame = 0;
+	const auto drag = [&]() {
+		const int zero = isSameZero || frame % 2 == 0 ? 1 : 2;
+		zeros[2*zero] += frame % 4 < 2 ? 1e-3f : -1e-3f;
+		++block.version;
+		context.render(block, &zeros[0], source, dest, step);
+		++frame;
+	};
+	//The drag as it's under way: the first frame, then enough moves for the cache to have been filled, untimed
+	context.render(block, &zeros[0], source, dest, step);
+	drag();
+	drag();
+	for (auto _ : state) {
+		drag();
+		benchmark::ClobberMemory();
+	}
+	state.SetLabel(isSameZero ? "partial" : "whole");
+	setRate(state, "Mpixel/s", (int64_t)size*size);
+}
+BENCHMARK(BM_DragPullback)->ArgNames({"step", "zeros", "same"})
+	->ArgsProduct({{1, 4}, {6, 64}, {0, 1}})
+	->Unit(benchmark::kMillisecond)->UseRealTime();
+
+//Maps with more zeros than BlaschkeMap holds: the multipole map against working out every factor (direct), a row
+//at a time.  The multipole map's cost per z should barely move as the zeros multiply; direct's grows with them.
+static void BM_ManyZeros(benchmark::State& state) {
+	const int numZeros = state.range(0);
+	const bool isDirect = state.range(1);
+	const vector<float> zeros(makeManyZeros(numZeros));
+	const MultipoleBlaschkeMap map(&zeros[0], numZeros, MAP_SCALE, MAP_PIVOT_X, MAP_PIVOT_Y);
+	const vector<complex<fixpoint> > zs(makeRow());
+	for (auto _ : state) {
+		for (int i = 0; i < ROW; ++i) {
+			const complex<double> z(zs[i].real().intValue/65536.0, zs[i].imag().intValue/65536.0);
+			benchmark::DoNotOptimize(isDirect ? map.direct(z) : map(z));
+		}
+	}
+	state.SetLabel(isDirect ? "direct" : "multipole");
+	setRate(state, "Mz/s", ROW);
+}
+BENCHMARK(BM_ManyZeros)->ArgNames({"zeros", "direct"})
+	->ArgsProduct({{32, 64, 256, 1024}, {0, 1}});
+
+//Building the multipole map - clusters, cells and expansions - which is done once per parameter change
+static void BM_ManyZerosBuild(benchmark::State& state) {
+	const int numZeros = state.range(0);
+	const vector<float> zeros(makeManyZeros(numZeros));
+	int cells = 0;
+	for (auto _ : state) {
+		const MultipoleBlaschkeMap map(&zeros[0], numZeros, MAP_SCALE, MAP_PIVOT_X, MAP_PIVOT_Y);
+		cells = map.numCells();
+		benchmark::DoNotOptimize(cells);
+	}
+	state.counters["cells"] = cells;
+}
+BENCHMARK(BM_ManyZerosBuild)->ArgName("zeros")->Arg(32)->Arg(64)->Arg(256)->Arg(1024)
+	->Unit(benchmark::kMillisecond);
+
+BENCHMARK_MAIN();
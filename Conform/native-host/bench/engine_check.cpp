@@ -0,0 +1,349 @@
+/*
+ * engine_check.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * How far each engine's w is from the exact map, over the benchmark view at 421x421: the fixed point
+ * BlaschkeMap (16.16 factor by factor, so its error grows with the zeros), BlaschkeMapT<float> (scalar and through
+ * the vector kernel, both on the rational form where it's usable) and BlaschkeMapT<double>, against the
+ * same product worked out in long double.  Errors are in source texels of a 1024 pixel wide image, the unit the
+ * sampler turns them into.  w beyond the clamp (right next to poles) is left out.  Exits non-zero if the float
+ * or double engine is less accurate than fixed point, which is the point of them.
+ *
+ * Then the same for the multipole map, which takes over past BlaschkeMap's six zeros, with 32 to 256 zeros.  Its
+ * error is relative to w, and near the poles w moves by many texels a pixel, so there it's measured in texels of
+ * the mip level the pixel is sampled from.  Fails if it's ever more than a tenth of one out.
+ *
+ * Then panning, through a RenderContext as PullbackRenderer drives it: with each engine, frames scrolled from the
+ * last one by a run of pans left, right, up, down and diagonally (RenderContext::renderScrolled) against the same
+ * views rendered whole.  The source is a triangle wave of at most RAMP levels a texel in red and green, so a
+ * difference in w shows up in proportion.  Pixels where the view shrinks the source by more than MAX_FOOTPRINT
+ * texels are left out: that's aliasing (mipmapping's job), and a pixel scrolled from the last frame was mapped
+ * from a z a few raw units off this frame's (the pan is rounded, and the row's runs started elsewhere), which
+ * lands on other texels there.
+ * Fails if they're more than 2 levels apart with adaptive tolerance 0, or more than twice the default
+ * tolerance's worth beyond that (the two frames' interpolation grids differ).
+ *
+ * Then dragging: frames in which one zero, then two together, then another move a little each time, full size
+ * and as previews, against the same frames from a RenderContext with no frames behind it.  From the second
+ * frame of each, RenderContext multiplies the product of the zeros standing still, cached as 16.16, by the
+ * moving ones'; the same bounds.
+ */
+
+#include <algorithm>
+#include <cmath>
+#include <cstdio>
+
+#include "benchfixtures.h"
+#include "multipole.h"
+#include "rendercontext.h"
+#include "vectorkernel.h"
+
+using namespace std;
+
+static const int SIZE = 421;
+static const long double TEXEL = 2.0L/1023; //one texel of a 1024 wide source, in w
+static const long double MAX_W = 16383.0L;
+
+typedef complex<long double> cld;
+
+static const cld exactMap(const cld& z, const int factors) {
+	const cld zv((z - cld(MAP_PIVOT_X, MAP_PIVOT_Y))/(long double)MAP_SCALE);
+	cld w(1);
+	for (int i = 0; i < factors; ++i) {
+		const cld a(MAP_ZEROS[2*i], MAP_ZEROS[2*i+1]);
+		w *= (zv - a)/(1.0L - conj(a)*zv);
+	}
+	return w;
+}
+
+static const long double MAX_MULTIPOLE_ERROR = 0.1L;
+
+static const cld exactMap(const cld& z, const vector<float>& zeros, const long double pivotX = MAP_PIVOT_X, const long double pivotY = MAP_PIVOT_Y) {
+	const cld zv((z - cld(pivotX, pivotY))/(long double)MAP_SCALE);
+	cld w(1);
+	for (size_t i = 0; i < zeros.size(); i += 2) {
+		const cld a(zeros[i], zeros[i+1]);
+		w *= (zv - a)/(1.0L - conj(a)*zv);
+	}
+	return w;
+}
+
+struct Error {
+	Error() : worst(0), total(0), count(0) {}
+	void add(const long double e) {
+		worst = max(worst, e);
+		total += e;
+		++count;
+	}
+	long double worst;
+	long double total;
+	int count;
+};
+
+//The panning check's view, not square so that a pan's x and y can't be mixed up
+static const uint32_t VIEW_WIDTH = 421;
+static const uint32_t VIEW_HEIGHT = 317;
+static const int RAMP = 16; //levels a texel, in the source's red and green
+//The source: small, so that most of the view magnifies it, and a whole number of waves from the first texel to
+//the last, which tiling puts side by side
+static const uint32_t RAMP_WIDTH = 257, RAMP_HEIGHT = 193;
+static const long double RAMP_TEXEL = 2.0L/(RAMP_WIDTH-1);
+static const long double MAX_FOOTPRINT = 2.0L; //texels a pixel
+static const int PANS[][2] = { { 5, 0 }, { -9, 0 }, { 0, 7 }, { 0, -3 }, { 4, -6 }, { -11, 13 }, { 1, 1 }, { -150, 0 }, { 0, 120 } };
+static const size_t NUM_PANS = sizeof(PANS)/sizeof(PANS[0]);
+//As PullbackRenderer pans: z from one pixel to the next, across and down
+static const float STEP_X = 2.0f/(VIEW_WIDTH-1);
+static const float STEP_Y = 2.0f/(VIEW_HEIGHT-1);
+static const char *ENGINE_NAMES[] = { "fixed", "float", "double" };
+static const int DRAG_FRAMES = 10;
+
+//A source whose red and green go up and down by RAMP levels a texel, across and down: smooth enough that w a
+//fraction of a texel out is a color a few levels out, and no more
+static const vector<uint32_t> makeRampSource(const uint32_t width, const uint32_t height) {
+	const uint32_t period = 2*256/RAMP;
+	vector<uint32_t> pixels(width*height);
+	for (uint32_t y = 0; y < height; ++y) {
+		for (uint32_t x = 0; x < width; ++x) {
+			const uint32_t u = x % period, v = y % period;
+			const uint32_t red = min((u < period/2 ? u : period - u)*RAMP, 255u);
+			const uint32_t green = min((v < period/2 ? v : period - v)*RAMP, 255u);
+			pixels[y*width+x] = 0xFF000000u | (red << 16) | (green << 8);
+		}
+	}
+	return pixels;
+}
+
+//The view after the first pans of PANS
+static const ParamBlock pannedView(const size_t pans) {
+	ParamBlock block = { 1, BlaschkeMap::max_factors, TILE, 0, MAP_PIVOT_X, MAP_PIVOT_Y, MAP_SCALE, 0, 0, 0, 0 };
+	for (size_t i = 0; i < pans; ++i) {
+		++block.version;
+		block.pivotX += PANS[i][0]*STEP_X;
+		block.pivotY += PANS[i][1]*STEP_Y;
+	}
+	return block;
+}
+
+//The zeros after the first frames of a drag: zero 1 alone, then zeros 1 and 3 together, then zero 4, so that
+//RenderContext's product of the zeros standing still is filled, dropped and filled again
+static const vector<float> draggedZeros(const int frames) {
+	vector<float> zeros(MAP_ZEROS, MAP_ZEROS + 2*BlaschkeMap::max_factors);
+	for (int i = 1; i <= frames; ++i) {
+		const float d = i % 2 ? 0.011f : -0.004f;
+		if (i <= 4) {
+			zeros[2] += d;
+		} else if (i <= 7) {
+			zeros[2] += d;
+			zeros[7] -= d;
+		} else {
+			zeros[8] += d;
+			zeros[9] += d;
+		}
+	}
+	return zeros;
+}
+
+//Which pixels of a view to compare: those where a step to the next pixel, across or down, moves w by no more
+//than MAX_FOOTPRINT texels
+static const vector<bool> comparablePixels(const ParamBlock& view, const float *params) {
+	const vector<float> zeros(params, params + 2*view.numParams);
+	vector<bool> comparable(VIEW_WIDTH*VIEW_HEIGHT);
+	const cld across(2.0L/(VIEW_WIDTH-1), 0), down(0, 2.0L/(VIEW_HEIGHT-1));
+	for (uint32_t v = 0; v < VIEW_HEIGHT; ++v) {
+		for (uint32_t u = 0; u < VIEW_WIDTH; ++u) {
+			const cld z(u*across.real() - 1, v*down.imag() - 1);
+			const cld w(exactMap(z, zeros, view.pivotX, view.pivotY));
+			const long double footprint = max(abs(exactMap(z + across, zeros, view.pivotX, view.pivotY) - w),
+											  abs(exactMap(z + down, zeros, view.pivotX, view.pivotY) - w))/RAMP_TEXEL;
+			comparable[v*VIEW_WIDTH+u] = footprint <= MAX_FOOTPRINT;
+		}
+	}
+	return comparable;
+}
+
+//The most any channel of a comparable pixel differs between two images the same size.  A preview's pixels are
+//step x step blocks, each the colour sampled at its top left pixel: that's the one whose footprint counts.
+static int worstDifference(const ImageRef& a, const ImageRef& b, const vector<bool>& comparable, const uint32_t step = 1) {
+	int worst = 0;
+	for (uint32_t i = 0; i < a.width*a.height; ++i) {
+		const uint32_t u = i % a.width, v = i / a.width;
+		if (!comparable[(v - v % step)*a.width + u - u % step]) {
+			continue;
+		}
+		for (int shift = 0; shift < 32; shift += 8) {
+			worst = max(worst, abs((int)((a.pixels[i] >> shift) & 0xFF) - (int)((b.pixels[i] >> shift) & 0xFF)));
+		}
+	}
+	return worst;
+}
+
+//Pans the view by PANS, scrolling each frame from the last, and returns the most a frame differs from the same
+//view rendered whole
+static int checkScrolling(const int engine, const float tolerance, const ImageRef& source, const vector<vector<bool> >& comparable) {
+	RenderContext scrolling, whole;
+	for (RenderContext *context : { &scrolling, &whole }) {
+		context->setEngine(engine);
+		context->setAdaptiveTolerance(tolerance);
+	}
+	vector<uint32_t> pixels[3] = { vector<uint32_t>(VIEW_WIDTH*VIEW_HEIGHT), vector<uint32_t>(VIEW_WIDTH*VIEW_HEIGHT), vector<uint32_t>(VIEW_WIDTH*VIEW_HEIGHT) };
+	const ImageRef frames[2] = { { &pixels[0][0], VIEW_WIDTH, VIEW_HEIGHT, 0 }, { &pixels[1][0], VIEW_WIDTH, VIEW_HEIGHT, 0 } };
+	const ImageRef expected = { &pixels[2][0], VIEW_WIDTH, VIEW_HEIGHT, 0 };
+	scrolling.render(pannedView(0), MAP_ZEROS, source, frames[0], 1);
+	int worst = 0;
+	for (size_t i = 0; i < NUM_PANS; ++i) {
+		const ParamBlock view(pannedView(i + 1));
+		scrolling.renderScrolled(view, MAP_ZEROS, source, frames[i % 2], frames[(i + 1) % 2], PANS[i][0], PANS[i][1]);
+		whole.render(view, MAP_ZEROS, source, expected, 1);
+		worst = max(worst, worstDifference(frames[(i + 1) % 2], expected, comparable[i]));
+	}
+	return worst;
+}
+
+//Drags zeros by draggedZeros, rendering each frame at step as PullbackRenderer would, and returns the most a frame
+//differs from the same view rendered by a RenderContext with no frames behind it
+static int checkDragging(const int engine, const float tolerance, const int step, const ImageRef& source, const vector<vector<bool> >& comparable) {
+	RenderContext dragging;
+	dragging.setEngine(engine);
+	dragging.setAdaptiveTolerance(tolerance);
+	vector<uint32_t> pixels[2] = { vector<uint32_t>(VIEW_WIDTH*VIEW_HEIGHT), vector<uint32_t>(VIEW_WIDTH*VIEW_HEIGHT) };
+	const ImageRef frame = { &pixels[0][0], VIEW_WIDTH, VIEW_HEIGHT, 0 };
+	const ImageRef expected = { &pixels[1][0], VIEW_WIDTH, VIEW_HEIGHT, 0 };
+	ParamBlock view(pannedView(0));
+	vector<float> zeros(draggedZeros(0)); //moved in place, as ParamHolder's params are
+	int worst = 0;
+	for (int i = 0; i <= DRAG_FRAMES; ++i) {
+		const vector<float> moved(draggedZeros(i));
+		copy(moved.begin(), moved.end(), zeros.begin());
+		view.version = i + 1;
+		dragging.render(view, &zeros[0], source, frame, step);
+		RenderContext fresh;
+		fresh.setEngine(engine);
+		fresh.setAdaptiveTolerance(tolerance);
+		fresh.render(view, &zeros[0], source, expected, step);
+		worst = max(worst, worstDifference(frame, expected, comparable[i], step));
+	}
+	return worst;
+}
+
+int main(int argc, char **argv) {
+	const char *names[] = { "fixed", "float", "float/vector", "double" };
+	const MapKernel mapKernel = VectorKernel::mapKernel();
+	bool ok = true;
+	for (int factors = 1; factors <= BlaschkeMap::max_factors; ++factors) {
+		const BlaschkeMap fixedMap(makeMap(factors));
+		const BlaschkeMapT<float> floatMap(makeFloatMap(factors));
+		const BlaschkeMapT<double> doubleMap(makeDoubleMap(factors));
+		const VectorMap vectorMap(floatMap.vectorMap());
+		const fixpoint inc(fixpoint(2)/fixpoint(SIZE-1));
+		Error errors[4];
+		vector<complex<fixpoint> > ws[4];
+		for (int e = 0; e < 4; ++e) {
+			ws[e].resize(SIZE);
+		}
+		vector<int32_t> coords(2*SIZE);
+		for (int row = 0; row < SIZE; ++row) {
+			const complex<fixpoint> z0(fixpoint(-1), fixpoint(-1) + fixpoint(row)*inc);
+			fixedMap.mapRow(z0, inc, SIZE, &ws[0][0]);
+			floatMap.mapRow(z0, inc, SIZE, &ws[1][0]);
+			doubleMap.mapRow(z0, inc, SIZE, &ws[3][0]);
+			if (mapKernel) {
+				mapKernel(vectorMap, z0.real().intValue, z0.imag().intValue, inc.intValue, SIZE, &coords[0]);
+				for (int i = 0; i < SIZE; ++i) {
+					fixpoint re, im;
+					re.intValue = coords[2*i];
+					im.intValue = coords[2*i+1];
+					ws[2][i] = complex<fixpoint>(re, im);
+				}
+			}
+			for (int i = 0; i < SIZE; ++i) {
+				const cld z((z0.real().intValue + i*inc.intValue)/65536.0L, z0.imag().intValue/65536.0L);
+				const cld exact(exactMap(z, factors));
+				if (fabsl(exact.real()) >= MAX_W || fabsl(exact.imag()) >= MAX_W) {
+					continue;
+				}
+				for (int e = 0; e < 4; ++e) {
+					const cld w(ws[e][i].real().intValue/65536.0L, ws[e][i].imag().intValue/65536.0L);
+					errors[e].add(abs(w - exact)/TEXEL);
+				}
+			}
+		}
+		printf("factors=%d", factors);
+		for (int e = 0; e < 4; ++e) {
+			if (e != 2 || mapKernel) {
+				printf("  %s %.4Lf/%.4Lf", names[e], errors[e].total/errors[e].count, errors[e].worst);
+			}
+		}
+		printf("  (mean/worst texels)\n");
+		ok &= errors[1].total <= errors[0].total && errors[3].total <= errors[0].total;
+	}
+	printf("float and double engines %s\n", ok ? "are at least as accurate as fixed point" : "are LESS accurate than fixed point");
+
+	bool multipoleOk = true;
+	for (const int numZeros : { 32, 64, 256 }) {
+		const vector<float> zeros(makeManyZeros(numZeros));
+		const MultipoleBlaschkeMap map(&zeros[0], numZeros, MAP_SCALE, MAP_PIVOT_X, MAP_PIVOT_Y);
+		const fixpoint inc(fixpoint(2)/fixpoint(SIZE-1));
+		vector<complex<fixpoint> > ws(SIZE);
+		Error error;
+		for (int row = 0; row < SIZE; ++row) {
+			const complex<fixpoint> z0(fixpoint(-1), fixpoint(-1) + fixpoint(row)*inc);
+			map.mapRow(z0, inc, SIZE, &ws[0]);
+			for (int i = 0; i < SIZE; ++i) {
+				const cld z((z0.real().intValue + i*inc.intValue)/65536.0L, z0.imag().intValue/65536.0L);
+				const cld exact(exactMap(z, zeros));
+				if (fabsl(exact.real()) >= MAX_W || fabsl(exact.imag()) >= MAX_W) {
+					continue;
+				}
+				//in texels of the mip level a pixel this size is sampled from
+				const long double footprint = max(TEXEL, abs(exactMap(z + cld(inc.intValue/65536.0L), zeros) - exact));
+				error.add(abs(cld(ws[i].real().intValue/65536.0L, ws[i].imag().intValue/65536.0L) - exact)/footprint);
+			}
+		}
+		printf("zeros=%d  multipole %.4Lf/%.4Lf  (mean/worst texels, %d cells)\n", numZeros, error.total/error.count, error.worst, map.numCells());
+		multipoleOk &= error.worst <= MAX_MULTIPOLE_ERROR;
+	}
+	printf("multipole map %s\n", multipoleOk ? "is within a tenth of a texel" : "is MORE than a tenth of a texel out");
+
+	const vector<uint32_t> ramp(makeRampSource(RAMP_WIDTH, RAMP_HEIGHT));
+	const ImageRef rampSource = { const_cast<uint32_t *>(&ramp[0]), RAMP_WIDTH, RAMP_HEIGHT, 1 };
+	vector<vector<bool> > comparable;
+	size_t compared = 0;
+	for (size_t i = 0; i < NUM_PANS; ++i) {
+		comparable.push_back(comparablePixels(pannedView(i + 1), MAP_ZEROS));
+		compared += count(comparable.back().begin(), comparable.back().end(), true);
+	}
+	printf("panning by %d pans, comparing %.1f%% of pixels\n", (int)NUM_PANS, 100.0*compared/(NUM_PANS*VIEW_WIDTH*VIEW_HEIGHT));
+	bool scrollOk = true;
+	for (int engine = RenderContext::ENGINE_FIXED; engine <= RenderContext::ENGINE_DOUBLE; ++engine) {
+		for (const float tolerance : { 0.0f, 0.25f }) {
+			const int bound = 2 + (int)ceilf(2*tolerance*RAMP);
+			const int worst = checkScrolling(engine, tolerance, rampSource, comparable);
+			printf("scrolled %s, tolerance %.2f: worst %d levels from rendered whole (bound %d)\n", ENGINE_NAMES[engine], tolerance, worst, bound);
+			scrollOk &= worst <= bound;
+		}
+	}
+	printf("scrolled frames %s\n", scrollOk ? "match frames rendered whole" : "DON'T match frames rendered whole");
+
+	vector<vector<bool> > dragComparable;
+	compared = 0;
+	for (int i = 0; i <= DRAG_FRAMES; ++i) {
+		dragComparable.push_back(comparablePixels(pannedView(0), &draggedZeros(i)[0]));
+		compared += count(dragComparable.back().begin(), dragComparable.back().end(), true);
+	}
+	printf("dragging for %d frames, comparing %.1f%% of pixels\n", DRAG_FRAMES, 100.0*compared/((DRAG_FRAMES + 1)*VIEW_WIDTH*VIEW_HEIGHT));
+	bool dragOk = true;
+	for (int engine = RenderContext::ENGINE_FIXED; engine <= RenderContext::ENGINE_DOUBLE; ++engine) {
+		for (const float tolerance : { 0.0f, 0.25f }) {
+			for (const int step : { 1, 4 }) {
+				const int bound = 2 + (int)ceilf(2*tolerance*RAMP);
+				const int worst = checkDragging(engine, tolerance, step, rampSource, dragComparable);
+				printf("dragged %s, tolerance %.2f, step %d: worst %d levels from rendered fresh (bound %d)\n", ENGINE_NAMES[engine], tolerance, step, worst, bound);
+				dragOk &= worst <= bound;
+			}
+		}
+	}
+	printf("dragged frames %s\n", dragOk ? "match frames rendered fresh" : "DON'T match frames rendered fresh");
+	return ok && multipoleOk && scrollOk && dragOk ? 0 : 1;
+}
@@ -0,0 +1,73 @@
+/*
+ * kernel_check.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ *
+ * Renders the benchmark scenes with the scalar path and with the vector kernel and compares them.  The vector
+ * kernel works in float with 8 bit blend weights, so it can't be bit-identical; it has to stay within
+ * TOLERANCE levels per channel everywhere except a sliver of pixels (at wrap seams and right next to poles).
+ * Exits non-zero if it doesn't.
+ *
+ * The source is smooth on purpose: with several factors the 16.16 scalar map is itself only good to about
+ * 1e-3, and on a detailed image that alone moves colors by far more than TOLERANCE.
+ */
+
+#include <cstdio>
+#include <cstdlib>
+
+#include "benchfixtures.h"
+#include "vectorkernel.h"
+
+using namespace std;
+
+static const int TOLERANCE = 4;
+static const double MAX_OUTLIER_FRACTION = 0.001;
+
+static int channelDelta(const uint32_t a, const uint32_t b) {
+	int delta = 0;
+	for (int shift = 0; shift < 32; shift += 8) {
+		delta = max(delta, abs((int)((a >> shift) & 0xFF) - (int)((b >> shift) & 0xFF)));
+	}
+	return delta;
+}
+
+static vector<uint32_t> render(const BitmapSampler& sampler, const BlaschkeMap& map, const int size, const bool useVector) {
+	vector<uint32_t> dest(size*size);
+	VectorKernel::setEnabled(useVector);
+	MappedBitmap(sampler, &dest[0], size, size, map).pullbackSampledBitmap();
+	VectorKernel::setEnabled(true);
+	return dest;
+}
+
+int main(int argc, char **argv) {
+	if (!VectorKernel::rowKernel()) {
+		printf("No vector kernel on this CPU - nothing to check\n");
+		return 0;
+	}
+	const vector<uint32_t> src(makeSourceImage(1024, 768, false));
+	bool ok = true;
+	for (int wrapMode = TILE; wrapMode <= CLAMP; ++wrapMode) {
+		const BitmapSampler sampler(&src[0], 1024, 768, wrapMode);
+		for (int factors = 1; factors <= BlaschkeMap::max_factors; ++factors) {
+			const BlaschkeMap map(makeMap(factors));
+			const int size = 421; //deliberately not a multiple of 4 or of the tile size
+			const vector<uint32_t> scalar(render(sampler, map, size, false));
+			const vector<uint32_t> vectored(render(sampler, map, size, true));
+			int worst = 0;
+			int outliers = 0;
+			for (size_t i = 0; i < scalar.size(); ++i) {
+				const int delta = channelDelta(scalar[i], vectored[i]);
+				worst = max(worst, delta);
+				outliers += delta > TOLERANCE;
+			}
+			const double outlierFraction = (double)outliers / scalar.size();
+			const bool pass = outlierFraction <= MAX_OUTLIER_FRACTION;
+			printf("%s %-5s factors=%d  outliers=%d (%.4f%%)  worst=%d\n", pass ? "ok  " : "FAIL",
+					wrapMode == TILE ? "TILE" : "CLAMP", factors, outliers, 100.0*outlierFraction, worst);
+			ok &= pass;
+		}
+	}
+	printf("%s kernel %s\n", VectorKernel::isaName(), ok ? "agrees with scalar path" : "DISAGREES with scalar path");
+	return ok ? 0 : 1;
+}
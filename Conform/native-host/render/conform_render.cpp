@@ -0,0 +1,189 @@
+/*
+ * conform_render.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+//Renders saved views of the pullback to PNG files at any size, off the device:
+//
+//	conform_render [options] source.png views.txt out_
+//
+//writes out_0000.png, out_0001.png, ... a frame per view.  Each non-blank line of views.txt that isn't a # comment
+//is one view, as the app's ComplexAffineTrans and zeros have it:
+//
+//	pivotX pivotY scale  re0 im0  re1 im1 ...
+//
+//or, for a deep zoom view (see ConformLib.pullbackDeep()), as DeepZoomTrans has it:
+//
+//	deep centreRe centreIm scale  re0 im0  re1 im1 ...
+//
+//The picture is rendered and written a band of rows at a time, so the memory needed is the source, its mip
+//pyramid and one band, whatever the output size.  Options:
+//
+//	--size WxH			output size, 4096x4096 by default; the view square is stretched to fit if W != H
+//	--band N			rows per band, 256 by default
+//	--engine E			fixed (the default), float or double; see ConformLib.Engine
+//	--clamp				clamp the source at its edges rather than tiling it
+//	--tiled				sample a tiled copy of the source; see ConformLib.setTiledSource()
+//	--no-mipmaps		sample the source only, never its mip pyramid
+//	--tolerance T		the adaptive grid's tolerance in source pixels, 0.25 by default; 0 evaluates every pixel
+//	--compression N		zlib level 0-9, 6 by default
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <chrono>
+#include <fstream>
+#include <sstream>
+#include <string>
+#include <vector>
+
+#include "rendercontext.h"
+#include "pngio.h"
+
+using namespace std;
+
+//A line of the views file.  The zeros are kept in a vector of their own so MapSpec can point into it.
+struct View {
+	bool isDeepZoom;
+	double pivotRe, pivotIm, scale;
+	vector<float> params;
+};
+
+static bool readViews(const string& path, vector<View>& views) {
+	ifstream in(path.c_str());
+	if (!in) {
+		fprintf(stderr, "Can't open %s\n", path.c_str());
+		return false;
+	}
+	string line;
+	for (int lineNumber = 1; getline(in, line); ++lineNumber) {
+		const size_t comment = line.find('#');
+		if (comment != string::npos) {
+			line.erase(comment);
+		}
+		istringstream words(line);
+		string first;
+		if (!(words >> first)) {
+			continue;
+		}
+		View view;
+		view.isDeepZoom = first == "deep";
+		if (!view.isDeepZoom) {
+			words.clear();
+			words.str(line);
+		}
+		float x;
+		if (!(words >> view.pivotRe >> view.pivotIm >> view.scale)) {
+			fprintf(stderr, "%s:%d: expected the view's pivot (or centre) and scale\n", path.c_str(), lineNumber);
+			return false;
+		}
+		while (words >> x) {
+			view.params.push_back(x);
+		}
+		if (!words.eof() || view.params.size() % 2 != 0) {
+			fprintf(stderr, "%s:%d: expected the zeros as re im pairs\n", path.c_str(), lineNumber);
+			return false;
+		}
+		views.push_back(view);
+	}
+	return true;
+}
+
+static void usage() {
+	fprintf(stderr, "usage: conform_render [--size WxH] [--band N] [--engine fixed|float|double] [--clamp] [--tiled] [--no-mipmaps]\n"
+					"                      [--tolerance T] [--compression N] source.png views.txt out_prefix\n");
+}
+
+int main(int argc, char **argv) {
+	uint32_t width = 4096, height = 4096, bandRows = 256;
+	int engine = RenderContext::ENGINE_FIXED, wrapMode = 0, compression = 6;
+	bool isTiled = false, isMipmapping = true;
+	float tolerance = 0.25f;
+	vector<string> files;
+	for (int i = 1; i < argc; ++i) {
+		const string arg(argv[i]);
+		const bool hasValue = i + 1 < argc;
+		if (arg == "--size" && hasValue && sscanf(argv[i+1], "%ux%u", &width, &height) == 2) {
+			++i;
+		} else if (arg == "--band" && hasValue) {
+			char *end;
+			const long rows = strtol(argv[++i], &end, 10); //not atoi into bandRows, where -1 would wrap round to 4 billion
+			if (*end || rows <= 0) {
+				usage();
+				return 2;
+			}
+			bandRows = (uint32_t)min(rows, 1L << 20); //capped to the height too, once that is known
+		} else if (arg == "--engine" && hasValue) {
+			const string name(argv[++i]);
+			engine = name == "float" ? RenderContext::ENGINE_FLOAT : name == "double" ? RenderContext::ENGINE_DOUBLE : RenderContext::ENGINE_FIXED;
+		} else if (arg == "--clamp") {
+			wrapMode = 1;
+		} else if (arg == "--tiled") {
+			isTiled = true;
+		} else if (arg == "--no-mipmaps") {
+			isMipmapping = false;
+		} else if (arg == "--tolerance" && hasValue) {
+			tolerance = atof(argv[++i]);
+		} else if (arg == "--compression" && hasValue) {
+			compression = atoi(argv[++i]);
+		} else if (arg.compare(0, 2, "--") == 0) {
+			usage();
+			return 2;
+		} else {
+			files.push_back(arg);
+		}
+	}
+	if (files.size() != 3 || width < 2 || height < 2) {
+		usage();
+		return 2;
+	}
+
+	vector<uint32_t> sourcePixels;
+	uint32_t sourceWidth, sourceHeight;
+	string error;
+	if (!readImage(files[0], sourcePixels, sourceWidth, sourceHeight, error)) {
+		fprintf(stderr, "%s\n", error.c_str());
+		return 1;
+	}
+	vector<View> views;
+	if (!readViews(files[1], views)) {
+		return 1;
+	}
+
+	RenderContext context;
+	context.setEngine(engine);
+	context.setTiledSource(isTiled);
+	context.setMipmapping(isMipmapping);
+	context.setAdaptiveTolerance(tolerance);
+	const ImageRef source = { sourcePixels.data(), sourceWidth, sourceHeight, 1 };
+	bandRows = min(bandRows, height); //a band no taller than the picture
+	vector<uint32_t> bandPixels((size_t)width*bandRows);
+	for (size_t f = 0; f < views.size(); ++f) {
+		const chrono::steady_clock::time_point start = chrono::steady_clock::now();
+		const View& view = views[f];
+		const MapSpec spec = { view.params.data(), (int)view.params.size()/2, (float)view.pivotRe, (float)view.pivotIm, (float)view.scale,
+							   wrapMode, view.isDeepZoom, view.pivotRe, view.pivotIm, view.scale, engine };
+		char name[16];
+		snprintf(name, sizeof(name), "%04u.png", (unsigned)f);
+		const string path(files[2] + name);
+		PngWriter png;
+		if (!png.open(path, width, height, compression)) {
+			fprintf(stderr, "Can't write %s\n", path.c_str());
+			return 1;
+		}
+		for (uint32_t top = 0; top < height; top += bandRows) {
+			const ImageRef band = { bandPixels.data(), width, min(bandRows, height - top), 0 };
+			context.renderBand(spec, source, band, height, top);
+			png.writeRows(band.pixels, band.height);
+		}
+		if (!png.close()) {
+			fprintf(stderr, "Error writing %s\n", path.c_str());
+			return 1;
+		}
+		const double seconds = chrono::duration<double>(chrono::steady_clock::now() - start).count();
+		fprintf(stderr, "%s: %ux%u in %.2fs\n", path.c_str(), width, height, seconds);
+	}
+	return 0;
+}
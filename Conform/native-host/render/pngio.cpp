@@ -0,0 +1,309 @@
+/*
+ * pngio.cpp
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#include "pngio.h"
+
+#include <string.h>
+#include <algorithm>
+#include <cctype>
+#include <cstdlib>
+#include <fstream>
+#include <iterator>
+
+using namespace std;
+
+static const unsigned char PNG_SIGNATURE[8] = { 137, 'P', 'N', 'G', '\r', '\n', 26, '\n' };
+static const size_t IDAT_SIZE = 1 << 16;
+
+static uint32_t readBigEndian(const unsigned char *p) {
+	return (uint32_t)p[0] << 24 | (uint32_t)p[1] << 16 | (uint32_t)p[2] << 8 | p[3];
+}
+
+static void putBigEndian(unsigned char *p, const uint32_t x) {
+	p[0] = x >> 24;
+	p[1] = x >> 16;
+	p[2] = x >> 8;
+	p[3] = x;
+}
+
+static unsigned char premultiply(const unsigned char c, const unsigned char a) {
+	return (c*a + 127)/255;
+}
+
+static unsigned char unpremultiply(const unsigned char c, const unsigned char a) {
+	return a == 0 ? 0 : min(255, (c*255 + a/2)/a);
+}
+
+static unsigned char paeth(const int a, const int b, const int c) {
+	const int p = a + b - c;
+	const int pa = abs(p - a), pb = abs(p - b), pc = abs(p - c);
+	return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+}
+
+//Undo a row's filter in place, given the row above (unfiltered, zeros for the first row)
+static bool unfilter(const int type, unsigned char *row, const unsigned char *above, const size_t length, const int bpp) {
+	switch (type) {
+	case 0:
+		return true;
+	case 1:
+		for (size_t i = bpp; i < length; ++i) {
+			row[i] += row[i-bpp];
+		}
+		return true;
+	case 2:
+		for (size_t i = 0; i < length; ++i) {
+			row[i] += above[i];
+		}
+		return true;
+	case 3:
+		for (size_t i = 0; i < length; ++i) {
+			row[i] += ((i >= (size_t)bpp ? row[i-bpp] : 0) + above[i])/2;
+		}
+		return true;
+	case 4:
+		for (size_t i = 0; i < length; ++i) {
+			row[i] += paeth(i >= (size_t)bpp ? row[i-bpp] : 0, above[i], i >= (size_t)bpp ? above[i-bpp] : 0);
+		}
+		return true;
+	default:
+		return false;
+	}
+}
+
+static bool readPng(const vector<unsigned char>& file, vector<uint32_t>& pixels, uint32_t& width, uint32_t& height, string& error) {
+	size_t at = sizeof(PNG_SIGNATURE);
+	int depth = 0, colourType = -1, interlace = 0;
+	vector<unsigned char> deflated;
+	while (at + 12 <= file.size()) {
+		const uint32_t length = readBigEndian(&file[at]);
+		const string type(reinterpret_cast<const char *>(&file[at+4]), 4);
+		if (at + 12 + length > file.size()) {
+			break;
+		}
+		const unsigned char *data = &file[at+8];
+		if (type == "IHDR" && length >= 13) {
+			width = readBigEndian(data);
+			height = readBigEndian(data+4);
+			depth = data[8];
+			colourType = data[9];
+			interlace = data[12];
+		} else if (type == "IDAT") {
+			deflated.insert(deflated.end(), data, data + length);
+		} else if (type == "IEND") {
+			break;
+		}
+		at += 12 + length;
+	}
+	const int channels = colourType == 0 ? 1 : colourType == 2 ? 3 : colourType == 4 ? 2 : colourType == 6 ? 4 : 0;
+	if (depth != 8 || channels == 0 || interlace != 0) {
+		error = "only 8 bit, non-interlaced greyscale, RGB and RGBA PNGs are supported";
+		return false;
+	}
+	if (width == 0 || height == 0) {
+		error = "no image header";
+		return false;
+	}
+	const size_t stride = (size_t)width*channels;
+	uLongf inflatedSize = (stride + 1)*height;
+	vector<unsigned char> inflated(inflatedSize);
+	if (uncompress(inflated.data(), &inflatedSize, deflated.data(), deflated.size()) != Z_OK || inflatedSize != inflated.size()) {
+		error = "corrupt image data";
+		return false;
+	}
+	pixels.resize((size_t)width*height);
+	vector<unsigned char> above(stride, 0);
+	for (uint32_t y = 0; y < height; ++y) {
+		unsigned char *row = &inflated[y*(stride + 1)];
+		if (!unfilter(row[0], row + 1, above.data(), stride, channels)) {
+			error = "corrupt image data";
+			return false;
+		}
+		copy(row + 1, row + 1 + stride, above.begin());
+		unsigned char *out = reinterpret_cast<unsigned char *>(&pixels[(size_t)y*width]);
+		for (uint32_t x = 0; x < width; ++x, out += 4) {
+			const unsigned char *in = row + 1 + x*channels;
+			const unsigned char a = channels == 2 ? in[1] : channels == 4 ? in[3] : 255;
+			out[0] = premultiply(in[0], a);
+			out[1] = premultiply(channels >= 3 ? in[1] : in[0], a);
+			out[2] = premultiply(channels >= 3 ? in[2] : in[0], a);
+			out[3] = a;
+		}
+	}
+	return true;
+}
+
+//The next number in a PPM header, skipping whitespace and comments
+static bool readPpmNumber(const vector<unsigned char>& file, size_t& at, uint32_t& n) {
+	for (;;) {
+		while (at < file.size() && isspace(file[at])) {
+			++at;
+		}
+		if (at < file.size() && file[at] == '#') {
+			while (at < file.size() && file[at] != '\n') {
+				++at;
+			}
+		} else {
+			break;
+		}
+	}
+	if (at >= file.size() || !isdigit(file[at])) {
+		return false;
+	}
+	n = 0;
+	while (at < file.size() && isdigit(file[at])) {
+		n = 10*n + (file[at++] - '0');
+	}
+	return true;
+}
+
+static bool readPpm(const vector<unsigned char>& file, vector<uint32_t>& pixels, uint32_t& width, uint32_t& height, string& error) {
+	size_t at = 2;
+	uint32_t maxValue;
+	if (!readPpmNumber(file, at, width) || !readPpmNumber(file, at, height) || !readPpmNumber(file, at, maxValue) || maxValue != 255) {
+		error = "only binary PPMs with a maxval of 255 are supported";
+		return false;
+	}
+	++at; //the single whitespace character before the raster
+	if (at + (size_t)width*height*3 > file.size()) {
+		error = "truncated image data";
+		return false;
+	}
+	pixels.resize((size_t)width*height);
+	unsigned char *out = reinterpret_cast<unsigned char *>(pixels.data());
+	for (size_t i = 0; i < pixels.size(); ++i, out += 4) {
+		copy(&file[at + 3*i], &file[at + 3*i] + 3, out);
+		out[3] = 255;
+	}
+	return true;
+}
+
+bool readImage(const string& path, vector<uint32_t>& pixels, uint32_t& width, uint32_t& height, string& error) {
+	ifstream in(path.c_str(), ios::binary);
+	if (!in) {
+		error = "can't open " + path;
+		return false;
+	}
+	const vector<unsigned char> file((istreambuf_iterator<char>(in)), istreambuf_iterator<char>());
+	width = height = 0;
+	if (file.size() >= sizeof(PNG_SIGNATURE) && equal(PNG_SIGNATURE, PNG_SIGNATURE + sizeof(PNG_SIGNATURE), file.begin())) {
+		return readPng(file, pixels, width, height, error);
+	}
+	if (file.size() >= 2 && file[0] == 'P' && file[1] == '6') {
+		return readPpm(file, pixels, width, height, error);
+	}
+	error = path + " is neither a PNG nor a binary PPM";
+	return false;
+}
+
+PngWriter::PngWriter() : m_file(0), m_isDeflating(false), m_width(0), m_isOk(false) {
+	memset(&m_stream, 0, sizeof(m_stream));
+}
+
+PngWriter::~PngWriter() {
+	if (m_file) {
+		close();
+	}
+}
+
+bool PngWriter::open(const string& path, const uint32_t width, const uint32_t height, const int compression) {
+	m_file = fopen(path.c_str(), "wb");
+	if (!m_file) {
+		return false;
+	}
+	m_isOk = true;
+	m_width = width;
+	fwrite(PNG_SIGNATURE, 1, sizeof(PNG_SIGNATURE), m_file);
+	unsigned char header[13];
+	putBigEndian(header, width);
+	putBigEndian(header + 4, height);
+	header[8] = 8; //bits per channel
+	header[9] = 6; //RGBA
+	header[10] = header[11] = header[12] = 0; //deflate, adaptive filtering, not interlaced
+	writeChunk("IHDR", header, sizeof(header));
+	memset(&m_stream, 0, sizeof(m_stream));
+	m_isDeflating = deflateInit(&m_stream, compression) == Z_OK;
+	m_isOk = m_isDeflating && m_isOk;
+	m_previous.assign((size_t)width*4, 0);
+	m_row.resize((size_t)width*4);
+	m_filtered.resize((size_t)width*4 + 1);
+	m_out.resize(IDAT_SIZE);
+	m_stream.next_out = m_out.data();
+	m_stream.avail_out = m_out.size();
+	return m_isOk;
+}
+
+bool PngWriter::writeRows(const uint32_t *pixels, const uint32_t numRows) {
+	for (uint32_t y = 0; y < numRows && m_isOk; ++y) {
+		const unsigned char *in = reinterpret_cast<const unsigned char *>(pixels + (size_t)y*m_width);
+		for (size_t i = 0; i < m_row.size(); i += 4) {
+			const unsigned char a = in[i+3];
+			m_row[i] = unpremultiply(in[i], a);
+			m_row[i+1] = unpremultiply(in[i+1], a);
+			m_row[i+2] = unpremultiply(in[i+2], a);
+			m_row[i+3] = a;
+		}
+		m_filtered[0] = 2;
+		for (size_t i = 0; i < m_row.size(); ++i) {
+			m_filtered[i+1] = m_row[i] - m_previous[i];
+		}
+		m_row.swap(m_previous);
+		m_stream.next_in = m_filtered.data();
+		m_stream.avail_in = m_filtered.size();
+		m_isOk = deflateRow(Z_NO_FLUSH);
+	}
+	return m_isOk;
+}
+
+//Deflate whatever is in m_stream's input, writing an IDAT chunk each time the output buffer fills
+bool PngWriter::deflateRow(const int flush) {
+	for (;;) {
+		const int result = deflate(&m_stream, flush);
+		if (result == Z_STREAM_ERROR) {
+			return false;
+		}
+		if (m_stream.avail_out == 0) {
+			writeChunk("IDAT", m_out.data(), m_out.size());
+			m_stream.next_out = m_out.data();
+			m_stream.avail_out = m_out.size();
+		} else if (flush == Z_FINISH ? result == Z_STREAM_END : m_stream.avail_in == 0) {
+			return true;
+		}
+	}
+}
+
+bool PngWriter::close() {
+	if (!m_file) {
+		return false;
+	}
+	if (m_isDeflating) {
+		m_stream.avail_in = 0;
+		m_isOk = deflateRow(Z_FINISH) && m_isOk;
+		const uint32_t pending = m_out.size() - m_stream.avail_out;
+		if (pending > 0) {
+			writeChunk("IDAT", m_out.data(), pending);
+		}
+		deflateEnd(&m_stream);
+		m_isDeflating = false;
+	}
+	writeChunk("IEND", 0, 0);
+	m_isOk = fclose(m_file) == 0 && m_isOk;
+	m_file = 0;
+	return m_isOk;
+}
+
+void PngWriter::writeChunk(const char *type, const unsigned char *data, const uint32_t length) {
+	unsigned char head[8];
+	putBigEndian(head, length);
+	memcpy(head + 4, type, 4);
+	uLong crc = crc32(0, reinterpret_cast<const Bytef *>(type), 4);
+	if (length > 0) {
+		crc = crc32(crc, data, length);
+	}
+	unsigned char tail[4];
+	putBigEndian(tail, crc);
+	m_isOk = fwrite(head, 1, 8, m_file) == 8 && (length == 0 || fwrite(data, 1, length, m_file) == length) && fwrite(tail, 1, 4, m_file) == 4 && m_isOk;
+}
@@ -0,0 +1,53 @@
+/*
+ * pngio.h
+ *
+ *  Created on: Oct 18, 2026
+ *      Author: astragalus
+ */
+
+#ifndef PNGIO_H_
+#define PNGIO_H_
+
+#include <stdint.h>
+#include <stdio.h>
+#include <string>
+#include <vector>
+
+#include <zlib.h>
+
+//Images for the command line renderer, in memory as Android's ARGB_8888 bitmaps have them: R, G, B, A bytes with
+//the colour premultiplied by alpha.
+
+//Read an 8 bit, non-interlaced greyscale, RGB or RGBA PNG, or a binary PPM (P6, maxval 255).  On failure returns
+//false and says why in error.
+bool readImage(const std::string& path, std::vector<uint32_t>& pixels, uint32_t& width, uint32_t& height, std::string& error);
+
+//Writes an RGBA PNG a band of rows at a time, deflating as it goes, so the whole picture is never in memory.  Each
+//row is filtered against the one before it ("Up"), which suits photographs.
+class PngWriter {
+public:
+	PngWriter();
+	~PngWriter();
+	//compression is zlib's level, 0 to 9
+	bool open(const std::string& path, const uint32_t width, const uint32_t height, const int compression);
+	bool writeRows(const uint32_t *pixels, const uint32_t numRows);
+	//Finish the file; false if anything went wrong writing it
+	bool close();
+private:
+	PngWriter(const PngWriter&);
+	PngWriter& operator=(const PngWriter&);
+	void writeChunk(const char *type, const unsigned char *data, const uint32_t length);
+	bool deflateRow(const int flush);
+
+	FILE *m_file;
+	z_stream m_stream;
+	bool m_isDeflating;
+	uint32_t m_width;
+	std::vector<unsigned char> m_row; //the row being written, with straight alpha
+	std::vector<unsigned char> m_previous; //the one before it, likewise; zeros for the first row
+	std::vector<unsigned char> m_filtered; //filter type, then m_row - m_previous
+	std::vector<unsigned char> m_out; //deflated bytes waiting for a full IDAT chunk
+	bool m_isOk;
+};
+
+#endif /* PNGIO_H_ */
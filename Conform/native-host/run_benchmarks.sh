@@ -0,0 +1,16 @@
+#!/bin/sh
+# Builds the host core in Release and runs the benchmark suite, writing results/<commit>.json so numbers can be
+# compared between commits, e.g. with benchmark's tools/compare.py.  Extra arguments go to conform_bench.
+set -e
+cd "$(dirname "$0")"
+cmake -S . -B build -DCMAKE_BUILD_TYPE=Release >/dev/null
+cmake --build build --parallel
+./build/kernel_check
+./build/engine_check
+mkdir -p results
+commit=$(git rev-parse --short HEAD)
+if [ -n "$(git status --porcelain -- ../jni)" ]; then
+	commit="$commit-dirty"
+fi
+./build/conform_bench --benchmark_repetitions=5 --benchmark_report_aggregates_only=true \
+	--benchmark_out=results/$commit.json --benchmark_out_format=json "$@"
@@ -1,12 +1,11 @@
 package org.mtc.conform;
 
 import org.mtc.conform.BitmapperView.BitmapperMode;
-import org.mtc.conform.BitmapperView.ParamHolder;
 import org.mtc.conform.math.Complex;
 import org.mtc.conform.math.ComplexArray.ComplexElement;
 
 import android.content.Context;
-import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.GestureDetector;
 import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.Gravity;
@@ -21,13 +20,13 @@ public class BitmapperTouchHandler extends SimpleOnGestureListener implements On
 	private final GestureDetector m_gestureDetector;
 	private final TransformationState m_state;
 	private final ParamHolder m_paramHolder;
-	private final SparseArray<ComplexElement> m_ptrIdToParam;
+	private final SparseIntArray m_ptrIdToParam; //pointer id to the index of the param it's dragging
 	
 	public BitmapperTouchHandler(final Context context, final TransformationState state, final BitmapperMode touchMode, final ParamHolder paramHolder) {
 		m_context = context;
 		m_zoomDetector = new ScaleGestureDetector(context, this);
 		m_gestureDetector = new GestureDetector(context, this);
-		m_ptrIdToParam = new SparseArray<ComplexElement>(5);
+		m_ptrIdToParam = new SparseIntArray(5);
 		m_state = state;
 		m_paramHolder = paramHolder;
 	}
@@ -40,8 +39,8 @@ public class BitmapperTouchHandler extends SimpleOnGestureListener implements On
 			case MotionEvent.ACTION_DOWN:
 			case MotionEvent.ACTION_POINTER_DOWN:
 				final int ptrIdx = event.getActionIndex();
-				final ComplexElement paramTouched = m_paramHolder.findParamNearCoords(event.getX(ptrIdx), event.getY(ptrIdx));
-				if (paramTouched != null) {
+				final int paramTouched = m_paramHolder.indexOfParamNearCoords(event.getX(ptrIdx), event.getY(ptrIdx));
+				if (paramTouched >= 0) {
 					m_ptrIdToParam.put(event.getPointerId(ptrIdx), paramTouched);
 					eventConsumed |= true;
 				}
@@ -49,8 +48,8 @@ public class BitmapperTouchHandler extends SimpleOnGestureListener implements On
 			case MotionEvent.ACTION_MOVE:
 				for (int pos = 0; pos < event.getHistorySize(); ++pos) {
 					for (int i = 0; i < event.getPointerCount(); ++i) {
-						final ComplexElement param = m_ptrIdToParam.get(event.getPointerId(i));
-						if (param != null) {
+						final int param = m_ptrIdToParam.get(event.getPointerId(i), -1);
+						if (param >= 0) {
 							m_paramHolder.setParamScreenCoords(param, event.getHistoricalX(i,pos), event.getHistoricalY(i,pos));
 							eventConsumed |= true;
 						}
@@ -59,7 +58,7 @@ public class BitmapperTouchHandler extends SimpleOnGestureListener implements On
 				break;
 			case MotionEvent.ACTION_UP:
 			case MotionEvent.ACTION_POINTER_UP:
-				m_ptrIdToParam.remove(event.getPointerId(event.getActionIndex()));
+				m_ptrIdToParam.delete(event.getPointerId(event.getActionIndex()));
 				break;
 			case MotionEvent.ACTION_CANCEL:
 				m_ptrIdToParam.clear();
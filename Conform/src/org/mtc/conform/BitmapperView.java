@@ -11,22 +11,18 @@
 package org.mtc.conform;
 
 import org.mtc.conform.BitmapperView.BitmapperMode.Mode;
-import org.mtc.conform.TransformationState.OnTransformStateChangedListener;
-import org.mtc.conform.math.Complex;
-import org.mtc.conform.math.ComplexArray;
-import org.mtc.conform.math.ComplexArray.ComplexElement;
 import org.mtc.conform.math.ComplexArray.IComplexAction;
-import org.mtc.conform.math.ComplexArray.IComplexPredicate;
 import org.mtc.conform.math.IComplex;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
 import android.graphics.Paint;
+import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.text.Editable;
+import android.os.SystemClock;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -35,7 +31,7 @@ import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-public class BitmapperView extends ImageView implements TextWatcher {
+public class BitmapperView extends ImageView implements TextWatcher, PullbackRenderer.OnFrameRenderedListener, ParamHolder.OnParamsChangedListener {
 
 	public static final String TAG = "Conform";
 	
@@ -58,89 +54,6 @@ public class BitmapperView extends ImageView implements TextWatcher {
 		}
 	}
 
-	public class ParamHolder implements OnTransformStateChangedListener {
-		public final static int MAX_PARAMS = 6;
-		public final static float RADIUS = 100.0f;
-
-		public ParamHolder(final TransformationState transStateHolder) {
-			m_screenCoords = new ComplexArray(MAX_PARAMS);
-			m_normCoords = new ComplexArray(MAX_PARAMS);
-			m_trans = transStateHolder;
-			m_trans.setOnTransformStateChangedListener(this);
-			addParamNormCoords(0.0f, 0.0f);
-		}
-		
-		public void addParamScreenCoords(float scrX, float scrY) {
-			m_screenCoords.append().assignFrom(scrX, scrY);
-			m_normCoords.append();
-			m_trans.screenToNormalizedPoints(m_screenCoords, m_normCoords);
-			invalidate();
-		}
-		
-		public void addParamNormCoords(float re, float im) {
-			m_normCoords.append().assignFrom(re, im);
-			m_screenCoords.append();
-			updateScreenCoords();
-		}
-
-		public void removeParam() {
-			m_normCoords.remove();
-			m_screenCoords.remove();
-			invalidate();
-		}
-		
-		public void applyScreenCoords(final IComplexAction action) {
-			m_screenCoords.apply(action);
-		}
-		
-		public void applyNormCoords(final IComplexAction action) {
-			m_normCoords.apply(action);
-		}
-		
-		public ComplexElement findParamNearCoords(float scrX, float scrY) {
-			final Complex at = new Complex(scrX, scrY);
-			final ComplexElement result = m_screenCoords.find(new IComplexPredicate() {
-				@Override
-				public boolean eval(IComplex z) {
-					return (z.distSq(at) <= RADIUS*RADIUS);
-				}
-			});
-			return result;
-		}
-		
-		public int size() {
-			return m_normCoords.size();
-		}
-		
-		public void setParamScreenCoords(final ComplexElement scrParam, float scrX, float scrY) {
-			m_trans.screenToNormalizedPoint(scrParam.re(scrX).im(scrY), m_normCoords.atIndexOf(scrParam));
-			invalidate();
-		}
-		
-		private void updateScreenCoords() {
-			m_trans.normalizedToScreenPoints(m_normCoords, m_screenCoords);
-			invalidate();
-		}
-		
-		public ComplexArray getNormalizedParams() {
-			return m_normCoords;
-		}
-		
-		@Override
-		public String toString() {
-			return "norm[" + m_normCoords.toString() + "] screen[" + m_screenCoords.toString() + "]";
-		}
-		
-		final private ComplexArray m_normCoords;
-		final private ComplexArray m_screenCoords;
-		final private TransformationState m_trans;
-
-		@Override
-		public void onTransformStateChanged() {
-			updateScreenCoords();
-		}
-	}
-	
 	public static class BitmapperMode {
 		public enum Mode {
 			PINK_DOTS(0),
@@ -159,7 +72,8 @@ public class BitmapperView extends ImageView implements TextWatcher {
 	}
 
 	private Bitmap m_srcBitmap;
-	private Bitmap m_destBitmap = null;
+	private final PullbackRenderer m_renderer;
+	private RenderContext m_context; //while attached to a window
 	
 	private int m_drawWidth = 420;
 	private int m_drawHeight = 420;
@@ -174,36 +88,89 @@ public class BitmapperView extends ImageView implements TextWatcher {
 	private final ParamHolder m_paramHolder;
 	
 	private String m_expression = "";
+	private boolean m_isInteracting = false;
+	private boolean m_isDeepZoom = false;
 
-//	long start;
-//	long time;
-//	int count;
-//	float fps;
+	private boolean m_isHudVisible = false;
+	private final FrameStats m_frameStats = new FrameStats();
+	private String[] m_hudLines = new String[0];
+	private long m_hudUpdatedMillis = 0;
+	private final Paint m_hudPaint;
 	
 	public static final int RADIUS = 10;
+	public static final long HUD_UPDATE_MS = 500;
 	
 	public BitmapperView(Context context, AttributeSet attrs) {
 		super(context, attrs);
 		m_mode = new BitmapperMode();
 		setSourceBitmap(((BitmapDrawable) getDrawable()).getBitmap());
-		m_destBitmap = Bitmap.createBitmap(m_drawWidth, m_drawHeight, Config.ARGB_8888);
-		m_destBitmap.eraseColor(0);
-		setImageBitmap(m_destBitmap);
+		m_renderer = new PullbackRenderer(m_drawWidth, m_drawHeight, ParamHolder.MAX_PARAMS, this);
+		setImageBitmap(m_renderer.acquireFrontBuffer());
 		m_transState = new TransformationState(this, m_drawWidth, m_drawHeight);
-		m_paramHolder = new ParamHolder(m_transState);
+		m_paramHolder = new ParamHolder(m_transState, this);
 		m_touchHandler = new BitmapperTouchHandler(context, m_transState, m_mode, m_paramHolder);
 		final Paint paint = new Paint();
 		paint.setAntiAlias(false);
 		paint.setARGB(255, 255, 55, 178);
 		m_poleDrawer = new ParamDrawer(paint, RADIUS);
+		m_hudPaint = new Paint();
+		m_hudPaint.setTypeface(Typeface.MONOSPACE);
+		m_hudPaint.setTextSize(12*getResources().getDisplayMetrics().scaledDensity);
+		m_hudPaint.setARGB(255, 255, 255, 255);
+		m_hudPaint.setShadowLayer(2, 1, 1, 0xff000000);
 	}
 	
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		m_context = ConformLib.INSTANCE.createRenderContext();
+		m_context.setStatsEnabled(m_isHudVisible);
+		m_renderer.start(m_context);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		m_renderer.quit();
+		m_context.release();
+		m_context = null;
+		super.onDetachedFromWindow();
+	}
+
 	@Override
 	protected void onDraw(final Canvas canvas) {	
-		m_destBitmap.eraseColor(0);
-		ConformLib.INSTANCE.pullback(m_srcBitmap, m_destBitmap, m_paramHolder.getNormalizedParams(), m_transState.getCurrTrans(), m_wrapMode);
-		canvas.drawBitmap(m_destBitmap, getImageMatrix(), null);
+		m_renderer.requestRender(m_srcBitmap, m_paramHolder.getNormalizedParams(), m_transState.getCurrTrans(), m_isDeepZoom ? m_transState.getDeepTrans() : null, m_wrapMode, getActiveExpression(), m_isInteracting);
+		final long drawStart = m_isHudVisible ? System.nanoTime() : 0;
+		canvas.drawBitmap(m_renderer.acquireFrontBuffer(), getImageMatrix(), null);
+		if (m_isHudVisible && m_context != null) {
+			m_context.recordDrawTime(System.nanoTime() - drawStart);
+		}
 		m_paramHolder.applyScreenCoords(m_poleDrawer.setCanvas(canvas));
+		if (m_isHudVisible) {
+			drawHud(canvas);
+		}
+	}
+
+	//The stats are only read every HUD_UPDATE_MS: the percentiles take a sort per row
+	private void drawHud(final Canvas canvas) {
+		final long now = SystemClock.uptimeMillis();
+		if (m_context != null && now - m_hudUpdatedMillis >= HUD_UPDATE_MS) {
+			m_frameStats.isDrawQueued = canvas.isHardwareAccelerated();
+			m_hudLines = m_context.getStats(m_frameStats).toLines();
+			m_hudUpdatedMillis = now;
+		}
+		final float lineHeight = m_hudPaint.getFontSpacing();
+		for (int i = 0; i < m_hudLines.length; ++i) {
+			canvas.drawText(m_hudLines[i], lineHeight/2, (i+1)*lineHeight, m_hudPaint);
+		}
+	}
+
+	@Override
+	public void onFrameRendered() {
+		postInvalidate();
+	}
+	@Override
+	public void onParamsChanged() {
+		invalidate();
 	}
 	@Override
 	protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
@@ -228,11 +195,16 @@ public class BitmapperView extends ImageView implements TextWatcher {
 	}
 	
 	public Bitmap getImageBitmap() {
-		return ((BitmapDrawable)getDrawable()).getBitmap(); 
+		return m_renderer.copyFrontBuffer(); 
 	}
 	
 	public void setExpression(String expr) {
-		m_expression = expr;
+		m_expression = expr.trim();
+	}
+	
+	//The expression box is only shown in three point mode, so the expression only applies there
+	private String getActiveExpression() {
+		return m_mode.m_touchMode == Mode.THREE_POINTS ? m_expression : "";
 	}
 	
 	public void setWrapMode(final ConformLib.WrapMode wrapMode) {
@@ -241,12 +213,34 @@ public class BitmapperView extends ImageView implements TextWatcher {
 		invalidate();
 	}
 	
+	/**
+	 * Show p50/p95/p99 frame timings over the picture, and record them while it's shown.
+	 */
+	public void setHudVisible(final boolean isHudVisible) {
+		m_isHudVisible = isHudVisible;
+		m_hudLines = new String[0];
+		m_hudUpdatedMillis = 0;
+		if (m_context != null) {
+			m_context.setStatsEnabled(isHudVisible);
+		}
+		invalidate();
+	}
+	
+	public void setDeepZoom(final boolean isDeepZoom) {
+		m_isDeepZoom = isDeepZoom;
+		Log.i(TAG, "Deep zoom " + (isDeepZoom ? "on" : "off"));
+		invalidate();
+	}
+	
 	public void setTouchMode(final Mode touchMode) {
 		m_mode.m_touchMode = touchMode;
 		Log.i(TAG, "touch mode  [" + touchMode.name() + "]");
-		View exp = findViewById(R.id.editTextExpression);
+		View exp = getRootView().findViewById(R.id.editTextExpression);
 		if (exp != null) {
-			exp.setActivated(touchMode.equals(Mode.THREE_POINTS));
+			final boolean showExpression = touchMode.equals(Mode.THREE_POINTS);
+			exp.setActivated(showExpression);
+			exp.setEnabled(showExpression);
+			exp.setVisibility(showExpression ? View.VISIBLE : View.INVISIBLE);
 		} else {
 			Log.e(TAG,"nullzz");
 		}
@@ -260,10 +254,16 @@ public class BitmapperView extends ImageView implements TextWatcher {
 	@SuppressLint("ClickableViewAccessibility")
 	@Override
 	public boolean onTouchEvent(MotionEvent event) {
+		final boolean wasInteracting = m_isInteracting;
+		final int action = event.getActionMasked();
+		m_isInteracting = action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL;
 		if (m_touchHandler.onTouchEvent(event)) {
 			invalidate();
 			return true;
 		} else {
+			if (wasInteracting != m_isInteracting) {
+				invalidate(); //let the renderer know the gesture is over so it can refine
+			}
 			return false;
 		}
 	}
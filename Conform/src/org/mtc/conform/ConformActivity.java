@@ -24,6 +24,7 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
 
 public class ConformActivity extends Activity {
 	public final static String TAG = "Conform";
@@ -36,6 +37,7 @@ public class ConformActivity extends Activity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_conform);
+        ((EditText) findViewById(R.id.editTextExpression)).addTextChangedListener(getBitmapperView());
     }
     
     @Override
@@ -112,6 +114,16 @@ public class ConformActivity extends Activity {
     		item.setChecked(!item.isChecked() && setWrapMode(ConformLib.WrapMode.CLAMP));
     		handledEvent = true;
     		break;
+    	case R.id.deepZoom:
+    		item.setChecked(!item.isChecked());
+    		getBitmapperView().setDeepZoom(item.isChecked());
+    		handledEvent = true;
+    		break;
+    	case R.id.performanceHud:
+    		item.setChecked(!item.isChecked());
+    		getBitmapperView().setHudVisible(item.isChecked());
+    		handledEvent = true;
+    		break;
     	case R.id.pink_dot_mode:
     		onSelectPinkDotMode();
     		handledEvent = true;
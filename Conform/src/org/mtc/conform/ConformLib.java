@@ -1,7 +1,10 @@
 package org.mtc.conform;
 
+import java.nio.ByteBuffer;
+
 import org.mtc.conform.math.ComplexAffineTrans;
 import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.DeepZoomTrans;
 
 import android.graphics.Bitmap;
 
@@ -21,10 +24,127 @@ public class ConformLib {
 		private final int mode;
 	}
 
+	/**
+	 * What pullback() evaluates the Blaschke product in.  FIXED is the original 16.16 fixed point; FLOAT and
+	 * DOUBLE keep their precision near the poles and at high zoom, where 16.16 runs out.  FLOAT also uses the
+	 * vector kernel where there is one; DOUBLE never does.  With two or more zeros FLOAT, DOUBLE and the vector
+	 * kernel multiply the product out into a single rational function where that's no less accurate; FIXED keeps
+	 * to 16.16, factor by factor, wherever the vector kernel doesn't take over.  More than six zeros are beyond all
+	 * three: those maps are evaluated in double by multipole expansion, whatever the engine.
+	 */
+	public enum Engine {
+		FIXED(0),
+		FLOAT(1),
+		DOUBLE(2);
+		private Engine(final int engine) {this.engine = engine;}
+		public int getInt() {return engine;}
+		private final int engine;
+	}
+
 	public int pullback(Bitmap sourceBitmap, Bitmap viewBitmap, ComplexArray params, ComplexAffineTrans currTrans, WrapMode wrapMode) {
-		return pullbackBitmap(sourceBitmap, viewBitmap, params.arr, params.size(), currTrans.tr.re, currTrans.tr.im, currTrans.sc.re, wrapMode.getInt());
+		return pullback(sourceBitmap, viewBitmap, params, currTrans, wrapMode, 1);
+	}
+
+	/**
+	 * @param step evaluate the map once per step x step block of pixels - 1 for full resolution, 2, 4 or 8 for a preview.
+	 * Below 1, nothing is rendered and non-zero is returned.
+	 */
+	public int pullback(Bitmap sourceBitmap, Bitmap viewBitmap, ComplexArray params, ComplexAffineTrans currTrans, WrapMode wrapMode, int step) {
+		return pullbackBitmap(sourceBitmap, viewBitmap, params.arr, params.size(), currTrans.tr.re, currTrans.tr.im, currTrans.sc.re, wrapMode.getInt(), step);
 	}
 	
-	private native int pullbackBitmap(Bitmap sourceBitmap, Bitmap viewBitmap, float[] paramArray, int numParams, float pivotX, float pivotY, float scaleFac, int wrapMode);
-	private native int pullbackBitmapByExpression(Bitmap sourceBitmap, Bitmap viewBitmap, String expression, float[] paramArray, int numParams, float pivotX, float pivotY, float scaleFac, int wrapMode);	
+	/**
+	 * Pull back by the Blaschke product seen through a double precision zoom and pan, for zooming in past what
+	 * pullback() can resolve (about 1e4).  The map is worked out in double at the centre of the view and the rest
+	 * of the frame as small float offsets from it, so this stays as fast as pullback() at any zoom.  Ignores the
+	 * engine set by setEngine().
+	 */
+	public int pullbackDeep(Bitmap sourceBitmap, Bitmap viewBitmap, ComplexArray params, DeepZoomTrans deepTrans, WrapMode wrapMode, int step) {
+		return pullbackBitmapDeep(sourceBitmap, viewBitmap, params.arr, params.size(), deepTrans.centreRe, deepTrans.centreIm, deepTrans.scale, wrapMode.getInt(), step);
+	}
+
+	/**
+	 * pullback(), or pullbackDeep() if the block was assigned a DeepZoomTrans, with the frame's state read from the
+	 * block in place.  The map is built once per version of the block and reused by later calls until the version,
+	 * the engine or the size of either bitmap changes - the refinement passes after a preview don't build it again.
+	 */
+	public int pullback(Bitmap sourceBitmap, Bitmap viewBitmap, ParamBlock block, int step) {
+		return pullbackBlock(sourceBitmap, viewBitmap, block.getBuffer(), step);
+	}
+
+	/**
+	 * Pull back by a user-entered map of z and the parameters a0..a5 (see jni/expression.h for the syntax).  The
+	 * expression is compiled on first use and reused until the text changes.
+	 * @return 0, or non-zero if the expression doesn't compile (nothing is rendered then)
+	 */
+	public int pullbackByExpression(Bitmap sourceBitmap, Bitmap viewBitmap, String expression, ComplexArray params, ComplexAffineTrans currTrans, WrapMode wrapMode, int step) {
+		return pullbackBitmapByExpression(sourceBitmap, viewBitmap, expression, params.arr, params.size(), currTrans.tr.re, currTrans.tr.im, currTrans.sc.re, wrapMode.getInt(), step);
+	}
+
+	/**
+	 * pullbackByExpression() with the parameters and view read from the block.  Ignores any deep zoom in it.
+	 */
+	public int pullbackByExpression(Bitmap sourceBitmap, Bitmap viewBitmap, String expression, ParamBlock block, int step) {
+		return pullbackBlockByExpression(sourceBitmap, viewBitmap, expression, block.getBuffer(), step);
+	}
+	
+	/**
+	 * Full resolution renders the vector kernel can't do (expressions, or no NEON) evaluate the map on a sparse
+	 * grid and interpolate in between wherever that stays within tolerance source pixels of the exact result,
+	 * refining down to single pixels near poles.  0.25 by default; 0 evaluates every pixel.
+	 */
+	public native void setAdaptiveTolerance(float tolerance);
+
+	/**
+	 * Where the map shrinks the source image, sample a mip pyramid of it (built once per source bitmap) rather
+	 * than the full resolution image: less aliasing near the unit circle, and far fewer cache misses on big
+	 * photos.  Off by default: the vector row kernel doesn't select levels, so this costs up to twice the frame
+	 * time even where nothing is shrunk.  PullbackRenderer turns it on for sources bigger than the view.
+	 */
+	public native void setMipmapping(boolean enabled);
+
+	/**
+	 * Sample a copy of the source re-laid in 4x4 pixel tiles (made once per source bitmap, on the first render
+	 * after it changes), so that samples along the curved paths the map takes stay in fewer cache lines.  Costs
+	 * another copy of the source; off by default.
+	 */
+	public native void setTiledSource(boolean enabled);
+
+	/**
+	 * Which engine later pullback() calls use; FIXED by default.  Expressions are always evaluated in float.
+	 */
+	public void setEngine(Engine engine) {
+		setEngine(engine.getInt());
+	}
+
+	/**
+	 * A native renderer that keeps its own copy of the source and its destinations locked between frames, for
+	 * rendering a stream of frames without the per-call bitmap handling of the methods above.
+	 */
+	public RenderContext createRenderContext() {
+		return new RenderContext(createContext());
+	}
+
+	private native void setEngine(int engine);
+	private native int pullbackBitmap(Bitmap sourceBitmap, Bitmap viewBitmap, float[] paramArray, int numParams, float pivotX, float pivotY, float scaleFac, int wrapMode, int step);
+	private native int pullbackBitmapDeep(Bitmap sourceBitmap, Bitmap viewBitmap, float[] paramArray, int numParams, double centreRe, double centreIm, double scale, int wrapMode, int step);
+	private native int pullbackBitmapByExpression(Bitmap sourceBitmap, Bitmap viewBitmap, String expression, float[] paramArray, int numParams, float pivotX, float pivotY, float scaleFac, int wrapMode, int step);
+	private native int pullbackBlock(Bitmap sourceBitmap, Bitmap viewBitmap, ByteBuffer block, int step);
+	private native int pullbackBlockByExpression(Bitmap sourceBitmap, Bitmap viewBitmap, String expression, ByteBuffer block, int step);
+	private native long createContext();
+
+	//For RenderContext, given the handle createContext() returned
+	native void releaseContext(long handle);
+	native int setContextSource(long handle, Bitmap sourceBitmap);
+	native int setContextDest(long handle, int index, Bitmap viewBitmap);
+	native int pullbackContext(long handle, int index, ByteBuffer block, int step);
+	native int pullbackContextScrolled(long handle, int index, int fromIndex, ByteBuffer block, int dx, int dy);
+	native int pullbackContextByExpression(long handle, int index, String expression, ByteBuffer block, int step);
+	native void setContextAdaptiveTolerance(long handle, float tolerance);
+	native void setContextMipmapping(long handle, boolean enabled);
+	native void setContextTiledSource(long handle, boolean enabled);
+	native void setContextEngine(long handle, int engine);
+	native void setContextStatsEnabled(long handle, boolean enabled);
+	native void recordContextDrawTime(long handle, float micros);
+	native int getContextStats(long handle, float[] summary);
 }
@@ -0,0 +1,67 @@
+package org.mtc.conform;
+
+import java.util.Locale;
+
+/**
+ * Percentiles of a RenderContext's recent frame timings, in microseconds, as filled in by RenderContext.getStats().
+ * Each row is p50, p95, p99 over the last (up to) 120 frames.  Worker times are how long each render pool thread was
+ * busy in a frame; imbalance is the busiest one's time over the mean, 1 when the work is spread evenly.
+ * On a hardware accelerated canvas drawBitmap() only records a display list op, so there DRAW is the time to queue
+ * the bitmap, not to draw it; set isDrawQueued and the HUD says so.
+ */
+public class FrameStats {
+
+	//Stages, in the order jni/framestats.h has them
+	public static final int MARSHAL = 0;
+	public static final int BUILD = 1;
+	public static final int PULLBACK = 2;
+	public static final int FRAME = 3;
+	public static final int DRAW = 4;
+	public static final int NUM_STAGES = 5;
+	private static final String[] STAGE_NAMES = { "marshal", "build", "pullback", "frame", "draw" };
+
+	public int numFrames;
+	public int numWorkers;
+	public final float[][] stages = new float[NUM_STAGES][3];
+	public float[][] workers = new float[0][3];
+	public final float[] imbalance = new float[3];
+	public boolean isDrawQueued = false;
+
+	float[] m_summary = new float[64]; //as the native side writes it; grown to fit
+
+	void unpack() {
+		numFrames = (int) m_summary[0];
+		numWorkers = (int) m_summary[1];
+		if (workers.length != numWorkers) {
+			workers = new float[numWorkers][3];
+		}
+		int i = 2;
+		for (float[] stage : stages) {
+			System.arraycopy(m_summary, i, stage, 0, 3);
+			i += 3;
+		}
+		for (float[] worker : workers) {
+			System.arraycopy(m_summary, i, worker, 0, 3);
+			i += 3;
+		}
+		System.arraycopy(m_summary, i, imbalance, 0, 3);
+	}
+
+	/**
+	 * @return a line per stage, then the workers' busy times and the imbalance, in milliseconds where they're times
+	 */
+	public String[] toLines() {
+		final String[] lines = new String[NUM_STAGES + 2];
+		for (int s = 0; s < NUM_STAGES; ++s) {
+			final String name = s == DRAW && isDrawQueued ? "queue" : STAGE_NAMES[s];
+			lines[s] = String.format(Locale.US, "%-8s %6.2f %6.2f %6.2f ms", name, stages[s][0]*1e-3f, stages[s][1]*1e-3f, stages[s][2]*1e-3f);
+		}
+		final StringBuilder busy = new StringBuilder("workers ");
+		for (float[] worker : workers) {
+			busy.append(String.format(Locale.US, " %.1f", worker[0]*1e-3f));
+		}
+		lines[NUM_STAGES] = busy.append(" ms (p50)").toString();
+		lines[NUM_STAGES+1] = String.format(Locale.US, "imbalance %.2f %.2f %.2f  (%d frames)", imbalance[0], imbalance[1], imbalance[2], numFrames);
+		return lines;
+	}
+}
@@ -0,0 +1,99 @@
+package org.mtc.conform;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mtc.conform.math.ComplexAffineTrans;
+import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.DeepZoomTrans;
+
+/**
+ * Everything the Blaschke product pullbacks need to know about a frame, in a direct buffer the native side reads in
+ * place: no array to pin or copy on the way in, and nothing to copy back.  The layout is jni/paramblock.h's; the
+ * zeros follow the header as (re, im) float pairs.  assign() only writes what has changed, and bumps the version if
+ * anything did, so that ConformLib can keep the map it built for a version until the next one.  Not thread safe:
+ * fill it in on the thread that renders with it.
+ */
+public class ParamBlock {
+
+	//Byte offsets, as in jni/paramblock.h
+	private static final int VERSION = 0;
+	private static final int NUM_PARAMS = 4;
+	private static final int WRAP_MODE = 8;
+	private static final int IS_DEEP_ZOOM = 12;
+	private static final int PIVOT_X = 16;
+	private static final int PIVOT_Y = 20;
+	private static final int SCALE = 24;
+	private static final int CENTRE_RE = 32;
+	private static final int CENTRE_IM = 40;
+	private static final int DEEP_SCALE = 48;
+	private static final int PARAMS = 56;
+
+	//Shared by all blocks, so that a new block that happens to land where an old one was can't be taken for it
+	private static final AtomicInteger s_lastVersion = new AtomicInteger();
+
+	private final ByteBuffer m_buffer;
+	private final int m_maxParams;
+	private boolean m_isChanged;
+
+	public ParamBlock(final int maxParams) {
+		m_maxParams = maxParams;
+		m_buffer = ByteBuffer.allocateDirect(PARAMS + 8*maxParams).order(ByteOrder.nativeOrder());
+		m_buffer.putInt(NUM_PARAMS, -1); //so that the first assign() counts as a change
+	}
+
+	/**
+	 * Bring the block up to date with a frame's state.
+	 * @param deepTrans the zoom and pan to render with ConformLib.pullbackDeep()'s map, or null for trans
+	 * @return true if anything changed
+	 */
+	public boolean assign(final ComplexArray params, final ComplexAffineTrans trans, final DeepZoomTrans deepTrans, final ConformLib.WrapMode wrapMode) {
+		final int numParams = Math.min(params.size(), m_maxParams);
+		m_isChanged = false;
+		putInt(NUM_PARAMS, numParams);
+		putInt(WRAP_MODE, wrapMode.getInt());
+		putInt(IS_DEEP_ZOOM, deepTrans != null ? 1 : 0);
+		putFloat(PIVOT_X, trans.tr.re);
+		putFloat(PIVOT_Y, trans.tr.im);
+		putFloat(SCALE, trans.sc.re);
+		if (deepTrans != null) {
+			putDouble(CENTRE_RE, deepTrans.centreRe);
+			putDouble(CENTRE_IM, deepTrans.centreIm);
+			putDouble(DEEP_SCALE, deepTrans.scale);
+		}
+		for (int i = 0; i < 2*numParams; ++i) {
+			putFloat(PARAMS + 4*i, params.arr[i]);
+		}
+		if (m_isChanged) {
+			m_buffer.putInt(VERSION, s_lastVersion.incrementAndGet());
+		}
+		return m_isChanged;
+	}
+
+	ByteBuffer getBuffer() {
+		return m_buffer;
+	}
+
+	private void putInt(final int offset, final int value) {
+		if (m_buffer.getInt(offset) != value) {
+			m_buffer.putInt(offset, value);
+			m_isChanged = true;
+		}
+	}
+
+	//Compared bitwise, so that NaN doesn't count as a change every time and -0 does
+	private void putFloat(final int offset, final float value) {
+		if (m_buffer.getInt(offset) != Float.floatToRawIntBits(value)) {
+			m_buffer.putFloat(offset, value);
+			m_isChanged = true;
+		}
+	}
+
+	private void putDouble(final int offset, final double value) {
+		if (m_buffer.getLong(offset) != Double.doubleToRawLongBits(value)) {
+			m_buffer.putDouble(offset, value);
+			m_isChanged = true;
+		}
+	}
+}
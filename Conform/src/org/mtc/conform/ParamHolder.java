@@ -0,0 +1,102 @@
+package org.mtc.conform;
+
+import org.mtc.conform.TransformationState.OnTransformStateChangedListener;
+import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.ComplexArray.ComplexElement;
+import org.mtc.conform.math.ComplexArray.IComplexAction;
+
+/**
+ * The zeros of the map, in both the normalized coordinates the map takes them in and screen coordinates, kept in
+ * step as they're added, dragged, and as the view transformation changes.  Tells its listener whenever they change.
+ */
+public class ParamHolder implements OnTransformStateChangedListener {
+	public final static int MAX_PARAMS = 256; //past 6, rendered by jni/multipole.h's map
+	public final static float RADIUS = 100.0f;
+
+	public static interface OnParamsChangedListener {
+		public void onParamsChanged();
+	}
+
+	public ParamHolder(final TransformationState transStateHolder, final OnParamsChangedListener listener) {
+		m_listener = listener;
+		m_screenCoords = new ComplexArray(MAX_PARAMS);
+		m_normCoords = new ComplexArray(MAX_PARAMS);
+		m_screenParam = m_screenCoords.front();
+		m_normParam = m_normCoords.front();
+		m_trans = transStateHolder;
+		m_trans.setOnTransformStateChangedListener(this);
+		addParamNormCoords(0.0f, 0.0f);
+	}
+	
+	public void addParamScreenCoords(float scrX, float scrY) {
+		m_screenCoords.append().assignFrom(scrX, scrY);
+		m_normCoords.append();
+		m_trans.screenToNormalizedPoints(m_screenCoords, m_normCoords);
+		m_listener.onParamsChanged();
+	}
+	
+	public void addParamNormCoords(float re, float im) {
+		m_normCoords.append().assignFrom(re, im);
+		m_screenCoords.append();
+		updateScreenCoords();
+	}
+
+	public void removeParam() {
+		m_normCoords.remove();
+		m_screenCoords.remove();
+		m_listener.onParamsChanged();
+	}
+	
+	public void applyScreenCoords(final IComplexAction action) {
+		m_screenCoords.apply(action);
+	}
+	
+	public void applyNormCoords(final IComplexAction action) {
+		m_normCoords.apply(action);
+	}
+	
+	public ComplexElement findParamNearCoords(float scrX, float scrY) {
+		final int i = indexOfParamNearCoords(scrX, scrY);
+		return i < 0 ? null : m_screenCoords.at(i);
+	}
+
+	//The touch path's version, which allocates nothing
+	public int indexOfParamNearCoords(float scrX, float scrY) {
+		return m_screenCoords.indexWithin(scrX, scrY, RADIUS);
+	}
+	
+	public int size() {
+		return m_normCoords.size();
+	}
+	
+	public void setParamScreenCoords(final int index, float scrX, float scrY) {
+		m_trans.screenToNormalizedPoint(m_screenParam.atIndex(index).re(scrX).im(scrY), m_normParam.atIndex(index));
+		m_listener.onParamsChanged();
+	}
+	
+	private void updateScreenCoords() {
+		m_trans.normalizedToScreenPoints(m_normCoords, m_screenCoords);
+		m_listener.onParamsChanged();
+	}
+	
+	public ComplexArray getNormalizedParams() {
+		return m_normCoords;
+	}
+	
+	@Override
+	public String toString() {
+		return "norm[" + m_normCoords.toString() + "] screen[" + m_screenCoords.toString() + "]";
+	}
+	
+	final private ComplexArray m_normCoords;
+	final private ComplexArray m_screenCoords;
+	final private TransformationState m_trans;
+	final private ComplexElement m_screenParam;
+	final private ComplexElement m_normParam;
+	final private OnParamsChangedListener m_listener;
+
+	@Override
+	public void onTransformStateChanged() {
+		updateScreenCoords();
+	}
+}
@@ -0,0 +1,289 @@
+package org.mtc.conform;
+
+import org.mtc.conform.math.ComplexAffineTrans;
+import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.DeepZoomTrans;
+import org.mtc.conform.math.IComplex;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Runs the pullback on its own thread, into three buffers: the front buffer (the last completed frame), the one the
+ * view last took to draw, which may still be being drawn or held by a display list, and a back buffer the native
+ * side renders into.  A completed back buffer becomes the front, and the next frame goes into whichever buffer is
+ * neither front nor drawn, so nothing the view may be reading is ever written.  Requests are coalesced: if several
+ * arrive while a frame is being rendered, only the newest one is rendered next.
+ * <p>
+ * Requests made during a gesture are rendered as a coarse preview; once the gesture ends, or no new request has
+ * come in for a little while, the same state is refined to full resolution a pass at a time.  Each pass renders
+ * every pixel afresh, into a different buffer from the last, including the quarter already worked out by the pass
+ * before: from a step 4 preview, the step 2 and step 1 passes cost 1/4 and 1 of a frame, where only 3/16 and 3/4
+ * of one are new.
+ * <p>
+ * A request that only pans a full resolution frame is rendered by scrolling the front buffer's pixels into the back
+ * buffer and pulling back just the strips that uncovers, so panning costs what it exposes rather than a whole frame.
+ * The pan is rounded to whole pixels for that; the frame it gives is put right once things settle, like a preview.
+ */
+public class PullbackRenderer implements Runnable {
+
+	public static final String TAG = "Conform";
+	public static final int PREVIEW_STEP = 4;
+	public static final long REFINE_DELAY_MS = 120;
+
+	public static interface OnFrameRenderedListener {
+		public void onFrameRendered();
+	}
+
+	private static class RenderState {
+		final ComplexArray params;
+		final ComplexAffineTrans trans = new ComplexAffineTrans(IComplex.ONE, IComplex.ZERO);
+		final DeepZoomTrans deepTrans = new DeepZoomTrans();
+		boolean isDeepZoom = false;
+		Bitmap srcBitmap;
+		ConformLib.WrapMode wrapMode;
+		String expression = "";
+
+		RenderState(final int maxParams) {
+			params = new ComplexArray(maxParams);
+		}
+		RenderState assignFrom(final Bitmap srcBitmap, final ComplexArray params, final ComplexAffineTrans trans, final DeepZoomTrans deepTrans, final ConformLib.WrapMode wrapMode, final String expression) {
+			this.params.copyFrom(params);
+			this.trans.assignFrom(trans);
+			this.isDeepZoom = deepTrans != null;
+			if (this.isDeepZoom) {
+				this.deepTrans.assignFrom(deepTrans);
+			}
+			this.srcBitmap = srcBitmap;
+			this.wrapMode = wrapMode;
+			this.expression = expression;
+			return this;
+		}
+		RenderState assignFrom(final RenderState o) {
+			return assignFrom(o.srcBitmap, o.params, o.trans, o.isDeepZoom ? o.deepTrans : null, o.wrapMode, o.expression);
+		}
+		//Whether this is o moved by nothing but a translation of the Blaschke product's view
+		boolean isTranslationOf(final RenderState o) {
+			return srcBitmap == o.srcBitmap && wrapMode == o.wrapMode && expression.isEmpty() && o.expression.isEmpty() && !isDeepZoom && !o.isDeepZoom
+					&& trans.sc.equals(o.trans.sc) && params.contentEquals(o.params);
+		}
+		boolean isSameAs(final Bitmap srcBitmap, final ComplexArray params, final ComplexAffineTrans trans, final DeepZoomTrans deepTrans, final ConformLib.WrapMode wrapMode, final String expression) {
+			return this.srcBitmap == srcBitmap && this.wrapMode == wrapMode && this.expression.equals(expression) && this.trans.equals(trans) && this.params.contentEquals(params)
+					&& this.isDeepZoom == (deepTrans != null) && (!this.isDeepZoom || this.deepTrans.equals(deepTrans));
+		}
+	}
+
+	private final Bitmap[] m_buffers = new Bitmap[3];
+	private int m_front = 0; //guarded by this
+	private int m_drawn = 0; //the buffer acquireFrontBuffer() last handed out - guarded by this
+
+	private final RenderState m_requested; //latest state handed to us by the UI thread - guarded by this
+	private final RenderState m_rendering; //state being rendered - render thread only
+	private final RenderState m_shown; //state the front buffer was rendered with - render thread only
+	private final ParamBlock m_block; //m_rendering as the native side reads it - render thread only
+	private final ComplexAffineTrans m_scrolledTrans = new ComplexAffineTrans(IComplex.ONE, IComplex.ZERO); //render thread only
+	private RenderContext m_context; //renders into m_buffers; set by start(), then render thread only
+	private Bitmap m_contextSource; //the bitmap m_context has a copy of, and its generation - render thread only
+	private int m_contextSourceGeneration;
+	private boolean m_hasRequest = false;
+	private boolean m_hasRequested = false;
+	private boolean m_requestedInteractive = false;
+	private int m_renderedStep = 1; //render thread only
+	private boolean m_hasShown = false; //whether m_shown is valid - render thread only
+	private int m_shownSourceGeneration; //render thread only
+	private boolean m_isShownScrolled = false; //the front buffer is m_shown scrolled, a fraction of a pixel off m_rendering - render thread only
+	private boolean m_isNewState = false; //m_rendering hasn't been rendered before - render thread only
+	private long m_lastFrameMillis = 0; //render thread only
+
+	private final OnFrameRenderedListener m_listener;
+	private Thread m_thread;
+
+	public PullbackRenderer(final int width, final int height, final int maxParams, final OnFrameRenderedListener listener) {
+		for (int i = 0; i < m_buffers.length; ++i) {
+			m_buffers[i] = Bitmap.createBitmap(width, height, Config.ARGB_8888);
+			m_buffers[i].eraseColor(0);
+		}
+		m_requested = new RenderState(maxParams);
+		m_rendering = new RenderState(maxParams);
+		m_shown = new RenderState(maxParams);
+		m_block = new ParamBlock(maxParams);
+		m_listener = listener;
+	}
+
+	/**
+	 * Start rendering with the given context, which the buffers are attached to until quit().
+	 */
+	public synchronized void start(final RenderContext context) {
+		if (m_thread == null) {
+			m_context = context;
+			for (int i = 0; i < m_buffers.length; ++i) {
+				m_context.setDestination(i, m_buffers[i]);
+			}
+			m_contextSource = null;
+			m_hasShown = false;
+			m_thread = new Thread(this, "PullbackRenderer");
+			m_thread.start();
+		}
+	}
+
+	public void quit() {
+		final Thread thread;
+		synchronized (this) {
+			thread = m_thread;
+			m_thread = null;
+			notifyAll();
+		}
+		if (thread != null) {
+			thread.interrupt();
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Snapshot the given state and schedule it for rendering, replacing any request that hasn't started yet.
+	 * Asking for the state that was last requested is a no-op, apart from picking up a change in interactivity.
+	 * @param deepTrans the same zoom and pan as trans in double precision, to render the Blaschke product with
+	 * ConformLib.pullbackDeep() - or null for ConformLib.pullback()
+	 * @param expression map to pull back by instead of the Blaschke product of the params, or "" for none
+	 * @param interactive true while a gesture is in progress - new states are then rendered as a preview
+	 */
+	public synchronized void requestRender(final Bitmap srcBitmap, final ComplexArray params, final ComplexAffineTrans trans, final DeepZoomTrans deepTrans, final ConformLib.WrapMode wrapMode, final String expression, final boolean interactive) {
+		final boolean isSameState = m_hasRequested && m_requested.isSameAs(srcBitmap, params, trans, deepTrans, wrapMode, expression);
+		if (isSameState && interactive == m_requestedInteractive) {
+			return;
+		}
+		if (!isSameState) {
+			m_requested.assignFrom(srcBitmap, params, trans, deepTrans, wrapMode, expression);
+			m_hasRequested = true;
+			m_hasRequest = true;
+		}
+		m_requestedInteractive = interactive;
+		notifyAll();
+	}
+
+	/**
+	 * @return the most recently completed frame, to draw.  It isn't rendered into again until the next call, so it
+	 * can be drawn (or recorded in a display list) until then, but shouldn't be kept past that.
+	 */
+	public synchronized Bitmap acquireFrontBuffer() {
+		m_drawn = m_front;
+		return m_buffers[m_front];
+	}
+
+	public synchronized Bitmap copyFrontBuffer() {
+		return m_buffers[m_front].copy(Config.ARGB_8888, false);
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (;;) {
+				final int frontIndex;
+				final int backIndex;
+				final int step;
+				synchronized (this) {
+					step = awaitNextStep();
+					if (step == 0) {
+						return;
+					}
+					frontIndex = m_front;
+					//the buffer that's neither the front nor being drawn
+					backIndex = m_drawn != m_front ? 3 - m_front - m_drawn : (m_front + 1) % 3;
+				}
+				final boolean isScrolled = render(backIndex, frontIndex, step);
+				synchronized (this) {
+					m_front = backIndex;
+				}
+				m_renderedStep = isScrolled ? 1 : step;
+				m_lastFrameMillis = SystemClock.uptimeMillis();
+				m_listener.onFrameRendered();
+			}
+		} catch (InterruptedException e) {
+			Log.i(TAG, "Pullback renderer stopped");
+		}
+	}
+
+	/**
+	 * Render m_rendering into buffer backIndex, by scrolling the front buffer, frontIndex, if that will do.
+	 * @return true if it was scrolled, and so rendered at full resolution whatever the step
+	 */
+	private boolean render(final int backIndex, final int frontIndex, final int step) {
+		final RenderState s = m_rendering;
+		if (s.srcBitmap != m_contextSource || s.srcBitmap.getGenerationId() != m_contextSourceGeneration) {
+			m_context.setSource(s.srcBitmap);
+			//A source no bigger than the view is mostly magnified, so leave it on the vector row kernel; mip
+			//sampling only pays for itself where the whole picture is shrunk
+			m_context.setMipmapping(s.srcBitmap.getWidth() > m_buffers[0].getWidth() || s.srcBitmap.getHeight() > m_buffers[0].getHeight());
+			m_contextSource = s.srcBitmap;
+			m_contextSourceGeneration = s.srcBitmap.getGenerationId();
+		}
+		if (m_isNewState && m_hasShown && m_renderedStep == 1 && m_shownSourceGeneration == m_contextSourceGeneration && s.isTranslationOf(m_shown)) {
+			final int width = m_buffers[backIndex].getWidth();
+			final int height = m_buffers[backIndex].getHeight();
+			//Moving the view by one pixel's step in z moves the picture a pixel the same way
+			final float reStep = pixelStep(width);
+			final float imStep = pixelStep(height);
+			final int dx = Math.round((s.trans.tr.re - m_shown.trans.tr.re)/reStep);
+			final int dy = Math.round((s.trans.tr.im - m_shown.trans.tr.im)/imStep);
+			if (Math.abs(dx) < width && Math.abs(dy) < height) {
+				m_scrolledTrans.assignFrom(m_shown.trans).translateBy(dx*reStep, dy*imStep);
+				m_block.assign(s.params, m_scrolledTrans, null, s.wrapMode);
+				if (m_context.pullbackScrolled(backIndex, frontIndex, m_block, dx, dy) == 0) {
+					m_shown.assignFrom(s).trans.assignFrom(m_scrolledTrans);
+					m_isShownScrolled = !m_scrolledTrans.equals(s.trans);
+					return true;
+				}
+			}
+		}
+		m_block.assign(s.params, s.trans, s.isDeepZoom ? s.deepTrans : null, s.wrapMode);
+		if (s.expression.isEmpty() || m_context.pullbackByExpression(backIndex, s.expression, m_block, step) != 0) {
+			//no expression, or one that doesn't compile (yet - the user may be half way through typing it)
+			m_context.pullback(backIndex, m_block, step);
+		}
+		m_shown.assignFrom(s);
+		m_shownSourceGeneration = m_contextSourceGeneration;
+		m_hasShown = true;
+		m_isShownScrolled = false;
+		return false;
+	}
+
+	//The native side's step in z from one pixel to the next across size pixels: its grid puts pixel i at
+	//-1 + 2i/(size-1), rounded to 16.16 (see gridZ in vectorkernel.h)
+	private static float pixelStep(final int size) {
+		return 2.0f/(size-1);
+	}
+
+	/**
+	 * Wait until there's something to render: a new state, or a refinement of the one on screen.
+	 * @return the step to render m_rendering at, or 0 if the renderer has been told to quit
+	 */
+	private int awaitNextStep() throws InterruptedException {
+		for (;;) {
+			if (m_thread != Thread.currentThread()) {
+				return 0;
+			}
+			if (m_hasRequest) {
+				m_rendering.assignFrom(m_requested);
+				m_hasRequest = false;
+				m_isNewState = true;
+				return m_requestedInteractive ? PREVIEW_STEP : 1;
+			}
+			if (m_renderedStep > 1 || m_isShownScrolled) {
+				final long delay = m_requestedInteractive ? m_lastFrameMillis + REFINE_DELAY_MS - SystemClock.uptimeMillis() : 0;
+				if (delay <= 0) {
+					m_isNewState = false; //so it's rendered afresh, not scrolled
+					return Math.max(m_renderedStep/2, 1);
+				}
+				wait(delay);
+			} else {
+				wait();
+			}
+		}
+	}
+}
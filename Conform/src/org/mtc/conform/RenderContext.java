@@ -0,0 +1,129 @@
+package org.mtc.conform;
+
+import android.graphics.Bitmap;
+
+/**
+ * A long-lived native renderer, made by ConformLib.createRenderContext().  It keeps its own copy of the source
+ * image, taken once by setSource(), and keeps the bitmaps it renders into locked from setDestination() on, so a
+ * frame only passes a ParamBlock: no bitmap is inspected or locked per frame.  Its settings, caches and retained
+ * map are its own - ConformLib's setters don't change it.  Render from one thread at a time, and release() it when
+ * done: the destinations stay locked until then.
+ */
+public class RenderContext {
+
+	private long m_handle;
+
+	RenderContext(final long handle) {
+		m_handle = handle;
+	}
+
+	/**
+	 * Copy the source image in.  Call again whenever it's replaced or its pixels change.
+	 * @return 0, or non-zero if it isn't an ARGB_8888 bitmap
+	 */
+	public int setSource(final Bitmap sourceBitmap) {
+		return ConformLib.INSTANCE.setContextSource(m_handle, sourceBitmap);
+	}
+
+	/**
+	 * Attach an ARGB_8888 bitmap to render into as destination index (0 to 2), or detach it with null.  It's locked
+	 * until it's detached or the context released, so don't recycle it before then.
+	 * @return 0, or non-zero if it can't be used
+	 */
+	public int setDestination(final int index, final Bitmap viewBitmap) {
+		return ConformLib.INSTANCE.setContextDest(m_handle, index, viewBitmap);
+	}
+
+	/**
+	 * As ConformLib.pullback(Bitmap, Bitmap, ParamBlock, int), from the source and into destination index.
+	 * @return 0, or non-zero if there's no source or no such destination (nothing is rendered then)
+	 */
+	public int pullback(final int index, final ParamBlock block, final int step) {
+		return ConformLib.INSTANCE.pullbackContext(m_handle, index, block.getBuffer(), step);
+	}
+
+	/**
+	 * Render a view that has only moved by (dx, dy) whole pixels since destination fromIndex was rendered, into
+	 * destination index: fromIndex's pixels are moved across by (dx, dy) and only the strips left uncovered are pulled
+	 * back, at full resolution.  The block must be the earlier view's but for its translation.
+	 * @return 0, or non-zero if there's no source, or the destinations are missing or differ in size
+	 */
+	public int pullbackScrolled(final int index, final int fromIndex, final ParamBlock block, final int dx, final int dy) {
+		return ConformLib.INSTANCE.pullbackContextScrolled(m_handle, index, fromIndex, block.getBuffer(), dx, dy);
+	}
+
+	/**
+	 * As ConformLib.pullbackByExpression(Bitmap, Bitmap, String, ParamBlock, int), from the source and into
+	 * destination index.
+	 * @return 0, or non-zero if the expression doesn't compile or there's nothing to render from or into
+	 */
+	public int pullbackByExpression(final int index, final String expression, final ParamBlock block, final int step) {
+		return ConformLib.INSTANCE.pullbackContextByExpression(m_handle, index, expression, block.getBuffer(), step);
+	}
+
+	/**
+	 * See ConformLib.setAdaptiveTolerance().
+	 */
+	public void setAdaptiveTolerance(final float tolerance) {
+		ConformLib.INSTANCE.setContextAdaptiveTolerance(m_handle, tolerance);
+	}
+
+	/**
+	 * See ConformLib.setMipmapping().
+	 */
+	public void setMipmapping(final boolean enabled) {
+		ConformLib.INSTANCE.setContextMipmapping(m_handle, enabled);
+	}
+
+	/**
+	 * See ConformLib.setTiledSource().
+	 */
+	public void setTiledSource(final boolean enabled) {
+		ConformLib.INSTANCE.setContextTiledSource(m_handle, enabled);
+	}
+
+	/**
+	 * See ConformLib.setEngine().
+	 */
+	public void setEngine(final ConformLib.Engine engine) {
+		ConformLib.INSTANCE.setContextEngine(m_handle, engine.getInt());
+	}
+
+	/**
+	 * Start or stop recording frame timings.  Starting clears what was recorded before.  Off by default.
+	 */
+	public void setStatsEnabled(final boolean enabled) {
+		ConformLib.INSTANCE.setContextStatsEnabled(m_handle, enabled);
+	}
+
+	/**
+	 * Record how long drawing a frame this context rendered took, for the DRAW stage of the stats (see FrameStats
+	 * for what that measures on a hardware canvas).
+	 */
+	public void recordDrawTime(final long nanos) {
+		ConformLib.INSTANCE.recordContextDrawTime(m_handle, nanos*1e-3f);
+	}
+
+	/**
+	 * Fill in stats with the percentiles of the frames recorded so far.
+	 */
+	public FrameStats getStats(final FrameStats stats) {
+		final int size = ConformLib.INSTANCE.getContextStats(m_handle, stats.m_summary);
+		if (size > stats.m_summary.length) {
+			stats.m_summary = new float[size];
+			ConformLib.INSTANCE.getContextStats(m_handle, stats.m_summary);
+		}
+		stats.unpack();
+		return stats;
+	}
+
+	/**
+	 * Unlock the destinations and free the native side.  The context can't be used afterwards.
+	 */
+	public void release() {
+		if (m_handle != 0) {
+			ConformLib.INSTANCE.releaseContext(m_handle);
+			m_handle = 0;
+		}
+	}
+}
@@ -3,6 +3,7 @@ package org.mtc.conform;
 import org.mtc.conform.math.ComplexAffineTrans;
 import org.mtc.conform.math.ComplexArray;
 import org.mtc.conform.math.ComplexArray.ComplexElement;
+import org.mtc.conform.math.DeepZoomTrans;
 import org.mtc.conform.math.IComplex;
 import org.mtc.conform.math.ComplexArray.IComplexAction;
 
@@ -15,15 +16,10 @@ public class TransformationState {
 	final private int m_drawHeight;
 	final private Matrix m_screenToSquareMat = new Matrix();
 	final private Matrix m_squareToScreenMat = new Matrix();
-	final private ComplexAffineTrans m_currTrans = ComplexAffineTrans.IDENT;
+	final private ComplexAffineTrans m_currTrans = new ComplexAffineTrans(IComplex.ONE, IComplex.ZERO); //not IDENT, which it would overwrite
+	final private DeepZoomTrans m_deepTrans = new DeepZoomTrans(); //the real zoom and pan; m_currTrans follows it
 	final private ComplexElement m_pivot = new ComplexArray(1,1).front().assignFrom(IComplex.ZERO);
 	final private ComplexElement m_translate = new ComplexArray(1,1).front().assignFrom(IComplex.ZERO);
-	final private IComplexAction m_fwdTransformer = new IComplexAction() {
-		@Override
-		public void actOn(IComplex param) {
-			m_currTrans.apply(param);
-		}			
-	};
 	final private IComplexAction m_invTransformer = new IComplexAction() {			
 		@Override
 		public void actOn(IComplex param) {
@@ -64,14 +60,25 @@ public class TransformationState {
 	public ComplexAffineTrans getCurrTrans() {
 		return m_currTrans;
 	}
+	public DeepZoomTrans getDeepTrans() {
+		return m_deepTrans;
+	}
+	//The pivot stays put on screen, so it is taken in view coordinates, before the transformation
 	public void scale(final float s, final float x, final float y) {
-		m_currTrans.postMult(ComplexAffineTrans.scaling(s, screenToNormalizedPoint(m_pivot.re(x).im(y))));
+		screenToViewPoint(m_pivot.re(x).im(y));
+		m_deepTrans.postScale(s, m_pivot.re(), m_pivot.im()).assignTo(m_currTrans);
 		updateTranformStateListener();
 	}
 	public void translate(final float x, final float y) {
-		m_currTrans.postMult(ComplexAffineTrans.translation(screenToNormalizedVector(m_translate.re(-x).im(-y))));
+		screenToNormalizedVector(m_translate.re(-x).im(-y));
+		m_deepTrans.postTranslate(m_translate.re(), m_translate.im()).assignTo(m_currTrans);
 		updateTranformStateListener();
 	}
+	private ComplexElement screenToViewPoint(ComplexElement srcdst) {
+		final ComplexArray backingArray = srcdst.getParent();
+		m_screenToSquareMat.mapPoints(backingArray.arr, 0, backingArray.arr, 0, 1);
+		return srcdst;
+	}
 	public ComplexElement screenToNormalizedVector(ComplexElement srcdst) {
 		final ComplexArray backingArray = srcdst.getParent();
 		m_screenToSquareMat.mapVectors(backingArray.arr, 0, backingArray.arr, 0, 1);
@@ -85,14 +92,14 @@ public class TransformationState {
 	}
 	public void screenToNormalizedPoints(final ComplexArray src, final ComplexArray dst) {			
 		m_screenToSquareMat.mapPoints(dst.arr, 0, src.arr, 0, src.size);
-		dst.apply(m_invTransformer);
+		dst.mapAffineInverse(m_currTrans);
 	}
 	public void screenToNormalizedPoint(final ComplexElement src, final ComplexElement dst) {			
 		m_screenToSquareMat.mapPoints(dst.getParent().arr, dst.getIndex()<<1, src.getParent().arr, src.getIndex()<<1, 1);
 		m_invTransformer.actOn(dst);
 	}
 	public void normalizedToScreenPoints(final ComplexArray src, final ComplexArray dst) {
-		dst.copyFrom(src).apply(m_fwdTransformer);
+		dst.copyFrom(src).mapAffine(m_currTrans);
 		m_squareToScreenMat.mapPoints(dst.arr, 0, dst.arr, 0, dst.size);
 	}
 
@@ -112,7 +112,12 @@ public class Complex implements IComplex {
 	}
 	@Override
 	public IComplex div(final Complex z) {
-		return mult(new Complex(z).inv());
+		final float normsq = z.re*z.re+z.im*z.im;
+		final float newre = (re*z.re + im*z.im)/normsq;
+		final float newim = (im*z.re - re*z.im)/normsq;
+		re = newre;
+		im = newim;
+		return this;
 	}
 
 	@Override
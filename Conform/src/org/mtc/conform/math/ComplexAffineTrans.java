@@ -27,6 +27,12 @@ public class ComplexAffineTrans {
 		this(t.sc,t.tr);
 	}
 
+	public ComplexAffineTrans assignFrom(final ComplexAffineTrans t) {
+		sc.assignFrom(t.sc);
+		tr.assignFrom(t.tr);
+		return this;
+	}
+
 	public IComplex apply(final IComplex z) {
 		return z.mult(sc).add(tr);
 	}
@@ -49,7 +55,8 @@ public class ComplexAffineTrans {
 	}
 	
 	public ComplexAffineTrans preMult(final ComplexAffineTrans t) {
-		tr.add(new Complex(sc).mult(t.tr));
+		tr.re += sc.re*t.tr.re - sc.im*t.tr.im;
+		tr.im += sc.re*t.tr.im + sc.im*t.tr.re;
 		sc.mult(t.sc);
 		return this;
 	}
@@ -58,6 +65,15 @@ public class ComplexAffineTrans {
 		sc.mult(t.sc);
 		return this;
 	}
+	/**
+	 * Follow this transformation by a translation by (x, y), as postMult(translation(x, y)) does, without
+	 * allocating.
+	 */
+	public ComplexAffineTrans translateBy(final float x, final float y) {
+		tr.re += x;
+		tr.im += y;
+		return this;
+	}
 	public ComplexAffineTrans inv() {
 		sc.inv();
 		tr.mult(sc).neg();
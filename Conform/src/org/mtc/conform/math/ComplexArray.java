@@ -21,7 +21,7 @@ public class ComplexArray {
 	public interface IComplexPredicate {
 		boolean eval(IComplex z);
 	}
-	
+
 	final public float[] arr;
 	final public int capacity;
 	public int size;
@@ -51,6 +51,18 @@ public class ComplexArray {
 		return this;
 	}
 	
+	public boolean contentEquals(final ComplexArray other) {
+		if (size != other.size) {
+			return false;
+		}
+		for (int i = 0; i < size<<1; ++i) {
+			if (arr[i] != other.arr[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
 	public ComplexElement front() {
 		return new ComplexElement();
 	}
@@ -65,6 +77,7 @@ public class ComplexArray {
 	
 	//OK this is the definition of trouble.  But let's see what happens - why not?
 	private final ComplexElement asComplex = new ComplexElement();
+	private final ComplexElement asFound = new ComplexElement(); //indexOf's, so a predicate may apply() safely
 
 	public void apply(final IComplexAction action) {
 		for (asComplex.idx = 0; asComplex.idx < size<<1; asComplex.idx += 2) {
@@ -73,15 +86,145 @@ public class ComplexArray {
 	}
 	
 	public ComplexElement find(final IComplexPredicate condition) {
-		final ComplexElement element = new ComplexElement();
-		for (element.idx = 0; element.idx < size<<1; element.idx += 2) {
-			if (condition.eval(element)) {
-				return element;
+		final int i = indexOf(condition);
+		return i < 0 ? null : at(i);
+	}
+
+	/**
+	 * Like find(), but allocation free.
+	 * @return the index of the first element satisfying condition, or -1 if none does
+	 */
+	public int indexOf(final IComplexPredicate condition) {
+		for (asFound.idx = 0; asFound.idx < size<<1; asFound.idx += 2) {
+			if (condition.eval(asFound)) {
+				return asFound.idx>>1;
 			}
 		}
-		return null;
+		return -1;
 	}
-	
+
+	//Bulk kernels: plain loops over arr, with no per-element call, so the JIT can unroll them (and, where the two
+	//halves of each pair get the same operation, vectorize them).  Each works in place on the first size elements.
+
+	/**
+	 * z -> sc*z + tr for every element, as apply() with t.apply() does.
+	 */
+	public ComplexArray mapAffine(final ComplexAffineTrans t) {
+		return mapAffine(t.sc.re, t.sc.im, t.tr.re, t.tr.im);
+	}
+
+	/**
+	 * z -> (z - tr)/sc for every element, as apply() with t.applyInverse() does (to rounding).
+	 */
+	public ComplexArray mapAffineInverse(final ComplexAffineTrans t) {
+		final float normsq = t.sc.re*t.sc.re + t.sc.im*t.sc.im;
+		final float invre = t.sc.re/normsq;
+		final float invim = -t.sc.im/normsq;
+		return mapAffine(invre, invim, -(t.tr.re*invre - t.tr.im*invim), -(t.tr.re*invim + t.tr.im*invre));
+	}
+
+	private ComplexArray mapAffine(final float scre, final float scim, final float trre, final float trim) {
+		final float[] a = arr;
+		final int n = size<<1;
+		if (scim == 0.0f) { //the app's zooms are all real
+			for (int i = 0; i < n; i += 2) {
+				a[i] = scre*a[i] + trre;
+				a[i+1] = scre*a[i+1] + trim;
+			}
+		} else {
+			for (int i = 0; i < n; i += 2) {
+				final float re = a[i];
+				final float im = a[i+1];
+				a[i] = scre*re - scim*im + trre;
+				a[i+1] = scre*im + scim*re + trim;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * z -> (az + b)/(cz + d) for every element.
+	 */
+	public ComplexArray mapMobius(final Complex a, final Complex b, final Complex c, final Complex d) {
+		final float[] z = arr;
+		final int n = size<<1;
+		for (int i = 0; i < n; i += 2) {
+			final float re = z[i];
+			final float im = z[i+1];
+			final float numre = a.re*re - a.im*im + b.re;
+			final float numim = a.re*im + a.im*re + b.im;
+			final float denre = c.re*re - c.im*im + d.re;
+			final float denim = c.re*im + c.im*re + d.im;
+			final float normsq = denre*denre + denim*denim;
+			z[i] = (numre*denre + numim*denim)/normsq;
+			z[i+1] = (numim*denre - numre*denim)/normsq;
+		}
+		return this;
+	}
+
+	/**
+	 * Multiply each element by the one at the same index in other, which must be at least as long.
+	 */
+	public ComplexArray mult(final ComplexArray other) {
+		final float[] a = arr;
+		final float[] b = other.arr;
+		final int n = size<<1;
+		for (int i = 0; i < n; i += 2) {
+			final float re = a[i];
+			final float im = a[i+1];
+			a[i] = re*b[i] - im*b[i+1];
+			a[i+1] = re*b[i+1] + im*b[i];
+		}
+		return this;
+	}
+
+	/**
+	 * Divide each element by the one at the same index in other, which must be at least as long.
+	 */
+	public ComplexArray div(final ComplexArray other) {
+		final float[] a = arr;
+		final float[] b = other.arr;
+		final int n = size<<1;
+		for (int i = 0; i < n; i += 2) {
+			final float re = a[i];
+			final float im = a[i+1];
+			final float normsq = b[i]*b[i] + b[i+1]*b[i+1];
+			a[i] = (re*b[i] + im*b[i+1])/normsq;
+			a[i+1] = (im*b[i] - re*b[i+1])/normsq;
+		}
+		return this;
+	}
+
+	/**
+	 * @param out gets each element's squared distance from (re, im); needs room for size of them
+	 */
+	public void distSq(final float re, final float im, final float[] out) {
+		final float[] a = arr;
+		for (int k = 0; k < size; ++k) {
+			final float dre = a[k<<1] - re;
+			final float dim = a[(k<<1)+1] - im;
+			out[k] = dre*dre + dim*dim;
+		}
+	}
+
+	/**
+	 * indexOf() with a within-radius predicate, written out so a touch search allocates no predicate.
+	 * @return the index of the first element within radius of (re, im), or -1 if none is
+	 */
+	public int indexWithin(final float re, final float im, final float radius) {
+		final float[] a = arr;
+		final float radiusSq = radius*radius;
+		final int n = size<<1;
+		for (int i = 0; i < n; i += 2) {
+			final float dre = a[i] - re;
+			final float dim = a[i+1] - im;
+			if (dre*dre + dim*dim <= radiusSq) {
+				return i>>1;
+			}
+		}
+		return -1;
+	}
+
 	public class ComplexIterator implements Iterator<IComplex> {
 		private int i;
 		@Override public boolean hasNext() {
@@ -223,7 +366,12 @@ public class ComplexArray {
 		}
 		@Override
 		public ComplexElement div(final Complex z) {
-			return mult(new Complex(z).inv());
+			final float re = arr[idx];
+			final float im = arr[idx+1];
+			final float normsq = z.re*z.re+z.im*z.im;
+			arr[idx] = (re*z.re + im*z.im)/normsq;
+			arr[idx+1] = (im*z.re - re*z.im)/normsq;
+			return this;
 		}
 
 		@Override
@@ -0,0 +1,68 @@
+package org.mtc.conform.math;
+
+/**
+ * The view's zoom and pan in double precision, for zooming in further than a float {@link ComplexAffineTrans}
+ * can follow: z -> scale*(z - centre), where centre is the point of the plane in the middle of the view.  Keeping
+ * the centre rather than the translation means its precision doesn't shrink as the zoom grows, so panning stays
+ * smooth to around 1e13.  Warning: mutable, like ComplexAffineTrans.
+ */
+public class DeepZoomTrans {
+
+	public double scale = 1.0;
+	public double centreRe = 0.0;
+	public double centreIm = 0.0;
+
+	public DeepZoomTrans assignFrom(final DeepZoomTrans t) {
+		scale = t.scale;
+		centreRe = t.centreRe;
+		centreIm = t.centreIm;
+		return this;
+	}
+
+	/**
+	 * Follow this transformation by a scaling by s about the point (x, y) of the view, as
+	 * ComplexAffineTrans.postMult(ComplexAffineTrans.scaling(s, x, y)) does.
+	 */
+	public DeepZoomTrans postScale(final double s, final double x, final double y) {
+		final double shift = (1.0-s)/(s*scale);
+		centreRe -= x*shift;
+		centreIm -= y*shift;
+		scale *= s;
+		return this;
+	}
+
+	/**
+	 * Follow this transformation by a translation by (x, y) in the view.
+	 */
+	public DeepZoomTrans postTranslate(final double x, final double y) {
+		centreRe -= x/scale;
+		centreIm -= y/scale;
+		return this;
+	}
+
+	/**
+	 * The same transformation as near as float allows, for the parts of the app that don't need deep zoom.
+	 */
+	public ComplexAffineTrans assignTo(final ComplexAffineTrans t) {
+		t.sc.assignFrom((float)scale, 0.0f);
+		t.tr.assignFrom((float)(-scale*centreRe), (float)(-scale*centreIm));
+		return t;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		sb.append("[z->").append(scale).append("(z-(").append(centreRe).append(',').append(centreIm).append("))]");
+		return sb.toString();
+	}
+	@Override
+	public boolean equals(Object o) {
+		final DeepZoomTrans t = (DeepZoomTrans)o;
+		return scale == t.scale && centreRe == t.centreRe && centreIm == t.centreIm;
+	}
+	@Override
+	public int hashCode() {
+		final long bits = Double.doubleToLongBits(scale) + 7*Double.doubleToLongBits(centreRe) + 31*Double.doubleToLongBits(centreIm);
+		return (int)(bits ^ (bits >>> 32));
+	}
+}
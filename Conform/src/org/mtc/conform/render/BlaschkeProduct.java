@@ -0,0 +1,133 @@
+package org.mtc.conform.render;
+
+import java.lang.reflect.Constructor;
+
+import org.mtc.conform.math.ComplexAffineTrans;
+import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.DeepZoomTrans;
+
+/**
+ * The map pullback() renders by, in double: the product over the zeros a of (p - a)/(1 - conj(a)*p), where p is the
+ * plane point centre + z/scale under view point z.  Nothing is multiplied out or approximated, so it's exact to
+ * double whatever the number of zeros, and is what the native engines (the multipole expansion past six zeros
+ * included) should agree with.
+ */
+public class BlaschkeProduct implements PlaneMap {
+
+	//Keeps (w+1)/2 scaled by the aspect ratio well inside 16.16 range, as in jni/bitmapper.cpp
+	static final double MAX_W = 16383.0;
+	static final double FIX_TO_DOUBLE = 1.0/65536;
+
+	final int numZeros;
+	final double[] zeroRe;
+	final double[] zeroIm;
+	final double centreRe;
+	final double centreIm;
+	final double invScale;
+
+	/**
+	 * @param params the zeros, as (re, im) pairs
+	 */
+	public BlaschkeProduct(final float[] params, final int numParams, final double centreRe, final double centreIm, final double scale) {
+		numZeros = numParams;
+		zeroRe = new double[numParams];
+		zeroIm = new double[numParams];
+		for (int i = 0; i < numParams; ++i) {
+			zeroRe[i] = params[2*i];
+			zeroIm[i] = params[2*i+1];
+		}
+		this.centreRe = centreRe;
+		this.centreIm = centreIm;
+		invScale = 1.0/scale;
+	}
+
+	/**
+	 * The map ConformLib.pullback() renders with currTrans as the view (its real scale and translation)
+	 */
+	public static BlaschkeProduct forView(final ComplexArray params, final ComplexAffineTrans currTrans) {
+		final double scale = currTrans.sc.re;
+		return new BlaschkeProduct(params.arr, params.size(), -currTrans.tr.re/scale, -currTrans.tr.im/scale, scale);
+	}
+
+	/**
+	 * The map ConformLib.pullbackDeep() renders with deepTrans as the view
+	 */
+	public static BlaschkeProduct forDeepView(final ComplexArray params, final DeepZoomTrans deepTrans) {
+		return new BlaschkeProduct(params.arr, params.size(), deepTrans.centreRe, deepTrans.centreIm, deepTrans.scale);
+	}
+
+	@Override
+	public void mapRow(final int zre, final int reInc, final int zim, final int count, final int[] w) {
+		final double pIm = centreIm + zim*FIX_TO_DOUBLE*invScale;
+		for (int i = 0; i < count; ++i) {
+			final double pRe = centreRe + (zre + i*reInc)*FIX_TO_DOUBLE*invScale;
+			double wRe = 1.0;
+			double wIm = 0.0;
+			for (int k = 0; k < numZeros; ++k) {
+				final double aRe = zeroRe[k];
+				final double aIm = zeroIm[k];
+				final double nRe = pRe - aRe;
+				final double nIm = pIm - aIm;
+				double eRe = 1.0 - (aRe*pRe + aIm*pIm);
+				double eIm = aIm*pRe - aRe*pIm;
+				if (eRe == 0.0 && eIm == 0.0) { //the same nudge as the native engines give a pole
+					eRe = FIX_TO_DOUBLE;
+				}
+				final double inv = 1.0/(eRe*eRe + eIm*eIm);
+				final double qRe = (nRe*eRe + nIm*eIm)*inv;
+				final double qIm = (nIm*eRe - nRe*eIm)*inv;
+				final double re = wRe*qRe - wIm*qIm;
+				wIm = wRe*qIm + wIm*qRe;
+				wRe = re;
+			}
+			w[2*i] = toFixClamped(wRe);
+			w[2*i+1] = toFixClamped(wIm);
+		}
+	}
+
+	/**
+	 * w back into 16.16 as toFixClamped() in jni/bitmapper.cpp has it: clamped, and 0 for infinities and NaNs
+	 */
+	static int toFixClamped(final double x) {
+		if (Double.isNaN(x) || Double.isInfinite(x)) {
+			return 0;
+		}
+		return (int) ((x > MAX_W ? MAX_W : x < -MAX_W ? -MAX_W : x) * 65536.0);
+	}
+
+	private static final String VECTOR_CLASS = "org.mtc.conform.render.VectorBlaschkeProduct";
+	private static Constructor<?> s_vectorConstructor;
+	private static boolean s_isVectorChecked;
+
+	/**
+	 * @return whether vectorized() can give a Vector API version of the map: only on a JVM with the
+	 * jdk.incubator.vector module added, running ConformJvm's JDK 17 build
+	 */
+	public static synchronized boolean isVectorAvailable() {
+		if (!s_isVectorChecked) {
+			s_isVectorChecked = true;
+			try {
+				s_vectorConstructor = Class.forName(VECTOR_CLASS).getConstructor(BlaschkeProduct.class);
+			} catch (ClassNotFoundException e) {
+			} catch (NoSuchMethodException e) {
+			} catch (LinkageError e) { //the class is there but the module isn't
+			}
+		}
+		return s_vectorConstructor != null;
+	}
+
+	/**
+	 * @return the same map evaluated with the Vector API, giving the same w bit for bit; or this map itself when
+	 * isVectorAvailable() is false
+	 */
+	public PlaneMap vectorized() {
+		if (!isVectorAvailable()) {
+			return this;
+		}
+		try {
+			return (PlaneMap) s_vectorConstructor.newInstance(this);
+		} catch (Exception e) {
+			return this;
+		}
+	}
+}
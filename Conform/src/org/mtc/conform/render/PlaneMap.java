@@ -0,0 +1,12 @@
+package org.mtc.conform.render;
+
+/**
+ * Maps the view plane (z) to the source plane (w) a row at a time, like PlaneMap in jni/bitmapper.h, with both in
+ * raw 16.16 fixed point as the native side has them.
+ */
+public interface PlaneMap {
+	/**
+	 * w for z = (zre + i*reInc, zim), i in [0, count), as (re, im) pairs in w
+	 */
+	void mapRow(int zre, int reInc, int zim, int count, int[] w);
+}
@@ -0,0 +1,113 @@
+package org.mtc.conform.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The pullback in plain Java, for checking the native renderer's output against and for rendering where there is
+ * no libconform.so.  The view's pixel grid and the sampling are 16.16 fixed point exactly as in
+ * jni/bitmapper.cpp, rows mapped in the same runs (see gridZ in jni/vectorkernel.h); the map is whatever PlaneMap it's given, normally a BlaschkeProduct.  Full resolution only -
+ * no previews, adaptive grid or mipmaps - so it matches the native side with adaptive tolerance 0 and mipmapping
+ * off.  Rows are split into bands, each a task on the given ExecutorService, so it runs at the app's minSdk
+ * (ForkJoinPool would need API 21).
+ */
+public class ReferenceRenderer {
+
+	public static final int BAND_HEIGHT = 16; //rows per task, as TILE_HEIGHT in jni/bitmapper.cpp
+	private static final int TILE_WIDTH = 64; //as in jni/bitmapper.cpp, where each row's runs restart
+
+	private final ExecutorService m_executor;
+
+	public ReferenceRenderer(final ExecutorService executor) {
+		m_executor = executor;
+	}
+
+	/**
+	 * Fill dest, a width x height image, with src pulled back by map.  Returns once every band is done; if one
+	 * throws, or the caller is interrupted, the bands still queued are cancelled and it's passed on.
+	 */
+	public void render(final SourceSampler src, final PlaneMap map, final int[] dest, final int width, final int height) throws InterruptedException {
+		final List<Future<?>> bands = new ArrayList<Future<?>>((height + BAND_HEIGHT - 1)/BAND_HEIGHT);
+		try {
+			for (int top = 0; top < height; top += BAND_HEIGHT) {
+				bands.add(m_executor.submit(new Band(src, map, dest, width, height, top, Math.min(top + BAND_HEIGHT, height))));
+			}
+			for (Future<?> band : bands) {
+				band.get();
+			}
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (RuntimeException) cause; //Band.run throws nothing checked
+		} finally {
+			for (Future<?> band : bands) {
+				band.cancel(false); //a no-op for the bands that finished
+			}
+		}
+	}
+
+	//The view grid as in jni/vectorkernel.h: pixel i of size across at z = -1 + 2*i/(size-1) in 16.16, and the
+	//step and run length rows are mapped with from each run's own gridZ
+	static int gridZ(final long i, final long size) {
+		return size > 1 ? (int) ((i*4*65536 + (size-1)) / (2*(size-1))) - 65536 : -65536;
+	}
+
+	static int gridStep(final long size) {
+		return size > 1 ? (int) ((4*65536 + (size-1)) / (2*(size-1))) : 0;
+	}
+
+	static int gridRun(final long size, final int maxRun) {
+		final long rounding = size > 1 ? gridStep(size)*(size-1) - 2*65536 : 0;
+		final long drift = 8*Math.abs(rounding);
+		if (drift*maxRun <= 2*65536) {
+			return maxRun;
+		}
+		return Math.max((int) (2*65536/drift) & ~3, 4);
+	}
+
+	private static class Band implements Runnable {
+		private final SourceSampler m_src;
+		private final PlaneMap m_map;
+		private final int[] m_dest;
+		private final int m_width;
+		private final int m_height;
+		private final int m_top;
+		private final int m_bottom;
+
+		Band(final SourceSampler src, final PlaneMap map, final int[] dest, final int width, final int height, final int top, final int bottom) {
+			m_src = src;
+			m_map = map;
+			m_dest = dest;
+			m_width = width;
+			m_height = height;
+			m_top = top;
+			m_bottom = bottom;
+		}
+
+		@Override
+		public void run() {
+			final int reInc = gridStep(m_width);
+			final int run = gridRun(m_width, TILE_WIDTH);
+			final int[] w = new int[2*run];
+			for (int v = m_top; v < m_bottom; ++v) {
+				final int zim = gridZ(v, m_height);
+				final int row = v*m_width;
+				for (int tile = 0; tile < m_width; tile += TILE_WIDTH) {
+					final int tileEnd = Math.min(tile + TILE_WIDTH, m_width);
+					for (int u = tile; u < tileEnd; u += run) {
+						final int count = Math.min(run, tileEnd - u);
+						m_map.mapRow(gridZ(u, m_width), reInc, zim, count, w);
+						for (int k = 0; k < count; ++k) {
+							m_dest[row+u+k] = m_src.sample(w[2*k], w[2*k+1]);
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.mtc.conform.render;
+
+/**
+ * BitmapSampler from jni/bitmapper.cpp: bilinear sampling of a source image at w, in 16.16 fixed point step for
+ * step as the native side does it, so a pixel sampled at the same w comes out the same.  The four 8 bit channels
+ * of each pixel are treated alike, so any packing of them into an int works.
+ */
+public class SourceSampler {
+
+	private final int[] m_pixels;
+	private final int m_width;
+	private final int m_height;
+	private final int m_xMult;
+	private final int m_yMult;
+	private final int m_wrapMode;
+
+	/**
+	 * @param wrapMode ConformLib.WrapMode's value: 0 to tile the source, 1 to clamp it
+	 */
+	public SourceSampler(final int[] pixels, final int width, final int height, final int wrapMode) {
+		m_pixels = pixels;
+		m_width = width;
+		m_height = height;
+		m_xMult = width < height ? fixdiv(height << 16, width << 16) : 1 << 16;
+		m_yMult = width > height ? fixdiv(width << 16, height << 16) : 1 << 16;
+		m_wrapMode = wrapMode;
+	}
+
+	public int getWidth() {
+		return m_width;
+	}
+
+	public int getHeight() {
+		return m_height;
+	}
+
+	/**
+	 * @param wre w's real part, raw 16.16
+	 * @param wim w's imaginary part, likewise
+	 */
+	public int sample(final int wre, final int wim) {
+		final int xfix = fixmul(wrapOrClamp(fixmul((wre + (1 << 16))/2, m_xMult), m_wrapMode), (m_width-1) << 16);
+		final int yfix = fixmul(wrapOrClamp(fixmul((wim + (1 << 16))/2, m_yMult), m_wrapMode), (m_height-1) << 16);
+		final int tx = xfix & 0xFFFF;
+		final int ty = yfix & 0xFFFF;
+		final int x0 = (xfix - tx) >>> 16;
+		final int y0 = (yfix - ty) >>> 16;
+		//The native sampler reads past the last column and row here, where their weight is next to nothing
+		final int p = y0*m_width + x0;
+		final int right = x0+1 < m_width ? 1 : 0;
+		final int down = y0+1 < m_height ? m_width : 0;
+		return bilinterp(m_pixels[p], m_pixels[p+right], m_pixels[p+down], m_pixels[p+down+right], tx, ty);
+	}
+
+	private static int bilinterp(final int dl, final int dr, final int ul, final int ur, final int h, final int v) {
+		final int hh = (1 << 16) - h;
+		final int vv = (1 << 16) - v;
+		final int tdl = fixmul(hh, vv);
+		final int tdr = fixmul(h, vv);
+		final int tul = fixmul(hh, v);
+		final int tur = fixmul(h, v);
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			final int c = (dl >>> shift & 0xFF)*tdl + (dr >>> shift & 0xFF)*tdr + (ul >>> shift & 0xFF)*tul + (ur >>> shift & 0xFF)*tur;
+			result |= (c >>> 16) << shift;
+		}
+		return result;
+	}
+
+	private static int fixmul(final int a, final int b) {
+		return (int) (((long) a * b) >> 16);
+	}
+
+	private static int fixdiv(final int a, final int b) {
+		return (int) (((long) a << 16) / b);
+	}
+
+	//wrapOrClamp() from jni/fixed_class.h, term for term
+	private static int wrapOrClamp(final int a, final int wrapMode) {
+		return ((wrapMode-1) & (a & 0xFFFF)) | ((-wrapMode) & (a & -(a > 0 ? 1 : 0) & -(a <= 1 << 16 ? 1 : 0))) | (a > 0 ? 1 : 0);
+	}
+}
@@ -0,0 +1,57 @@
+package org.mtc.conform.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mtc.conform.math.Complex;
+import org.mtc.conform.math.ComplexAffineTrans;
+import org.mtc.conform.math.IComplex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The affine transform operations the touch handler runs per move event.  The operands are reset each call so
+ * repeated application doesn't drift off to infinity or zero.  None of them should allocate; -prof gc shows if they
+ * do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AffineTransBenchmark {
+
+	private final ComplexAffineTrans start = new ComplexAffineTrans(new Complex(1.1f, 0.2f), new Complex(-0.3f, 0.05f));
+	private final ComplexAffineTrans step = ComplexAffineTrans.scaling(1.01f, 0.2f, -0.1f);
+	private final ComplexAffineTrans trans = new ComplexAffineTrans(IComplex.ONE, IComplex.ZERO);
+	private final Complex z0 = new Complex(0.4f, -0.7f);
+	private final Complex z = new Complex(0.0f);
+
+	@Setup
+	public void setUp() {
+		trans.assignFrom(start);
+	}
+
+	@Benchmark
+	public ComplexAffineTrans postMult() {
+		return trans.assignFrom(start).postMult(step);
+	}
+
+	@Benchmark
+	public IComplex apply() {
+		return start.apply(z.assignFrom(z0));
+	}
+
+	@Benchmark
+	public IComplex applyInverse() {
+		return start.applyInverse(z.assignFrom(z0));
+	}
+}
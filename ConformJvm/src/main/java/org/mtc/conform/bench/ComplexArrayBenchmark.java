@@ -0,0 +1,159 @@
+package org.mtc.conform.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mtc.conform.math.Complex;
+import org.mtc.conform.math.ComplexAffineTrans;
+import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.ComplexArray.ComplexElement;
+import org.mtc.conform.math.IComplex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ComplexArray's traversals.  The app's arrays are small (one entry per Blaschke factor) but are walked on every
+ * touch event, so per-call overhead matters as much as per-element cost; sizes cover both.  Each bulk kernel is
+ * paired with the apply() or find() callback it replaces: applyAffine/mapAffine, applyMobius/mapMobius,
+ * applyMult/mult, find/indexWithin.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ComplexArrayBenchmark {
+
+	@Param({"6", "64", "4096"})
+	public int size;
+
+	private ComplexArray array;
+	private ComplexArray other;
+	private ComplexArray.IComplexAction scale;
+	private ComplexArray.IComplexPredicate isLast;
+	private Complex target;
+	private final ComplexAffineTrans zoom = new ComplexAffineTrans(new Complex(1.0001f), new Complex(0.0001f, -0.0001f));
+	private final Complex mobiusA = new Complex(1.0f, 0.001f);
+	private final Complex mobiusB = new Complex(0.001f, 0.0f);
+	private final Complex mobiusC = new Complex(0.0f, 0.001f);
+	private final Complex mobiusD = new Complex(1.0f, 0.0f);
+	private ComplexArray.IComplexAction affine;
+	private ComplexArray.IComplexAction mobius;
+	private ComplexArray.IComplexAction multByOther;
+	private ComplexArray rotations;
+
+	@Setup
+	public void setUp() {
+		array = Fixtures.filledArray(size);
+		other = Fixtures.filledArray(size);
+		final Complex factor = Fixtures.rotation(0.001f);
+		scale = new ComplexArray.IComplexAction() {
+			@Override
+			public void actOn(IComplex z) {
+				z.mult(factor);
+			}
+		};
+		//worst case for find: the match is the last element
+		target = new Complex(array.at(size-1));
+		isLast = new ComplexArray.IComplexPredicate() {
+			@Override
+			public boolean eval(IComplex z) {
+				return z.distSq(target) < 1e-12f;
+			}
+		};
+		affine = new ComplexArray.IComplexAction() {
+			@Override
+			public void actOn(IComplex z) {
+				zoom.apply(z);
+			}
+		};
+		final Complex num = new Complex(0.0f);
+		final Complex den = new Complex(0.0f);
+		mobius = new ComplexArray.IComplexAction() {
+			@Override
+			public void actOn(IComplex z) {
+				num.assignFrom(z);
+				num.mult(mobiusA).add(mobiusB);
+				den.assignFrom(z);
+				den.mult(mobiusC).add(mobiusD);
+				z.assignFrom(num.div(den));
+			}
+		};
+		rotations = new ComplexArray(size);
+		for (int i = 0; i < size; ++i) {
+			rotations.append().assignFrom(factor);
+		}
+		final ComplexElement otherElement = rotations.front();
+		final Complex w = new Complex(0.0f);
+		multByOther = new ComplexArray.IComplexAction() {
+			@Override
+			public void actOn(IComplex z) {
+				w.assignFrom(otherElement.atIndex(((ComplexElement) z).getIndex()));
+				z.mult(w);
+			}
+		};
+	}
+
+	@Benchmark
+	public ComplexArray apply() {
+		array.apply(scale);
+		return array;
+	}
+
+	@Benchmark
+	public ComplexElement find() {
+		return array.find(isLast);
+	}
+
+	@Benchmark
+	public int indexWithin() {
+		return array.indexWithin(target.re, target.im, 1e-6f);
+	}
+
+	@Benchmark
+	public ComplexArray applyAffine() {
+		array.copyFrom(other).apply(affine);
+		return array;
+	}
+
+	@Benchmark
+	public ComplexArray mapAffine() {
+		return array.copyFrom(other).mapAffine(zoom);
+	}
+
+	@Benchmark
+	public ComplexArray applyMobius() {
+		array.copyFrom(other).apply(mobius);
+		return array;
+	}
+
+	@Benchmark
+	public ComplexArray mapMobius() {
+		return array.copyFrom(other).mapMobius(mobiusA, mobiusB, mobiusC, mobiusD);
+	}
+
+	@Benchmark
+	public ComplexArray applyMult() {
+		array.apply(multByOther);
+		return array;
+	}
+
+	@Benchmark
+	public ComplexArray mult() {
+		return array.mult(rotations);
+	}
+
+	@Benchmark
+	public ComplexArray copyFrom() {
+		return array.copyFrom(other);
+	}
+}
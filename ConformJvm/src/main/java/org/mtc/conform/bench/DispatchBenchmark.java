@@ -0,0 +1,87 @@
+package org.mtc.conform.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.mtc.conform.math.Complex;
+import org.mtc.conform.math.ComplexArray;
+import org.mtc.conform.math.IComplex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What going through IComplex costs compared with calling Complex directly.  Each benchmark runs the same
+ * multiply-add over N values:
+ * <ul>
+ * <li>direct: statically typed Complex, so calls bind at compile time</li>
+ * <li>interfaceMonomorphic: typed IComplex, but only Complex ever shows up, so the JIT can inline behind a type check</li>
+ * <li>interfaceBimorphic: typed IComplex, alternating Complex and ComplexElement, as the app mixes them</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DispatchBenchmark {
+
+	@Param({"64"})
+	public int size;
+
+	private Complex[] direct;
+	private IComplex[] monomorphic;
+	private IComplex[] bimorphic;
+	private final Complex factor = Fixtures.rotation(0.001f);
+	private final Complex offset = new Complex(0.0001f, -0.0001f);
+
+	@Setup
+	public void setUp() {
+		final ComplexArray backing = Fixtures.filledArray(size);
+		direct = new Complex[size];
+		monomorphic = new IComplex[size];
+		bimorphic = new IComplex[size];
+		for (int i = 0; i < size; ++i) {
+			direct[i] = new Complex(backing.at(i));
+			monomorphic[i] = new Complex(backing.at(i));
+			bimorphic[i] = (i & 1) == 0 ? new Complex(backing.at(i)) : backing.at(i);
+		}
+	}
+
+	@Benchmark
+	public float direct() {
+		float sum = 0.0f;
+		for (final Complex z : direct) {
+			z.mult(factor).add(offset);
+			sum += z.re;
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public float interfaceMonomorphic() {
+		return multAdd(monomorphic);
+	}
+
+	@Benchmark
+	public float interfaceBimorphic() {
+		return multAdd(bimorphic);
+	}
+
+	private float multAdd(final IComplex[] zs) {
+		float sum = 0.0f;
+		for (final IComplex z : zs) {
+			z.mult(factor).add(offset);
+			sum += z.re();
+		}
+		return sum;
+	}
+}
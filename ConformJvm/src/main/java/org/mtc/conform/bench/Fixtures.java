@@ -0,0 +1,43 @@
+package org.mtc.conform.bench;
+
+import org.mtc.conform.math.Complex;
+import org.mtc.conform.math.ComplexArray;
+
+final class Fixtures {
+
+	private Fixtures() {
+	}
+
+	//Points spread over the unit disc, the same every run
+	static ComplexArray filledArray(final int size) {
+		final ComplexArray array = new ComplexArray(size);
+		for (int i = 0; i < size; ++i) {
+			final double r = 0.9*(i+1)/size;
+			final double theta = 2.399963*i; //golden angle
+			array.append().assignFrom((float)(r*Math.cos(theta)), (float)(r*Math.sin(theta)));
+		}
+		return array;
+	}
+
+	//The view and zeros native-host/bench/benchfixtures.h renders with, so the renderers' numbers compare
+	static final float MAP_SCALE = 1.3f;
+	static final float MAP_PIVOT_X = 0.1f;
+	static final float MAP_PIVOT_Y = -0.05f;
+	static final float[] MAP_ZEROS = { 0.0f, 0.0f, 0.5f, 0.3f, -0.4f, 0.6f, 0.2f, -0.7f, -0.6f, -0.2f, 0.8f, 0.1f };
+
+	//makeSourceImage() from benchfixtures.cpp: gradients, with a one-texel checker in blue
+	static int[] sourceImage(final int width, final int height) {
+		final int[] pixels = new int[width*height];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				pixels[y*width+x] = 0xFF000000 | (x*255/width) << 16 | (y*255/height) << 8 | ((x^y) & 0x3F) << 2;
+			}
+		}
+		return pixels;
+	}
+
+	//Multiplying by this over and over keeps values in range, so the timings never wander into denormals
+	static Complex rotation(final float theta) {
+		return new Complex((float)Math.cos(theta), (float)Math.sin(theta));
+	}
+}
@@ -0,0 +1,179 @@
+package org.mtc.conform.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.mtc.conform.render.BlaschkeProduct;
+import org.mtc.conform.render.PlaneMap;
+import org.mtc.conform.render.ReferenceRenderer;
+import org.mtc.conform.render.SourceSampler;
+
+/**
+ * Checks frames from native-host's conform_render against ReferenceRenderer:
+ *
+ *   conform_render --engine double --tolerance 0 --no-mipmaps [--clamp] source.png views.txt out_
+ *   java -cp target/classes org.mtc.conform.bench.NativeReferenceCheck [options] source.png views.txt out_
+ *
+ * with the same source (an 8 bit PNG) and views file (see conform_render.cpp).  Each out_NNNN.png is rendered
+ * again in Java at its own size and compared a channel at a time.  Options:
+ *
+ *   --clamp				as given to conform_render
+ *   --levels N			how far a channel may be off before the pixel counts as different, 2 by default
+ *   --max-different F	the fraction of pixels that may differ before the frame fails, 0.001 by default
+ *   --vector			render with the Vector API map as well, and check it matches the scalar one exactly
+ *						(needs the JDK 17 build and --add-modules jdk.incubator.vector)
+ *
+ * Exits 1 if any frame fails.  The native side multiplies the product out, and past six zeros approximates it, so
+ * some pixels near poles land elsewhere; the rest should be within a level or two.
+ */
+public class NativeReferenceCheck {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int wrapMode = 0;
+		int levels = 2;
+		double maxDifferent = 0.001;
+		boolean isVector = false;
+		final List<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("--clamp")) {
+				wrapMode = 1;
+			} else if (args[i].equals("--levels") && i+1 < args.length) {
+				levels = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--max-different") && i+1 < args.length) {
+				maxDifferent = Double.parseDouble(args[++i]);
+			} else if (args[i].equals("--vector")) {
+				isVector = true;
+			} else {
+				files.add(args[i]);
+			}
+		}
+		if (files.size() != 3) {
+			System.err.println("usage: NativeReferenceCheck [--clamp] [--levels N] [--max-different F] [--vector] source.png views.txt out_prefix");
+			System.exit(2);
+		}
+		if (isVector && !BlaschkeProduct.isVectorAvailable()) {
+			System.err.println("The Vector API map isn't available: build on JDK 17+ and run with --add-modules jdk.incubator.vector");
+			System.exit(2);
+		}
+
+		final BufferedImage sourceImage = ImageIO.read(new File(files.get(0)));
+		final int[] sourcePixels = premultiply(pixelsOf(sourceImage));
+		final SourceSampler source = new SourceSampler(sourcePixels, sourceImage.getWidth(), sourceImage.getHeight(), wrapMode);
+		final ReferenceRenderer renderer = new ReferenceRenderer(ForkJoinPool.commonPool());
+		boolean isOk = true;
+		int frame = 0;
+		for (BlaschkeProduct map : readViews(files.get(1))) {
+			final String path = String.format(Locale.US, "%s%04d.png", files.get(2), frame++);
+			final BufferedImage nativeImage = ImageIO.read(new File(path));
+			if (nativeImage == null) {
+				System.err.println("Can't read " + path);
+				System.exit(1);
+			}
+			final int width = nativeImage.getWidth();
+			final int height = nativeImage.getHeight();
+			final int[] reference = new int[width*height];
+			final long start = System.nanoTime();
+			renderer.render(source, map, reference, width, height);
+			final double seconds = (System.nanoTime() - start)*1e-9;
+			final int[] expected = unpremultiply(reference);
+			final int[] actual = pixelsOf(nativeImage);
+			int different = 0;
+			int worst = 0;
+			long total = 0;
+			for (int i = 0; i < actual.length; ++i) {
+				int pixelWorst = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					final int d = Math.abs((actual[i] >>> shift & 0xFF) - (expected[i] >>> shift & 0xFF));
+					pixelWorst = Math.max(pixelWorst, d);
+					total += d;
+				}
+				worst = Math.max(worst, pixelWorst);
+				different += pixelWorst > levels ? 1 : 0;
+			}
+			final double fraction = (double) different/actual.length;
+			final boolean isFrameOk = fraction <= maxDifferent;
+			System.out.printf(Locale.US, "%s: %dx%d in %.2fs, %.4f%% of pixels differ by more than %d (worst %d, mean %.3f)  %s%n", path, width, height,
+							  seconds, 100*fraction, levels, worst, total/(4.0*actual.length), isFrameOk ? "ok" : "FAIL");
+			isOk &= isFrameOk;
+			if (isVector) {
+				final PlaneMap vectorMap = map.vectorized();
+				final int[] vectorPixels = new int[width*height];
+				final long vectorStart = System.nanoTime();
+				renderer.render(source, vectorMap, vectorPixels, width, height);
+				final boolean isSame = java.util.Arrays.equals(reference, vectorPixels);
+				System.out.printf(Locale.US, "  vector: %.2fs, %s%n", (System.nanoTime() - vectorStart)*1e-9, isSame ? "identical" : "DIFFERENT");
+				isOk &= isSame;
+			}
+		}
+		System.exit(isOk ? 0 : 1);
+	}
+
+	private static int[] pixelsOf(final BufferedImage image) {
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+
+	//As conform_render's pngio.cpp does on the way in and out, so partly transparent sources compare too
+	private static int[] premultiply(final int[] pixels) {
+		for (int i = 0; i < pixels.length; ++i) {
+			final int a = pixels[i] >>> 24;
+			int p = a << 24;
+			for (int shift = 0; shift < 24; shift += 8) {
+				p |= (((pixels[i] >>> shift & 0xFF)*a + 127)/255) << shift;
+			}
+			pixels[i] = p;
+		}
+		return pixels;
+	}
+
+	private static int[] unpremultiply(final int[] pixels) {
+		final int[] result = new int[pixels.length];
+		for (int i = 0; i < pixels.length; ++i) {
+			final int a = pixels[i] >>> 24;
+			int p = a << 24;
+			for (int shift = 0; shift < 24 && a > 0; shift += 8) {
+				p |= Math.min(255, ((pixels[i] >>> shift & 0xFF)*255 + a/2)/a) << shift;
+			}
+			result[i] = p;
+		}
+		return result;
+	}
+
+	//The views file format conform_render reads: "pivotX pivotY scale re0 im0 ..." or "deep centreRe centreIm scale ..."
+	private static List<BlaschkeProduct> readViews(final String path) throws IOException {
+		final List<BlaschkeProduct> views = new ArrayList<BlaschkeProduct>();
+		final BufferedReader in = new BufferedReader(new FileReader(path));
+		try {
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				final int comment = line.indexOf('#');
+				final String[] words = (comment < 0 ? line : line.substring(0, comment)).trim().split("\\s+");
+				if (words[0].isEmpty()) {
+					continue;
+				}
+				final boolean isDeepZoom = words[0].equals("deep");
+				final int first = isDeepZoom ? 1 : 0;
+				final double x = Double.parseDouble(words[first]);
+				final double y = Double.parseDouble(words[first+1]);
+				final double scale = Double.parseDouble(words[first+2]);
+				final float[] params = new float[words.length - first - 3];
+				for (int i = 0; i < params.length; ++i) {
+					params[i] = Float.parseFloat(words[first+3+i]);
+				}
+				//conform_render reads a plain view as a float ComplexAffineTrans, pivot and all
+				views.add(isDeepZoom ? new BlaschkeProduct(params, params.length/2, x, y, scale)
+									 : new BlaschkeProduct(params, params.length/2, -(float) x/(double) (float) scale, -(float) y/(double) (float) scale, (float) scale));
+			}
+		} finally {
+			in.close();
+		}
+		return views;
+	}
+}
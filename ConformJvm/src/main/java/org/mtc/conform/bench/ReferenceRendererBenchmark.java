@@ -0,0 +1,67 @@
+package org.mtc.conform.bench;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.mtc.conform.render.BlaschkeProduct;
+import org.mtc.conform.render.PlaneMap;
+import org.mtc.conform.render.ReferenceRenderer;
+import org.mtc.conform.render.SourceSampler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReferenceRenderer on the frames BM_EnginePullback in native-host/bench renders (same source, view and zeros),
+ * so the two read side by side.  map=vector needs the JDK 17 build and
+ * -jvmArgsAppend --add-modules=jdk.incubator.vector; without them its setup fails rather than quietly timing the
+ * scalar map.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReferenceRendererBenchmark {
+
+	@Param({"420", "1080"})
+	public int size;
+
+	@Param({"1", "6"})
+	public int factors;
+
+	@Param({"scalar", "vector"})
+	public String map;
+
+	private final ReferenceRenderer renderer = new ReferenceRenderer(ForkJoinPool.commonPool());
+	private SourceSampler source;
+	private PlaneMap planeMap;
+	private int[] dest;
+
+	@Setup
+	public void setUp() {
+		source = new SourceSampler(Fixtures.sourceImage(1024, 768), 1024, 768, 0);
+		final BlaschkeProduct product = new BlaschkeProduct(Fixtures.MAP_ZEROS, factors, -Fixtures.MAP_PIVOT_X/(double) Fixtures.MAP_SCALE,
+															-Fixtures.MAP_PIVOT_Y/(double) Fixtures.MAP_SCALE, Fixtures.MAP_SCALE);
+		if (map.equals("vector") && !BlaschkeProduct.isVectorAvailable()) {
+			throw new IllegalStateException("no Vector API map: build on JDK 17+ and add the jdk.incubator.vector module");
+		}
+		planeMap = map.equals("vector") ? product.vectorized() : product;
+		dest = new int[size*size];
+	}
+
+	@Benchmark
+	public int[] render() throws InterruptedException {
+		renderer.render(source, planeMap, dest, size, size);
+		return dest;
+	}
+}
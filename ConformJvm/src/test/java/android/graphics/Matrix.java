@@ -0,0 +1,69 @@
+package android.graphics;
+
+/**
+ * Stand-in for android.graphics.Matrix on the JVM, so GestureAllocationCheck can drive TransformationState: just
+ * the scale-and-translate matrices it builds, and only the methods it calls.  Allocates nothing, as the real one
+ * doesn't.
+ */
+public class Matrix {
+	private float m_scaleX = 1, m_scaleY = 1, m_transX = 0, m_transY = 0;
+
+	public void set(final Matrix src) {
+		m_scaleX = src.m_scaleX;
+		m_scaleY = src.m_scaleY;
+		m_transX = src.m_transX;
+		m_transY = src.m_transY;
+	}
+
+	public boolean preScale(final float sx, final float sy) {
+		m_scaleX *= sx;
+		m_scaleY *= sy;
+		return true;
+	}
+
+	public boolean preScale(final float sx, final float sy, final float px, final float py) {
+		m_transX += m_scaleX*px*(1 - sx);
+		m_transY += m_scaleY*py*(1 - sy);
+		return preScale(sx, sy);
+	}
+
+	public boolean postScale(final float sx, final float sy) {
+		m_scaleX *= sx;
+		m_scaleY *= sy;
+		m_transX *= sx;
+		m_transY *= sy;
+		return true;
+	}
+
+	public boolean postScale(final float sx, final float sy, final float px, final float py) {
+		postScale(sx, sy);
+		m_transX += px*(1 - sx);
+		m_transY += py*(1 - sy);
+		return true;
+	}
+
+	public boolean invert(final Matrix inverse) {
+		if (m_scaleX == 0 || m_scaleY == 0) {
+			return false;
+		}
+		inverse.m_scaleX = 1/m_scaleX;
+		inverse.m_scaleY = 1/m_scaleY;
+		inverse.m_transX = -m_transX/m_scaleX;
+		inverse.m_transY = -m_transY/m_scaleY;
+		return true;
+	}
+
+	public void mapPoints(final float[] dst, final int dstIndex, final float[] src, final int srcIndex, final int pointCount) {
+		for (int i = 0; i < 2*pointCount; i += 2) {
+			dst[dstIndex+i] = src[srcIndex+i]*m_scaleX + m_transX;
+			dst[dstIndex+i+1] = src[srcIndex+i+1]*m_scaleY + m_transY;
+		}
+	}
+
+	public void mapVectors(final float[] dst, final int dstIndex, final float[] src, final int srcIndex, final int vectorCount) {
+		for (int i = 0; i < 2*vectorCount; i += 2) {
+			dst[dstIndex+i] = src[srcIndex+i]*m_scaleX;
+			dst[dstIndex+i+1] = src[srcIndex+i+1]*m_scaleY;
+		}
+	}
+}
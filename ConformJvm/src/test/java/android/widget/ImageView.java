@@ -0,0 +1,14 @@
+package android.widget;
+
+import android.graphics.Matrix;
+
+/**
+ * Stand-in for android.widget.ImageView on the JVM: all TransformationState asks of its view is the image matrix.
+ */
+public class ImageView {
+	private final Matrix m_imageMatrix = new Matrix();
+
+	public Matrix getImageMatrix() {
+		return m_imageMatrix;
+	}
+}
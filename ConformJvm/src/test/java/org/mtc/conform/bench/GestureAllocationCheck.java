@@ -0,0 +1,135 @@
+package org.mtc.conform.bench;
+
+import java.lang.management.ManagementFactory;
+
+import org.mtc.conform.ParamHolder;
+import org.mtc.conform.TransformationState;
+
+import android.widget.ImageView;
+
+/**
+ * Checks that a gesture event allocates nothing, by HotSpot's count of the bytes each thread has allocated (what
+ * -prof gc reads).  Each event calls the app's own TransformationState and ParamHolder as BitmapperTouchHandler
+ * does for a pinch, a scroll, a touch-down and a param drag, with the ParamHolder listening to the
+ * TransformationState as BitmapperView sets them up.  android.graphics.Matrix and ImageView are the stand-ins in
+ * this source tree.  Run by mvn test (and so by package); or on its own:
+ *
+ *   java -cp target/classes:target/test-classes org.mtc.conform.bench.GestureAllocationCheck
+ *   java -Xint -cp target/classes:target/test-classes org.mtc.conform.bench.GestureAllocationCheck
+ *                                                    without escape analysis's help
+ *
+ * Exits 1, naming the gesture, if any allocates.
+ */
+public class GestureAllocationCheck {
+
+	private static final int WARMUP_EVENTS = 20000;
+	private static final int EVENTS = 100000;
+	private static final int ROUNDS = 3;
+	private static final int NUM_PARAMS = 6;
+	private static final int DRAW_SIZE = 420; //BitmapperView's
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final TransformationState transState = new TransformationState(new ImageView(), DRAW_SIZE, DRAW_SIZE);
+	private final ParamHolder paramHolder;
+	private int found;
+	private int changes;
+	private Object sink;
+
+	private interface Gesture {
+		void event(int i);
+	}
+
+	private final Gesture pinch = new Gesture() {
+		@Override
+		public void event(int i) {
+			transState.scale((i & 1) == 0 ? 1.01f : 1.0f/1.01f, 100.0f, 300.0f);
+		}
+	};
+	private final Gesture scroll = new Gesture() {
+		@Override
+		public void event(int i) {
+			final float d = (i & 1) == 0 ? 3.0f : -3.0f;
+			transState.translate(d, -d);
+		}
+	};
+	private final Gesture touchDown = new Gesture() {
+		@Override
+		public void event(int i) {
+			found += paramHolder.indexOfParamNearCoords(i % 7 * 60.0f, 210.0f);
+		}
+	};
+	private final Gesture drag = new Gesture() {
+		@Override
+		public void event(int i) {
+			paramHolder.setParamScreenCoords(i % paramHolder.size(), 200.0f + (i & 31), 150.0f);
+		}
+	};
+	//Allocates on purpose, to show the count is working
+	private final Gesture control = new Gesture() {
+		@Override
+		public void event(int i) {
+			sink = new float[2];
+		}
+	};
+
+	private GestureAllocationCheck() {
+		paramHolder = new ParamHolder(transState, new ParamHolder.OnParamsChangedListener() {
+			@Override
+			public void onParamsChanged() {
+				++changes;
+			}
+		});
+		transState.updateMatrices();
+		for (int i = 1; i < NUM_PARAMS; ++i) { //the holder starts with one at 0
+			paramHolder.addParamNormCoords(0.1f*i, -0.05f*i);
+		}
+	}
+
+	private long allocatedBytes(final Gesture gesture) {
+		for (int i = 0; i < WARMUP_EVENTS; ++i) {
+			gesture.event(i);
+		}
+		//The fewest of a few rounds: the JIT recompiling this loop for a new gesture can allocate once, inside a
+		//round; a gesture that allocates does so in every round
+		final long threadId = Thread.currentThread().getId();
+		long fewest = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; ++round) {
+			final long before = THREADS.getThreadAllocatedBytes(threadId);
+			for (int i = 0; i < EVENTS; ++i) {
+				gesture.event(i);
+			}
+			fewest = Math.min(fewest, THREADS.getThreadAllocatedBytes(threadId) - before);
+		}
+		return fewest;
+	}
+
+	private boolean check(final String name, final Gesture gesture, final long overhead, final boolean shouldAllocate) {
+		final int changesBefore = changes;
+		final long bytes = Math.max(0, allocatedBytes(gesture) - overhead);
+		final boolean ok = shouldAllocate ? bytes >= EVENTS : bytes == 0;
+		System.out.printf("%-10s %8.2f bytes/event  %6d param updates  %s%n", name, (double) bytes/EVENTS, changes - changesBefore, ok ? "ok" : "FAIL");
+		return ok;
+	}
+
+	public static void main(String[] args) {
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			System.out.println("This JVM doesn't count allocated bytes per thread");
+			System.exit(2);
+		}
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+		final GestureAllocationCheck check = new GestureAllocationCheck();
+		final Gesture nothing = new Gesture() {
+			@Override
+			public void event(int i) {
+			}
+		};
+		final long overhead = check.allocatedBytes(nothing); //whatever reading the counter costs
+		boolean ok = check.check("control", check.control, overhead, true);
+		ok &= check.check("pinch", check.pinch, overhead, false);
+		ok &= check.check("scroll", check.scroll, overhead, false);
+		ok &= check.check("touchDown", check.touchDown, overhead, false);
+		ok &= check.check("drag", check.drag, overhead, false);
+		System.exit(ok ? 0 : 1);
+	}
+}
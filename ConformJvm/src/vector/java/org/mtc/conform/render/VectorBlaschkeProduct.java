@@ -0,0 +1,64 @@
+package org.mtc.conform.render;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * BlaschkeProduct.mapRow() a vector of pixels at a time with the Vector API.  Every lane does the same double
+ * operations in the same order as the scalar version (and nothing fused), so w comes out identical; only the
+ * conversion back to 16.16 is left scalar.  Built by ConformJvm's JDK 17 profile only, and loaded by
+ * BlaschkeProduct.vectorized() when the jdk.incubator.vector module is there.
+ */
+public class VectorBlaschkeProduct implements PlaneMap {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	private static final int LANES = SPECIES.length();
+	private static final DoubleVector IOTA = DoubleVector.zero(SPECIES).addIndex(1);
+
+	private final BlaschkeProduct m_map;
+
+	public VectorBlaschkeProduct(final BlaschkeProduct map) {
+		m_map = map;
+	}
+
+	@Override
+	public void mapRow(final int zre, final int reInc, final int zim, final int count, final int[] w) {
+		final BlaschkeProduct m = m_map;
+		final double scale = BlaschkeProduct.FIX_TO_DOUBLE;
+		final DoubleVector pIm = DoubleVector.broadcast(SPECIES, m.centreIm + zim*scale*m.invScale);
+		final DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+		final double[] re = new double[LANES];
+		final double[] im = new double[LANES];
+		for (int i = 0; i < count; i += LANES) {
+			//zre + (i+lane)*reInc is an integer well inside double's 53 bits, so this is exact
+			final DoubleVector z = IOTA.add(i).mul(reInc).add(zre);
+			final DoubleVector pRe = z.mul(scale).mul(m.invScale).add(m.centreRe);
+			DoubleVector wRe = one;
+			DoubleVector wIm = DoubleVector.zero(SPECIES);
+			for (int k = 0; k < m.numZeros; ++k) {
+				final double aRe = m.zeroRe[k];
+				final double aIm = m.zeroIm[k];
+				final DoubleVector nRe = pRe.sub(aRe);
+				final DoubleVector nIm = pIm.sub(aIm);
+				DoubleVector eRe = one.sub(pRe.mul(aRe).add(pIm.mul(aIm)));
+				final DoubleVector eIm = pRe.mul(aIm).sub(pIm.mul(aRe));
+				final VectorMask<Double> pole = eRe.eq(0.0).and(eIm.eq(0.0));
+				eRe = eRe.blend(scale, pole);
+				final DoubleVector inv = one.div(eRe.mul(eRe).add(eIm.mul(eIm)));
+				final DoubleVector qRe = nRe.mul(eRe).add(nIm.mul(eIm)).mul(inv);
+				final DoubleVector qIm = nIm.mul(eRe).sub(nRe.mul(eIm)).mul(inv);
+				final DoubleVector productRe = wRe.mul(qRe).sub(wIm.mul(qIm));
+				wIm = wRe.mul(qIm).add(wIm.mul(qRe));
+				wRe = productRe;
+			}
+			wRe.intoArray(re, 0);
+			wIm.intoArray(im, 0);
+			final int lanes = Math.min(LANES, count - i);
+			for (int l = 0; l < lanes; ++l) {
+				w[2*(i+l)] = BlaschkeProduct.toFixClamped(re[l]);
+				w[2*(i+l)+1] = BlaschkeProduct.toFixClamped(im[l]);
+			}
+		}
+	}
+}